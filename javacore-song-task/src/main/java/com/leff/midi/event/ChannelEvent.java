@@ -30,6 +30,11 @@ public class ChannelEvent extends MidiEvent {
     public static final int CHANNEL_AFTERTOUCH = 0xD;
     public static final int PITCH_BEND = 0xE;
     private static HashMap<Integer, Integer> mOrderMap;
+
+    static {
+        // built eagerly: lazy initialisation raced when files were parsed on several threads
+        buildOrderMap();
+    }
     protected int mType;
     protected int mChannel;
     protected int mValue1;
@@ -130,10 +135,6 @@ public class ChannelEvent extends MidiEvent {
 
         ChannelEvent o = (ChannelEvent) other;
         if (mType != o.getType()) {
-            if (mOrderMap == null) {
-                buildOrderMap();
-            }
-
             int order1 = mOrderMap.get(mType);
             int order2 = mOrderMap.get(o.getType());
 
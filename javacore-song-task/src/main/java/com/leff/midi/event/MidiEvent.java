@@ -24,9 +24,9 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 public abstract class MidiEvent implements Comparable<MidiEvent> {
-    private static int sId = -1;
-    private static int sType = -1;
-    private static int sChannel = -1;
+    // running status of the stream being parsed; kept per thread so that
+    // several files can be parsed at the same time
+    private static final ThreadLocal<RunningStatus> sStatus = ThreadLocal.withInitial(RunningStatus::new);
     protected long mTick;
     protected VariableLengthInt mDelta;
 
@@ -38,24 +38,25 @@ public abstract class MidiEvent implements Comparable<MidiEvent> {
     public static final MidiEvent parseEvent(long tick, long delta, InputStream in) throws IOException {
         in.mark(1);
         boolean reset = false;
+        RunningStatus status = sStatus.get();
 
         int id = in.read();
-        if (!verifyIdentifier(id)) {
+        if (!verifyIdentifier(id, status)) {
             in.reset();
             reset = true;
         }
 
-        if (sType >= 0x8 && sType <= 0xE) {
-            return ChannelEvent.parseChannelEvent(tick, delta, sType, sChannel, in);
-        } else if (sId == 0xFF) {
+        if (status.mType >= 0x8 && status.mType <= 0xE) {
+            return ChannelEvent.parseChannelEvent(tick, delta, status.mType, status.mChannel, in);
+        } else if (status.mId == 0xFF) {
             return MetaEvent.parseMetaEvent(tick, delta, in);
-        } else if (sId == 0xF0 || sId == 0xF7) {
+        } else if (status.mId == 0xF0 || status.mId == 0xF7) {
             VariableLengthInt size = new VariableLengthInt(in);
             byte[] data = new byte[size.getValue()];
             in.read(data);
-            return new SystemExclusiveEvent(sId, tick, delta, data);
+            return new SystemExclusiveEvent(status.mId, tick, delta, data);
         } else {
-            System.out.println("Unable to handle status byte, skipping: " + sId);
+            System.out.println("Unable to handle status byte, skipping: " + status.mId);
             if (reset) {
                 in.read();
             }
@@ -64,24 +65,24 @@ public abstract class MidiEvent implements Comparable<MidiEvent> {
         return null;
     }
 
-    private static boolean verifyIdentifier(int id) {
-        sId = id;
+    private static boolean verifyIdentifier(int id, RunningStatus status) {
+        status.mId = id;
 
         int type = id >> 4;
         int channel = id & 0x0F;
 
         if (type >= 0x8 && type <= 0xE) {
-            sId = id;
-            sType = type;
-            sChannel = channel;
+            status.mId = id;
+            status.mType = type;
+            status.mChannel = channel;
         } else if (id == 0xFF) {
-            sId = id;
-            sType = -1;
-            sChannel = -1;
+            status.mId = id;
+            status.mType = -1;
+            status.mChannel = -1;
         } else if (type == 0xF) {
-            sId = id;
-            sType = type;
-            sChannel = -1;
+            status.mId = id;
+            status.mType = type;
+            status.mChannel = -1;
         } else {
             return false;
         }
@@ -124,4 +125,10 @@ public abstract class MidiEvent implements Comparable<MidiEvent> {
     public String toString() {
         return "" + mTick + " (" + mDelta.getValue() + "): " + this.getClass().getSimpleName();
     }
+
+    private static class RunningStatus {
+        private int mId = -1;
+        private int mType = -1;
+        private int mChannel = -1;
+    }
 }
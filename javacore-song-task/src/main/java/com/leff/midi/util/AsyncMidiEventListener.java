@@ -0,0 +1,448 @@
+package com.leff.midi.util;
+
+import com.leff.midi.event.ChannelEvent;
+import com.leff.midi.event.Controller;
+import com.leff.midi.event.MidiEvent;
+import com.leff.midi.event.NoteAftertouch;
+import com.leff.midi.event.meta.Tempo;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decorator that moves a slow listener off the timing thread.
+ * <p>
+ * The processor thread is the single producer: {@link #onEvent} only writes
+ * into a preallocated ring buffer and returns. A dedicated consumer thread
+ * drains the ring and calls the wrapped listener in the original order.
+ * Start and stop notifications travel through the same ring and are never
+ * dropped.
+ * <p>
+ * Register the wrapper with {@link MidiProcessor#registerEventListener} like
+ * any other listener and call {@link #shutdown()} once it is no longer needed.
+ */
+public class AsyncMidiEventListener implements MidiEventListener {
+
+    public enum WaitStrategy {
+        /**
+         * Lowest latency, burns a core while idle.
+         */
+        BUSY_SPIN,
+        /**
+         * Spins with {@link Thread#yield()}.
+         */
+        YIELDING,
+        /**
+         * Parks for a short fixed period between polls.
+         */
+        SLEEPING,
+        /**
+         * Parks until the producer publishes something.
+         */
+        BLOCKING
+    }
+
+    public enum OverflowPolicy {
+        /**
+         * Discard the new event when the ring is full.
+         */
+        DROP,
+        /**
+         * Make the timing thread wait for free space.
+         */
+        BLOCK,
+        /**
+         * Hold overflowing events until slots free up, keeping only the most
+         * recent of those that replace one another: a controller per channel
+         * and number, pitch bend, program change and channel pressure per
+         * channel, key pressure per channel and note, and tempo. Notes and any
+         * other event never replace each other; they wait for free space as
+         * with {@link #BLOCK}.
+         */
+        COALESCE
+    }
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final byte SLOT_EVENT = 0;
+    private static final byte SLOT_START = 1;
+    private static final byte SLOT_STOP = 2;
+
+    private static final int PENDING_CAPACITY = 64;
+    private static final int NOT_REPLACEABLE = -1;
+    private static final int TEMPO_KEY = 1 << 16;
+
+    private static final long SLEEP_NANOS = 100000L;
+    private static final long BLOCKING_PARK_NANOS = 1000000L;
+
+    private static final AtomicInteger sThreadNumber = new AtomicInteger();
+
+    private final MidiEventListener mDelegate;
+    private final WaitStrategy mWaitStrategy;
+    private final OverflowPolicy mOverflowPolicy;
+
+    private final int mMask;
+    private final byte[] mKinds;
+    private final MidiEvent[] mEvents;
+    private final long[] mArgs;
+    private final long[] mPublishNanos;
+
+    // Next sequence to be written by the producer / read by the consumer.
+    private final AtomicLong mHead = new AtomicLong();
+    private final AtomicLong mTail = new AtomicLong();
+
+    // Producer-only state for OverflowPolicy.COALESCE: overflowing events
+    // waiting for a slot, oldest first, at most one per replacement key.
+    private final int[] mPendingKeys = new int[PENDING_CAPACITY];
+    private final MidiEvent[] mPendingEvents = new MidiEvent[PENDING_CAPACITY];
+    private final long[] mPendingMs = new long[PENDING_CAPACITY];
+    private int mPendingCount;
+
+    private final AtomicLong mDropped = new AtomicLong();
+    private final AtomicLong mCoalesced = new AtomicLong();
+    private final AtomicLong mErrors = new AtomicLong();
+    private volatile long mDelivered;
+    private volatile long mMaxLag;
+    private volatile long mMaxDelayNanos;
+    private volatile long mTotalDelayNanos;
+
+    private final Thread mConsumer;
+    private volatile boolean mConsumerWaiting;
+    private volatile boolean mShutdown;
+
+    public AsyncMidiEventListener(MidiEventListener delegate) {
+        this(delegate, DEFAULT_CAPACITY, WaitStrategy.BLOCKING, OverflowPolicy.BLOCK);
+    }
+
+    public AsyncMidiEventListener(MidiEventListener delegate, int capacity,
+                                  WaitStrategy waitStrategy, OverflowPolicy overflowPolicy) {
+
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two, got " + capacity);
+        }
+
+        mDelegate = delegate;
+        mWaitStrategy = waitStrategy;
+        mOverflowPolicy = overflowPolicy;
+
+        mMask = capacity - 1;
+        mKinds = new byte[capacity];
+        mEvents = new MidiEvent[capacity];
+        mArgs = new long[capacity];
+        mPublishNanos = new long[capacity];
+
+        mConsumer = new Thread(this::consume, "midi-async-listener-" + sThreadNumber.incrementAndGet());
+        mConsumer.setDaemon(true);
+        mConsumer.start();
+    }
+
+    @Override
+    public void onStart(boolean fromBeginning) {
+        publishBlocking(SLOT_START, null, fromBeginning ? 1 : 0);
+    }
+
+    @Override
+    public void onEvent(MidiEvent event, long ms) {
+
+        publishPending();
+
+        if (mPendingCount == 0 && hasFreeSlot()) {
+            publish(SLOT_EVENT, event, ms);
+            return;
+        }
+
+        switch (mOverflowPolicy) {
+            case DROP:
+                mDropped.incrementAndGet();
+                break;
+            case COALESCE:
+                coalesce(event, ms);
+                break;
+            default:
+                publishBlocking(SLOT_EVENT, event, ms);
+                break;
+        }
+    }
+
+    @Override
+    public void onStop(boolean finished) {
+
+        publishPendingBlocking();
+        publishBlocking(SLOT_STOP, null, finished ? 1 : 0);
+    }
+
+    /**
+     * Stops the consumer thread after it has drained everything published so far.
+     */
+    public void shutdown() {
+        mShutdown = true;
+        LockSupport.unpark(mConsumer);
+    }
+
+    public MidiEventListener getDelegate() {
+        return mDelegate;
+    }
+
+    public int getCapacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * Number of published entries the consumer has not delivered yet.
+     */
+    public long getLag() {
+        return mHead.get() - mTail.get();
+    }
+
+    public long getMaxLag() {
+        return mMaxLag;
+    }
+
+    public long getDeliveredCount() {
+        return mDelivered;
+    }
+
+    public long getDroppedCount() {
+        return mDropped.get();
+    }
+
+    /**
+     * Number of overflowing events that were replaced by a newer one with the same key.
+     */
+    public long getCoalescedCount() {
+        return mCoalesced.get();
+    }
+
+    /**
+     * Number of notifications the wrapped listener failed with a RuntimeException.
+     * Only the first failure is reported to System.err.
+     */
+    public long getErrorCount() {
+        return mErrors.get();
+    }
+
+    public long getMaxDelayNanos() {
+        return mMaxDelayNanos;
+    }
+
+    public long getAverageDelayNanos() {
+        long delivered = mDelivered;
+        return delivered == 0 ? 0 : mTotalDelayNanos / delivered;
+    }
+
+    private boolean hasFreeSlot() {
+        return mHead.get() - mTail.get() <= mMask;
+    }
+
+    private void coalesce(MidiEvent event, long ms) {
+
+        int key = replacementKey(event);
+        if (key == NOT_REPLACEABLE) {
+            publishPendingBlocking();
+            publishBlocking(SLOT_EVENT, event, ms);
+            return;
+        }
+
+        for (int i = 0; i < mPendingCount; i++) {
+            if (mPendingKeys[i] == key) {
+                // the replacement takes the newest position, so order against other keys is kept
+                removePending(i);
+                mCoalesced.incrementAndGet();
+                break;
+            }
+        }
+
+        if (mPendingCount == PENDING_CAPACITY) {
+            publishPendingBlocking();
+            publishBlocking(SLOT_EVENT, event, ms);
+            return;
+        }
+
+        mPendingKeys[mPendingCount] = key;
+        mPendingEvents[mPendingCount] = event;
+        mPendingMs[mPendingCount] = ms;
+        mPendingCount++;
+    }
+
+    /**
+     * Key shared by events that make each other obsolete, or {@link #NOT_REPLACEABLE}.
+     */
+    private static int replacementKey(MidiEvent event) {
+
+        if (event instanceof Tempo) {
+            return TEMPO_KEY;
+        }
+        if (!(event instanceof ChannelEvent)) {
+            return NOT_REPLACEABLE;
+        }
+
+        ChannelEvent channelEvent = (ChannelEvent) event;
+        int prefix = channelEvent.getType() << 12 | channelEvent.getChannel() << 8;
+        switch (channelEvent.getType()) {
+            case ChannelEvent.CONTROLLER:
+                return prefix | ((Controller) event).getControllerType() & 0x7F;
+            case ChannelEvent.NOTE_AFTERTOUCH:
+                return prefix | ((NoteAftertouch) event).getNoteValue() & 0x7F;
+            case ChannelEvent.PROGRAM_CHANGE:
+            case ChannelEvent.CHANNEL_AFTERTOUCH:
+            case ChannelEvent.PITCH_BEND:
+                return prefix;
+            default:
+                return NOT_REPLACEABLE;
+        }
+    }
+
+    private void publishPending() {
+
+        int published = 0;
+        while (published < mPendingCount && hasFreeSlot()) {
+            publish(SLOT_EVENT, mPendingEvents[published], mPendingMs[published]);
+            published++;
+        }
+        if (published == 0) {
+            return;
+        }
+        int remaining = mPendingCount - published;
+        System.arraycopy(mPendingKeys, published, mPendingKeys, 0, remaining);
+        System.arraycopy(mPendingEvents, published, mPendingEvents, 0, remaining);
+        System.arraycopy(mPendingMs, published, mPendingMs, 0, remaining);
+        Arrays.fill(mPendingEvents, remaining, mPendingCount, null);
+        mPendingCount = remaining;
+    }
+
+    private void publishPendingBlocking() {
+
+        for (int i = 0; i < mPendingCount; i++) {
+            publishBlocking(SLOT_EVENT, mPendingEvents[i], mPendingMs[i]);
+            mPendingEvents[i] = null;
+        }
+        mPendingCount = 0;
+    }
+
+    private void removePending(int index) {
+
+        int moved = mPendingCount - index - 1;
+        System.arraycopy(mPendingKeys, index + 1, mPendingKeys, index, moved);
+        System.arraycopy(mPendingEvents, index + 1, mPendingEvents, index, moved);
+        System.arraycopy(mPendingMs, index + 1, mPendingMs, index, moved);
+        mPendingCount--;
+        mPendingEvents[mPendingCount] = null;
+    }
+
+    private void publishBlocking(byte kind, MidiEvent event, long arg) {
+
+        while (!hasFreeSlot()) {
+            if (!mConsumer.isAlive()) {
+                return;
+            }
+            LockSupport.parkNanos(SLEEP_NANOS);
+        }
+        publish(kind, event, arg);
+    }
+
+    private void publish(byte kind, MidiEvent event, long arg) {
+
+        long seq = mHead.get();
+        int slot = (int) seq & mMask;
+
+        mKinds[slot] = kind;
+        mEvents[slot] = event;
+        mArgs[slot] = arg;
+        mPublishNanos[slot] = System.nanoTime();
+
+        mHead.lazySet(seq + 1);
+
+        long lag = seq + 1 - mTail.get();
+        if (lag > mMaxLag) {
+            mMaxLag = lag;
+        }
+
+        if (mConsumerWaiting) {
+            LockSupport.unpark(mConsumer);
+        }
+    }
+
+    private void consume() {
+
+        long tail = mTail.get();
+
+        while (true) {
+
+            long head = mHead.get();
+
+            if (tail == head) {
+                if (mShutdown) {
+                    return;
+                }
+                idle(tail);
+                continue;
+            }
+
+            while (tail < head) {
+
+                int slot = (int) tail & mMask;
+                byte kind = mKinds[slot];
+                MidiEvent event = mEvents[slot];
+                long arg = mArgs[slot];
+                long delay = System.nanoTime() - mPublishNanos[slot];
+                mEvents[slot] = null;
+
+                try {
+                    deliver(kind, event, arg);
+                } catch (RuntimeException e) {
+                    // a failing listener must not stop delivery of later events
+                    if (mErrors.incrementAndGet() == 1) {
+                        System.err.println("Async listener " + mDelegate + " failed: " + e);
+                    }
+                }
+
+                tail++;
+                mTail.lazySet(tail);
+
+                mDelivered++;
+                mTotalDelayNanos += delay;
+                if (delay > mMaxDelayNanos) {
+                    mMaxDelayNanos = delay;
+                }
+            }
+        }
+    }
+
+    private void deliver(byte kind, MidiEvent event, long arg) {
+
+        switch (kind) {
+            case SLOT_START:
+                mDelegate.onStart(arg != 0);
+                break;
+            case SLOT_STOP:
+                mDelegate.onStop(arg != 0);
+                break;
+            default:
+                mDelegate.onEvent(event, arg);
+                break;
+        }
+    }
+
+    private void idle(long tail) {
+
+        switch (mWaitStrategy) {
+            case BUSY_SPIN:
+                break;
+            case YIELDING:
+                Thread.yield();
+                break;
+            case SLEEPING:
+                LockSupport.parkNanos(SLEEP_NANOS);
+                break;
+            default:
+                mConsumerWaiting = true;
+                if (mHead.get() == tail && !mShutdown) {
+                    LockSupport.parkNanos(this, BLOCKING_PARK_NANOS);
+                }
+                mConsumerWaiting = false;
+                break;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.leff.midi.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory log-linear histogram of non-negative values.
+ * <p>
+ * Values below 32 get one bucket each. Every power of two above that is
+ * split into 32 linear sub-buckets, so any recorded value is reported with
+ * at most ~3% relative error. The whole {@code long} range takes about 15 KB.
+ * Recording never allocates. Counters are atomic, so {@link #reset()} may run
+ * on another thread while a writer records; a reader concurrent with the
+ * writer may see counts and total from moments a few values apart.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = SUB_COUNT + (63 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mTotal = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    public void record(long value) {
+
+        if (value < 0) {
+            value = 0;
+        }
+
+        mCounts.incrementAndGet(indexOf(value));
+        mTotal.incrementAndGet();
+        mMax.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return mTotal.get();
+    }
+
+    public long getMax() {
+        return mMax.get();
+    }
+
+    /**
+     * @param percentile in the range [0, 100]
+     * @return the upper bound of the bucket holding that percentile, 0 when empty
+     */
+    public long getValueAtPercentile(double percentile) {
+
+        long total = mTotal.get();
+        long max = mMax.get();
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mCounts.set(i, 0);
+        }
+        mTotal.set(0);
+        mMax.set(0);
+    }
+
+    static int indexOf(long value) {
+
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int sub = (int) (value >>> shift) - SUB_COUNT;
+        return SUB_COUNT + shift * SUB_COUNT + sub;
+    }
+
+    static long lowerBound(int index) {
+
+        if (index < SUB_COUNT) {
+            return index;
+        }
+
+        int shift = (index - SUB_COUNT) / SUB_COUNT;
+        int sub = (index - SUB_COUNT) % SUB_COUNT;
+        return (long) (SUB_COUNT + sub) << shift;
+    }
+
+    static long upperBound(int index) {
+        return index + 1 < BUCKETS ? lowerBound(index + 1) - 1 : Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,277 @@
+package com.leff.midi.util;
+
+import com.leff.midi.event.MidiEvent;
+import com.leff.midi.event.NoteOff;
+import com.leff.midi.event.NoteOn;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Built-in listener that keeps rolling note statistics while a file plays:
+ * notes per second, active polyphony, the pitch range currently sounding
+ * and the average velocity, all over a one-second window.
+ * <p>
+ * The timing thread is the only writer and updates primitive counters.
+ * Readers take optimistic {@link StampedLock} reads and retry on conflict,
+ * so {@link #snapshot()} is consistent and never blocks dispatch.
+ * Register it for {@link NoteOn} and {@link NoteOff}, or for all events.
+ */
+public class LiveAnalyticsListener implements MidiEventListener {
+
+    private static final int BUCKET_MS = 100;
+    private static final int BUCKETS = 10;
+    private static final int WINDOW_MS = BUCKET_MS * BUCKETS;
+
+    private final StampedLock mLock = new StampedLock();
+
+    // Sounding notes per (channel, pitch) and per pitch across channels.
+    private final int[] mActiveByKey = new int[16 * 128];
+    private final int[] mActiveByPitch = new int[128];
+    private int mActive;
+    private int mPeakActive;
+
+    // Rolling window of note-ons, bucketed by playback time.
+    private final long[] mBucketIds = new long[BUCKETS];
+    private final int[] mBucketNotes = new int[BUCKETS];
+    private final long[] mBucketVelocity = new long[BUCKETS];
+
+    private long mTotalNotes;
+    private long mLastMs;
+
+    @Override
+    public void onStart(boolean fromBeginning) {
+
+        if (!fromBeginning) {
+            return;
+        }
+
+        long stamp = mLock.writeLock();
+        try {
+            Arrays.fill(mActiveByKey, 0);
+            Arrays.fill(mActiveByPitch, 0);
+            Arrays.fill(mBucketIds, -1);
+            Arrays.fill(mBucketNotes, 0);
+            Arrays.fill(mBucketVelocity, 0);
+            mActive = 0;
+            mPeakActive = 0;
+            mTotalNotes = 0;
+            mLastMs = 0;
+        } finally {
+            mLock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void onEvent(MidiEvent event, long ms) {
+
+        if (event instanceof NoteOn) {
+            NoteOn on = (NoteOn) event;
+            if (on.getVelocity() > 0) {
+                noteOn(on.getChannel(), on.getNoteValue(), on.getVelocity(), ms);
+            } else {
+                noteOff(on.getChannel(), on.getNoteValue(), ms);
+            }
+        } else if (event instanceof NoteOff) {
+            NoteOff off = (NoteOff) event;
+            noteOff(off.getChannel(), off.getNoteValue(), ms);
+        }
+    }
+
+    @Override
+    public void onStop(boolean finished) {
+
+        long stamp = mLock.writeLock();
+        try {
+            Arrays.fill(mActiveByKey, 0);
+            Arrays.fill(mActiveByPitch, 0);
+            mActive = 0;
+        } finally {
+            mLock.unlockWrite(stamp);
+        }
+    }
+
+    private void noteOn(int channel, int pitch, int velocity, long ms) {
+
+        int key = (channel << 7) | (pitch & 0x7F);
+        long bucketId = ms / BUCKET_MS;
+        int bucket = (int) (bucketId % BUCKETS);
+
+        long stamp = mLock.writeLock();
+        try {
+            mActiveByKey[key]++;
+            mActiveByPitch[pitch & 0x7F]++;
+            mActive++;
+            if (mActive > mPeakActive) {
+                mPeakActive = mActive;
+            }
+
+            if (mBucketIds[bucket] != bucketId) {
+                mBucketIds[bucket] = bucketId;
+                mBucketNotes[bucket] = 0;
+                mBucketVelocity[bucket] = 0;
+            }
+            mBucketNotes[bucket]++;
+            mBucketVelocity[bucket] += velocity;
+
+            mTotalNotes++;
+            mLastMs = ms;
+        } finally {
+            mLock.unlockWrite(stamp);
+        }
+    }
+
+    private void noteOff(int channel, int pitch, long ms) {
+
+        int key = (channel << 7) | (pitch & 0x7F);
+
+        long stamp = mLock.writeLock();
+        try {
+            if (mActiveByKey[key] > 0) {
+                mActiveByKey[key]--;
+                mActiveByPitch[pitch & 0x7F]--;
+                mActive--;
+            }
+            mLastMs = ms;
+        } finally {
+            mLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Consistent view of the statistics as of the last note event. The window is
+     * not advanced during silence, so notes per second and average velocity keep
+     * their last values until the next note; use {@link #snapshot(long)} when the
+     * current playback time is known.
+     */
+    public Snapshot snapshot() {
+        return snapshot(-1);
+    }
+
+    /**
+     * Consistent view of the statistics with the window ending at {@code nowMs},
+     * the current playback time; safe to call from any thread at any rate.
+     * A time earlier than the last note event is treated as that event's time.
+     */
+    public Snapshot snapshot(long nowMs) {
+
+        while (true) {
+
+            long stamp = mLock.tryOptimisticRead();
+            if (stamp == 0) {
+                Thread.yield();
+                continue;
+            }
+
+            long lastMs = Math.max(mLastMs, nowMs);
+            long currentBucket = lastMs / BUCKET_MS;
+            int windowNotes = 0;
+            long windowVelocity = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                long id = mBucketIds[i];
+                if (id > currentBucket - BUCKETS && id <= currentBucket) {
+                    windowNotes += mBucketNotes[i];
+                    windowVelocity += mBucketVelocity[i];
+                }
+            }
+
+            int lowest = -1;
+            int highest = -1;
+            for (int pitch = 0; pitch < 128; pitch++) {
+                if (mActiveByPitch[pitch] > 0) {
+                    if (lowest < 0) {
+                        lowest = pitch;
+                    }
+                    highest = pitch;
+                }
+            }
+
+            int active = mActive;
+            int peak = mPeakActive;
+            long total = mTotalNotes;
+
+            if (mLock.validate(stamp)) {
+                double notesPerSecond = windowNotes * 1000.0 / WINDOW_MS;
+                double averageVelocity = windowNotes == 0 ? 0 : (double) windowVelocity / windowNotes;
+                return new Snapshot(lastMs, total, notesPerSecond, active, peak, lowest, highest, averageVelocity);
+            }
+        }
+    }
+
+    public static class Snapshot {
+
+        private final long mMs;
+        private final long mTotalNotes;
+        private final double mNotesPerSecond;
+        private final int mPolyphony;
+        private final int mPeakPolyphony;
+        private final int mLowestPitch;
+        private final int mHighestPitch;
+        private final double mAverageVelocity;
+
+        private Snapshot(long ms, long totalNotes, double notesPerSecond, int polyphony, int peakPolyphony,
+                         int lowestPitch, int highestPitch, double averageVelocity) {
+            mMs = ms;
+            mTotalNotes = totalNotes;
+            mNotesPerSecond = notesPerSecond;
+            mPolyphony = polyphony;
+            mPeakPolyphony = peakPolyphony;
+            mLowestPitch = lowestPitch;
+            mHighestPitch = highestPitch;
+            mAverageVelocity = averageVelocity;
+        }
+
+        /**
+         * Playback time the window ends at: the one passed to
+         * {@link LiveAnalyticsListener#snapshot(long)}, or the last note event seen.
+         */
+        public long getMs() {
+            return mMs;
+        }
+
+        public long getTotalNotes() {
+            return mTotalNotes;
+        }
+
+        public double getNotesPerSecond() {
+            return mNotesPerSecond;
+        }
+
+        public int getPolyphony() {
+            return mPolyphony;
+        }
+
+        public int getPeakPolyphony() {
+            return mPeakPolyphony;
+        }
+
+        /**
+         * Lowest MIDI pitch currently sounding, -1 when silent.
+         */
+        public int getLowestPitch() {
+            return mLowestPitch;
+        }
+
+        /**
+         * Highest MIDI pitch currently sounding, -1 when silent.
+         */
+        public int getHighestPitch() {
+            return mHighestPitch;
+        }
+
+        public double getAverageVelocity() {
+            return mAverageVelocity;
+        }
+
+        @Override
+        public String toString() {
+            return "{ms=" + mMs +
+                    ", notes=" + mTotalNotes +
+                    ", nps=" + mNotesPerSecond +
+                    ", polyphony=" + mPolyphony + "/" + mPeakPolyphony +
+                    ", range=" + mLowestPitch + ".." + mHighestPitch +
+                    ", velocity=" + mAverageVelocity +
+                    '}';
+        }
+    }
+}
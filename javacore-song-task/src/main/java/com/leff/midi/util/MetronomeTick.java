@@ -50,6 +50,34 @@ public class MetronomeTick extends MidiEvent {
         return false;
     }
 
+    /**
+     * Moves the metronome to {@code tick}, counting beats from tick 0 in the
+     * current time signature.
+     */
+    public void seek(double tick) {
+        long beats = (long) (tick / mMetronomeFrequency);
+        mMetronomeProgress = tick - (double) beats * mMetronomeFrequency;
+        mCurrentBeat = (int) (beats % mSignature.getNumerator());
+        mCurrentMeasure = (int) (beats / mSignature.getNumerator()) + 1;
+    }
+
+    /**
+     * Copies the position and signature of {@code other} into this tick.
+     */
+    public void copyFrom(MetronomeTick other) {
+        mTick = other.mTick;
+        mResolution = other.mResolution;
+        mSignature = other.mSignature;
+        mCurrentMeasure = other.mCurrentMeasure;
+        mCurrentBeat = other.mCurrentBeat;
+        mMetronomeProgress = other.mMetronomeProgress;
+        mMetronomeFrequency = other.mMetronomeFrequency;
+    }
+
+    public double getTicksUntilNextBeat() {
+        return mMetronomeFrequency - mMetronomeProgress;
+    }
+
     public void setMetronomeFrequency(int meter) {
         switch (meter) {
             case TimeSignature.METER_EIGHTH:
@@ -0,0 +1,159 @@
+package com.leff.midi.util;
+
+import com.leff.midi.MidiTrack;
+import com.leff.midi.event.MidiEvent;
+
+import java.util.List;
+
+/**
+ * Merged cursor over all tracks of a file. The pending event of every track
+ * sits in a binary min-heap ordered by (tick, track index), so events come
+ * out in global tick order and each step costs O(log k) for k tracks.
+ * Tracks without pending events are not in the heap and cost nothing.
+ * <p>
+ * Track events are copied into arrays once, so rewinding and seeking only
+ * move per-track positions and never allocate. A track whose event count
+ * changed is copied again on the next {@link #reset()}.
+ */
+class MidiEventCursor {
+
+    private final List<MidiTrack> mTracks;
+    private final MidiEvent[][] mEvents;
+    private final int[] mPositions;
+
+    private final int[] mHeap;
+    private int mHeapSize;
+
+    MidiEventCursor(List<MidiTrack> tracks) {
+
+        mTracks = tracks;
+
+        int count = tracks.size();
+        mEvents = new MidiEvent[count][];
+        mPositions = new int[count];
+        mHeap = new int[count];
+
+        this.reset();
+    }
+
+    void reset() {
+
+        for (int i = 0; i < mEvents.length; i++) {
+            MidiTrack track = mTracks.get(i);
+            if (mEvents[i] == null || mEvents[i].length != track.getEventCount()) {
+                mEvents[i] = track.getEvents().toArray(new MidiEvent[0]);
+            }
+        }
+
+        seek(0);
+    }
+
+    /**
+     * Positions every track on its first event at or after {@code tick}.
+     */
+    void seek(long tick) {
+
+        mHeapSize = 0;
+
+        for (int i = 0; i < mEvents.length; i++) {
+
+            mPositions[i] = firstIndexAtOrAfter(mEvents[i], tick);
+
+            if (mPositions[i] < mEvents[i].length) {
+                mHeap[mHeapSize++] = i;
+            }
+        }
+
+        for (int i = (mHeapSize >>> 1) - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    boolean hasMoreEvents() {
+        return mHeapSize > 0;
+    }
+
+    long peekTick() {
+        return mHeapSize > 0 ? head(mHeap[0]).getTick() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the next event in global order if it is due at or before
+     * {@code tick}, or {@code null} otherwise.
+     */
+    MidiEvent nextEventUpToTick(double tick) {
+
+        if (mHeapSize == 0) {
+            return null;
+        }
+
+        int track = mHeap[0];
+        MidiEvent event = head(track);
+        if (event.getTick() > tick) {
+            return null;
+        }
+
+        if (++mPositions[track] >= mEvents[track].length) {
+            mHeap[0] = mHeap[--mHeapSize];
+        }
+
+        if (mHeapSize > 0) {
+            siftDown(0);
+        }
+
+        return event;
+    }
+
+    private MidiEvent head(int track) {
+        return mEvents[track][mPositions[track]];
+    }
+
+    private static int firstIndexAtOrAfter(MidiEvent[] events, long tick) {
+
+        int lo = 0;
+        int hi = events.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (events[mid].getTick() < tick) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private boolean less(int a, int b) {
+
+        long tickA = head(a).getTick();
+        long tickB = head(b).getTick();
+        if (tickA != tickB) {
+            return tickA < tickB;
+        }
+        return a < b;
+    }
+
+    private void siftDown(int pos) {
+
+        int track = mHeap[pos];
+        int half = mHeapSize >>> 1;
+
+        while (pos < half) {
+
+            int child = (pos << 1) + 1;
+            int right = child + 1;
+            if (right < mHeapSize && less(mHeap[right], mHeap[child])) {
+                child = right;
+            }
+
+            if (!less(mHeap[child], track)) {
+                break;
+            }
+
+            mHeap[pos] = mHeap[child];
+            pos = child;
+        }
+
+        mHeap[pos] = track;
+    }
+}
@@ -0,0 +1,34 @@
+package com.leff.midi.util;
+
+import com.leff.midi.event.MidiEvent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Assigns every event class a small, stable ordinal the first time it is
+ * seen, so per-class data can live in plain arrays instead of maps keyed by
+ * {@link Class}.
+ */
+final class MidiEventKind {
+
+    private static final AtomicInteger sNextOrdinal = new AtomicInteger();
+
+    private static final ClassValue<Integer> sOrdinals = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return sNextOrdinal.getAndIncrement();
+        }
+    };
+
+    /**
+     * Ordinal of {@link MidiEvent} itself, used by listeners that want every event.
+     */
+    static final int ALL = ordinal(MidiEvent.class);
+
+    private MidiEventKind() {
+    }
+
+    static int ordinal(Class<?> eventClass) {
+        return sOrdinals.get(eventClass);
+    }
+}
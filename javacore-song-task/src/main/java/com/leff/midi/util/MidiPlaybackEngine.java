@@ -0,0 +1,277 @@
+package com.leff.midi.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Shared playback engine for many concurrent {@link MidiProcessor}s.
+ * <p>
+ * A single wheel thread runs a hashed timer wheel. Each playing processor is
+ * one {@link Session} sitting in the bucket of its next due event. When the
+ * bucket expires the session is handed to a small fixed worker pool, which
+ * dispatches the due events, asks the processor how long to wait at the
+ * current tempo and puts the session back on the wheel. Idle sessions cost
+ * nothing but a bucket slot, and the thread count does not depend on the
+ * number of sessions.
+ */
+public class MidiPlaybackEngine {
+
+    public static final int DEFAULT_TICK_MS = 4;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static final AtomicInteger sEngineNumber = new AtomicInteger();
+
+    private final long mTickNanos;
+    private final int mMask;
+    private final Session[] mBuckets;
+
+    // Sessions handed back by workers; only the wheel thread moves them into buckets.
+    private final Queue<Session> mPending = new ConcurrentLinkedQueue<>();
+
+    private final ExecutorService mWorkers;
+    private final Thread mWheel;
+    private final long mStartNanos;
+    private volatile boolean mShutdown;
+
+    private final AtomicInteger mActiveSessions = new AtomicInteger();
+
+    public MidiPlaybackEngine(int workerThreads) {
+        this(workerThreads, DEFAULT_TICK_MS, DEFAULT_WHEEL_SIZE);
+    }
+
+    public MidiPlaybackEngine(int workerThreads, int tickMs, int wheelSize) {
+
+        if (workerThreads < 1) {
+            throw new IllegalArgumentException("At least one worker thread is required");
+        }
+        if (tickMs < 1) {
+            throw new IllegalArgumentException("Tick must be at least 1 ms, got " + tickMs);
+        }
+        if (wheelSize < 2 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Wheel size must be a power of two, got " + wheelSize);
+        }
+
+        int number = sEngineNumber.incrementAndGet();
+
+        mTickNanos = tickMs * 1000000L;
+        mMask = wheelSize - 1;
+        mBuckets = new Session[wheelSize];
+
+        mWorkers = Executors.newFixedThreadPool(workerThreads, daemonThreads("midi-engine-" + number + "-worker-"));
+
+        mStartNanos = System.nanoTime();
+        mWheel = new Thread(this::runWheel, "midi-engine-" + number + "-wheel");
+        mWheel.setDaemon(true);
+        mWheel.start();
+    }
+
+    /**
+     * Starts playing {@code processor} on this engine. Prefer
+     * {@link MidiProcessor#start(MidiPlaybackEngine)}, which also wires
+     * {@link MidiProcessor#stop()} to {@link Session#cancel()}.
+     */
+    Session schedule(MidiProcessor processor) {
+
+        if (mShutdown) {
+            throw new IllegalStateException("Engine is shut down");
+        }
+
+        Session session = new Session(processor);
+        mActiveSessions.incrementAndGet();
+        mWorkers.execute(session.mStep);
+        return session;
+    }
+
+    public int getActiveSessionCount() {
+        return mActiveSessions.get();
+    }
+
+    /**
+     * Stops the wheel and the workers. Sessions still playing are not
+     * notified; stop them first if their listeners need {@code onStop}.
+     */
+    public void shutdown() {
+        mShutdown = true;
+        LockSupport.unpark(mWheel);
+        mWorkers.shutdown();
+    }
+
+    private void step(Session session) {
+
+        synchronized (session) {
+
+            if (session.mDone) {
+                return;
+            }
+
+            MidiProcessor processor = session.mProcessor;
+
+            if (session.mCancelled || !processor.isRunning()) {
+                complete(session, false);
+                return;
+            }
+
+            if (!session.mStarted) {
+                session.mStarted = true;
+                processor.begin();
+            }
+
+            if (!processor.advance(System.currentTimeMillis())) {
+                complete(session, true);
+                return;
+            }
+
+            session.mDeadlineNanos = System.nanoTime() + processor.msUntilNextEvent() * 1000000L;
+            mPending.offer(session);
+        }
+    }
+
+    private void complete(Session session, boolean finished) {
+
+        session.mDone = true;
+        mActiveSessions.decrementAndGet();
+
+        if (session.mStarted) {
+            session.mProcessor.finish(finished);
+        } else {
+            session.mProcessor.stop();
+        }
+    }
+
+    private void runWheel() {
+
+        long tick = 0;
+
+        while (!mShutdown) {
+
+            long sleep = mStartNanos + (tick + 1) * mTickNanos - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(this, sleep);
+                continue;
+            }
+
+            transferPending(tick);
+            expireBucket((int) (tick & mMask));
+            tick++;
+        }
+    }
+
+    private void transferPending(long currentTick) {
+
+        Session session;
+        while ((session = mPending.poll()) != null) {
+
+            if (session.mCancelled) {
+                continue;
+            }
+
+            long elapsed = session.mDeadlineNanos - mStartNanos;
+            long deadlineTick = Math.max(currentTick, (elapsed + mTickNanos - 1) / mTickNanos);
+
+            session.mRemainingRounds = (deadlineTick - currentTick) / mBuckets.length;
+
+            int bucket = (int) (deadlineTick & mMask);
+            session.mNextInBucket = mBuckets[bucket];
+            mBuckets[bucket] = session;
+        }
+    }
+
+    private void expireBucket(int bucket) {
+
+        Session prev = null;
+        Session session = mBuckets[bucket];
+
+        while (session != null) {
+
+            Session next = session.mNextInBucket;
+
+            if (session.mCancelled || session.mRemainingRounds <= 0) {
+
+                if (prev == null) {
+                    mBuckets[bucket] = next;
+                } else {
+                    prev.mNextInBucket = next;
+                }
+                session.mNextInBucket = null;
+
+                if (!session.mCancelled) {
+                    mWorkers.execute(session.mStep);
+                }
+            } else {
+                session.mRemainingRounds--;
+                prev = session;
+            }
+
+            session = next;
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+
+        AtomicInteger number = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Playback state of one processor on the engine.
+     */
+    public final class Session {
+
+        private final MidiProcessor mProcessor;
+        private final Runnable mStep;
+
+        // Guarded by the session monitor.
+        private boolean mStarted;
+        private boolean mDone;
+
+        private volatile boolean mCancelled;
+
+        // Owned by the wheel thread while the session sits in a bucket.
+        private long mDeadlineNanos;
+        private long mRemainingRounds;
+        private Session mNextInBucket;
+
+        private Session(MidiProcessor processor) {
+            mProcessor = processor;
+            mStep = () -> step(this);
+        }
+
+        public MidiProcessor getProcessor() {
+            return mProcessor;
+        }
+
+        /**
+         * Stops playback promptly; listeners get {@code onStop(false)} from a worker thread.
+         */
+        public void cancel() {
+
+            if (mCancelled) {
+                return;
+            }
+            mCancelled = true;
+
+            if (!mShutdown) {
+                mWorkers.execute(mStep);
+            }
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        public boolean isDone() {
+            synchronized (this) {
+                return mDone;
+            }
+        }
+    }
+}
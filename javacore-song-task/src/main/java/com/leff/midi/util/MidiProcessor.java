@@ -17,32 +17,94 @@
 package com.leff.midi.util;
 
 import com.leff.midi.MidiFile;
-import com.leff.midi.MidiTrack;
 import com.leff.midi.event.MidiEvent;
+import com.leff.midi.event.NoteOff;
+import com.leff.midi.event.NoteOn;
 import com.leff.midi.event.meta.Tempo;
 import com.leff.midi.event.meta.TimeSignature;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MidiProcessor {
     private static final int PROCESS_RATE_MS = 8;
+    private static final int BEAT_POOL_SIZE = 256;
 
     private HashMap<Class<? extends MidiEvent>, List<MidiEventListener>> mEventsToListeners;
     private HashMap<MidiEventListener, List<Class<? extends MidiEvent>>> mListenersToEvents;
 
+    // Immutable snapshots rebuilt under the processor lock on every
+    // (un)registration and read without locking by the timing thread.
+    // mDispatchTable[kind] already holds the listeners of that exact class
+    // followed by the MidiEvent.class listeners.
+    private volatile ListenerSlot[][] mDispatchTable;
+    private volatile MidiEventListener[] mListeners;
+    private HashMap<MidiEventListener, CallbackTimer> mCallbackTimers;
+    // One slot per registered listener, for reading callback timers without the lock.
+    private volatile ListenerSlot[] mTimedListeners;
+
+    // Timing accuracy, written by the timing thread and reset from any thread.
+    // Every counter is atomic, so a concurrent reset never loses or tears an update.
+    private final LatencyHistogram mLateness;
+    private long mOriginNanos;
+    private final AtomicLong mEarlyEvents = new AtomicLong();
+    private final AtomicLong mSlices = new AtomicLong();
+    private final AtomicLong mSliceOverruns = new AtomicLong();
+    private final AtomicLong mSkippedEntries = new AtomicLong();
+
     private MidiFile mMidiFile;
-    private boolean mRunning;
+    private TempoMap mTempoMap;
+    private long mLengthTicks;
+    private volatile boolean mRunning;
     private double mTicksElapsed;
     private long mMsElapsed;
+    private long mLastMs;
 
     private int mMPQN;
     private int mPPQ;
 
     private MetronomeTick mMetronome;
-    private MidiTrackEventQueue[] mEventQueues;
+    // Listeners get a copy of the metronome per beat, so one that reads a beat
+    // later (e.g. through AsyncMidiEventListener) still sees that beat's values.
+    // The copies are reused round-robin and never allocated while playing.
+    private final MetronomeTick[] mBeatPool = new MetronomeTick[BEAT_POOL_SIZE];
+    private int mBeatPoolNext;
+    private MidiEventCursor mCursor;
+    private MidiPlaybackEngine.Session mSession;
+
+    // Loop region, null while inactive. Published as one object so the
+    // timing thread never sees the start of one region with the end of another.
+    private volatile LoopRegion mLoop;
+    private volatile long mLoopCount;
+
+    // Bit (channel * 128 + pitch) is set while a dispatched note is sounding.
+    // Timing thread only.
+    private final long[] mSoundingNotes = new long[16 * 128 / 64];
+    // NoteOff sent for bit (channel * 128 + pitch) when a jump cuts the note,
+    // allocated up front so a loop wrap allocates nothing.
+    private final ReleaseNoteOff[] mReleaseEvents = new ReleaseNoteOff[16 * 128];
+
+    // Files prepared in the background, handed off when the current one ends.
+    private final Queue<Future<PreparedFile>> mPlaylist = new ConcurrentLinkedQueue<>();
+
+    private static final ExecutorService sPreparer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "midi-playlist-preparer");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public MidiProcessor(MidiFile input) {
 
@@ -53,8 +115,20 @@ public class MidiProcessor {
 
         mEventsToListeners = new HashMap<>();
         mListenersToEvents = new HashMap<>();
+        mCallbackTimers = new HashMap<>();
+        rebuildDispatchTable();
+
+        mTempoMap = new TempoMap(mMidiFile);
+        mLengthTicks = mMidiFile.getLengthInTicks();
+        mLateness = new LatencyHistogram();
 
         mMetronome = new MetronomeTick(new TimeSignature(), mPPQ);
+        for (int i = 0; i < mBeatPool.length; i++) {
+            mBeatPool[i] = new MetronomeTick(new TimeSignature(), mPPQ);
+        }
+        for (int bit = 0; bit < mReleaseEvents.length; bit++) {
+            mReleaseEvents[bit] = new ReleaseNoteOff(bit >>> 7, bit & 0x7F);
+        }
 
         this.reset();
     }
@@ -64,11 +138,28 @@ public class MidiProcessor {
             return;
 
         mRunning = true;
+        mSession = null;
         new Thread(this::process).start();
     }
 
+    /**
+     * Plays on a shared engine instead of a dedicated thread.
+     */
+    public synchronized void start(MidiPlaybackEngine engine) {
+        if (mRunning)
+            return;
+
+        mRunning = true;
+        mSession = engine.schedule(this);
+    }
+
     public void stop() {
         mRunning = false;
+
+        MidiPlaybackEngine.Session session = mSession;
+        if (session != null) {
+            session.cancel();
+        }
     }
 
     public void reset() {
@@ -78,16 +169,68 @@ public class MidiProcessor {
         mMsElapsed = 0;
 
         mMetronome.setTimeSignature(new TimeSignature());
+        Arrays.fill(mSoundingNotes, 0);
 
-        List<MidiTrack> tracks = mMidiFile.getTracks();
-
-        if (mEventQueues == null) {
-            mEventQueues = new MidiTrackEventQueue[tracks.size()];
+        if (mCursor == null) {
+            mCursor = new MidiEventCursor(mMidiFile.getTracks());
+        } else {
+            mCursor.reset();
         }
+    }
 
-        for (int i = 0; i < tracks.size(); i++) {
-            mEventQueues[i] = new MidiTrackEventQueue(tracks.get(i));
+    public MidiFile getMidiFile() {
+        return mMidiFile;
+    }
+
+    /**
+     * Repeats [startTick, endTick) until the region is cleared. Wrapping moves
+     * the per-track positions and the metronome back to startTick, so it is
+     * gapless; notes still sounding at endTick get a NoteOff first.
+     */
+    public void setLoopRegion(long startTick, long endTick) {
+        if (startTick < 0 || endTick <= startTick) {
+            throw new IllegalArgumentException("Invalid loop region [" + startTick + ", " + endTick + ")");
         }
+        mLoop = new LoopRegion(startTick, endTick);
+    }
+
+    public void clearLoopRegion() {
+        mLoop = null;
+    }
+
+    public long getLoopCount() {
+        return mLoopCount;
+    }
+
+    /**
+     * Queues a file to play right after the current one. Cursor and tempo
+     * map are built on a background thread; the timing thread only swaps
+     * references at the hand-off.
+     */
+    public void enqueue(MidiFile next) {
+        mPlaylist.add(CompletableFuture.supplyAsync(() -> new PreparedFile(next), sPreparer));
+    }
+
+    /**
+     * Same as {@link #enqueue(MidiFile)}, parsing the file in the background as well.
+     * A file that fails to parse is skipped.
+     */
+    public void enqueue(File next) {
+        mPlaylist.add(CompletableFuture.supplyAsync(() -> {
+            try {
+                return new PreparedFile(new MidiFile(next));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, sPreparer));
+    }
+
+    public int getPlaylistSize() {
+        return mPlaylist.size();
+    }
+
+    public void clearPlaylist() {
+        mPlaylist.clear();
     }
 
     public boolean isStarted() {
@@ -100,7 +243,7 @@ public class MidiProcessor {
 
     protected void onStart(boolean fromBeginning) {
 
-        for (MidiEventListener mel : mListenersToEvents.keySet()) {
+        for (MidiEventListener mel : mListeners) {
 
             mel.onStart(fromBeginning);
         }
@@ -108,13 +251,13 @@ public class MidiProcessor {
 
     protected void onStop(boolean finished) {
 
-        for (MidiEventListener mel : mListenersToEvents.keySet()) {
+        for (MidiEventListener mel : mListeners) {
 
             mel.onStop(finished);
         }
     }
 
-    public void registerEventListener(MidiEventListener mel, Class<? extends MidiEvent> event) {
+    public synchronized void registerEventListener(MidiEventListener mel, Class<? extends MidiEvent> event) {
 
         List<MidiEventListener> listeners = mEventsToListeners.get(event);
         if (listeners == null) {
@@ -135,9 +278,11 @@ public class MidiProcessor {
         } else {
             events.add(event);
         }
+
+        rebuildDispatchTable();
     }
 
-    public void unregisterEventListener(MidiEventListener mel) {
+    public synchronized void unregisterEventListener(MidiEventListener mel) {
 
         List<Class<? extends MidiEvent>> events = mListenersToEvents.get(mel);
         if (events == null) {
@@ -151,9 +296,11 @@ public class MidiProcessor {
         }
 
         mListenersToEvents.remove(mel);
+
+        rebuildDispatchTable();
     }
 
-    public void unregisterEventListener(MidiEventListener mel, Class<? extends MidiEvent> event) {
+    public synchronized void unregisterEventListener(MidiEventListener mel, Class<? extends MidiEvent> event) {
 
         List<MidiEventListener> listeners = mEventsToListeners.get(event);
         if (listeners != null) {
@@ -164,11 +311,88 @@ public class MidiProcessor {
         if (events != null) {
             events.remove(event);
         }
+
+        rebuildDispatchTable();
     }
 
-    public void unregisterAllEventListeners() {
+    public synchronized void unregisterAllEventListeners() {
         mEventsToListeners.clear();
         mListenersToEvents.clear();
+
+        rebuildDispatchTable();
+    }
+
+    private void rebuildDispatchTable() {
+
+        List<MidiEventListener> allEvents = mEventsToListeners.get(MidiEvent.class);
+        mCallbackTimers.keySet().retainAll(mListenersToEvents.keySet());
+        for (MidiEventListener mel : mListenersToEvents.keySet()) {
+            mCallbackTimers.computeIfAbsent(mel, key -> new CallbackTimer());
+        }
+
+        ListenerSlot[] forAll = toSlots(allEvents, new ListenerSlot[0]);
+
+        int size = MidiEventKind.ALL + 1;
+        for (Class<? extends MidiEvent> eventClass : mEventsToListeners.keySet()) {
+            size = Math.max(size, MidiEventKind.ordinal(eventClass) + 1);
+        }
+
+        ListenerSlot[][] table = new ListenerSlot[size][];
+        Arrays.fill(table, forAll);
+
+        for (Map.Entry<Class<? extends MidiEvent>, List<MidiEventListener>> entry : mEventsToListeners.entrySet()) {
+
+            if (entry.getKey().equals(MidiEvent.class)) {
+                continue;
+            }
+
+            table[MidiEventKind.ordinal(entry.getKey())] = toSlots(entry.getValue(), forAll);
+        }
+
+        mDispatchTable = table;
+        mListeners = mListenersToEvents.keySet().toArray(new MidiEventListener[0]);
+        mTimedListeners = toSlots(Arrays.asList(mListeners), new ListenerSlot[0]);
+    }
+
+    private ListenerSlot[] toSlots(List<MidiEventListener> listeners, ListenerSlot[] tail) {
+
+        int count = listeners == null ? 0 : listeners.size();
+        ListenerSlot[] slots = new ListenerSlot[count + tail.length];
+        for (int i = 0; i < count; i++) {
+            MidiEventListener mel = listeners.get(i);
+            slots[i] = new ListenerSlot(mel, mCallbackTimers.get(mel));
+        }
+        System.arraycopy(tail, 0, slots, count, tail.length);
+        return slots;
+    }
+
+    /**
+     * Timing accuracy since construction or the last {@link #resetStats()}.
+     * Safe to call from any thread while playing; counters are read one by
+     * one, so a snapshot taken mid-slice may mix values a few events apart.
+     */
+    public PlaybackStats getStats() {
+
+        Map<MidiEventListener, PlaybackStats.CallbackStats> callbacks = new HashMap<>();
+        for (ListenerSlot slot : mTimedListeners) {
+            callbacks.put(slot.mListener, slot.mTimer.snapshot());
+        }
+        return new PlaybackStats(mLateness, mEarlyEvents.get(), mSlices.get(), mSliceOverruns.get(),
+                mSkippedEntries.get(), callbacks);
+    }
+
+    /**
+     * Clears timing accuracy. Safe to call from any thread while playing.
+     */
+    public void resetStats() {
+        mLateness.reset();
+        mEarlyEvents.set(0);
+        mSlices.set(0);
+        mSliceOverruns.set(0);
+        mSkippedEntries.set(0);
+        for (ListenerSlot slot : mTimedListeners) {
+            slot.mTimer.reset();
+        }
     }
 
     protected void dispatch(MidiEvent event) {
@@ -182,39 +406,45 @@ public class MidiProcessor {
             mMetronome.setTimeSignature((TimeSignature) event);
 
             if (shouldDispatch) {
-                dispatch(mMetronome);
+                dispatch(nextBeat());
             }
         }
 
-        this.sendOnEventForClass(event, event.getClass());
-        this.sendOnEventForClass(event, MidiEvent.class);
+        this.sendOnEvent(event);
     }
 
-    private void sendOnEventForClass(MidiEvent event, Class<? extends MidiEvent> eventClass) {
+    private MetronomeTick nextBeat() {
 
-        List<MidiEventListener> listeners = mEventsToListeners.get(eventClass);
+        MetronomeTick beat = mBeatPool[mBeatPoolNext];
+        mBeatPoolNext = (mBeatPoolNext + 1) % BEAT_POOL_SIZE;
+        beat.copyFrom(mMetronome);
+        return beat;
+    }
 
-        if (listeners == null) {
-            return;
-        }
+    private void sendOnEvent(MidiEvent event) {
+
+        ListenerSlot[][] table = mDispatchTable;
 
-        for (MidiEventListener mel : listeners) {
-            mel.onEvent(event, mMsElapsed);
+        int kind = MidiEventKind.ordinal(event.getClass());
+        ListenerSlot[] slots = kind < table.length ? table[kind] : table[MidiEventKind.ALL];
+
+        for (ListenerSlot slot : slots) {
+            long start = System.nanoTime();
+            slot.mListener.onEvent(event, mMsElapsed);
+            slot.mTimer.record(System.nanoTime() - start);
         }
     }
 
     private void process() {
 
-        onStart(mTicksElapsed < 1);
-
-        long lastMs = System.currentTimeMillis();
+        begin();
 
         boolean finished = false;
 
         while (mRunning) {
 
             long now = System.currentTimeMillis();
-            long msElapsed = now - lastMs;
+            long msElapsed = now - mLastMs;
 
             if (msElapsed < PROCESS_RATE_MS) {
                 try {
@@ -224,90 +454,294 @@ public class MidiProcessor {
                 continue;
             }
 
-            double ticksElapsed = MidiUtil.msToTicks(msElapsed, mMPQN, mPPQ);
+            if (!advance(now)) {
+                finished = true;
+                break;
+            }
+        }
 
-            if (ticksElapsed < 1) {
-                continue;
+        finish(finished);
+    }
+
+    void begin() {
+        onStart(mTicksElapsed < 1);
+        mLastMs = System.currentTimeMillis();
+        mOriginNanos = System.nanoTime() - (long) (mTempoMap.tickToMicros(mTicksElapsed) * 1000);
+    }
+
+    /**
+     * Moves the clock to {@code now} and dispatches everything that became due.
+     *
+     * @return {@code false} once every event has been dispatched
+     */
+    boolean advance(long now) {
+
+        long msElapsed = now - mLastMs;
+        double ticksElapsed = MidiUtil.msToTicks(msElapsed, mMPQN, mPPQ);
+
+        if (ticksElapsed < 1) {
+            return true;
+        }
+
+        if (mMetronome.update(ticksElapsed)) {
+            dispatch(nextBeat());
+        }
+
+        long sliceStart = System.nanoTime();
+        double sliceStartTicks = mTicksElapsed;
+
+        mLastMs = now;
+        mMsElapsed += msElapsed;
+        mTicksElapsed += ticksElapsed;
+
+        boolean more = dispatchDue(sliceStartTicks);
+
+        mSlices.incrementAndGet();
+        if (System.nanoTime() - sliceStart > PROCESS_RATE_MS * 1000000L) {
+            mSliceOverruns.incrementAndGet();
+        }
+
+        return more;
+    }
+
+    private boolean dispatchDue(double sliceStartTicks) {
+
+        while (true) {
+
+            LoopRegion loop = mLoop;
+            boolean looping = loop != null && sliceStartTicks < loop.mEnd;
+
+            if (looping) {
+                while (mTicksElapsed >= loop.mEnd) {
+                    dispatchUpTo(loop.mEnd - 1);
+                    wrapLoop(loop.mStart, loop.mEnd);
+                }
             }
 
-            if (mMetronome.update(ticksElapsed)) {
-                dispatch(mMetronome);
+            dispatchUpTo(mTicksElapsed);
+
+            if (looping || mCursor.hasMoreEvents()) {
+                return true;
             }
 
-            lastMs = now;
-            mMsElapsed += msElapsed;
-            mTicksElapsed += ticksElapsed;
+            if (!handOffToNextFile()) {
+                // keep the clock running while the next file is still being prepared
+                return !mPlaylist.isEmpty();
+            }
+            sliceStartTicks = 0;
+        }
+    }
 
-            boolean more = false;
-            for (MidiTrackEventQueue queue : mEventQueues) {
+    private void dispatchUpTo(double tick) {
 
-                if (!queue.hasMoreEvents()) {
-                    continue;
-                }
+        MidiEvent event;
+        while ((event = mCursor.nextEventUpToTick(tick)) != null) {
+            recordLateness(event);
+            trackSounding(event);
+            this.dispatch(event);
+        }
+    }
 
-                ArrayList<MidiEvent> events = queue.getNextEventsUpToTick(mTicksElapsed);
-                for (MidiEvent event : events) {
-                    this.dispatch(event);
-                }
+    private void trackSounding(MidiEvent event) {
 
-                if (queue.hasMoreEvents()) {
-                    more = true;
-                }
+        if (event instanceof NoteOn) {
+            NoteOn noteOn = (NoteOn) event;
+            setSounding(noteOn.getChannel(), noteOn.getNoteValue(), noteOn.getVelocity() > 0);
+        } else if (event instanceof NoteOff) {
+            NoteOff noteOff = (NoteOff) event;
+            setSounding(noteOff.getChannel(), noteOff.getNoteValue(), false);
+        }
+    }
+
+    private void setSounding(int channel, int pitch, boolean sounding) {
+
+        int bit = (channel & 0x0F) << 7 | (pitch & 0x7F);
+        if (sounding) {
+            mSoundingNotes[bit >>> 6] |= 1L << bit;
+        } else {
+            mSoundingNotes[bit >>> 6] &= ~(1L << bit);
+        }
+    }
+
+    /**
+     * Sends a NoteOff for every note still sounding, so notes crossing a jump do not hang.
+     */
+    private void releaseSoundingNotes(long tick) {
+
+        for (int word = 0; word < mSoundingNotes.length; word++) {
+            long bits = mSoundingNotes[word];
+            while (bits != 0) {
+                int bit = word << 6 | Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                ReleaseNoteOff release = mReleaseEvents[bit];
+                release.retarget(tick);
+                this.sendOnEvent(release);
             }
+            mSoundingNotes[word] = 0;
+        }
+    }
 
-            if (!more) {
-                finished = true;
-                break;
+    private void wrapLoop(long loopStart, long loopEnd) {
+
+        releaseSoundingNotes(loopEnd);
+        mTicksElapsed -= loopEnd - loopStart;
+        mCursor.seek(loopStart);
+        mMetronome.seek(mTicksElapsed);
+        mMPQN = mTempoMap.getMpqnAt(loopStart);
+        mOriginNanos += (long) ((mTempoMap.tickToMicros(loopEnd) - mTempoMap.tickToMicros(loopStart)) * 1000);
+        mLoopCount++;
+    }
+
+    private boolean handOffToNextFile() {
+
+        Future<PreparedFile> next;
+        while ((next = mPlaylist.peek()) != null) {
+
+            if (!next.isDone()) {
+                return false;
             }
+            mPlaylist.poll();
+
+            PreparedFile prepared;
+            try {
+                prepared = next.get();
+            } catch (Exception e) {
+                mSkippedEntries.incrementAndGet();
+                System.err.println("Skipping playlist entry: " + e.getMessage());
+                continue;
+            }
+
+            // Carry the part of the slice past the old file's last event
+            // into the new file so the hand-off has no gap.
+            double overshootMicros = (mTicksElapsed - mLengthTicks) * mMPQN / mPPQ;
+            overshootMicros = Math.max(0, Math.min(overshootMicros, PROCESS_RATE_MS * 1000.0));
+
+            mMidiFile = prepared.mFile;
+            mCursor = prepared.mCursor;
+            mTempoMap = prepared.mTempoMap;
+            mMetronome = prepared.mMetronome;
+            mLengthTicks = prepared.mLengthTicks;
+            mPPQ = prepared.mResolution;
+            mMPQN = Tempo.DEFAULT_MPQN;
+
+            mLoop = null;
+            Arrays.fill(mSoundingNotes, 0);
+
+            mTicksElapsed = overshootMicros * mPPQ / mMPQN;
+            mOriginNanos = System.nanoTime() - (long) (overshootMicros * 1000);
+            return true;
+        }
+        return false;
+    }
+
+    private void recordLateness(MidiEvent event) {
+
+        double actualMicros = (System.nanoTime() - mOriginNanos) / 1000.0;
+        long lateMicros = (long) (actualMicros - mTempoMap.tickToMicros(event.getTick()));
+        if (lateMicros < 0) {
+            mEarlyEvents.incrementAndGet();
+        }
+        mLateness.record(lateMicros);
+    }
+
+    /**
+     * Time until the next event or metronome beat at the current tempo.
+     */
+    long msUntilNextEvent() {
+
+        if (!mCursor.hasMoreEvents() && !mPlaylist.isEmpty()) {
+            return PROCESS_RATE_MS;
+        }
+
+        double ticks = Math.min(mCursor.peekTick() - mTicksElapsed, mMetronome.getTicksUntilNextBeat());
+        LoopRegion loop = mLoop;
+        if (loop != null && loop.mEnd > mTicksElapsed) {
+            ticks = Math.min(ticks, loop.mEnd - mTicksElapsed);
         }
+        if (ticks <= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(ticks * mMPQN / mPPQ / 1000.0);
+    }
 
+    void finish(boolean finished) {
         mRunning = false;
         onStop(finished);
     }
 
-    private class MidiTrackEventQueue {
+    private static final class PreparedFile {
+
+        private final MidiFile mFile;
+        private final MidiEventCursor mCursor;
+        private final TempoMap mTempoMap;
+        private final MetronomeTick mMetronome;
+        private final long mLengthTicks;
+        private final int mResolution;
+
+        private PreparedFile(MidiFile file) {
+            mFile = file;
+            mCursor = new MidiEventCursor(file.getTracks());
+            mTempoMap = new TempoMap(file);
+            mMetronome = new MetronomeTick(new TimeSignature(), file.getResolution());
+            mLengthTicks = file.getLengthInTicks();
+            mResolution = file.getResolution();
+        }
+    }
 
-        private MidiTrack mTrack;
-        private Iterator<MidiEvent> mIterator;
-        private ArrayList<MidiEvent> mEventsToDispatch;
-        private MidiEvent mNext;
+    private static final class ReleaseNoteOff extends NoteOff {
 
-        public MidiTrackEventQueue(MidiTrack track) {
+        private ReleaseNoteOff(int channel, int pitch) {
+            super(0, channel, pitch, 0);
+        }
 
-            mTrack = track;
+        private void retarget(long tick) {
+            mTick = tick;
+        }
+    }
 
-            mIterator = mTrack.getEvents().iterator();
-            mEventsToDispatch = new ArrayList<>();
+    private static final class LoopRegion {
 
-            if (mIterator.hasNext()) {
-                mNext = mIterator.next();
-            }
+        // [start, end) in ticks
+        private final long mStart;
+        private final long mEnd;
+
+        private LoopRegion(long start, long end) {
+            mStart = start;
+            mEnd = end;
         }
+    }
 
-        public ArrayList<MidiEvent> getNextEventsUpToTick(double tick) {
+    private static final class ListenerSlot {
 
-            mEventsToDispatch.clear();
+        private final MidiEventListener mListener;
+        private final CallbackTimer mTimer;
 
-            while (mNext != null) {
+        private ListenerSlot(MidiEventListener listener, CallbackTimer timer) {
+            mListener = listener;
+            mTimer = timer;
+        }
+    }
 
-                if (mNext.getTick() <= tick) {
-                    mEventsToDispatch.add(mNext);
+    private static final class CallbackTimer {
 
-                    if (mIterator.hasNext()) {
-                        mNext = mIterator.next();
-                    } else {
-                        mNext = null;
-                    }
-                } else {
-                    break;
-                }
-            }
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mTotalNanos = new AtomicLong();
+        private final AtomicLong mMaxNanos = new AtomicLong();
+
+        private void record(long nanos) {
+            mCount.incrementAndGet();
+            mTotalNanos.addAndGet(nanos);
+            mMaxNanos.accumulateAndGet(nanos, Math::max);
+        }
 
-            return mEventsToDispatch;
+        private PlaybackStats.CallbackStats snapshot() {
+            return new PlaybackStats.CallbackStats(mCount.get(), mTotalNanos.get(), mMaxNanos.get());
         }
 
-        public boolean hasMoreEvents() {
-            return mNext != null;
+        private void reset() {
+            mCount.set(0);
+            mTotalNanos.set(0);
+            mMaxNanos.set(0);
         }
     }
 }
@@ -0,0 +1,130 @@
+package com.leff.midi.util;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Snapshot of {@link MidiProcessor} timing accuracy.
+ * <p>
+ * Jitter is the lateness of each dispatched file event against its ideal
+ * time from the file's tempo map, in microseconds. Events delivered ahead of
+ * their ideal time count as zero lateness and are also counted as early.
+ */
+public class PlaybackStats {
+
+    private final long mDispatched;
+    private final long mEarly;
+    private final long mP50Micros;
+    private final long mP99Micros;
+    private final long mMaxMicros;
+    private final long mSlices;
+    private final long mSliceOverruns;
+    private final long mSkippedEntries;
+    private final Map<MidiEventListener, CallbackStats> mCallbacks;
+
+    PlaybackStats(LatencyHistogram lateness, long early, long slices, long sliceOverruns, long skippedEntries,
+                  Map<MidiEventListener, CallbackStats> callbacks) {
+        mDispatched = lateness.getCount();
+        mEarly = early;
+        mP50Micros = lateness.getValueAtPercentile(50);
+        mP99Micros = lateness.getValueAtPercentile(99);
+        mMaxMicros = lateness.getMax();
+        mSlices = slices;
+        mSliceOverruns = sliceOverruns;
+        mSkippedEntries = skippedEntries;
+        mCallbacks = Collections.unmodifiableMap(callbacks);
+    }
+
+    public long getDispatchedCount() {
+        return mDispatched;
+    }
+
+    public long getEarlyCount() {
+        return mEarly;
+    }
+
+    public long getP50JitterMicros() {
+        return mP50Micros;
+    }
+
+    public long getP99JitterMicros() {
+        return mP99Micros;
+    }
+
+    public long getMaxJitterMicros() {
+        return mMaxMicros;
+    }
+
+    public long getSliceCount() {
+        return mSlices;
+    }
+
+    /**
+     * Number of processing slices that took longer than the processor's slice period.
+     */
+    public long getSliceOverrunCount() {
+        return mSliceOverruns;
+    }
+
+    /**
+     * Number of playlist entries skipped because they could not be loaded.
+     */
+    public long getSkippedPlaylistEntryCount() {
+        return mSkippedEntries;
+    }
+
+    public Map<MidiEventListener, CallbackStats> getCallbackStats() {
+        return mCallbacks;
+    }
+
+    @Override
+    public String toString() {
+        return "PlaybackStats{dispatched=" + mDispatched +
+                ", early=" + mEarly +
+                ", p50=" + mP50Micros + "us" +
+                ", p99=" + mP99Micros + "us" +
+                ", max=" + mMaxMicros + "us" +
+                ", slices=" + mSlices +
+                ", overruns=" + mSliceOverruns +
+                ", skipped=" + mSkippedEntries +
+                ", listeners=" + mCallbacks.size() +
+                '}';
+    }
+
+    /**
+     * Time spent inside one listener's {@link MidiEventListener#onEvent} calls.
+     */
+    public static class CallbackStats {
+
+        private final long mCount;
+        private final long mTotalNanos;
+        private final long mMaxNanos;
+
+        CallbackStats(long count, long totalNanos, long maxNanos) {
+            mCount = count;
+            mTotalNanos = totalNanos;
+            mMaxNanos = maxNanos;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getTotalNanos() {
+            return mTotalNanos;
+        }
+
+        public long getMaxNanos() {
+            return mMaxNanos;
+        }
+
+        public long getAverageNanos() {
+            return mCount == 0 ? 0 : mTotalNanos / mCount;
+        }
+
+        @Override
+        public String toString() {
+            return "{count=" + mCount + ", avg=" + getAverageNanos() + "ns, max=" + mMaxNanos + "ns}";
+        }
+    }
+}
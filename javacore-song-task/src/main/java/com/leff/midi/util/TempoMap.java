@@ -0,0 +1,99 @@
+package com.leff.midi.util;
+
+import com.leff.midi.MidiFile;
+import com.leff.midi.MidiTrack;
+import com.leff.midi.event.MidiEvent;
+import com.leff.midi.event.meta.Tempo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Converts ticks to wall-clock time using every {@link Tempo} event of a file.
+ * Segments are stored in parallel arrays, lookups are a binary search.
+ */
+public class TempoMap {
+
+    private final int mResolution;
+
+    // Segment i starts at mTicks[i], at mMicros[i] from the beginning, and runs at mMpqn[i].
+    private final long[] mTicks;
+    private final double[] mMicros;
+    private final int[] mMpqn;
+
+    public TempoMap(MidiFile file) {
+
+        mResolution = file.getResolution() > 0 ? file.getResolution() : MidiFile.DEFAULT_RESOLUTION;
+
+        List<Tempo> tempos = new ArrayList<>();
+        for (MidiTrack track : file.getTracks()) {
+            for (MidiEvent event : track.getEvents()) {
+                if (event instanceof Tempo) {
+                    tempos.add((Tempo) event);
+                }
+            }
+        }
+        tempos.sort((a, b) -> Long.compare(a.getTick(), b.getTick()));
+
+        long[] ticks = new long[tempos.size() + 1];
+        double[] micros = new double[tempos.size() + 1];
+        int[] mpqn = new int[tempos.size() + 1];
+
+        ticks[0] = 0;
+        micros[0] = 0;
+        mpqn[0] = Tempo.DEFAULT_MPQN;
+        int count = 1;
+
+        for (Tempo tempo : tempos) {
+
+            int last = count - 1;
+            if (tempo.getTick() == ticks[last]) {
+                mpqn[last] = tempo.getMpqn();
+                continue;
+            }
+
+            ticks[count] = tempo.getTick();
+            micros[count] = micros[last] + (double) (tempo.getTick() - ticks[last]) * mpqn[last] / mResolution;
+            mpqn[count] = tempo.getMpqn();
+            count++;
+        }
+
+        mTicks = Arrays.copyOf(ticks, count);
+        mMicros = Arrays.copyOf(micros, count);
+        mMpqn = Arrays.copyOf(mpqn, count);
+    }
+
+    public double tickToMicros(double tick) {
+
+        int segment = segmentOf(tick);
+        return mMicros[segment] + (tick - mTicks[segment]) * mMpqn[segment] / mResolution;
+    }
+
+    public long tickToMs(long tick) {
+        return (long) (tickToMicros(tick) / 1000);
+    }
+
+    public int getMpqnAt(long tick) {
+        return mMpqn[segmentOf(tick)];
+    }
+
+    public int getTempoChangeCount() {
+        return mTicks.length - 1;
+    }
+
+    private int segmentOf(double tick) {
+
+        int lo = 0;
+        int hi = mTicks.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (mTicks[mid] <= tick) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+}
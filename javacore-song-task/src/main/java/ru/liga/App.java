@@ -4,21 +4,48 @@ package ru.liga;
 import com.leff.midi.MidiFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import ru.liga.songtask.domain.Note;
+import ru.liga.songtask.analysis.AnalysisCache;
+import ru.liga.songtask.analysis.AnalysisEngine;
+import ru.liga.songtask.analysis.ChordRecognizer;
+import ru.liga.songtask.domain.AnalysisReport;
+import ru.liga.songtask.domain.ChordTimeline;
+import ru.liga.songtask.domain.CorpusRecord;
 import ru.liga.songtask.domain.NoteSign;
+import ru.liga.songtask.domain.NoteStatistics;
+import ru.liga.songtask.index.MelodyFingerprint;
+import ru.liga.songtask.index.MetadataIndex;
+import ru.liga.songtask.index.MetadataIndexWriter;
+import ru.liga.songtask.index.PatternSketches;
+import ru.liga.songtask.report.CsvReportSink;
+import ru.liga.songtask.report.JsonLinesReportSink;
+import ru.liga.songtask.report.ReportSink;
+import ru.liga.songtask.util.HeavyHitterSketch;
+import ru.liga.songtask.util.QuantileSketch;
 import ru.liga.songtask.util.SongUtils;
-import ru.liga.songtask.worker.AnalyzeWorker;
 import ru.liga.songtask.worker.ChangeWorker;
+import ru.liga.songtask.worker.CorpusAnalyzer;
+import ru.liga.songtask.worker.DuplicateFinder;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 
 public class App {
     private static Logger logger = LoggerFactory.getLogger(App.class);
+    private static final int PATTERNS_TO_LOG = 5;
 
     private static void getRangeWork(NoteSign[] extremum, int range) {
         logger.info("Диапазон:");
@@ -43,28 +70,193 @@ public class App {
 
     /**
      * Процедура анализа файла
+     * <p>
+     * Сначала результат ищется в {@link AnalysisCache#openDefault() кэше анализа}; если кэш
+     * недоступен, файл анализируется напрямую.
      *
      * @param path путь к анализируемому файлу
      * @throws IOException возникает, в случае ошибочного написания пути
      *                     или попытке доступа к защищённому от чтения файлу.
      */
     public static void analyze(String path) throws IOException {
+        analyze(path, null);
+    }
+
+    /**
+     * Процедура анализа файла с выводом результата в {@link ReportSink}
+     *
+     * @param path путь к анализируемому файлу
+     * @param sink получатель результата, либо null для вывода в лог
+     * @throws IOException возникает, в случае ошибочного написания пути,
+     *                     попытке доступа к защищённому от чтения файлу или ошибке вывода.
+     */
+    public static void analyze(String path, ReportSink sink) throws IOException {
         logger.debug("Запущена процедура анализа");
-        MidiFile midiFile = new MidiFile(new File(path));
-        List<Note> track = AnalyzeWorker.getVoiceTrack(midiFile);
-        if (track.isEmpty()) {
+        long start = System.nanoTime();
+        AnalysisCache cache = openCache();
+        AnalysisReport report = cache != null
+                ? cache.analyze(new File(path))
+                : new AnalysisEngine().analyze(new MidiFile(new File(path)));
+        if (sink != null) {
+            sink.write(CorpusRecord.success(Paths.get(path), report, System.nanoTime() - start));
+            return;
+        }
+        if (report.getKey() != null) {
+            logger.info("Тональность: " + report.getKey().getName());
+        }
+        if (!report.hasVoiceTrack()) {
             logger.info("Нет треков пригодных для исполнения голосом.");
             return;
         }
 
         getRangeWork(
-                Objects.requireNonNull(
-                        AnalyzeWorker.getExtremumNoteSigns(track)),
-                Objects.requireNonNull(
-                        AnalyzeWorker.getRange(track))
+                Objects.requireNonNull(report.getExtremum()),
+                Objects.requireNonNull(report.getRange())
         );
-        getDurationWork(AnalyzeWorker.getDurationAnalyze(track, midiFile));
-        getNumberOfNotesWork(AnalyzeWorker.getNumberOfNotes(track));
+        getDurationWork(report.getDurations());
+        getNumberOfNotesWork(report.getNumberOfNotes());
+    }
+
+    /**
+     * Процедура анализа всех midi-файлов в каталоге и его подкаталогах
+     *
+     * @param path    путь к каталогу
+     * @param threads число потоков анализа
+     * @param sink    получатель записей, либо null для вывода в лог
+     */
+    public static void corpus(String path, int threads, ReportSink sink) throws IOException {
+        corpus(path, threads, sink, null, null);
+    }
+
+    /**
+     * Процедура анализа корпуса со сбором статистики длительностей, интервалов, темпов и частых шаблонов
+     *
+     * @param path      путь к каталогу
+     * @param threads   число потоков анализа
+     * @param sink      получатель записей, либо null для вывода в лог
+     * @param statsPath   файл для сохранения статистики, либо null, если статистика не нужна
+     * @param catalogPath файл для сохранения сводок по файлам, либо null, если сводки не нужны
+     * @throws IOException при ошибке записи статистики или сводок
+     */
+    public static void corpus(String path, int threads, ReportSink sink, String statsPath, String catalogPath)
+            throws IOException {
+        logger.debug("Запущена процедура анализа корпуса");
+        AnalysisCache cache = null;
+        if (statsPath == null) {
+            cache = openCache();
+        } else {
+            logger.info("Статистика строится по нотам каждого файла, кэш анализа не используется");
+        }
+        CorpusAnalyzer analyzer = new CorpusAnalyzer(threads, cache, statsPath != null, catalogPath != null);
+        MetadataIndexWriter catalog = new MetadataIndexWriter();
+        CorpusAnalyzer.Summary summary = analyzer.analyze(Paths.get(path), record -> {
+            if (record.getMetadata() != null) {
+                catalog.add(record.getMetadata());
+            }
+            if (sink != null) {
+                try {
+                    sink.write(record);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else if (!record.isSuccess()) {
+                logger.info("{}: ошибка - {}", record.getFile(), record.getError());
+            } else if (!record.getReport().hasVoiceTrack()) {
+                logger.info("{}: нет треков пригодных для исполнения голосом", record.getFile());
+            } else {
+                AnalysisReport report = record.getReport();
+                logger.info("{}: {} - {}, диапазон {}", record.getFile(),
+                        report.getExtremum()[0].fullName(), report.getExtremum()[1].fullName(), report.getRange());
+            }
+        });
+        logger.info("Обработано файлов: {}, с ошибками: {}, за {} мс",
+                summary.getFiles(), summary.getFailures(), summary.getElapsedNanos() / 1_000_000);
+        NoteStatistics statistics = summary.getStatistics();
+        if (statistics != null) {
+            logQuantiles("Длительность нот, мс", statistics.getDurations());
+            logQuantiles("Интервалы, полутонов", statistics.getIntervals());
+            logQuantiles("Темп, bpm", statistics.getTempos());
+            PatternSketches patterns = summary.getPatterns();
+            logger.info("Различных мелодических 4-грамм: ~{}, ритмических: ~{}",
+                    patterns.getDistinctIntervals().estimate(), patterns.getDistinctRhythms().estimate());
+            logPatterns("Частые мелодические 4-граммы", patterns.getIntervals());
+            logPatterns("Частые ритмические 4-граммы", patterns.getRhythms());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(Paths.get(statsPath))))) {
+                statistics.writeTo(out);
+                patterns.writeTo(out);
+            }
+            logger.info("Статистика сохранена: {}", statsPath);
+        }
+        if (catalogPath != null) {
+            catalog.write(Paths.get(catalogPath));
+            logger.info("Сводки {} файлов сохранены: {}", catalog.getRecordCount(), catalogPath);
+        }
+    }
+
+    /**
+     * Процедура поиска файлов по сводкам корпуса
+     *
+     * @param path  путь к файлу сводок
+     * @param query условия поиска
+     * @throws IOException при ошибке чтения файла сводок
+     */
+    public static void query(String path, MetadataIndex.Query query) throws IOException {
+        logger.debug("Запущена процедура поиска по сводкам");
+        long start = System.nanoTime();
+        try (MetadataIndex index = new MetadataIndex(Paths.get(path))) {
+            int[] records = index.query(query);
+            long elapsed = System.nanoTime() - start;
+            for (int record : records) {
+                logger.info("    {}", index.get(record));
+            }
+            logger.info("Найдено файлов: {} из {}, за {} мкс", records.length, index.getRecordCount(), elapsed / 1000);
+        }
+    }
+
+    /**
+     * Процедура поиска одинаковых midi-файлов в каталоге и его подкаталогах
+     *
+     * @param path       путь к каталогу
+     * @param threads    число потоков
+     * @param ignoreText не различать файлы, отличающиеся только текстовыми мета-событиями
+     * @throws IOException если каталог не удалось обойти
+     */
+    public static void dedup(String path, int threads, boolean ignoreText) throws IOException {
+        logger.debug("Запущена процедура поиска дубликатов");
+        DuplicateFinder.Result result = new DuplicateFinder(threads, ignoreText).find(Paths.get(path));
+        for (DuplicateFinder.Group group : result.getGroups()) {
+            logger.info("{}", group);
+        }
+        logger.info("Обработано файлов: {}, различных: {}, групп дубликатов: {}, с ошибками: {}, за {} мс",
+                result.getFiles(), result.getDistinct(), result.getGroups().size(), result.getFailures(),
+                result.getElapsedNanos() / 1_000_000);
+    }
+
+    private static void logPatterns(String title, HeavyHitterSketch sketch) {
+        logger.info("{}:", title);
+        for (HeavyHitterSketch.Entry entry : sketch.top(PATTERNS_TO_LOG)) {
+            logger.info("    {}: {} файлов", MelodyFingerprint.describe(entry.getKey()), entry.getCount());
+        }
+    }
+
+    private static void logQuantiles(String title, QuantileSketch sketch) {
+        if (sketch.isEmpty()) {
+            logger.info("{}: нет данных", title);
+            return;
+        }
+        logger.info("{}: медиана {}, p95 {}, от {} до {}", title,
+                Math.round(sketch.quantile(0.5)), Math.round(sketch.quantile(0.95)),
+                Math.round(sketch.min()), Math.round(sketch.max()));
+    }
+
+    private static AnalysisCache openCache() {
+        try {
+            return AnalysisCache.openDefault();
+        } catch (IOException e) {
+            logger.debug("Кэш анализа недоступен: {}", e.getMessage());
+            return null;
+        }
     }
 
     /**
@@ -89,8 +281,45 @@ public class App {
         logger.info("Изменённый файл: {}", pathNew);
     }
 
+    /**
+     * Процедура транспонирования файла под диапазон певца
+     *
+     * @param path путь к исходному файлу
+     * @param low  нижняя нота диапазона
+     * @param high верхняя нота диапазона
+     * @throws IOException при ошибке чтения или записи файла
+     */
+    public static void fit(String path, NoteSign low, NoteSign high) throws IOException {
+        logger.info("Запущена процедура подбора транспонирования файла {} под диапазон {} - {}",
+                path, low.fullName(), high.fullName());
+        File file = new File(path);
+        MidiFile newMidi = ChangeWorker.fitToRange(new MidiFile(file), low, high);
+        String pathNew = getSavePath(file, "-fit");
+        newMidi.writeToFile(new File(pathNew));
+        logger.info("Изменённый файл: {}", pathNew);
+    }
+
+    /**
+     * Процедура вывода последовательности аккордов
+     *
+     * @param path путь к файлу
+     * @throws IOException при ошибке чтения файла
+     */
+    public static void chords(String path) throws IOException {
+        logger.debug("Запущена процедура распознавания аккордов");
+        ChordTimeline timeline = ChordRecognizer.recognize(new MidiFile(new File(path)));
+        logger.info("Аккорды (тики):");
+        for (int i = 0; i < timeline.size(); i++) {
+            logger.info("    " + timeline.startTick(i) + "-" + timeline.endTick(i) + ": " + timeline.name(i));
+        }
+    }
+
     private static String getSavePath(int trans, float tempo, File file) {
-        String newName = file.getName().replace(".mid", "") + "-trans" + trans + "-tempo" + tempo + ".mid";
+        return getSavePath(file, "-trans" + trans + "-tempo" + tempo);
+    }
+
+    private static String getSavePath(File file, String suffix) {
+        String newName = file.getName().replace(".mid", "") + suffix + ".mid";
         return file.getParentFile().getAbsolutePath() + File.separator + newName;
     }
 
@@ -108,12 +337,172 @@ public class App {
         logger.info("Для запуска программы введите аргументы командной строки.\nНапример:");
         logger.info("..\\midi-analyzer.jar \"C:\\zombie.mid\" analyze");
         logger.info("..\\midi-analyzer.jar \"C:\\zombie.mid\" change -trans 2 -tempo 20");
+        logger.info("..\\midi-analyzer.jar \"C:\\zombie.mid\" fit -low G3 -high C5");
+        logger.info("..\\midi-analyzer.jar \"C:\\zombie.mid\" chords");
+        logger.info("..\\midi-analyzer.jar \"C:\\songs\" corpus -threads 8");
+        logger.info("..\\midi-analyzer.jar \"C:\\songs\" corpus -format jsonl -out \"C:\\report.jsonl\"");
+        logger.info("..\\midi-analyzer.jar \"C:\\songs\" corpus -stats \"C:\\stats.bin\"");
+        logger.info("..\\midi-analyzer.jar \"C:\\songs\" corpus -catalog \"C:\\catalog.idx\"");
+        logger.info("..\\midi-analyzer.jar \"C:\\catalog.idx\" query -range 0-12 -bpm 90-110 -notes 100-500 -ms 0-240000");
+        logger.info("..\\midi-analyzer.jar \"C:\\songs\" dedup -threads 8 -text ignore");
+        logger.info("    -format: jsonl или csv, без -out записи выводятся в stdout, лог - в stderr");
+    }
+
+    /**
+     * @return пары "-ключ значение" после действия, либо null, если аргументы не парные
+     */
+    private static HashMap<String, String> readOptions(String[] args) {
+        if (args.length % 2 != 0) {
+            return null;
+        }
+        HashMap<String, String> options = new HashMap<>();
+        for (int i = 2; i < args.length; i += 2) {
+            if (!args[i].startsWith("-")) {
+                return null;
+            }
+            options.put(args[i], args[i + 1]);
+        }
+        return options;
+    }
+
+    /**
+     * @param format jsonl или csv
+     * @param out    путь к файлу результата, либо null для вывода в stdout
+     * @param stdout поток для вывода записей без -out
+     */
+    private static ReportSink openSink(String format, String out, PrintStream stdout) throws IOException {
+        WritableByteChannel channel = out == null
+                ? Channels.newChannel(stdout)
+                : FileChannel.open(Paths.get(out), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        return format.equals("csv") ? new CsvReportSink(channel) : new JsonLinesReportSink(channel);
+    }
+
+    /**
+     * @param options пары "-ключ значение"
+     * @return число потоков из -threads или число процессоров, либо 0, если значение не разобрать
+     */
+    private static int readThreads(HashMap<String, String> options) {
+        if (!options.containsKey("-threads")) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        try {
+            return Integer.parseInt(options.get("-threads"));
+        } catch (NumberFormatException e) {
+            logger.debug("Ошибка во время парсинга аргумента: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * @param options пары "-ключ от-до"
+     * @return запрос, либо null, если границы не разобрать
+     */
+    private static MetadataIndex.Query readQuery(HashMap<String, String> options) {
+        MetadataIndex.Query query = new MetadataIndex.Query();
+        try {
+            for (Map.Entry<String, String> option : options.entrySet()) {
+                String[] bounds = option.getValue().split("-", 2);
+                if (bounds.length != 2) {
+                    return null;
+                }
+                switch (option.getKey()) {
+                    case "-range":
+                        query.range(Integer.parseInt(bounds[0]), Integer.parseInt(bounds[1]));
+                        break;
+                    case "-bpm":
+                        query.bpm(Float.parseFloat(bounds[0]), Float.parseFloat(bounds[1]));
+                        break;
+                    case "-notes":
+                        query.noteCount(Integer.parseInt(bounds[0]), Integer.parseInt(bounds[1]));
+                        break;
+                    case "-ms":
+                        query.lengthMs(Long.parseLong(bounds[0]), Long.parseLong(bounds[1]));
+                        break;
+                    default:
+                        return null;
+                }
+            }
+        } catch (NumberFormatException e) {
+            logger.debug("Ошибка во время парсинга аргумента: {}", e.getMessage());
+            return null;
+        }
+        return query;
     }
 
     private static void argsReader(String[] args) throws IOException {
         String action = args[1].toLowerCase().trim();
-        if (action.equals("analyze")) {
-            analyze(args[0]);
+        if (action.equals("analyze") || action.equals("corpus")) {
+            HashMap<String, String> options = readOptions(args);
+            if (options == null) {
+                warningAboutArguments();
+                return;
+            }
+            int threads = readThreads(options);
+            String format = options.get("-format");
+            if (threads < 1 || (format != null && !format.equals("jsonl") && !format.equals("csv"))
+                    || (format == null && options.containsKey("-out"))) {
+                warningAboutArguments();
+                return;
+            }
+
+            PrintStream stdout = System.out;
+            boolean recordsToStdout = format != null && !options.containsKey("-out");
+            if (recordsToStdout) {
+                // в stdout идут только записи: лог консоли и предупреждения midi-библиотеки - в stderr
+                System.setOut(System.err);
+            }
+            ReportSink sink = format == null ? null : openSink(format, options.get("-out"), stdout);
+            try {
+                if (action.equals("analyze")) {
+                    analyze(args[0], sink);
+                } else {
+                    corpus(args[0], threads, sink, options.get("-stats"), options.get("-catalog"));
+                }
+            } finally {
+                if (sink != null && options.containsKey("-out")) {
+                    sink.close();
+                } else if (sink != null) {
+                    sink.flush();
+                }
+                System.setOut(stdout);
+            }
+            return;
+        }
+        if (action.equals("fit")) {
+            HashMap<String, String> options = readOptions(args);
+            NoteSign low = options == null ? NoteSign.NULL_VALUE : NoteSign.fromFullName(options.getOrDefault("-low", ""));
+            NoteSign high = options == null ? NoteSign.NULL_VALUE : NoteSign.fromFullName(options.getOrDefault("-high", ""));
+            if (low == NoteSign.NULL_VALUE || high == NoteSign.NULL_VALUE || low.getMidi() > high.getMidi()) {
+                warningAboutArguments();
+                return;
+            }
+            fit(args[0], low, high);
+            return;
+        }
+        if (action.equals("query")) {
+            HashMap<String, String> options = readOptions(args);
+            MetadataIndex.Query query = options == null ? null : readQuery(options);
+            if (query == null) {
+                warningAboutArguments();
+                return;
+            }
+            query(args[0], query);
+            return;
+        }
+        if (action.equals("dedup")) {
+            HashMap<String, String> options = readOptions(args);
+            int threads = options == null ? 0 : readThreads(options);
+            String text = options == null ? null : options.getOrDefault("-text", "keep");
+            if (threads < 1 || !(text.equals("keep") || text.equals("ignore"))) {
+                warningAboutArguments();
+                return;
+            }
+            dedup(args[0], threads, text.equals("ignore"));
+            return;
+        }
+        if (action.equals("chords")) {
+            chords(args[0]);
             return;
         }
         Integer trans = null;
@@ -0,0 +1,308 @@
+package ru.liga.songtask.analysis;
+
+import com.leff.midi.MidiFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.liga.songtask.domain.AnalysisReport;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <b>Дисковый кэш результатов анализа</b>
+ * <p>
+ * Ключ записи - SHA-256 от версии анализа и содержимого midi-файла, поэтому один и тот же
+ * файл под любым именем и из любого процесса попадает в одну запись, а изменение алгоритма
+ * (увеличение {@link #ANALYSIS_VERSION}) делает старые записи недостижимыми. Запись хранится
+ * в формате {@link AnalysisReportCodec} в файле {@code <ключ>.bin} и пишется во временный
+ * файл с последующим атомарным переименованием, так что читатель никогда не видит её
+ * частично. Время изменения файла записи обновляется при каждом попадании; когда суммарный
+ * размер записей превышает лимит, удаляются давно не использованные.
+ * <p>
+ * Повреждённая или нечитаемая запись считается промахом, ошибки записи в кэш только
+ * логируются - анализ от них не зависит.
+ * <p>
+ * Чтение и запись записей идут без блокировок, счётчики атомарные. Вытеснение выполняет
+ * один поток: если оно уже идёт, остальные потоки его не ждут.
+ */
+public class AnalysisCache {
+    private static Logger logger = LoggerFactory.getLogger(AnalysisCache.class);
+
+    /**
+     * Версия анализа; увеличивается при любом изменении результатов {@link AnalysisEngine}
+     */
+    public static final int ANALYSIS_VERSION = 4;
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final String SUFFIX = ".bin";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final ReentrantLock evictLock = new ReentrantLock();
+
+    /**
+     * @param directory каталог кэша, создаётся при необходимости
+     * @param maxBytes  лимит суммарного размера записей
+     * @throws IOException если каталог не удалось создать или прочитать
+     */
+    public AnalysisCache(Path directory, long maxBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+        long size = 0;
+        for (Path entry : listEntries()) {
+            size += sizeOf(entry);
+        }
+        totalBytes.set(size);
+        logger.debug("Кэш анализа {}: {} байт", directory, size);
+    }
+
+    /**
+     * <b>Кэш по умолчанию</b>
+     * <p>
+     * Каталог задаётся системным свойством {@code midi.analysis.cache.dir} (по умолчанию
+     * {@code midi-analysis-cache} во временном каталоге), лимит - свойством
+     * {@code midi.analysis.cache.maxBytes}.
+     *
+     * @return кэш
+     * @throws IOException если каталог не удалось создать или прочитать
+     */
+    public static AnalysisCache openDefault() throws IOException {
+        String dir = System.getProperty("midi.analysis.cache.dir",
+                Paths.get(System.getProperty("java.io.tmpdir"), "midi-analysis-cache").toString());
+        long maxBytes = Long.getLong("midi.analysis.cache.maxBytes", DEFAULT_MAX_BYTES);
+        return new AnalysisCache(Paths.get(dir), maxBytes);
+    }
+
+    /**
+     * <b>Ключ записи для содержимого файла</b>
+     *
+     * @param content байты midi-файла
+     * @return 64 шестнадцатеричных символа
+     */
+    public static String keyOf(byte[] content) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 обязан поддерживаться любой реализацией Java
+            throw new IllegalStateException(e);
+        }
+        digest.update(ByteBuffer.allocate(4).putInt(ANALYSIS_VERSION).array());
+        byte[] hash = digest.digest(content);
+        StringBuilder key = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     * <b>Проанализировать файл, используя кэш</b>
+     *
+     * @param file midi-файл
+     * @return отчёт из кэша, либо результат {@link AnalysisEngine}, сохранённый в кэш
+     * @throws IOException если файл не удалось прочитать
+     */
+    public AnalysisReport analyze(File file) throws IOException {
+        return analyze(Files.readAllBytes(file.toPath()));
+    }
+
+    /**
+     * <b>Проанализировать содержимое midi-файла, используя кэш</b>
+     *
+     * @param content байты midi-файла
+     * @return отчёт из кэша, либо результат {@link AnalysisEngine}, сохранённый в кэш
+     * @throws IOException если содержимое не является midi-файлом
+     */
+    public AnalysisReport analyze(byte[] content) throws IOException {
+        String key = keyOf(content);
+        AnalysisReport report = get(key);
+        if (report != null) {
+            return report;
+        }
+        report = new AnalysisEngine().analyze(new MidiFile(new ByteArrayInputStream(content)));
+        put(key, report);
+        return report;
+    }
+
+    /**
+     * @param key ключ из {@link #keyOf(byte[])}
+     * @return отчёт, либо null, если записи нет или она повреждена
+     */
+    public AnalysisReport get(String key) {
+        Path entry = directory.resolve(key + SUFFIX);
+        try {
+            AnalysisReport report = AnalysisReportCodec.decode(Files.readAllBytes(entry));
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.increment();
+            logger.trace("Попадание в кэш анализа: {}", key);
+            return report;
+        } catch (NoSuchFileException e) {
+            misses.increment();
+            return null;
+        } catch (IOException e) {
+            logger.debug("Запись кэша {} не прочитана и будет удалена: {}", key, e.getMessage());
+            delete(entry);
+            misses.increment();
+            return null;
+        }
+    }
+
+    /**
+     * <b>Сохранить отчёт</b>
+     * <p>
+     * Сохраняются только поля, поддерживаемые {@link AnalysisReportCodec}.
+     *
+     * @param key    ключ из {@link #keyOf(byte[])}
+     * @param report отчёт
+     */
+    public void put(String key, AnalysisReport report) {
+        byte[] data = AnalysisReportCodec.encode(report);
+        Path entry = directory.resolve(key + SUFFIX);
+        Path temp = null;
+        long total;
+        try {
+            long previous = sizeOf(entry);
+            temp = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temp, data);
+            try {
+                Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+            total = totalBytes.addAndGet(data.length - previous);
+            logger.trace("Запись кэша анализа {} сохранена, {} байт", key, data.length);
+        } catch (IOException e) {
+            logger.debug("Не удалось сохранить запись кэша {}: {}", key, e.getMessage());
+            if (temp != null) {
+                delete(temp);
+            }
+            return;
+        }
+        if (total > maxBytes && evictLock.tryLock()) {
+            try {
+                evict(entry);
+            } finally {
+                evictLock.unlock();
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return суммарный размер записей, известный этому экземпляру
+     */
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Удаляет записи в порядке давности использования, пока размер не станет не больше
+     * трёх четвертей лимита. Каталог перечитывается целиком, поэтому учитываются и записи
+     * других процессов. Только что сохранённая запись не удаляется. Вызывается под
+     * {@link #evictLock}.
+     */
+    private void evict(Path keep) {
+        List<Path> entries;
+        try {
+            entries = listEntries();
+        } catch (IOException e) {
+            logger.debug("Не удалось прочитать каталог кэша: {}", e.getMessage());
+            return;
+        }
+        List<Entry> byAge = new ArrayList<>(entries.size());
+        long size = 0;
+        for (Path path : entries) {
+            try {
+                Entry entry = new Entry(path, Files.getLastModifiedTime(path).toMillis(), Files.size(path));
+                byAge.add(entry);
+                size += entry.size;
+            } catch (IOException e) {
+                // запись удалена другим процессом
+            }
+        }
+        byAge.sort((a, b) -> Long.compare(a.lastUsed, b.lastUsed));
+
+        long target = maxBytes / 4 * 3;
+        int removed = 0;
+        for (Entry entry : byAge) {
+            if (size <= target) {
+                break;
+            }
+            if (!entry.path.equals(keep) && delete(entry.path)) {
+                size -= entry.size;
+                removed++;
+            }
+        }
+        totalBytes.set(size);
+        logger.debug("Из кэша анализа вытеснено записей: {}, осталось {} байт", removed, size);
+    }
+
+    private List<Path> listEntries() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path entry : stream) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    private static long sizeOf(Path entry) {
+        try {
+            return Files.size(entry);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static boolean delete(Path path) {
+        try {
+            return Files.deleteIfExists(path);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static class Entry {
+        private final Path path;
+        private final long lastUsed;
+        private final long size;
+
+        private Entry(Path path, long lastUsed, long size) {
+            this.path = path;
+            this.lastUsed = lastUsed;
+            this.size = size;
+        }
+    }
+}
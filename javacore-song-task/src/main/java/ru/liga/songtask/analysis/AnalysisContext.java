@@ -0,0 +1,38 @@
+package ru.liga.songtask.analysis;
+
+import com.leff.midi.MidiFile;
+
+/**
+ * <b>Параметры файла, собранные за проход анализа</b>
+ */
+public class AnalysisContext {
+    private final MidiFile midiFile;
+    private final float bpm;
+    private final long textEventCount;
+
+    public AnalysisContext(MidiFile midiFile, float bpm, long textEventCount) {
+        this.midiFile = midiFile;
+        this.bpm = bpm;
+        this.textEventCount = textEventCount;
+    }
+
+    public MidiFile getMidiFile() {
+        return midiFile;
+    }
+
+    public int getResolution() {
+        return midiFile.getResolution();
+    }
+
+    /**
+     * @return bpm первого события Tempo нулевого трека (как в {@code SongUtils.getTempo}),
+     * либо 120, если такого события нет.
+     */
+    public float getBpm() {
+        return bpm;
+    }
+
+    public long getTextEventCount() {
+        return textEventCount;
+    }
+}
@@ -0,0 +1,244 @@
+package ru.liga.songtask.analysis;
+
+import com.leff.midi.MidiFile;
+import com.leff.midi.MidiTrack;
+import com.leff.midi.event.MidiEvent;
+import com.leff.midi.event.NoteOff;
+import com.leff.midi.event.NoteOn;
+import com.leff.midi.event.meta.Lyrics;
+import com.leff.midi.event.meta.Tempo;
+import com.leff.midi.event.meta.Text;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.liga.songtask.domain.AnalysisReport;
+import ru.liga.songtask.domain.KeyEstimate;
+import ru.liga.songtask.domain.NoteBuffer;
+import ru.liga.songtask.domain.NoteSign;
+import ru.liga.songtask.util.LyricsAligner;
+import ru.liga.songtask.util.NotePairer;
+import ru.liga.songtask.util.SkylineExtractor;
+import ru.liga.songtask.util.SongUtils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * <b>Анализ midi-файла за один проход по событиям</b>
+ * <p>
+ * Каждое событие каждого трека просматривается ровно один раз: считаются текстовые события,
+ * извлекается Tempo, ноты собираются из NoteOn\NoteOff через {@link NotePairer} и сразу
+ * передаются накопителям трека.
+ * Трек, в котором обнаружились одновременно звучащие ноты, перестаёт накапливаться - голосом
+ * он быть уже не может. Ноты всех треков, кроме ударных, попутно складываются в профиль классов
+ * высоты, по которому {@link KeyDetector} определяет тональность файла.
+ * Тем же проходом собираются слоги текста, а треки запоминают начала своих нот, чтобы выбрать голос
+ * по совпадению со слогами ({@link LyricsAligner}).
+ * Выбор трека голоса совпадает с {@code AnalyzeWorker.getVoiceTrack}: если одноголосных треков
+ * нет, треки проходятся второй раз и голосом становится мелодия, выделенная {@link SkylineExtractor}.
+ */
+public class AnalysisEngine {
+    private static Logger logger = LoggerFactory.getLogger(AnalysisEngine.class);
+
+    private final Map<String, Supplier<? extends NoteAccumulator<?>>> accumulators = new LinkedHashMap<>();
+
+    /**
+     * <b>Зарегистрировать дополнительный накопитель</b>
+     *
+     * @param name    имя, под которым результат попадёт в отчёт
+     * @param factory создаёт новый накопитель для каждого трека
+     * @return этот же движок
+     */
+    public AnalysisEngine register(String name, Supplier<? extends NoteAccumulator<?>> factory) {
+        accumulators.put(name, factory);
+        return this;
+    }
+
+    /**
+     * <b>Проанализировать файл</b>
+     *
+     * @param midiFile файл для анализа
+     * @return отчёт; если трека для голоса нет - {@link AnalysisReport#hasVoiceTrack()} = false
+     */
+    public AnalysisReport analyze(MidiFile midiFile) {
+        logger.debug("Однопроходный анализ файла, треков: {}", midiFile.getTracks().size());
+        List<MidiTrack> tracks = midiFile.getTracks();
+        long textEventCount = 0;
+        Float bpm = null;
+        TrackState[] states = new TrackState[tracks.size()];
+        NotePairer pairer = new NotePairer();
+        double[] pitchClassProfile = new double[KeyDetector.PITCH_CLASSES];
+        LyricsAligner.Syllables syllables = new LyricsAligner.Syllables();
+
+        for (int i = 0; i < tracks.size(); i++) {
+            TrackState state = new TrackState(pitchClassProfile);
+            states[i] = state;
+            pairer.reset();
+
+            for (MidiEvent event : tracks.get(i).getEvents()) {
+                if (event.getClass().equals(Text.class)) {
+                    textEventCount++;
+                    syllables.accept(event);
+                } else if (event instanceof Lyrics) {
+                    syllables.accept(event);
+                } else if (event instanceof NoteOn || event instanceof NoteOff) {
+                    pairer.accept(event, state);
+                } else if (i == 0 && bpm == null && event instanceof Tempo) {
+                    bpm = ((Tempo) event).getBpm();
+                }
+            }
+        }
+
+        KeyEstimate key = KeyDetector.estimate(pitchClassProfile);
+        logger.debug("Тональность: {}", key);
+        int resolution = midiFile.getResolution();
+        int voiceTrack = chooseVoiceTrack(states, textEventCount, syllables, resolution);
+        TrackState state;
+        if (voiceTrack >= 0) {
+            logger.debug("Трек голоса: {}", voiceTrack);
+            state = states[voiceTrack];
+        } else {
+            NoteBuffer[] melodies = new NoteBuffer[tracks.size()];
+            for (int i = 0; i < tracks.size(); i++) {
+                melodies[i] = SkylineExtractor.extract(tracks.get(i));
+            }
+            voiceTrack = chooseSkylineTrack(melodies, textEventCount, syllables, resolution);
+            if (voiceTrack < 0) {
+                logger.debug("В файле нет нот для голоса.");
+                return AnalysisReport.withoutVoiceTrack(textEventCount, pitchClassProfile, key);
+            }
+            logger.debug("Одноголосных треков нет, голос выделен из трека {}", voiceTrack);
+            state = new TrackState(new double[KeyDetector.PITCH_CLASSES]);
+            NoteBuffer melody = melodies[voiceTrack];
+            for (int i = 0; i < melody.size(); i++) {
+                state.onNote(0, melody.midi(i), 0, melody.startTick(i), melody.durationTicks(i));
+            }
+        }
+
+        AnalysisContext context = new AnalysisContext(midiFile, bpm == null ? Tempo.DEFAULT_BPM : bpm, textEventCount);
+        NoteSign[] extremum = state.extremum.result(context);
+
+        Map<String, Object> extras = new LinkedHashMap<>();
+        for (Map.Entry<String, NoteAccumulator<?>> entry : state.extras.entrySet()) {
+            extras.put(entry.getKey(), entry.getValue().result(context));
+        }
+
+        return new AnalysisReport(voiceTrack, state.noteCount, textEventCount,
+                extremum,
+                extremum[1].getMidi() - extremum[0].getMidi(),
+                state.durations.result(context),
+                state.noteCounts.result(context),
+                extras,
+                pitchClassProfile,
+                key);
+    }
+
+    private int chooseVoiceTrack(TrackState[] states, long textEventCount,
+                                 LyricsAligner.Syllables syllables, int resolution) {
+        int best = -1;
+        double bestScore = -1;
+        long bestDifference = Long.MAX_VALUE;
+        for (int i = 0; i < states.length; i++) {
+            TrackState state = states[i];
+            if (!state.voice || state.noteCount == 0) {
+                continue;
+            }
+            double score = syllables.isEmpty() ? 0
+                    : LyricsAligner.score(syllables, state.onsets, state.noteCount, resolution);
+            long difference = Math.abs(state.noteCount - textEventCount);
+            if (score > bestScore || (score == bestScore && difference < bestDifference)) {
+                bestScore = score;
+                bestDifference = difference;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private int chooseSkylineTrack(NoteBuffer[] melodies, long textEventCount,
+                                   LyricsAligner.Syllables syllables, int resolution) {
+        int best = -1;
+        double bestScore = -1;
+        long bestDifference = Long.MAX_VALUE;
+        for (int i = 0; i < melodies.length; i++) {
+            NoteBuffer melody = melodies[i];
+            if (melody.isEmpty()) {
+                continue;
+            }
+            double score = 0;
+            if (!syllables.isEmpty()) {
+                long[] onsets = new long[melody.size()];
+                for (int j = 0; j < onsets.length; j++) {
+                    onsets[j] = melody.startTick(j);
+                }
+                score = LyricsAligner.score(syllables, onsets, onsets.length, resolution);
+            }
+            long difference = Math.abs(melody.size() - textEventCount);
+            if (score > bestScore || (score == bestScore && difference < bestDifference)) {
+                bestScore = score;
+                bestDifference = difference;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private class TrackState implements NotePairer.NoteListener {
+        private final ExtremumAccumulator extremum = new ExtremumAccumulator();
+        private final DurationAccumulator durations = new DurationAccumulator();
+        private final NoteCountAccumulator noteCounts = new NoteCountAccumulator();
+        private final Map<String, NoteAccumulator<?>> extras = new HashMap<>();
+        private final double[] pitchClassProfile;
+        private boolean voice = true;
+        private long lastEndTick;
+        private int noteCount;
+        private long[] onsets = new long[16];
+
+        private TrackState(double[] pitchClassProfile) {
+            this.pitchClassProfile = pitchClassProfile;
+            for (Map.Entry<String, Supplier<? extends NoteAccumulator<?>>> entry : accumulators.entrySet()) {
+                extras.put(entry.getKey(), entry.getValue().get());
+            }
+        }
+
+        /**
+         * Ноты, которых нет в {@link NoteSign}, пропускаются, как в {@code SongUtils.eventsToNotes}.
+         */
+        @Override
+        public void onNote(int channel, int noteValue, int velocity, long startTick, long durationTicks) {
+            if (channel != SongUtils.DRUM_CHANNEL) {
+                pitchClassProfile[noteValue % KeyDetector.PITCH_CLASSES] += durationTicks;
+            }
+            if (!voice) {
+                return;
+            }
+            NoteSign sign = NoteSign.fromMidiNumber(noteValue);
+            if (sign == NoteSign.NULL_VALUE) {
+                return;
+            }
+            // ноты приходят в порядке окончания, поэтому наложение любых двух звучащих нот
+            // видно уже на соседних; ноты нулевой длины не звучат, как и в NoteIntervalIndex
+            if (durationTicks > 0) {
+                if (lastEndTick > startTick) {
+                    voice = false;
+                    return;
+                }
+                lastEndTick = startTick + durationTicks;
+            }
+            if (noteCount == onsets.length) {
+                onsets = Arrays.copyOf(onsets, noteCount * 2);
+            }
+            onsets[noteCount++] = startTick;
+
+            extremum.accept(sign, startTick, durationTicks);
+            durations.accept(sign, startTick, durationTicks);
+            noteCounts.accept(sign, startTick, durationTicks);
+            for (NoteAccumulator<?> accumulator : extras.values()) {
+                accumulator.accept(sign, startTick, durationTicks);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package ru.liga.songtask.analysis;
+
+import ru.liga.songtask.domain.AnalysisReport;
+import ru.liga.songtask.domain.KeyEstimate;
+import ru.liga.songtask.domain.NoteSign;
+import ru.liga.songtask.util.IntIntHistogram;
+import ru.liga.songtask.util.PitchHistogram;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.zip.CRC32;
+
+/**
+ * <b>Компактное двоичное представление отчёта анализа</b>
+ * <p>
+ * Сохраняются трек голоса, экстремумы, диапазон, гистограмма длительностей и высот нот и
+ * профиль классов высоты; тональность при чтении заново вычисляется по профилю. Результаты
+ * дополнительных накопителей не сохраняются. Запись заканчивается CRC32 всех предыдущих
+ * байт, повреждённая запись при чтении даёт {@link IOException}.
+ */
+public class AnalysisReportCodec {
+    private static final int MAGIC = 0x4D415232; // "MAR2"
+
+    public static byte[] encode(AnalysisReport report) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(report.getVoiceTrackIndex());
+            out.writeInt(report.getVoiceTrackNoteCount());
+            out.writeLong(report.getTextEventCount());
+            for (double weight : report.getPitchClassProfile()) {
+                out.writeDouble(weight);
+            }
+            if (report.hasVoiceTrack()) {
+                out.writeByte(report.getExtremum()[0].getMidi());
+                out.writeByte(report.getExtremum()[1].getMidi());
+
+                IntIntHistogram durations = report.getDurationHistogram();
+                int[] keys = durations.sortedKeys();
+                out.writeInt(keys.length);
+                for (int key : keys) {
+                    out.writeInt(key);
+                    out.writeInt(durations.get(key));
+                }
+
+                int[] pitches = report.getPitchHistogram().toArray();
+                int distinct = 0;
+                for (int count : pitches) {
+                    if (count != 0) {
+                        distinct++;
+                    }
+                }
+                out.writeByte(distinct);
+                for (int midi = 0; midi < pitches.length; midi++) {
+                    if (pitches[midi] != 0) {
+                        out.writeByte(midi);
+                        out.writeInt(pitches[midi]);
+                    }
+                }
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int) crc.getValue());
+        } catch (IOException e) {
+            // ByteArrayOutputStream не бросает IOException
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static AnalysisReport decode(byte[] data) throws IOException {
+        if (data.length < 4) {
+            throw new IOException("Запись отчёта слишком короткая: " + data.length + " байт");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 4);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        in.skipBytes(data.length - 4);
+        if (in.readInt() != (int) crc.getValue()) {
+            throw new IOException("Контрольная сумма записи отчёта не совпадает");
+        }
+
+        in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 4));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Неизвестный формат записи отчёта");
+        }
+        int voiceTrackIndex = in.readInt();
+        int voiceTrackNoteCount = in.readInt();
+        long textEventCount = in.readLong();
+        double[] pitchClassProfile = new double[KeyDetector.PITCH_CLASSES];
+        for (int i = 0; i < pitchClassProfile.length; i++) {
+            pitchClassProfile[i] = in.readDouble();
+        }
+        KeyEstimate key = KeyDetector.estimate(pitchClassProfile);
+        if (voiceTrackIndex < 0) {
+            return AnalysisReport.withoutVoiceTrack(textEventCount, pitchClassProfile, key);
+        }
+
+        NoteSign lowest = NoteSign.fromMidiNumber(in.readUnsignedByte());
+        NoteSign highest = NoteSign.fromMidiNumber(in.readUnsignedByte());
+
+        int durationCount = in.readInt();
+        IntIntHistogram durations = new IntIntHistogram(durationCount);
+        for (int i = 0; i < durationCount; i++) {
+            durations.add(in.readInt(), in.readInt());
+        }
+
+        int pitchCount = in.readUnsignedByte();
+        PitchHistogram pitches = new PitchHistogram();
+        for (int i = 0; i < pitchCount; i++) {
+            pitches.add(in.readUnsignedByte(), in.readInt());
+        }
+
+        return new AnalysisReport(voiceTrackIndex, voiceTrackNoteCount, textEventCount,
+                new NoteSign[]{lowest, highest},
+                highest.getMidi() - lowest.getMidi(),
+                durations,
+                pitches,
+                Collections.emptyMap(),
+                pitchClassProfile,
+                key);
+    }
+}
@@ -0,0 +1,139 @@
+package ru.liga.songtask.analysis;
+
+import com.leff.midi.MidiFile;
+import ru.liga.songtask.domain.ChordTimeline;
+import ru.liga.songtask.domain.NoteBuffer;
+import ru.liga.songtask.util.SongUtils;
+
+import java.util.Arrays;
+
+/**
+ * <b>Распознавание аккордов проходом по границам нот</b>
+ * <p>
+ * Начала и окончания нот упаковываются в один массив {@code long} (тик, признак начала,
+ * высота) и сортируются; проход по ним поддерживает счётчики звучащих нот по 12 классам высоты
+ * и 12-битную маску классов, изменяя их на каждой границе за O(1). После всех границ одного
+ * тика аккорд берётся из заранее построенной таблицы на 4096 масок. Итого O(n log n) на
+ * сортировку и O(n) на проход при любой плотности нот.
+ * <p>
+ * Таблица для каждой маски выбирает шаблон из {@link ChordTimeline#QUALITY_SUFFIXES}, который
+ * целиком входит в маску и содержит больше всего нот, допуская не более одной лишней ноты
+ * (проходящей или задержания). При равенстве выигрывает более простой вид, затем меньший
+ * основной тон. Одиночные ноты и кластеры аккордом не считаются.
+ */
+public class ChordRecognizer {
+    /**
+     * Шаблоны видов аккорда в полутонах от основного тона, в порядке {@link ChordTimeline#QUALITY_SUFFIXES}
+     */
+    private static final int[][] TEMPLATES = {
+            {0, 4, 7}, {0, 3, 7}, {0, 3, 6}, {0, 4, 8}, {0, 2, 7}, {0, 5, 7},
+            {0, 4, 7, 10}, {0, 4, 7, 11}, {0, 3, 7, 10}, {0, 3, 6, 10}, {0, 3, 6, 9}, {0, 7}
+    };
+    private static final int MAX_EXTRA_NOTES = 1;
+    private static final short[] CHORDS = new short[1 << 12];
+
+    static {
+        int[] templateMasks = new int[TEMPLATES.length];
+        for (int quality = 0; quality < TEMPLATES.length; quality++) {
+            for (int interval : TEMPLATES[quality]) {
+                templateMasks[quality] |= 1 << interval;
+            }
+        }
+        for (int mask = 0; mask < CHORDS.length; mask++) {
+            int best = ChordTimeline.NO_CHORD;
+            int bestSize = 0;
+            int notes = Integer.bitCount(mask);
+            for (int quality = 0; quality < templateMasks.length; quality++) {
+                int size = Integer.bitCount(templateMasks[quality]);
+                if (size <= bestSize || notes - size > MAX_EXTRA_NOTES) {
+                    continue;
+                }
+                for (int root = 0; root < 12; root++) {
+                    int template = ((templateMasks[quality] << root) | (templateMasks[quality] >>> (12 - root))) & 0xFFF;
+                    if ((mask & template) == template) {
+                        best = ChordTimeline.chordCode(root, quality);
+                        bestSize = size;
+                        break;
+                    }
+                }
+            }
+            CHORDS[mask] = (short) best;
+        }
+    }
+
+    /**
+     * <b>Аккорд по набору звучащих классов высоты</b>
+     *
+     * @param pitchClassMask маска классов высоты: бит 0 - C, бит 11 - H
+     * @return код аккорда, либо {@link ChordTimeline#NO_CHORD}
+     */
+    public static int lookup(int pitchClassMask) {
+        return CHORDS[pitchClassMask & 0xFFF];
+    }
+
+    /**
+     * <b>Аккорды midi-файла</b>
+     *
+     * @param midiFile файл для анализа; ударные не учитываются
+     * @return последовательность аккордов всех треков вместе
+     */
+    public static ChordTimeline recognize(MidiFile midiFile) {
+        return recognize(SongUtils.getPitchedNotes(midiFile));
+    }
+
+    /**
+     * <b>Аккорды по нотам</b>
+     * <p>
+     * Нота звучит на полуинтервале [начало, конец), ноты нулевой длины не учитываются.
+     * Последовательность начинается с начала первой ноты и заканчивается концом последней,
+     * промежутки тишины внутри обозначаются {@link ChordTimeline#NO_CHORD}.
+     *
+     * @param notes ноты в любом порядке
+     * @return последовательность аккордов
+     */
+    public static ChordTimeline recognize(NoteBuffer notes) {
+        long[] boundaries = new long[notes.size() * 2];
+        int count = 0;
+        for (int i = 0; i < notes.size(); i++) {
+            long start = notes.startTick(i);
+            long end = notes.endTick(i);
+            if (end <= start) {
+                continue;
+            }
+            if (start < 0 || end >= 1L << 55) {
+                throw new IllegalArgumentException("note ticks out of range: " + start + ", " + end);
+            }
+            int pitch = notes.midi(i) & 0x7F;
+            // окончание сортируется раньше начала в тот же тик: повторённая нота не накладывается сама на себя
+            boundaries[count++] = (start << 8) | 0x80 | pitch;
+            boundaries[count++] = (end << 8) | pitch;
+        }
+        Arrays.sort(boundaries, 0, count);
+
+        ChordTimeline timeline = new ChordTimeline();
+        int[] sounding = new int[12];
+        int mask = 0;
+        int i = 0;
+        while (i < count) {
+            long tick = boundaries[i] >>> 8;
+            do {
+                int pitchClass = (int) (boundaries[i] & 0x7F) % 12;
+                if ((boundaries[i] & 0x80) != 0) {
+                    if (sounding[pitchClass]++ == 0) {
+                        mask |= 1 << pitchClass;
+                    }
+                } else if (--sounding[pitchClass] == 0) {
+                    mask &= ~(1 << pitchClass);
+                }
+                i++;
+            } while (i < count && boundaries[i] >>> 8 == tick);
+
+            if (i == count) {
+                timeline.setEndTick(tick);
+            } else {
+                timeline.add(tick, CHORDS[mask]);
+            }
+        }
+        return timeline;
+    }
+}
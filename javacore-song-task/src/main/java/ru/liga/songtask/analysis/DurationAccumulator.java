@@ -0,0 +1,29 @@
+package ru.liga.songtask.analysis;
+
+import ru.liga.songtask.domain.NoteSign;
+import ru.liga.songtask.util.IntIntHistogram;
+import ru.liga.songtask.util.SongUtils;
+
+/**
+ * <b>Количество нот по длительностям</b>
+ * <p>
+ * Во время прохода копит гистограмму длительностей в тиках, в миллисекунды переводит
+ * только различные значения при получении результата. Результат совпадает с
+ * {@code AnalyzeWorker.getDurationAnalyze}.
+ */
+public class DurationAccumulator implements NoteAccumulator<IntIntHistogram> {
+    private final IntIntHistogram ticksToCount = new IntIntHistogram(64);
+
+    @Override
+    public void accept(NoteSign sign, long startTick, long durationTicks) {
+        ticksToCount.add((int) Math.min(durationTicks, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public IntIntHistogram result(AnalysisContext context) {
+        IntIntHistogram durationToCount = new IntIntHistogram(ticksToCount.size());
+        ticksToCount.forEach((ticks, count) -> durationToCount.add(
+                SongUtils.tickToMs(context.getBpm(), context.getResolution(), ticks), count));
+        return durationToCount;
+    }
+}
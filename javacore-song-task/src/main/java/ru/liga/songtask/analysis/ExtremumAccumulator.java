@@ -0,0 +1,33 @@
+package ru.liga.songtask.analysis;
+
+import ru.liga.songtask.domain.NoteSign;
+
+/**
+ * <b>Нижний и верхний экстремумы трека</b>
+ * <p>
+ * Результат совпадает с {@code AnalyzeWorker.getExtremumNoteSigns}: пара {нижняя, верхняя}
+ * или null, если нот не было.
+ */
+public class ExtremumAccumulator implements NoteAccumulator<NoteSign[]> {
+    private int min = Integer.MAX_VALUE;
+    private int max = Integer.MIN_VALUE;
+
+    @Override
+    public void accept(NoteSign sign, long startTick, long durationTicks) {
+        int midi = sign.getMidi();
+        if (midi < min) {
+            min = midi;
+        }
+        if (midi > max) {
+            max = midi;
+        }
+    }
+
+    @Override
+    public NoteSign[] result(AnalysisContext context) {
+        if (min > max) {
+            return null;
+        }
+        return new NoteSign[]{NoteSign.fromMidiNumber(min), NoteSign.fromMidiNumber(max)};
+    }
+}
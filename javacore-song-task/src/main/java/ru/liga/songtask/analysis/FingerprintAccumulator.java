@@ -0,0 +1,29 @@
+package ru.liga.songtask.analysis;
+
+import ru.liga.songtask.domain.NoteBuffer;
+import ru.liga.songtask.domain.NoteSign;
+import ru.liga.songtask.index.MelodyFingerprint;
+
+/**
+ * <b>Термы {@link MelodyFingerprint} трека</b>
+ * <p>
+ * Ноты складываются в {@link NoteBuffer}, список нот строится только для выбранного трека голоса.
+ */
+public class FingerprintAccumulator implements NoteAccumulator<int[]> {
+    /**
+     * Имя, под которым результат регистрируется в {@link AnalysisEngine}
+     */
+    public static final String NAME = "fingerprint";
+
+    private final NoteBuffer notes = new NoteBuffer();
+
+    @Override
+    public void accept(NoteSign sign, long startTick, long durationTicks) {
+        notes.add(sign.getMidi(), startTick, durationTicks);
+    }
+
+    @Override
+    public int[] result(AnalysisContext context) {
+        return MelodyFingerprint.extract(notes.toNotes());
+    }
+}
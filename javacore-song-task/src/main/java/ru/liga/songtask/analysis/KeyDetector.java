@@ -0,0 +1,224 @@
+package ru.liga.songtask.analysis;
+
+import com.leff.midi.MidiFile;
+import com.leff.midi.MidiTrack;
+import ru.liga.songtask.domain.KeyEstimate;
+import ru.liga.songtask.domain.NoteBuffer;
+import ru.liga.songtask.util.SongUtils;
+
+/**
+ * <b>Определение тональности по профилям Крумхансла-Кесслер</b>
+ * <p>
+ * Ноты всех треков, кроме ударных (10-й канал), складываются в профиль из 12 классов высоты,
+ * каждая нота с весом своей длительности. Профиль сравнивается коэффициентом корреляции
+ * Пирсона с 24 эталонными профилями: мажорным и минорным, сдвинутыми на каждую из 12 тоник;
+ * тональность с наибольшей корреляцией и есть оценка.
+ * <p>
+ * Эталонные профили центрированы и нормированы заранее и лежат в одном массиве
+ * {@code double[24 * 12]}, поэтому корреляция с ними - 24 скалярных произведения длины 12
+ * без выделения памяти. Несколько профилей (окна одного файла или файлы корпуса) передаются
+ * одним плоским массивом в {@link #estimateBatch(double[], int)}.
+ */
+public class KeyDetector {
+    public static final int PITCH_CLASSES = 12;
+    public static final int KEYS = 24;
+
+    /**
+     * Профили мажора и минора от тоники C (Krumhansl, Kessler, 1982)
+     */
+    private static final double[] MAJOR_PROFILE = {6.35, 2.23, 3.48, 2.33, 4.38, 4.09, 2.52, 5.19, 2.39, 3.66, 2.29, 2.88};
+    private static final double[] MINOR_PROFILE = {6.33, 2.68, 3.52, 5.38, 2.60, 3.53, 2.54, 4.75, 3.98, 2.69, 3.34, 3.17};
+
+    /**
+     * Центрированные профили единичной длины: тональность k занимает элементы [k * 12, k * 12 + 12)
+     */
+    private static final double[] KEY_PROFILES = new double[KEYS * PITCH_CLASSES];
+
+    static {
+        for (int key = 0; key < KEYS; key++) {
+            double[] profile = key < PITCH_CLASSES ? MAJOR_PROFILE : MINOR_PROFILE;
+            int tonic = key % PITCH_CLASSES;
+            double mean = 0;
+            for (double weight : profile) {
+                mean += weight;
+            }
+            mean /= PITCH_CLASSES;
+            double norm = 0;
+            for (double weight : profile) {
+                norm += (weight - mean) * (weight - mean);
+            }
+            norm = Math.sqrt(norm);
+            for (int pc = 0; pc < PITCH_CLASSES; pc++) {
+                KEY_PROFILES[key * PITCH_CLASSES + pc] = (profile[(pc - tonic + PITCH_CLASSES) % PITCH_CLASSES] - mean) / norm;
+            }
+        }
+    }
+
+    /**
+     * <b>Корреляция профиля со всеми 24 тональностями</b>
+     * <p>
+     * Эталоны центрированы, поэтому скалярное произведение с ними не зависит от среднего
+     * профиля, и центрировать нужно только при вычислении его нормы.
+     *
+     * @param profiles     массив профилей по 12 элементов
+     * @param offset       начало профиля в массиве
+     * @param correlations массив для результата длиной не меньше 24, либо null
+     * @return номер тональности с наибольшей корреляцией (0-11 - мажоры, 12-23 - миноры),
+     * либо -1, если профиль пуст или равномерен
+     */
+    public static int correlate(double[] profiles, int offset, double[] correlations) {
+        double sum = 0;
+        for (int pc = 0; pc < PITCH_CLASSES; pc++) {
+            sum += profiles[offset + pc];
+        }
+        double mean = sum / PITCH_CLASSES;
+        double norm = 0;
+        for (int pc = 0; pc < PITCH_CLASSES; pc++) {
+            double centered = profiles[offset + pc] - mean;
+            norm += centered * centered;
+        }
+        if (norm <= 0) {
+            return -1;
+        }
+        norm = Math.sqrt(norm);
+
+        int best = -1;
+        double bestDot = Double.NEGATIVE_INFINITY;
+        for (int key = 0, k = 0; key < KEYS; key++, k += PITCH_CLASSES) {
+            double dot = 0;
+            for (int pc = 0; pc < PITCH_CLASSES; pc++) {
+                dot += profiles[offset + pc] * KEY_PROFILES[k + pc];
+            }
+            if (correlations != null) {
+                correlations[key] = dot / norm;
+            }
+            if (dot > bestDot) {
+                bestDot = dot;
+                best = key;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * <b>Тональность по профилю классов высоты</b>
+     *
+     * @param profile 12 весов классов высоты, начиная с C
+     * @return оценка, либо null, если профиль пуст или равномерен
+     */
+    public static KeyEstimate estimate(double[] profile) {
+        double[] correlations = new double[KEYS];
+        int best = correlate(profile, 0, correlations);
+        return best < 0 ? null : KeyEstimate.ofIndex(best, correlations[best]);
+    }
+
+    /**
+     * <b>Тональности для набора профилей</b>
+     *
+     * @param profiles профили по 12 элементов подряд
+     * @param count    число профилей
+     * @return оценки в порядке профилей; null для пустых и равномерных профилей
+     */
+    public static KeyEstimate[] estimateBatch(double[] profiles, int count) {
+        if (profiles.length < count * PITCH_CLASSES) {
+            throw new IllegalArgumentException("profiles array holds less than " + count + " profiles");
+        }
+        KeyEstimate[] estimates = new KeyEstimate[count];
+        double[] correlations = new double[KEYS];
+        for (int i = 0; i < count; i++) {
+            int best = correlate(profiles, i * PITCH_CLASSES, correlations);
+            if (best >= 0) {
+                estimates[i] = KeyEstimate.ofIndex(best, correlations[best]);
+            }
+        }
+        return estimates;
+    }
+
+    /**
+     * <b>Тональность midi-файла</b>
+     *
+     * @param midiFile файл для анализа
+     * @return оценка, либо null, если в файле нет звучащих нот вне ударных
+     */
+    public static KeyEstimate estimate(MidiFile midiFile) {
+        return estimate(pitchClassProfile(midiFile));
+    }
+
+    /**
+     * <b>Профиль классов высоты midi-файла</b>
+     *
+     * @param midiFile файл для анализа
+     * @return суммарные длительности в тиках по классам высоты, начиная с C
+     */
+    public static double[] pitchClassProfile(MidiFile midiFile) {
+        double[] profile = new double[PITCH_CLASSES];
+        for (MidiTrack track : midiFile.getTracks()) {
+            SongUtils.forEachNote(track.getEvents(), (channel, noteValue, velocity, startTick, durationTicks) -> {
+                if (channel != SongUtils.DRUM_CHANNEL) {
+                    profile[noteValue % PITCH_CLASSES] += durationTicks;
+                }
+            });
+        }
+        return profile;
+    }
+
+    /**
+     * <b>Тональности midi-файла в скользящих окнах</b>
+     *
+     * @param midiFile    файл для анализа
+     * @param windowTicks длина окна в тиках
+     * @param hopTicks    шаг окна в тиках
+     * @return оценки окон, см. {@link #estimateWindows(NoteBuffer, long, long)}
+     */
+    public static KeyEstimate[] estimateWindows(MidiFile midiFile, long windowTicks, long hopTicks) {
+        return estimateWindows(SongUtils.getPitchedNotes(midiFile), windowTicks, hopTicks);
+    }
+
+    /**
+     * <b>Тональности в скользящих окнах</b>
+     * <p>
+     * Окно i - полуинтервал [i * hopTicks, i * hopTicks + windowTicks); нота входит в окно
+     * с весом длины своей части внутри окна. Окна идут до последнего, в которое попадает
+     * конец самой поздней ноты. Смена тональности между окнами указывает на модуляцию.
+     *
+     * @param notes       ноты в любом порядке
+     * @param windowTicks длина окна в тиках
+     * @param hopTicks    шаг окна в тиках
+     * @return оценки окон по порядку; null для окон без звучащих нот
+     */
+    public static KeyEstimate[] estimateWindows(NoteBuffer notes, long windowTicks, long hopTicks) {
+        if (windowTicks <= 0 || hopTicks <= 0) {
+            throw new IllegalArgumentException("window and hop must be positive: " + windowTicks + ", " + hopTicks);
+        }
+        long lastEnd = 0;
+        for (int i = 0; i < notes.size(); i++) {
+            lastEnd = Math.max(lastEnd, notes.endTick(i));
+        }
+        if (lastEnd == 0) {
+            return new KeyEstimate[0];
+        }
+        long windows = lastEnd <= windowTicks ? 1 : (lastEnd - windowTicks + hopTicks - 1) / hopTicks + 1;
+        if (windows * PITCH_CLASSES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many windows: " + windows);
+        }
+        int count = (int) windows;
+
+        double[] profiles = new double[count * PITCH_CLASSES];
+        for (int i = 0; i < notes.size(); i++) {
+            long start = notes.startTick(i);
+            long end = notes.endTick(i);
+            if (end <= start) {
+                continue;
+            }
+            int pc = notes.midi(i) % PITCH_CLASSES;
+            long first = start < windowTicks ? 0 : (start - windowTicks) / hopTicks + 1;
+            long last = Math.min(count - 1, (end - 1) / hopTicks);
+            for (long w = first; w <= last; w++) {
+                long from = w * hopTicks;
+                long overlap = Math.min(end, from + windowTicks) - Math.max(start, from);
+                profiles[(int) w * PITCH_CLASSES + pc] += overlap;
+            }
+        }
+        return estimateBatch(profiles, count);
+    }
+}
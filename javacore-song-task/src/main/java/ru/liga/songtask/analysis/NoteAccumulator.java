@@ -0,0 +1,31 @@
+package ru.liga.songtask.analysis;
+
+import ru.liga.songtask.domain.NoteSign;
+
+/**
+ * <b>Накопитель статистики по нотам одного трека</b>
+ * <p>
+ * {@link AnalysisEngine} создаёт отдельный экземпляр на каждый трек и передаёт ему ноты
+ * по мере их извлечения из событий, без построения списка нот.
+ *
+ * @param <R> тип результата
+ */
+public interface NoteAccumulator<R> {
+
+    /**
+     * <b>Учесть ноту</b>
+     *
+     * @param sign          нотный знак
+     * @param startTick     тик начала ноты
+     * @param durationTicks длительность ноты в тиках
+     */
+    void accept(NoteSign sign, long startTick, long durationTicks);
+
+    /**
+     * <b>Получить результат</b> - вызывается только для выбранного трека голоса.
+     *
+     * @param context параметры анализируемого файла
+     * @return накопленный результат
+     */
+    R result(AnalysisContext context);
+}
@@ -0,0 +1,23 @@
+package ru.liga.songtask.analysis;
+
+import ru.liga.songtask.domain.NoteSign;
+import ru.liga.songtask.util.PitchHistogram;
+
+/**
+ * <b>Количество вхождений каждой ноты</b>
+ * <p>
+ * Результат совпадает с {@code AnalyzeWorker.getNumberOfNotes}.
+ */
+public class NoteCountAccumulator implements NoteAccumulator<PitchHistogram> {
+    private final PitchHistogram pitches = new PitchHistogram();
+
+    @Override
+    public void accept(NoteSign sign, long startTick, long durationTicks) {
+        pitches.add(sign.getMidi());
+    }
+
+    @Override
+    public PitchHistogram result(AnalysisContext context) {
+        return pitches;
+    }
+}
@@ -0,0 +1,42 @@
+package ru.liga.songtask.analysis;
+
+import ru.liga.songtask.domain.NoteSign;
+import ru.liga.songtask.domain.NoteStatistics;
+import ru.liga.songtask.util.QuantileSketch;
+
+/**
+ * <b>Квантильная статистика нот трека</b>
+ * <p>
+ * Длительности копятся в тиках и переводятся в миллисекунды при получении результата
+ * умножением всего скетча, без округления, как у {@code SongUtils.tickToMs}. Интервал
+ * берётся между соседними нотами в порядке их поступления - для трека голоса это порядок
+ * звучания. Темп файла попадает в статистику одним значением.
+ */
+public class NoteStatisticsAccumulator implements NoteAccumulator<NoteStatistics> {
+    /**
+     * Имя, под которым результат регистрируется в {@link AnalysisEngine}
+     */
+    public static final String NAME = "statistics";
+
+    private final QuantileSketch durationTicks = new QuantileSketch();
+    private final QuantileSketch intervals = new QuantileSketch();
+    private int previousMidi = -1;
+
+    @Override
+    public void accept(NoteSign sign, long startTick, long durationTicks) {
+        this.durationTicks.add(durationTicks);
+        int midi = sign.getMidi();
+        if (previousMidi >= 0) {
+            intervals.add(Math.abs(midi - previousMidi));
+        }
+        previousMidi = midi;
+    }
+
+    @Override
+    public NoteStatistics result(AnalysisContext context) {
+        double msPerTick = 60 * 1000 / (context.getBpm() * context.getResolution());
+        QuantileSketch tempos = new QuantileSketch();
+        tempos.add(context.getBpm());
+        return new NoteStatistics(durationTicks.scaled(msPerTick), intervals.copy(), tempos);
+    }
+}
@@ -0,0 +1,23 @@
+package ru.liga.songtask.analysis;
+
+import ru.liga.songtask.domain.NoteSign;
+
+/**
+ * <b>Суммарная длительность звучания по высоте ноты</b>
+ * <p>
+ * Результат - {@code long[128]}, индекс - midi-номер, значение - сумма длительностей в тиках.
+ * Нужен для подбора транспонирования, см. {@code TranspositionSolver}.
+ */
+public class PitchDurationAccumulator implements NoteAccumulator<long[]> {
+    private final long[] ticksByPitch = new long[128];
+
+    @Override
+    public void accept(NoteSign sign, long startTick, long durationTicks) {
+        ticksByPitch[sign.getMidi()] += durationTicks;
+    }
+
+    @Override
+    public long[] result(AnalysisContext context) {
+        return ticksByPitch.clone();
+    }
+}
@@ -0,0 +1,164 @@
+package ru.liga.songtask.domain;
+
+import ru.liga.songtask.util.IntIntHistogram;
+import ru.liga.songtask.util.PitchHistogram;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <b>Результат анализа midi-файла</b>
+ * <p>
+ * Трек голоса, его экстремумы и диапазон, количество нот по длительностям и по высоте,
+ * тональность всего файла, а также результаты дополнительных накопителей по их именам.
+ */
+public class AnalysisReport {
+    private final int voiceTrackIndex;
+    private final int voiceTrackNoteCount;
+    private final long textEventCount;
+    private final NoteSign[] extremum;
+    private final Integer range;
+    private final IntIntHistogram durations;
+    private final PitchHistogram pitches;
+    private final Map<String, Object> extras;
+    private final double[] pitchClassProfile;
+    private final KeyEstimate key;
+
+    public AnalysisReport(int voiceTrackIndex, int voiceTrackNoteCount, long textEventCount,
+                          NoteSign[] extremum, Integer range,
+                          IntIntHistogram durations,
+                          PitchHistogram pitches,
+                          Map<String, Object> extras) {
+        this(voiceTrackIndex, voiceTrackNoteCount, textEventCount, extremum, range, durations, pitches, extras,
+                new double[12], null);
+    }
+
+    public AnalysisReport(int voiceTrackIndex, int voiceTrackNoteCount, long textEventCount,
+                          NoteSign[] extremum, Integer range,
+                          IntIntHistogram durations,
+                          PitchHistogram pitches,
+                          Map<String, Object> extras,
+                          double[] pitchClassProfile,
+                          KeyEstimate key) {
+        this.voiceTrackIndex = voiceTrackIndex;
+        this.voiceTrackNoteCount = voiceTrackNoteCount;
+        this.textEventCount = textEventCount;
+        this.extremum = extremum;
+        this.range = range;
+        this.durations = durations;
+        this.pitches = pitches;
+        this.extras = Collections.unmodifiableMap(extras);
+        this.pitchClassProfile = pitchClassProfile;
+        this.key = key;
+    }
+
+    /**
+     * <b>Отчёт для файла без трека голоса</b>
+     *
+     * @param textEventCount число текстовых событий в файле
+     * @return отчёт, в котором {@link #hasVoiceTrack()} = false
+     */
+    public static AnalysisReport withoutVoiceTrack(long textEventCount) {
+        return new AnalysisReport(-1, 0, textEventCount, null, null,
+                new IntIntHistogram(), new PitchHistogram(), Collections.emptyMap());
+    }
+
+    /**
+     * <b>Отчёт для файла без трека голоса, но с тональностью</b>
+     *
+     * @param textEventCount    число текстовых событий в файле
+     * @param pitchClassProfile профиль классов высоты всех треков
+     * @param key               тональность, либо null
+     * @return отчёт, в котором {@link #hasVoiceTrack()} = false
+     */
+    public static AnalysisReport withoutVoiceTrack(long textEventCount, double[] pitchClassProfile, KeyEstimate key) {
+        return new AnalysisReport(-1, 0, textEventCount, null, null,
+                new IntIntHistogram(), new PitchHistogram(), Collections.emptyMap(), pitchClassProfile, key);
+    }
+
+    public boolean hasVoiceTrack() {
+        return voiceTrackIndex >= 0;
+    }
+
+    /**
+     * @return индекс трека голоса в {@code midiFile.getTracks()}, либо -1
+     */
+    public int getVoiceTrackIndex() {
+        return voiceTrackIndex;
+    }
+
+    public int getVoiceTrackNoteCount() {
+        return voiceTrackNoteCount;
+    }
+
+    public long getTextEventCount() {
+        return textEventCount;
+    }
+
+    public NoteSign[] getExtremum() {
+        return extremum;
+    }
+
+    public Integer getRange() {
+        return range;
+    }
+
+    /**
+     * @return HashMap длительность в ms\число нот, как в {@code AnalyzeWorker.getDurationAnalyze}
+     */
+    public HashMap<Integer, Integer> getDurations() {
+        return durations.toHashMap();
+    }
+
+    /**
+     * @return HashMap нотный знак\число вхождений, как в {@code AnalyzeWorker.getNumberOfNotes}
+     */
+    public HashMap<NoteSign, Integer> getNumberOfNotes() {
+        return pitches.toNoteSignMap();
+    }
+
+    /**
+     * @return гистограмма длительностей в ms, пригодная для объединения с другими
+     */
+    public IntIntHistogram getDurationHistogram() {
+        return durations;
+    }
+
+    /**
+     * @return гистограмма высот нот, пригодная для объединения с другими
+     */
+    public PitchHistogram getPitchHistogram() {
+        return pitches;
+    }
+
+    /**
+     * @return длительности нот всех треков, кроме ударных, в тиках по классам высоты от C;
+     * не изменять
+     */
+    public double[] getPitchClassProfile() {
+        return pitchClassProfile;
+    }
+
+    /**
+     * @return тональность всего файла, либо null, если звучащих нот нет
+     */
+    public KeyEstimate getKey() {
+        return key;
+    }
+
+    /**
+     * <b>Результат дополнительного накопителя</b>
+     *
+     * @param name имя, под которым накопитель зарегистрирован в движке
+     * @return результат, либо null, если накопителя с таким именем нет
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getExtra(String name) {
+        return (T) extras.get(name);
+    }
+
+    public Map<String, Object> getExtras() {
+        return extras;
+    }
+}
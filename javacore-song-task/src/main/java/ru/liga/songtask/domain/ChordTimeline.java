@@ -0,0 +1,155 @@
+package ru.liga.songtask.domain;
+
+import java.util.Arrays;
+
+/**
+ * <b>Последовательность аккордов во времени</b>
+ * <p>
+ * Отрезки идут подряд без промежутков: отрезок i длится от своего начала до начала
+ * следующего, последний - до {@link #getEndTick()}. Соседние отрезки всегда отличаются
+ * аккордом. Аккорд хранится кодом {@code основной тон * 16 + вид}; {@link #NO_CHORD}
+ * означает тишину или созвучие, не похожее ни на один аккорд.
+ */
+public class ChordTimeline {
+    public static final int NO_CHORD = -1;
+
+    /**
+     * Обозначения видов аккорда, индекс - вид в коде аккорда
+     */
+    public static final String[] QUALITY_SUFFIXES = {"", "m", "dim", "aug", "sus2", "sus4", "7", "maj7", "m7", "m7b5", "dim7", "5"};
+    private static final String[] ROOT_NAMES = {"C", "C#", "D", "D#", "E", "F", "F#", "G", "G#", "A", "A#", "H"};
+
+    private long[] startTicks = new long[16];
+    private int[] chords = new int[16];
+    private int size;
+    private long endTick;
+
+    /**
+     * <b>Добавить смену аккорда</b>
+     *
+     * @param tick  тик смены, не меньше предыдущего
+     * @param chord код аккорда или {@link #NO_CHORD}
+     */
+    public void add(long tick, int chord) {
+        if (size > 0 && tick < startTicks[size - 1]) {
+            throw new IllegalArgumentException("tick " + tick + " is before " + startTicks[size - 1]);
+        }
+        if (size > 0 && chords[size - 1] == chord) {
+            return;
+        }
+        if (size > 0 && startTicks[size - 1] == tick) {
+            // нулевой отрезок заменяется, но соседние отрезки по-прежнему должны различаться
+            size--;
+            if (size > 0 && chords[size - 1] == chord) {
+                return;
+            }
+        }
+        if (size == chords.length) {
+            startTicks = Arrays.copyOf(startTicks, size * 2);
+            chords = Arrays.copyOf(chords, size * 2);
+        }
+        startTicks[size] = tick;
+        chords[size] = chord;
+        size++;
+    }
+
+    /**
+     * @param tick тик окончания последнего отрезка
+     */
+    public void setEndTick(long tick) {
+        endTick = tick;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getEndTick() {
+        return endTick;
+    }
+
+    public long startTick(int index) {
+        checkIndex(index);
+        return startTicks[index];
+    }
+
+    public long endTick(int index) {
+        checkIndex(index);
+        return index + 1 < size ? startTicks[index + 1] : endTick;
+    }
+
+    public int chord(int index) {
+        checkIndex(index);
+        return chords[index];
+    }
+
+    public String name(int index) {
+        return chordName(chord(index));
+    }
+
+    /**
+     * <b>Аккорд в заданный тик</b>
+     *
+     * @param tick тик
+     * @return код аккорда; {@link #NO_CHORD} до первого и после последнего отрезка
+     */
+    public int chordAt(long tick) {
+        if (size == 0 || tick < startTicks[0] || tick >= endTick) {
+            return NO_CHORD;
+        }
+        int lo = 0;
+        int hi = size - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (startTicks[mid] <= tick) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return chords[lo];
+    }
+
+    /**
+     * @param root    основной тон 0-11
+     * @param quality вид, индекс в {@link #QUALITY_SUFFIXES}
+     * @return код аккорда
+     */
+    public static int chordCode(int root, int quality) {
+        return root * 16 + quality;
+    }
+
+    public static int root(int chord) {
+        return chord / 16;
+    }
+
+    public static int quality(int chord) {
+        return chord % 16;
+    }
+
+    /**
+     * @param chord код аккорда
+     * @return название, например "F#m7", или "N.C." для {@link #NO_CHORD}
+     */
+    public static String chordName(int chord) {
+        return chord == NO_CHORD ? "N.C." : ROOT_NAMES[root(chord)] + QUALITY_SUFFIXES[quality(chord)];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                s.append(", ");
+            }
+            s.append('{').append(name(i)).append(", S|").append(startTicks[i]).append('}');
+        }
+        return s.append(']').toString();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
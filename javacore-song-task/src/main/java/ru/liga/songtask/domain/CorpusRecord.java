@@ -0,0 +1,72 @@
+package ru.liga.songtask.domain;
+
+import java.nio.file.Path;
+
+/**
+ * <b>Результат анализа одного файла корпуса</b>
+ * <p>
+ * Либо отчёт, либо описание ошибки - ошибка в одном файле не прерывает обработку остальных.
+ */
+public class CorpusRecord {
+    private final Path file;
+    private final AnalysisReport report;
+    private final FileMetadata metadata;
+    private final String error;
+    private final long elapsedNanos;
+
+    private CorpusRecord(Path file, AnalysisReport report, FileMetadata metadata, String error, long elapsedNanos) {
+        this.file = file;
+        this.report = report;
+        this.metadata = metadata;
+        this.error = error;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public static CorpusRecord success(Path file, AnalysisReport report, long elapsedNanos) {
+        return success(file, report, null, elapsedNanos);
+    }
+
+    public static CorpusRecord success(Path file, AnalysisReport report, FileMetadata metadata, long elapsedNanos) {
+        return new CorpusRecord(file, report, metadata, null, elapsedNanos);
+    }
+
+    public static CorpusRecord failure(Path file, Throwable error, long elapsedNanos) {
+        String message = error.getMessage() == null
+                ? error.getClass().getSimpleName()
+                : error.getClass().getSimpleName() + ": " + error.getMessage();
+        return new CorpusRecord(file, null, null, message, elapsedNanos);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public boolean isSuccess() {
+        return report != null;
+    }
+
+    /**
+     * @return отчёт, либо null, если файл не удалось проанализировать
+     */
+    public AnalysisReport getReport() {
+        return report;
+    }
+
+    /**
+     * @return сводка по файлу, либо null, если она не собиралась или файл не проанализирован
+     */
+    public FileMetadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * @return описание ошибки, либо null при успешном анализе
+     */
+    public String getError() {
+        return error;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+}
@@ -0,0 +1,184 @@
+package ru.liga.songtask.domain;
+
+import com.leff.midi.MidiFile;
+import com.leff.midi.MidiTrack;
+import com.leff.midi.event.MidiEvent;
+import com.leff.midi.event.meta.Tempo;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+/**
+ * <b>Сводка по одному файлу корпуса</b>
+ * <p>
+ * Поля заголовка midi-файла и итоги анализа фиксированного размера, из которых строится
+ * {@code MetadataIndex}. Для файла без трека голоса нижняя и верхняя ноты, диапазон и число
+ * нот равны -1, для файла без тональности ключ тональности равен -1.
+ */
+public class FileMetadata {
+    public static final int NONE = -1;
+
+    private final String name;
+    private final long contentHash;
+    private final float bpm;
+    private final int resolution;
+    private final int trackCount;
+    private final long lengthTicks;
+    private final long lengthMs;
+    private final int lowest;
+    private final int highest;
+    private final int range;
+    private final int noteCount;
+    private final int key;
+
+    public FileMetadata(String name, long contentHash, float bpm, int resolution, int trackCount,
+                        long lengthTicks, long lengthMs, int lowest, int highest, int range, int noteCount, int key) {
+        this.name = name;
+        this.contentHash = contentHash;
+        this.bpm = bpm;
+        this.resolution = resolution;
+        this.trackCount = trackCount;
+        this.lengthTicks = lengthTicks;
+        this.lengthMs = lengthMs;
+        this.lowest = lowest;
+        this.highest = highest;
+        this.range = range;
+        this.noteCount = noteCount;
+        this.key = key;
+    }
+
+    /**
+     * <b>Сводка по разобранному и проанализированному файлу</b>
+     * <p>
+     * Темп - первое событие Tempo нулевого трека, либо 120, как в {@code AnalysisEngine};
+     * длина в миллисекундах считается по этому темпу.
+     *
+     * @param name     имя файла в корпусе
+     * @param content  байты файла, по ним считается хэш содержимого
+     * @param midiFile разобранный файл
+     * @param report   отчёт анализа этого файла
+     * @return сводка
+     */
+    public static FileMetadata of(String name, byte[] content, MidiFile midiFile, AnalysisReport report) {
+        float bpm = Tempo.DEFAULT_BPM;
+        if (!midiFile.getTracks().isEmpty()) {
+            for (MidiEvent event : midiFile.getTracks().get(0).getEvents()) {
+                if (event instanceof Tempo) {
+                    bpm = ((Tempo) event).getBpm();
+                    break;
+                }
+            }
+        }
+        long lengthTicks = 0;
+        for (MidiTrack track : midiFile.getTracks()) {
+            lengthTicks = Math.max(lengthTicks, track.getLengthInTicks());
+        }
+        long lengthMs = (long) (60 * 1000 / (bpm * midiFile.getResolution()) * lengthTicks);
+
+        int lowest = NONE;
+        int highest = NONE;
+        int range = NONE;
+        int noteCount = NONE;
+        if (report.hasVoiceTrack()) {
+            lowest = report.getExtremum()[0].getMidi();
+            highest = report.getExtremum()[1].getMidi();
+            range = report.getRange();
+            noteCount = report.getVoiceTrackNoteCount();
+        }
+        int key = report.getKey() == null ? NONE : report.getKey().getIndex();
+        return new FileMetadata(name, contentHash(content), bpm, midiFile.getResolution(),
+                midiFile.getTracks().size(), lengthTicks, lengthMs, lowest, highest, range, noteCount, key);
+    }
+
+    /**
+     * @param content байты файла
+     * @return первые 8 байт SHA-256 содержимого
+     */
+    public static long contentHash(byte[] content) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 обязан поддерживаться любой реализацией Java
+            throw new IllegalStateException(e);
+        }
+        byte[] hash = digest.digest(content);
+        long result = 0;
+        for (int i = 0; i < 8; i++) {
+            result = (result << 8) | (hash[i] & 0xFF);
+        }
+        return result;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    public float getBpm() {
+        return bpm;
+    }
+
+    public int getResolution() {
+        return resolution;
+    }
+
+    public int getTrackCount() {
+        return trackCount;
+    }
+
+    public long getLengthTicks() {
+        return lengthTicks;
+    }
+
+    public long getLengthMs() {
+        return lengthMs;
+    }
+
+    /**
+     * @return midi-номер нижней ноты голоса, либо {@link #NONE}
+     */
+    public int getLowest() {
+        return lowest;
+    }
+
+    /**
+     * @return midi-номер верхней ноты голоса, либо {@link #NONE}
+     */
+    public int getHighest() {
+        return highest;
+    }
+
+    /**
+     * @return диапазон голоса в полутонах, либо {@link #NONE}
+     */
+    public int getRange() {
+        return range;
+    }
+
+    /**
+     * @return число нот голоса, либо {@link #NONE}
+     */
+    public int getNoteCount() {
+        return noteCount;
+    }
+
+    /**
+     * @return {@link KeyEstimate#getIndex()} тональности, либо {@link #NONE}
+     */
+    public int getKey() {
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        String voice = range == NONE ? "-"
+                : NoteSign.fromMidiNumber(lowest).fullName() + "-" + NoteSign.fromMidiNumber(highest).fullName();
+        return String.format(Locale.ROOT, "{%s, bpm|%.1f, ms|%d, voice|%s, key|%s}", name, bpm, lengthMs, voice,
+                key == NONE ? "-" : KeyEstimate.ofIndex(key, 0).getName());
+    }
+}
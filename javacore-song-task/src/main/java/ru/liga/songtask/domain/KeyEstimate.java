@@ -0,0 +1,79 @@
+package ru.liga.songtask.domain;
+
+import java.util.Locale;
+
+/**
+ * <b>Оценка тональности</b>
+ * <p>
+ * Тоника - класс высоты 0-11 (0 = C, 11 = H), лад - мажор или минор, и коэффициент
+ * корреляции распределения нот с профилем этой тональности (от -1 до 1): чем он ближе к 1,
+ * тем увереннее оценка.
+ */
+public class KeyEstimate {
+    private static final String[] TONIC_NAMES = {"C", "C#", "D", "D#", "E", "F", "F#", "G", "G#", "A", "A#", "H"};
+
+    private final int tonic;
+    private final boolean major;
+    private final double correlation;
+
+    public KeyEstimate(int tonic, boolean major, double correlation) {
+        if (tonic < 0 || tonic > 11) {
+            throw new IllegalArgumentException("tonic must be 0-11: " + tonic);
+        }
+        this.tonic = tonic;
+        this.major = major;
+        this.correlation = correlation;
+    }
+
+    /**
+     * <b>Оценка по номеру тональности</b>
+     *
+     * @param index       номер тональности: 0-11 - мажоры от C, 12-23 - миноры от C
+     * @param correlation коэффициент корреляции
+     * @return оценка
+     */
+    public static KeyEstimate ofIndex(int index, double correlation) {
+        return new KeyEstimate(index % 12, index < 12, correlation);
+    }
+
+    /**
+     * @return класс высоты тоники 0-11
+     */
+    public int getTonic() {
+        return tonic;
+    }
+
+    public boolean isMajor() {
+        return major;
+    }
+
+    public double getCorrelation() {
+        return correlation;
+    }
+
+    /**
+     * @return номер тональности: 0-11 - мажоры от C, 12-23 - миноры от C
+     */
+    public int getIndex() {
+        return major ? tonic : tonic + 12;
+    }
+
+    /**
+     * @return название тоники в нотации {@link NoteSign}, например "F#"
+     */
+    public String getTonicName() {
+        return TONIC_NAMES[tonic];
+    }
+
+    /**
+     * @return название тональности, например "A minor"
+     */
+    public String getName() {
+        return TONIC_NAMES[tonic] + (major ? " major" : " minor");
+    }
+
+    @Override
+    public String toString() {
+        return "{" + getName() + ", r|" + String.format(Locale.ROOT, "%.3f", correlation) + '}';
+    }
+}
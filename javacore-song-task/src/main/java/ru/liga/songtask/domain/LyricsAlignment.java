@@ -0,0 +1,85 @@
+package ru.liga.songtask.domain;
+
+import java.util.Locale;
+
+/**
+ * <b>Сопоставление слогов текста нотам трека</b>
+ * <p>
+ * Для каждого слога хранится его тик, текст и номер ноты трека, взятой в пределах допуска от
+ * слога, либо {@link #UNMATCHED}. Каждая нота сопоставлена не более чем одному слогу.
+ */
+public class LyricsAlignment {
+    public static final int UNMATCHED = -1;
+
+    private final long[] ticks;
+    private final String[] syllables;
+    private final int[] noteIndexes;
+    private final int noteCount;
+    private final int matched;
+
+    public LyricsAlignment(long[] ticks, String[] syllables, int[] noteIndexes, int noteCount, int matched) {
+        this.ticks = ticks;
+        this.syllables = syllables;
+        this.noteIndexes = noteIndexes;
+        this.noteCount = noteCount;
+        this.matched = matched;
+    }
+
+    /**
+     * <b>Оценка совпадения слогов и нот</b>
+     * <p>
+     * Удвоенное число совпавших пар, делённое на сумму числа слогов и нот: 1 - каждый слог
+     * приходится на свою ноту и лишних нот нет, 0 - совпадений нет.
+     *
+     * @param matched   совпавших пар
+     * @param syllables число слогов
+     * @param notes     число нот
+     * @return оценка от 0 до 1
+     */
+    public static double score(int matched, int syllables, int notes) {
+        return syllables + notes == 0 ? 0 : 2.0 * matched / (syllables + notes);
+    }
+
+    /**
+     * @return число слогов
+     */
+    public int size() {
+        return ticks.length;
+    }
+
+    public long tick(int index) {
+        return ticks[index];
+    }
+
+    public String syllable(int index) {
+        return syllables[index];
+    }
+
+    /**
+     * @return номер ноты в треке, либо {@link #UNMATCHED}
+     */
+    public int noteIndex(int index) {
+        return noteIndexes[index];
+    }
+
+    public int getNoteCount() {
+        return noteCount;
+    }
+
+    /**
+     * @return число слогов, сопоставленных нотам
+     */
+    public int getMatched() {
+        return matched;
+    }
+
+    public double getScore() {
+        return score(matched, ticks.length, noteCount);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "{syllables|%d, notes|%d, matched|%d, score|%.3f}",
+                ticks.length, noteCount, matched, getScore());
+    }
+}
@@ -0,0 +1,122 @@
+package ru.liga.songtask.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <b>Упакованный список нот</b>
+ * <p>
+ * Хранит ноты в параллельных массивах примитивов: тик начала, длительность и midi-номер.
+ * Одна нота занимает 17 байт против трёх объектов у {@link Note}, обход не разыменовывает
+ * ссылок. Порядок нот совпадает с порядком добавления.
+ */
+public class NoteBuffer {
+    private long[] startTicks;
+    private long[] durationTicks;
+    private byte[] pitches;
+    private int size;
+
+    public NoteBuffer() {
+        this(64);
+    }
+
+    /**
+     * @param capacity начальная ёмкость
+     */
+    public NoteBuffer(int capacity) {
+        capacity = Math.max(1, capacity);
+        startTicks = new long[capacity];
+        durationTicks = new long[capacity];
+        pitches = new byte[capacity];
+    }
+
+    /**
+     * <b>Упаковать список нот</b>
+     *
+     * @param notes ноты; NULL_VALUE сохраняется как midi-номер 0
+     * @return буфер с теми же нотами в том же порядке
+     */
+    public static NoteBuffer of(List<Note> notes) {
+        NoteBuffer buffer = new NoteBuffer(notes.size());
+        for (Note note : notes) {
+            buffer.add(note.sign().getMidi(), note.startTick(), note.durationTicks());
+        }
+        return buffer;
+    }
+
+    /**
+     * @param midi          midi-номер ноты 0-127
+     * @param startTick     тик начала
+     * @param durationTicks длительность в тиках
+     */
+    public void add(int midi, long startTick, long durationTicks) {
+        if (size == pitches.length) {
+            int capacity = size * 2;
+            startTicks = Arrays.copyOf(startTicks, capacity);
+            this.durationTicks = Arrays.copyOf(this.durationTicks, capacity);
+            pitches = Arrays.copyOf(pitches, capacity);
+        }
+        startTicks[size] = startTick;
+        this.durationTicks[size] = durationTicks;
+        pitches[size] = (byte) midi;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long startTick(int index) {
+        checkIndex(index);
+        return startTicks[index];
+    }
+
+    public long durationTicks(int index) {
+        checkIndex(index);
+        return durationTicks[index];
+    }
+
+    public long endTick(int index) {
+        checkIndex(index);
+        return startTicks[index] + durationTicks[index];
+    }
+
+    public int midi(int index) {
+        checkIndex(index);
+        return pitches[index];
+    }
+
+    public NoteSign sign(int index) {
+        return NoteSign.fromMidiNumber(midi(index));
+    }
+
+    public Note get(int index) {
+        return new Note(sign(index), startTick(index), durationTicks(index));
+    }
+
+    /**
+     * @return ноты в виде объектов {@link Note}, для кода, работающего со списками
+     */
+    public List<Note> toNotes() {
+        List<Note> notes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            notes.add(get(i));
+        }
+        return notes;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
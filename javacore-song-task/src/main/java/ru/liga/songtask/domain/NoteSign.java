@@ -1,8 +1,8 @@
 package ru.liga.songtask.domain;
 
 
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.stream.Stream;
 
 
 /**
@@ -129,19 +129,81 @@ public enum NoteSign {
         this.midi = midi;
     }
 
+    /**
+     * Нотные знаки по midi-номеру, для номеров без знака - NULL_VALUE
+     */
+    private static final NoteSign[] BY_MIDI = new NoteSign[128];
+
+    /**
+     * Все нотные знаки (включая NULL_VALUE) и их частоты в порядке возрастания частоты
+     */
+    private static final NoteSign[] BY_FREQUENCY;
+    private static final double[] FREQUENCIES;
+
+    static {
+        Arrays.fill(BY_MIDI, NULL_VALUE);
+        for (NoteSign sign : values()) {
+            if (sign != NULL_VALUE) {
+                BY_MIDI[sign.midi] = sign;
+            }
+        }
+        BY_FREQUENCY = values().clone();
+        Arrays.sort(BY_FREQUENCY, Comparator.comparingDouble(NoteSign::getFrequencyHz));
+        FREQUENCIES = new double[BY_FREQUENCY.length];
+        for (int i = 0; i < BY_FREQUENCY.length; i++) {
+            FREQUENCIES[i] = BY_FREQUENCY[i].frequency_hz;
+        }
+    }
+
+    /**
+     * <b>Ближайший по частоте нотный знак</b>
+     * <p>
+     * Двоичный поиск по отсортированным частотам; при равном удалении выбирается более высокая нота.
+     *
+     * @param pitchInHz частота в Hz
+     * @return ближайший нотный знак
+     */
     public static NoteSign fromFrequency(float pitchInHz) {
-        return Stream.of(values())
-                .min(Comparator.comparingDouble(n -> Math.abs(n.frequency_hz - pitchInHz)))
-                .get();
+        int index = Arrays.binarySearch(FREQUENCIES, pitchInHz);
+        if (index >= 0) {
+            return BY_FREQUENCY[index];
+        }
+        int upper = -index - 1;
+        if (upper == 0) {
+            return BY_FREQUENCY[0];
+        }
+        if (upper == FREQUENCIES.length) {
+            return BY_FREQUENCY[upper - 1];
+        }
+        double below = Math.abs(FREQUENCIES[upper - 1] - pitchInHz);
+        double above = Math.abs(FREQUENCIES[upper] - pitchInHz);
+        return above <= below ? BY_FREQUENCY[upper] : BY_FREQUENCY[upper - 1];
     }
 
     public static NoteSign fromMidiNumber(Integer midiNumber) {
-        return Stream.of(values())
-                .filter(value -> value.getMidi().equals(midiNumber))
-                .findFirst()
-                .orElse(NULL_VALUE);
+        return midiNumber == null ? NULL_VALUE : fromMidiNumber(midiNumber.intValue());
+    }
+
+    /**
+     * @param midiNumber номер ноты в миди формате
+     * @return нотный знак, либо NULL_VALUE, если такого знака нет
+     */
+    public static NoteSign fromMidiNumber(int midiNumber) {
+        return midiNumber >= 0 && midiNumber < BY_MIDI.length ? BY_MIDI[midiNumber] : NULL_VALUE;
     }
 
+    /**
+     * @param fullName имя ноты с октавой, например "G#3"
+     * @return нотный знак, либо NULL_VALUE, если такого знака нет
+     */
+    public static NoteSign fromFullName(String fullName) {
+        for (NoteSign sign : BY_MIDI) {
+            if (sign != NULL_VALUE && sign.fullName().equalsIgnoreCase(fullName)) {
+                return sign;
+            }
+        }
+        return NULL_VALUE;
+    }
 
     public Integer getMidi() {
         return midi;
@@ -0,0 +1,99 @@
+package ru.liga.songtask.domain;
+
+import ru.liga.songtask.util.QuantileSketch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * <b>Распределения длительностей, интервалов и темпов</b>
+ * <p>
+ * Квантильные скетчи фиксированного размера: длительности нот голоса в миллисекундах,
+ * мелодические интервалы между соседними нотами голоса в полутонах (по модулю) и темпы файлов
+ * в bpm. Статистика одного файла и статистика корпуса - один и тот же объект, корпусная
+ * получается объединением файловых через {@link #merge(NoteStatistics)}.
+ */
+public class NoteStatistics {
+    private final QuantileSketch durations;
+    private final QuantileSketch intervals;
+    private final QuantileSketch tempos;
+
+    public NoteStatistics() {
+        this(new QuantileSketch(), new QuantileSketch(), new QuantileSketch());
+    }
+
+    public NoteStatistics(QuantileSketch durations, QuantileSketch intervals, QuantileSketch tempos) {
+        this.durations = durations;
+        this.intervals = intervals;
+        this.tempos = tempos;
+    }
+
+    /**
+     * @return длительности нот, мс
+     */
+    public QuantileSketch getDurations() {
+        return durations;
+    }
+
+    /**
+     * @return интервалы между соседними нотами, полутонов
+     */
+    public QuantileSketch getIntervals() {
+        return intervals;
+    }
+
+    /**
+     * @return темпы файлов, bpm
+     */
+    public QuantileSketch getTempos() {
+        return tempos;
+    }
+
+    /**
+     * <b>Добавить статистику другого файла или обработчика</b>
+     *
+     * @param other частичная статистика; сама не изменяется
+     * @return эта же статистика
+     */
+    public NoteStatistics merge(NoteStatistics other) {
+        durations.merge(other.durations);
+        intervals.merge(other.intervals);
+        tempos.merge(other.tempos);
+        return this;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        durations.writeTo(out);
+        intervals.writeTo(out);
+        tempos.writeTo(out);
+    }
+
+    public static NoteStatistics readFrom(DataInput in) throws IOException {
+        return new NoteStatistics(QuantileSketch.readFrom(in), QuantileSketch.readFrom(in), QuantileSketch.readFrom(in));
+    }
+
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeTo(out);
+        } catch (IOException e) {
+            // ByteArrayOutputStream не бросает IOException
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static NoteStatistics fromByteArray(byte[] data) throws IOException {
+        return readFrom(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    @Override
+    public String toString() {
+        return "{durations|" + durations + ", intervals|" + intervals + ", tempos|" + tempos + '}';
+    }
+}
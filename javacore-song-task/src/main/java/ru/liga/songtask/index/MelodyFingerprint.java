@@ -0,0 +1,136 @@
+package ru.liga.songtask.index;
+
+import com.leff.midi.MidiFile;
+import ru.liga.songtask.domain.Note;
+import ru.liga.songtask.worker.AnalyzeWorker;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+/**
+ * <b>Мелодические n-граммы трека голоса</b>
+ * <p>
+ * Из последовательности нот извлекаются термы двух видов, оба не зависят от транспонирования
+ * и от темпа:
+ * <ul>
+ * <li>интервальные - {@link #INTERVAL_GRAM} подряд идущих интервалов в полутонах,
+ * каждый ограничен ±31 и занимает 6 бит;</li>
+ * <li>ритмические - {@link #RHYTHM_GRAM} подряд идущих отношений межнотных промежутков
+ * (от начала ноты до начала следующей), округлённых до половины октавы по log2 и
+ * ограниченных ±7, по 4 бита.</li>
+ * </ul>
+ * Терм упакован в неотрицательный int: бит 30 - вид терма, младшие биты - коды.
+ */
+public class MelodyFingerprint {
+    public static final int INTERVAL_GRAM = 4;
+    public static final int RHYTHM_GRAM = 4;
+    static final int RHYTHM_FLAG = 1 << 30;
+
+    private static final int MAX_INTERVAL = 31;
+    private static final int MAX_RATIO_CODE = 7;
+
+    /**
+     * <b>Термы трека голоса midi-файла</b>
+     *
+     * @param midiFile файл
+     * @return различные термы по возрастанию; пустой массив, если трека голоса нет
+     */
+    public static int[] extract(MidiFile midiFile) {
+        try {
+            return extract(AnalyzeWorker.getVoiceTrack(midiFile));
+        } catch (NoSuchElementException e) {
+            return new int[0];
+        }
+    }
+
+    /**
+     * <b>Термы последовательности нот</b>
+     *
+     * @param notes ноты одноголосного трека в порядке звучания
+     * @return различные термы по возрастанию
+     */
+    public static int[] extract(List<Note> notes) {
+        int n = notes.size();
+        int intervalTerms = Math.max(0, n - INTERVAL_GRAM);
+        int rhythmTerms = Math.max(0, n - RHYTHM_GRAM - 1);
+        int[] terms = new int[intervalTerms + rhythmTerms];
+        int count = 0;
+
+        int[] pitches = new int[n];
+        long[] onsets = new long[n];
+        for (int i = 0; i < n; i++) {
+            pitches[i] = notes.get(i).sign().getMidi();
+            onsets[i] = notes.get(i).startTick();
+        }
+
+        for (int i = 0; i < intervalTerms; i++) {
+            int term = 0;
+            for (int j = 0; j < INTERVAL_GRAM; j++) {
+                int interval = clamp(pitches[i + j + 1] - pitches[i + j], MAX_INTERVAL);
+                term = (term << 6) | (interval + MAX_INTERVAL);
+            }
+            terms[count++] = term;
+        }
+
+        for (int i = 0; i < rhythmTerms; i++) {
+            int term = 0;
+            for (int j = 0; j < RHYTHM_GRAM; j++) {
+                long previous = Math.max(1, onsets[i + j + 1] - onsets[i + j]);
+                long next = Math.max(1, onsets[i + j + 2] - onsets[i + j + 1]);
+                int code = clamp((int) Math.round(2 * Math.log((double) next / previous) / Math.log(2)), MAX_RATIO_CODE);
+                term = (term << 4) | (code + MAX_RATIO_CODE);
+            }
+            terms[count++] = RHYTHM_FLAG | term;
+        }
+
+        Arrays.sort(terms, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || terms[distinct - 1] != terms[i]) {
+                terms[distinct++] = terms[i];
+            }
+        }
+        return Arrays.copyOf(terms, distinct);
+    }
+
+    /**
+     * @return {@code true} для ритмического терма
+     */
+    public static boolean isRhythmTerm(int term) {
+        return (term & RHYTHM_FLAG) != 0;
+    }
+
+    /**
+     * <b>Читаемая запись терма</b>
+     *
+     * @param term терм
+     * @return интервалы в полутонах ("+2 +2 -4 0"), либо отношения промежутков
+     * в степенях двойки ("x1 x2 x0.5 x1.41")
+     */
+    public static String describe(int term) {
+        StringBuilder builder = new StringBuilder();
+        if (isRhythmTerm(term)) {
+            for (int j = RHYTHM_GRAM - 1; j >= 0; j--) {
+                int code = ((term >>> (4 * j)) & 0xF) - MAX_RATIO_CODE;
+                double ratio = Math.pow(2, code / 2.0);
+                builder.append(builder.length() == 0 ? "x" : " x")
+                        .append(String.format(Locale.ROOT, "%.3f", ratio).replaceAll("\\.?0+$", ""));
+            }
+        } else {
+            for (int j = INTERVAL_GRAM - 1; j >= 0; j--) {
+                int interval = ((term >>> (6 * j)) & 0x3F) - MAX_INTERVAL;
+                if (builder.length() != 0) {
+                    builder.append(' ');
+                }
+                builder.append(interval > 0 ? "+" + interval : String.valueOf(interval));
+            }
+        }
+        return builder.toString();
+    }
+
+    private static int clamp(int value, int limit) {
+        return Math.max(-limit, Math.min(limit, value));
+    }
+}
@@ -0,0 +1,291 @@
+package ru.liga.songtask.index;
+
+import ru.liga.songtask.domain.Note;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <b>Поиск похожих мелодий по индексу n-грамм</b>
+ * <p>
+ * Файл, записанный {@link MelodyIndexWriter}, отображается в память целиком (до 2 ГБ) и не
+ * копируется в кучу: терм ищется двоичным поиском по словарю, его список песен читается
+ * прямо из отображения. Вес общего терма - idf = ln(1 + N / df), оценка песни - сумма весов
+ * общих с запросом термов, делённая на корень из числа термов песни, чтобы длинные песни
+ * не выигрывали только за счёт длины. Лучшие k песен отбираются кучей.
+ * <p>
+ * Экземпляр потокобезопасен: запросы не меняют состояние.
+ */
+public class MelodyIndex implements Closeable {
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int documentCount;
+    private final int termCount;
+    private final int dictionaryOffset;
+    private final int documentsOffset;
+
+    public MelodyIndex(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Файл индекса больше 2 ГБ: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < MelodyIndexWriter.HEADER_SIZE || buffer.getInt(0) != MelodyIndexWriter.MAGIC) {
+                throw new IOException("Файл не является индексом мелодий: " + file);
+            }
+            if (buffer.getInt(4) != MelodyIndexWriter.VERSION) {
+                throw new IOException("Неподдерживаемая версия индекса мелодий: " + buffer.getInt(4));
+            }
+            documentCount = buffer.getInt(8);
+            termCount = buffer.getInt(12);
+            dictionaryOffset = (int) buffer.getLong(16);
+            documentsOffset = (int) buffer.getLong(24);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    public int getTermCount() {
+        return termCount;
+    }
+
+    /**
+     * @param document номер песни
+     * @return имя, под которым песня добавлена в индекс
+     */
+    public String getName(int document) {
+        int offset = (int) buffer.getLong(documentsOffset + document * MelodyIndexWriter.DOCUMENT_ENTRY_SIZE + 4);
+        int length = buffer.getShort(offset);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param term терм
+     * @return число песен, содержащих терм
+     */
+    public int getDocumentFrequency(int term) {
+        int entry = findTerm(term);
+        return entry < 0 ? 0 : buffer.getInt(entry + 4);
+    }
+
+    /**
+     * <b>Песни, мелодически похожие на последовательность нот</b>
+     *
+     * @param voiceTrack ноты одноголосного трека
+     * @param k          сколько песен вернуть
+     * @return не более k совпадений в порядке убывания оценки
+     */
+    public List<Match> query(List<Note> voiceTrack, int k) {
+        return query(MelodyFingerprint.extract(voiceTrack), k);
+    }
+
+    /**
+     * <b>Песни, содержащие больше всего редких термов запроса</b>
+     *
+     * @param terms термы запроса из {@link MelodyFingerprint}
+     * @param k     сколько песен вернуть
+     * @return не более k совпадений в порядке убывания оценки
+     */
+    public List<Match> query(int[] terms, int k) {
+        float[] scores = new float[documentCount];
+        int[] shared = new int[documentCount];
+        int[] touched = new int[64];
+        int touchedCount = 0;
+
+        int[] distinct = terms.clone();
+        Arrays.sort(distinct);
+        for (int i = 0; i < distinct.length; i++) {
+            if (i > 0 && distinct[i] == distinct[i - 1]) {
+                continue;
+            }
+            int entry = findTerm(distinct[i]);
+            if (entry < 0) {
+                continue;
+            }
+            int frequency = buffer.getInt(entry + 4);
+            float idf = (float) Math.log(1 + (double) documentCount / frequency);
+            int position = (int) buffer.getLong(entry + 8);
+            int document = 0;
+            for (int p = 0; p < frequency; p++) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = buffer.get(position++);
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                document += delta;
+                if (shared[document]++ == 0) {
+                    if (touchedCount == touched.length) {
+                        touched = Arrays.copyOf(touched, touchedCount * 2);
+                    }
+                    touched[touchedCount++] = document;
+                }
+                scores[document] += idf;
+            }
+        }
+
+        for (int i = 0; i < touchedCount; i++) {
+            int document = touched[i];
+            scores[document] /= (float) Math.sqrt(Math.max(1, termCountOf(document)));
+        }
+        return topK(scores, shared, touched, touchedCount, k);
+    }
+
+    private List<Match> topK(float[] scores, int[] shared, int[] candidates, int count, int k) {
+        int[] heap = new int[Math.max(0, Math.min(k, count))];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            int document = candidates[i];
+            if (size < heap.length) {
+                heap[size] = document;
+                siftUp(heap, size++, scores);
+            } else if (size > 0 && better(document, heap[0], scores)) {
+                heap[0] = document;
+                siftDown(heap, size, scores);
+            }
+        }
+
+        Match[] result = new Match[size];
+        while (size > 0) {
+            int document = heap[0];
+            result[--size] = new Match(document, getName(document), scores[document], shared[document]);
+            heap[0] = heap[size];
+            siftDown(heap, size, scores);
+        }
+        return new ArrayList<>(Arrays.asList(result));
+    }
+
+    /**
+     * Выше оценка, а при равной оценке - меньше номер песни.
+     */
+    private static boolean better(int a, int b, float[] scores) {
+        return scores[a] > scores[b] || (scores[a] == scores[b] && a < b);
+    }
+
+    private static void siftUp(int[] heap, int index, float[] scores) {
+        int document = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!better(heap[parent], document, scores)) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = document;
+    }
+
+    private static void siftDown(int[] heap, int size, float[] scores) {
+        if (size == 0) {
+            return;
+        }
+        int document = heap[0];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && better(heap[child], heap[child + 1], scores)) {
+                child++;
+            }
+            if (!better(document, heap[child], scores)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = document;
+    }
+
+    private int termCountOf(int document) {
+        return buffer.getInt(documentsOffset + document * MelodyIndexWriter.DOCUMENT_ENTRY_SIZE);
+    }
+
+    /**
+     * @return смещение записи словаря, либо -1, если терма нет
+     */
+    private int findTerm(int term) {
+        int lo = 0;
+        int hi = termCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int entry = dictionaryOffset + mid * MelodyIndexWriter.DICTIONARY_ENTRY_SIZE;
+            int value = buffer.getInt(entry);
+            if (value < term) {
+                lo = mid + 1;
+            } else if (value > term) {
+                hi = mid - 1;
+            } else {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * <b>Найденная песня</b>
+     */
+    public static class Match {
+        private final int document;
+        private final String name;
+        private final float score;
+        private final int sharedTerms;
+
+        public Match(int document, String name, float score, int sharedTerms) {
+            this.document = document;
+            this.name = name;
+            this.score = score;
+            this.sharedTerms = sharedTerms;
+        }
+
+        public int getDocument() {
+            return document;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public float getScore() {
+            return score;
+        }
+
+        /**
+         * @return число термов, общих с запросом
+         */
+        public int getSharedTerms() {
+            return sharedTerms;
+        }
+
+        @Override
+        public String toString() {
+            return "{" + name + ", score|" + score + ", shared|" + sharedTerms + '}';
+        }
+    }
+}
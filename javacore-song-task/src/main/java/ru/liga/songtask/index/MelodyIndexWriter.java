@@ -0,0 +1,223 @@
+package ru.liga.songtask.index;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <b>Построение инвертированного индекса мелодических n-грамм</b>
+ * <p>
+ * Пары (терм, номер песни) копятся в одном массиве {@code long[]}, при записи сортируются и
+ * группируются в списки песен по термам. Номера песен в списке записываются разностями с
+ * предыдущим номером в формате varint, так что частые термы занимают около байта на песню.
+ * Файл пишется во временный рядом с целевым и атомарно переименовывается.
+ * <p>
+ * Формат файла (все числа big-endian):
+ * <pre>
+ * заголовок:  int MAGIC, int VERSION, int песен, int термов, long смещение словаря,
+ *             long смещение таблицы песен, long смещение имён
+ * списки:     varint-разности номеров песен
+ * словарь:    по термам в порядке возрастания - int терм, int число песен, long смещение списка
+ * песни:      по песням - int число термов, long смещение имени
+ * имена:      по песням - short длина, байты UTF-8
+ * </pre>
+ */
+public class MelodyIndexWriter {
+    static final int MAGIC = 0x4D4E4731; // "MNG1"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 40;
+    static final int DICTIONARY_ENTRY_SIZE = 16;
+    static final int DOCUMENT_ENTRY_SIZE = 12;
+
+    private final List<String> names = new ArrayList<>();
+    private final List<Integer> termCounts = new ArrayList<>();
+    private long[] postings = new long[1024];
+    private int size;
+
+    /**
+     * <b>Добавить песню</b>
+     *
+     * @param name  имя песни (например, путь к файлу)
+     * @param terms термы из {@link MelodyFingerprint}; повторы учитываются один раз
+     * @return номер песни в индексе
+     */
+    public int add(String name, int[] terms) {
+        int document = names.size();
+        names.add(name);
+        int[] distinct = terms.clone();
+        Arrays.sort(distinct);
+        int count = 0;
+        for (int i = 0; i < distinct.length; i++) {
+            if (i > 0 && distinct[i] == distinct[i - 1]) {
+                continue;
+            }
+            if (size == postings.length) {
+                postings = Arrays.copyOf(postings, size * 2);
+            }
+            postings[size++] = ((long) distinct[i] << 32) | document;
+            count++;
+        }
+        termCounts.add(count);
+        return document;
+    }
+
+    public int getDocumentCount() {
+        return names.size();
+    }
+
+    /**
+     * <b>Записать индекс в файл</b>
+     *
+     * @param file путь к файлу индекса
+     * @throws IOException при ошибке записи
+     */
+    public void write(Path file) throws IOException {
+        Arrays.sort(postings, 0, size);
+        Path directory = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            ByteBuffer header;
+            try (CountingOutputStream counting = new CountingOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16));
+                 DataOutputStream out = new DataOutputStream(counting)) {
+                header = writeTo(out, counting);
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                channel.force(false);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Пишет всё, кроме заголовка, на место которого оставляет нули.
+     *
+     * @return заголовок, который нужно записать в начало файла
+     */
+    private ByteBuffer writeTo(DataOutputStream out, CountingOutputStream counting) throws IOException {
+        int termCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || term(postings[i]) != term(postings[i - 1])) {
+                termCount++;
+            }
+        }
+
+        out.write(new byte[HEADER_SIZE]);
+        int[] terms = new int[termCount];
+        int[] frequencies = new int[termCount];
+        long[] offsets = new long[termCount];
+        int t = -1;
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            int document = (int) postings[i];
+            if (i == 0 || term(postings[i]) != term(postings[i - 1])) {
+                t++;
+                terms[t] = term(postings[i]);
+                offsets[t] = counting.count;
+                previous = 0;
+            }
+            frequencies[t]++;
+            writeVarInt(out, document - previous);
+            previous = document;
+        }
+
+        long dictionaryOffset = counting.count;
+        for (int i = 0; i < termCount; i++) {
+            out.writeInt(terms[i]);
+            out.writeInt(frequencies[i]);
+            out.writeLong(offsets[i]);
+        }
+
+        long documentsOffset = dictionaryOffset + (long) termCount * DICTIONARY_ENTRY_SIZE;
+        long namesOffset = documentsOffset + (long) names.size() * DOCUMENT_ENTRY_SIZE;
+        long nameOffset = namesOffset;
+        byte[][] encoded = new byte[names.size()][];
+        for (int i = 0; i < names.size(); i++) {
+            encoded[i] = names.get(i).getBytes(StandardCharsets.UTF_8);
+            if (encoded[i].length > Short.MAX_VALUE) {
+                throw new IOException("Имя песни длиннее " + Short.MAX_VALUE + " байт: " + names.get(i));
+            }
+            out.writeInt(termCounts.get(i));
+            out.writeLong(nameOffset);
+            nameOffset += 2 + encoded[i].length;
+        }
+        for (byte[] name : encoded) {
+            out.writeShort(name.length);
+            out.write(name);
+        }
+        out.flush();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(names.size()).putInt(termCount)
+                .putLong(dictionaryOffset).putLong(documentsOffset).putLong(namesOffset);
+        header.flip();
+        return header;
+    }
+
+    private static int term(long posting) {
+        return (int) (posting >>> 32);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Считает записанные байты, чтобы знать смещения списков.
+     */
+    private static class CountingOutputStream extends OutputStream {
+        private final BufferedOutputStream out;
+        private long count;
+
+        private CountingOutputStream(BufferedOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ru.liga.songtask.index;
+
+/**
+ * <b>Столбцы файла сводок</b>
+ * <p>
+ * Столбцы лежат подряд в порядке объявления, каждый - массив значений фиксированной ширины
+ * по всем записям. Восьмибайтовые столбцы идут первыми, поэтому все значения выровнены.
+ * Столбцы с {@link #isIndexed() индексом} дополнительно хранят номера записей,
+ * упорядоченные по значению.
+ */
+enum MetadataColumn {
+    HASH(8, true),
+    LENGTH_TICKS(8, false),
+    LENGTH_MS(8, true),
+    NAME_OFFSET(8, false),
+    BPM(4, true),
+    RESOLUTION(4, false),
+    TRACKS(4, false),
+    NOTES(4, true),
+    LOWEST(1, false),
+    HIGHEST(1, false),
+    RANGE(1, true),
+    KEY(1, true);
+
+    private final int width;
+    private final boolean indexed;
+
+    MetadataColumn(int width, boolean indexed) {
+        this.width = width;
+        this.indexed = indexed;
+    }
+
+    int width() {
+        return width;
+    }
+
+    boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * @param records число записей
+     * @return смещение столбца от начала файла
+     */
+    long offset(int records) {
+        long offset = MetadataIndexWriter.HEADER_SIZE;
+        for (MetadataColumn column : values()) {
+            if (column == this) {
+                return offset;
+            }
+            offset += (long) column.width * records;
+        }
+        throw new IllegalStateException();
+    }
+
+    /**
+     * @param records число записей
+     * @return смещение индекса столбца, либо -1, если индекса нет
+     */
+    long indexOffset(int records) {
+        if (!indexed) {
+            return -1;
+        }
+        long offset = MetadataIndexWriter.HEADER_SIZE;
+        for (MetadataColumn column : values()) {
+            offset += (long) column.width * records;
+        }
+        for (MetadataColumn column : values()) {
+            if (column == this) {
+                return offset;
+            }
+            if (column.indexed) {
+                offset += 4L * records;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    /**
+     * @param records число записей
+     * @return смещение раздела имён
+     */
+    static long namesOffset(int records) {
+        long offset = MetadataIndexWriter.HEADER_SIZE;
+        for (MetadataColumn column : values()) {
+            offset += (long) column.width * records;
+            if (column.indexed) {
+                offset += 4L * records;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Ключ упорядочивания float: для неотрицательных чисел совпадает с битами, отрицательные
+     * отображаются ниже нуля, так что порядок long совпадает с порядком Float.compare.
+     */
+    static long floatKey(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+    }
+}
@@ -0,0 +1,257 @@
+package ru.liga.songtask.index;
+
+import ru.liga.songtask.domain.FileMetadata;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * <b>Запросы к файлу сводок корпуса</b>
+ * <p>
+ * Файл, записанный {@link MetadataIndexWriter}, отображается в память целиком (до 2 ГБ).
+ * Для каждого условия запроса двоичным поиском по индексу столбца находится отрезок
+ * подходящих записей; просматривается самый короткий отрезок, остальные условия проверяются
+ * чтением значений прямо из столбцов. Midi-файлы при этом не открываются.
+ * <p>
+ * Экземпляр потокобезопасен: запросы не меняют состояние.
+ */
+public class MetadataIndex implements Closeable {
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int recordCount;
+    private final int[] columnOffsets = new int[MetadataColumn.values().length];
+    private final int[] indexOffsets = new int[MetadataColumn.values().length];
+
+    public MetadataIndex(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Файл сводок больше 2 ГБ: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < MetadataIndexWriter.HEADER_SIZE || buffer.getInt(0) != MetadataIndexWriter.MAGIC) {
+                throw new IOException("Файл не является файлом сводок: " + file);
+            }
+            if (buffer.getInt(4) != MetadataIndexWriter.VERSION) {
+                throw new IOException("Неподдерживаемая версия файла сводок: " + buffer.getInt(4));
+            }
+            recordCount = buffer.getInt(8);
+            if (recordCount < 0 || MetadataColumn.namesOffset(recordCount) > buffer.limit()) {
+                throw new IOException("Файл сводок обрезан: " + file);
+            }
+            for (MetadataColumn column : MetadataColumn.values()) {
+                columnOffsets[column.ordinal()] = (int) column.offset(recordCount);
+                indexOffsets[column.ordinal()] = (int) column.indexOffset(recordCount);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @param record номер записи
+     * @return имя, под которым файл добавлен в сводки
+     */
+    public String getName(int record) {
+        int offset = (int) buffer.getLong(columnOffsets[MetadataColumn.NAME_OFFSET.ordinal()] + record * 8);
+        int length = buffer.getShort(offset);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param record номер записи
+     * @return сводка, прочитанная из столбцов
+     */
+    public FileMetadata get(int record) {
+        return new FileMetadata(getName(record),
+                value(MetadataColumn.HASH, record),
+                buffer.getFloat(columnOffsets[MetadataColumn.BPM.ordinal()] + record * 4),
+                (int) value(MetadataColumn.RESOLUTION, record),
+                (int) value(MetadataColumn.TRACKS, record),
+                value(MetadataColumn.LENGTH_TICKS, record),
+                value(MetadataColumn.LENGTH_MS, record),
+                (int) value(MetadataColumn.LOWEST, record),
+                (int) value(MetadataColumn.HIGHEST, record),
+                (int) value(MetadataColumn.RANGE, record),
+                (int) value(MetadataColumn.NOTES, record),
+                (int) value(MetadataColumn.KEY, record));
+    }
+
+    /**
+     * <b>Выполнить запрос</b>
+     *
+     * @param query условия; запрос без условий возвращает все записи
+     * @return номера подходящих записей по возрастанию
+     */
+    public int[] query(Query query) {
+        MetadataColumn driver = null;
+        int driverFrom = 0;
+        int driverTo = recordCount;
+        for (MetadataColumn column : MetadataColumn.values()) {
+            if (!query.constrained[column.ordinal()]) {
+                continue;
+            }
+            int from = lowerBound(column, query.min[column.ordinal()]);
+            int to = upperBound(column, query.max[column.ordinal()]);
+            if (driver == null || to - from < driverTo - driverFrom) {
+                driver = column;
+                driverFrom = from;
+                driverTo = to;
+            }
+        }
+
+        int[] result = new int[Math.max(0, driverTo - driverFrom)];
+        int count = 0;
+        for (int position = driverFrom; position < driverTo; position++) {
+            int record = driver == null ? position : indexEntry(driver, position);
+            if (matches(query, record)) {
+                result[count++] = record;
+            }
+        }
+        result = Arrays.copyOf(result, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private boolean matches(Query query, int record) {
+        for (MetadataColumn column : MetadataColumn.values()) {
+            if (query.constrained[column.ordinal()]) {
+                long key = key(column, record);
+                if (key < query.min[column.ordinal()] || key > query.max[column.ordinal()]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return первая позиция индекса столбца, ключ записи в которой не меньше {@code key}
+     */
+    private int lowerBound(MetadataColumn column, long key) {
+        int low = 0;
+        int high = recordCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (key(column, indexEntry(column, mid)) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return первая позиция индекса столбца, ключ записи в которой больше {@code key}
+     */
+    private int upperBound(MetadataColumn column, long key) {
+        int low = 0;
+        int high = recordCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (key(column, indexEntry(column, mid)) <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int indexEntry(MetadataColumn column, int position) {
+        return buffer.getInt(indexOffsets[column.ordinal()] + position * 4);
+    }
+
+    private long key(MetadataColumn column, int record) {
+        if (column == MetadataColumn.BPM) {
+            return MetadataColumn.floatKey(buffer.getFloat(columnOffsets[column.ordinal()] + record * 4));
+        }
+        return value(column, record);
+    }
+
+    private long value(MetadataColumn column, int record) {
+        int offset = columnOffsets[column.ordinal()] + record * column.width();
+        switch (column.width()) {
+            case 8:
+                return buffer.getLong(offset);
+            case 4:
+                return buffer.getInt(offset);
+            default:
+                return buffer.get(offset);
+        }
+    }
+
+    /**
+     * <b>Условия запроса</b>
+     * <p>
+     * Все границы включительные, условия объединяются по "и". Файлы без трека голоса не
+     * проходят условия на диапазон и число нот, файлы без тональности - условие на тональность.
+     */
+    public static class Query {
+        private final boolean[] constrained = new boolean[MetadataColumn.values().length];
+        private final long[] min = new long[MetadataColumn.values().length];
+        private final long[] max = new long[MetadataColumn.values().length];
+
+        /**
+         * @param minSemitones наименьший диапазон голоса
+         * @param maxSemitones наибольший диапазон голоса
+         */
+        public Query range(int minSemitones, int maxSemitones) {
+            return between(MetadataColumn.RANGE, Math.max(0, minSemitones), maxSemitones);
+        }
+
+        public Query bpm(float minBpm, float maxBpm) {
+            return between(MetadataColumn.BPM, MetadataColumn.floatKey(minBpm), MetadataColumn.floatKey(maxBpm));
+        }
+
+        public Query noteCount(int minNotes, int maxNotes) {
+            return between(MetadataColumn.NOTES, Math.max(0, minNotes), maxNotes);
+        }
+
+        public Query lengthMs(long minMs, long maxMs) {
+            return between(MetadataColumn.LENGTH_MS, minMs, maxMs);
+        }
+
+        /**
+         * @param keyIndex {@code KeyEstimate.getIndex()} тональности
+         */
+        public Query key(int keyIndex) {
+            return between(MetadataColumn.KEY, Math.max(0, keyIndex), keyIndex);
+        }
+
+        /**
+         * @param contentHash {@link FileMetadata#contentHash(byte[])} содержимого
+         */
+        public Query contentHash(long contentHash) {
+            return between(MetadataColumn.HASH, contentHash, contentHash);
+        }
+
+        private Query between(MetadataColumn column, long from, long to) {
+            constrained[column.ordinal()] = true;
+            min[column.ordinal()] = from;
+            max[column.ordinal()] = to;
+            return this;
+        }
+    }
+}
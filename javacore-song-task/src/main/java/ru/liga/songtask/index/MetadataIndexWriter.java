@@ -0,0 +1,206 @@
+package ru.liga.songtask.index;
+
+import ru.liga.songtask.domain.FileMetadata;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <b>Построение файла сводок по корпусу</b>
+ * <p>
+ * Сводки копятся в памяти и записываются по столбцам {@link MetadataColumn}: сначала значения
+ * каждого столбца по всем записям, затем для индексируемых столбцов - номера записей,
+ * упорядоченные по значению (при равных - по номеру), затем имена. Файл пишется во временный
+ * рядом с целевым и атомарно переименовывается.
+ * <p>
+ * Формат файла (все числа big-endian):
+ * <pre>
+ * заголовок:  int MAGIC, int VERSION, int записей, int 0
+ * столбцы:    по столбцам - значения фиксированной ширины по всем записям
+ * индексы:    по индексируемым столбцам - int номера записей по возрастанию значения
+ * имена:      по записям - short длина, байты UTF-8
+ * </pre>
+ * Методы добавления синхронизированы, поэтому сводки можно передавать из потоков анализа.
+ */
+public class MetadataIndexWriter {
+    static final int MAGIC = 0x4D4D4431; // "MMD1"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    private final List<FileMetadata> records = new ArrayList<>();
+
+    /**
+     * <b>Добавить сводку</b>
+     *
+     * @param metadata сводка файла
+     * @return номер записи
+     */
+    public synchronized int add(FileMetadata metadata) {
+        records.add(metadata);
+        return records.size() - 1;
+    }
+
+    public synchronized int getRecordCount() {
+        return records.size();
+    }
+
+    /**
+     * <b>Записать файл сводок</b>
+     *
+     * @param file путь к файлу
+     * @throws IOException при ошибке записи
+     */
+    public synchronized void write(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                writeTo(out);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void writeTo(DataOutputStream out) throws IOException {
+        int count = records.size();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(count);
+        out.writeInt(0);
+
+        byte[][] names = new byte[count][];
+        long[] nameOffsets = new long[count];
+        long nameOffset = MetadataColumn.namesOffset(count);
+        for (int i = 0; i < count; i++) {
+            names[i] = records.get(i).getName().getBytes(StandardCharsets.UTF_8);
+            if (names[i].length > Short.MAX_VALUE) {
+                throw new IOException("Имя файла длиннее " + Short.MAX_VALUE + " байт: " + records.get(i).getName());
+            }
+            nameOffsets[i] = nameOffset;
+            nameOffset += 2 + names[i].length;
+        }
+
+        for (MetadataColumn column : MetadataColumn.values()) {
+            for (int i = 0; i < count; i++) {
+                FileMetadata record = records.get(i);
+                switch (column) {
+                    case NAME_OFFSET:
+                        out.writeLong(nameOffsets[i]);
+                        break;
+                    case BPM:
+                        out.writeFloat(record.getBpm());
+                        break;
+                    default:
+                        writeValue(out, column.width(), value(column, record));
+                }
+            }
+        }
+
+        for (MetadataColumn column : MetadataColumn.values()) {
+            if (!column.isIndexed()) {
+                continue;
+            }
+            long[] keys = new long[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = column == MetadataColumn.BPM
+                        ? MetadataColumn.floatKey(records.get(i).getBpm())
+                        : value(column, records.get(i));
+            }
+            for (int record : orderByKey(keys)) {
+                out.writeInt(record);
+            }
+        }
+
+        for (byte[] name : names) {
+            out.writeShort(name.length);
+            out.write(name);
+        }
+    }
+
+    private static long value(MetadataColumn column, FileMetadata record) {
+        switch (column) {
+            case HASH:
+                return record.getContentHash();
+            case LENGTH_TICKS:
+                return record.getLengthTicks();
+            case LENGTH_MS:
+                return record.getLengthMs();
+            case RESOLUTION:
+                return record.getResolution();
+            case TRACKS:
+                return record.getTrackCount();
+            case NOTES:
+                return record.getNoteCount();
+            case LOWEST:
+                return record.getLowest();
+            case HIGHEST:
+                return record.getHighest();
+            case RANGE:
+                return record.getRange();
+            case KEY:
+                return record.getKey();
+            default:
+                throw new IllegalArgumentException("Column has no integer value: " + column);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, int width, long value) throws IOException {
+        switch (width) {
+            case 8:
+                out.writeLong(value);
+                break;
+            case 4:
+                out.writeInt((int) value);
+                break;
+            default:
+                out.writeByte((int) value);
+        }
+    }
+
+    /**
+     * Номера записей по возрастанию ключа, при равных ключах - по номеру (сортировка слиянием).
+     */
+    private static int[] orderByKey(long[] keys) {
+        int n = keys.length;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        int[] buffer = new int[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int from = 0; from < n - width; from += 2 * width) {
+                int mid = from + width;
+                int to = Math.min(from + 2 * width, n);
+                int left = from;
+                int right = mid;
+                int out = from;
+                while (left < mid && right < to) {
+                    buffer[out++] = keys[order[right]] < keys[order[left]] ? order[right++] : order[left++];
+                }
+                while (left < mid) {
+                    buffer[out++] = order[left++];
+                }
+                while (right < to) {
+                    buffer[out++] = order[right++];
+                }
+                System.arraycopy(buffer, from, order, from, to - from);
+            }
+        }
+        return order;
+    }
+}
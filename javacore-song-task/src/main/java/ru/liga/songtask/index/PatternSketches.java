@@ -0,0 +1,137 @@
+package ru.liga.songtask.index;
+
+import ru.liga.songtask.util.HeavyHitterSketch;
+import ru.liga.songtask.util.HyperLogLog;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * <b>Мелодические и ритмические шаблоны корпуса</b>
+ * <p>
+ * Термы {@link MelodyFingerprint} каждого файла попадают в счётчик различных значений и в скетч
+ * частых значений своего вида. Термы файла уже различны, поэтому частота терма - число файлов,
+ * в которых он встречается. Размер не зависит от корпуса: около 1 МБ при параметрах по умолчанию.
+ */
+public class PatternSketches {
+    private final HyperLogLog distinctIntervals;
+    private final HyperLogLog distinctRhythms;
+    private final HeavyHitterSketch intervals;
+    private final HeavyHitterSketch rhythms;
+    private long files;
+
+    public PatternSketches() {
+        this(new HyperLogLog(), new HyperLogLog(), new HeavyHitterSketch(), new HeavyHitterSketch(), 0);
+    }
+
+    private PatternSketches(HyperLogLog distinctIntervals, HyperLogLog distinctRhythms,
+                            HeavyHitterSketch intervals, HeavyHitterSketch rhythms, long files) {
+        this.distinctIntervals = distinctIntervals;
+        this.distinctRhythms = distinctRhythms;
+        this.intervals = intervals;
+        this.rhythms = rhythms;
+        this.files = files;
+    }
+
+    /**
+     * <b>Учесть термы файла</b>
+     *
+     * @param terms различные термы, например из {@link MelodyFingerprint#extract(java.util.List)}
+     */
+    public void add(int[] terms) {
+        for (int term : terms) {
+            if (MelodyFingerprint.isRhythmTerm(term)) {
+                distinctRhythms.add(term);
+                rhythms.add(term);
+            } else {
+                distinctIntervals.add(term);
+                intervals.add(term);
+            }
+        }
+        files++;
+    }
+
+    /**
+     * @return число учтённых файлов
+     */
+    public long getFiles() {
+        return files;
+    }
+
+    /**
+     * @return различные интервальные n-граммы
+     */
+    public HyperLogLog getDistinctIntervals() {
+        return distinctIntervals;
+    }
+
+    /**
+     * @return различные ритмические n-граммы
+     */
+    public HyperLogLog getDistinctRhythms() {
+        return distinctRhythms;
+    }
+
+    /**
+     * @return частые интервальные n-граммы
+     */
+    public HeavyHitterSketch getIntervals() {
+        return intervals;
+    }
+
+    /**
+     * @return частые ритмические n-граммы
+     */
+    public HeavyHitterSketch getRhythms() {
+        return rhythms;
+    }
+
+    /**
+     * <b>Добавить шаблоны другого обработчика</b>
+     *
+     * @param other частичный результат; сам не изменяется
+     * @return этот же объект
+     */
+    public PatternSketches merge(PatternSketches other) {
+        distinctIntervals.merge(other.distinctIntervals);
+        distinctRhythms.merge(other.distinctRhythms);
+        intervals.merge(other.intervals);
+        rhythms.merge(other.rhythms);
+        files += other.files;
+        return this;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(files);
+        distinctIntervals.writeTo(out);
+        distinctRhythms.writeTo(out);
+        intervals.writeTo(out);
+        rhythms.writeTo(out);
+    }
+
+    public static PatternSketches readFrom(DataInput in) throws IOException {
+        long files = in.readLong();
+        return new PatternSketches(HyperLogLog.readFrom(in), HyperLogLog.readFrom(in),
+                HeavyHitterSketch.readFrom(in), HeavyHitterSketch.readFrom(in), files);
+    }
+
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 20);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeTo(out);
+        } catch (IOException e) {
+            // ByteArrayOutputStream не бросает IOException
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static PatternSketches fromByteArray(byte[] data) throws IOException {
+        return readFrom(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+}
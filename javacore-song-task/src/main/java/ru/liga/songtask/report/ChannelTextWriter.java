@@ -0,0 +1,193 @@
+package ru.liga.songtask.report;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * <b>Буферизованная запись текста в канал</b>
+ * <p>
+ * Символы кодируются в UTF-8 и числа переводятся в десятичную запись прямо в байтовый буфер
+ * фиксированного размера, без промежуточных строк. Когда буфер заполняется, он сбрасывается
+ * в канал, поэтому расход памяти не зависит от объёма вывода.
+ */
+public class ChannelTextWriter implements Closeable {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[] LONG_MIN = Long.toString(Long.MIN_VALUE).getBytes();
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final byte[] digits = new byte[20];
+
+    public ChannelTextWriter(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ChannelTextWriter(WritableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(Math.max(32, bufferSize));
+    }
+
+    public ChannelTextWriter append(char c) throws IOException {
+        if (c < 0x80) {
+            ensure(1);
+            buffer.put((byte) c);
+        } else if (c < 0x800) {
+            ensure(2);
+            buffer.put((byte) (0xC0 | (c >> 6)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        } else {
+            ensure(3);
+            buffer.put((byte) (0xE0 | (c >> 12)));
+            buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        }
+        return this;
+    }
+
+    public ChannelTextWriter append(CharSequence text) throws IOException {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                appendCodePoint(Character.toCodePoint(c, text.charAt(++i)));
+            } else {
+                append(c);
+            }
+        }
+        return this;
+    }
+
+    public ChannelTextWriter append(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            ensure(LONG_MIN.length);
+            buffer.put(LONG_MIN);
+            return this;
+        }
+        ensure(20);
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int n = digits.length;
+        do {
+            digits[--n] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        buffer.put(digits, n, digits.length - n);
+        return this;
+    }
+
+    /**
+     * <b>Записать строку в кавычках по правилам JSON</b>
+     *
+     * @param text строка
+     * @return этот же объект
+     * @throws IOException при ошибке записи в канал
+     */
+    public ChannelTextWriter appendJsonString(CharSequence text) throws IOException {
+        append('"');
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    append('\\').append('"');
+                    break;
+                case '\\':
+                    append('\\').append('\\');
+                    break;
+                case '\n':
+                    append('\\').append('n');
+                    break;
+                case '\r':
+                    append('\\').append('r');
+                    break;
+                case '\t':
+                    append('\\').append('t');
+                    break;
+                default:
+                    if (c < 0x20) {
+                        ensure(6);
+                        buffer.put((byte) '\\').put((byte) 'u').put((byte) '0').put((byte) '0')
+                                .put(HEX[c >> 4]).put(HEX[c & 0xF]);
+                    } else if (Character.isHighSurrogate(c) && i + 1 < length
+                            && Character.isLowSurrogate(text.charAt(i + 1))) {
+                        appendCodePoint(Character.toCodePoint(c, text.charAt(++i)));
+                    } else {
+                        append(c);
+                    }
+            }
+        }
+        return append('"');
+    }
+
+    /**
+     * <b>Записать поле CSV, при необходимости в кавычках (RFC 4180)</b>
+     *
+     * @param text значение поля
+     * @return этот же объект
+     * @throws IOException при ошибке записи в канал
+     */
+    public ChannelTextWriter appendCsvField(CharSequence text) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            return append(text);
+        }
+        append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                append('"');
+            }
+            if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                appendCodePoint(Character.toCodePoint(c, text.charAt(++i)));
+            } else {
+                append(c);
+            }
+        }
+        return append('"');
+    }
+
+    /**
+     * <b>Сбросить буфер в канал</b>
+     *
+     * @throws IOException при ошибке записи в канал
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void appendCodePoint(int codePoint) throws IOException {
+        ensure(4);
+        buffer.put((byte) (0xF0 | (codePoint >> 18)));
+        buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+        buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+        buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+}
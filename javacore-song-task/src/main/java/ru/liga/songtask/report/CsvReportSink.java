@@ -0,0 +1,99 @@
+package ru.liga.songtask.report;
+
+import ru.liga.songtask.domain.AnalysisReport;
+import ru.liga.songtask.domain.CorpusRecord;
+import ru.liga.songtask.domain.NoteSign;
+import ru.liga.songtask.util.IntIntHistogram;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * <b>Вывод результатов в формате CSV</b>
+ * <p>
+ * Первая строка - заголовок {@link #HEADER}. Гистограммы записываются в одно поле парами
+ * {@code ключ:количество} через точку с запятой, например {@code 250:40;500:12} и
+ * {@code C4:3;E4:5}. Пустые поля означают отсутствие значения (нет трека голоса или ошибка).
+ */
+public class CsvReportSink implements ReportSink {
+    public static final String HEADER =
+            "file,ok,voice_track,voice_notes,text_events,key,lowest,highest,range,durations,notes,error,elapsed_micros";
+
+    private final ChannelTextWriter out;
+
+    /**
+     * @param channel канал вывода; заголовок записывается сразу
+     * @throws IOException при ошибке записи заголовка
+     */
+    public CsvReportSink(WritableByteChannel channel) throws IOException {
+        this.out = new ChannelTextWriter(channel);
+        out.append(HEADER).append('\n');
+    }
+
+    @Override
+    public synchronized void write(CorpusRecord record) throws IOException {
+        out.appendCsvField(record.getFile().toString());
+        if (!record.isSuccess()) {
+            out.append(",false,,,,,,,,,,").appendCsvField(record.getError());
+        } else {
+            AnalysisReport report = record.getReport();
+            out.append(",true,").append(report.getVoiceTrackIndex())
+                    .append(',').append(report.getVoiceTrackNoteCount())
+                    .append(',').append(report.getTextEventCount())
+                    .append(',');
+            if (report.getKey() != null) {
+                out.append(report.getKey().getName());
+            }
+            out.append(',');
+            if (report.hasVoiceTrack()) {
+                out.append(report.getExtremum()[0].fullName())
+                        .append(',').append(report.getExtremum()[1].fullName())
+                        .append(',').append(report.getRange())
+                        .append(',');
+                writeDurations(report.getDurationHistogram());
+                out.append(',');
+                writeNotes(report.getPitchHistogram().toArray());
+                out.append(',');
+            } else {
+                out.append(",,,,,");
+            }
+        }
+        out.append(',').append(record.getElapsedNanos() / 1000).append('\n');
+    }
+
+    private void writeDurations(IntIntHistogram durations) throws IOException {
+        boolean first = true;
+        for (int duration : durations.sortedKeys()) {
+            if (!first) {
+                out.append(';');
+            }
+            first = false;
+            out.append(duration).append(':').append(durations.get(duration));
+        }
+    }
+
+    private void writeNotes(int[] counts) throws IOException {
+        boolean first = true;
+        for (int midi = 0; midi < counts.length; midi++) {
+            NoteSign sign = NoteSign.fromMidiNumber(midi);
+            if (counts[midi] == 0 || sign == NoteSign.NULL_VALUE) {
+                continue;
+            }
+            if (!first) {
+                out.append(';');
+            }
+            first = false;
+            out.append(sign.fullName()).append(':').append(counts[midi]);
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
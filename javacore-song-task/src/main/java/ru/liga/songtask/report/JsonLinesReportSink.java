@@ -0,0 +1,94 @@
+package ru.liga.songtask.report;
+
+import ru.liga.songtask.domain.AnalysisReport;
+import ru.liga.songtask.domain.CorpusRecord;
+import ru.liga.songtask.domain.NoteSign;
+import ru.liga.songtask.util.IntIntHistogram;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * <b>Вывод результатов в формате JSON Lines</b>
+ * <p>
+ * Один JSON-объект на строку:
+ * <pre>
+ * {"file":"a.mid","ok":true,"voiceTrack":2,"voiceNotes":152,"textEvents":160,"key":"A minor",
+ *  "lowest":"G#3","highest":"C5","range":16,"durations":{"250":40,"500":12},"notes":{"C4":3,"E4":5},"elapsedMicros":812}
+ * {"file":"b.mid","ok":false,"error":"NegativeArraySizeException","elapsedMicros":40}
+ * </pre>
+ * Для файла без трека голоса поля от lowest до notes отсутствуют, voiceTrack равен -1;
+ * поле key отсутствует, если в файле нет звучащих нот.
+ * Ключи durations - длительности в ms по возрастанию, ключи notes - ноты по возрастанию высоты.
+ */
+public class JsonLinesReportSink implements ReportSink {
+    private final ChannelTextWriter out;
+
+    public JsonLinesReportSink(WritableByteChannel channel) {
+        this.out = new ChannelTextWriter(channel);
+    }
+
+    @Override
+    public synchronized void write(CorpusRecord record) throws IOException {
+        out.append("{\"file\":").appendJsonString(record.getFile().toString());
+        if (!record.isSuccess()) {
+            out.append(",\"ok\":false,\"error\":").appendJsonString(record.getError());
+        } else {
+            AnalysisReport report = record.getReport();
+            out.append(",\"ok\":true,\"voiceTrack\":").append(report.getVoiceTrackIndex())
+                    .append(",\"voiceNotes\":").append(report.getVoiceTrackNoteCount())
+                    .append(",\"textEvents\":").append(report.getTextEventCount());
+            if (report.getKey() != null) {
+                out.append(",\"key\":").appendJsonString(report.getKey().getName());
+            }
+            if (report.hasVoiceTrack()) {
+                out.append(",\"lowest\":").appendJsonString(report.getExtremum()[0].fullName())
+                        .append(",\"highest\":").appendJsonString(report.getExtremum()[1].fullName())
+                        .append(",\"range\":").append(report.getRange());
+                writeDurations(report.getDurationHistogram());
+                writeNotes(report.getPitchHistogram().toArray());
+            }
+        }
+        out.append(",\"elapsedMicros\":").append(record.getElapsedNanos() / 1000).append("}\n");
+    }
+
+    private void writeDurations(IntIntHistogram durations) throws IOException {
+        out.append(",\"durations\":{");
+        boolean first = true;
+        for (int duration : durations.sortedKeys()) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            out.append('"').append(duration).append("\":").append(durations.get(duration));
+        }
+        out.append('}');
+    }
+
+    private void writeNotes(int[] counts) throws IOException {
+        out.append(",\"notes\":{");
+        boolean first = true;
+        for (int midi = 0; midi < counts.length; midi++) {
+            NoteSign sign = NoteSign.fromMidiNumber(midi);
+            if (counts[midi] == 0 || sign == NoteSign.NULL_VALUE) {
+                continue;
+            }
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            out.appendJsonString(sign.fullName()).append(':').append(counts[midi]);
+        }
+        out.append('}');
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,28 @@
+package ru.liga.songtask.report;
+
+import ru.liga.songtask.domain.CorpusRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * <b>Получатель результатов анализа в машиночитаемом виде</b>
+ * <p>
+ * Каждая запись выводится сразу при вызове {@link #write(CorpusRecord)}, реализации не
+ * накапливают записи. Реализации потокобезопасны: записи нескольких потоков не перемешиваются.
+ */
+public interface ReportSink extends Closeable {
+
+    /**
+     * @param record результат анализа одного файла
+     * @throws IOException при ошибке вывода
+     */
+    void write(CorpusRecord record) throws IOException;
+
+    /**
+     * <b>Передать уже записанное в канал</b>
+     *
+     * @throws IOException при ошибке вывода
+     */
+    void flush() throws IOException;
+}
@@ -0,0 +1,231 @@
+package ru.liga.songtask.util;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * <b>Хэш содержимого midi-файла без учёта способа записи</b>
+ * <p>
+ * Файл читается одним проходом по байтам, без разбора в {@code MidiFile}: для каждого события
+ * считается абсолютный тик и канонический ключ. Ключ канального события -
+ * {@code тик << 24 | статус << 16 | байт1 << 8 | байт2}, где NoteOn с нулевой громкостью
+ * заменён на NoteOff, а громкость NoteOff обнулена. Мета-события и SysEx сворачиваются
+ * в 64-битный хэш вместе с тиком. Ключи копятся в массивах long, сортируются и хэшируются
+ * по порядку вместе с разрешением файла.
+ * <p>
+ * Поэтому хэш не зависит от порядка и числа треков, формата файла (0 или 1), running status,
+ * разбиения дельт и порядка событий на одном тике. Не учитываются End of Track, MIDI Channel
+ * Prefix и MIDI Port; текстовые мета-события (0x01-0x0F) по выбору учитываются или пропускаются.
+ */
+public class CanonicalMidiHash {
+    private static final int HEADER_ID = 0x4D546864; // "MThd"
+    private static final int TRACK_ID = 0x4D54726B; // "MTrk"
+    private static final long MAX_TICK = (1L << 39) - 1;
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    private static final int META = 0xFF;
+    private static final int META_END_OF_TRACK = 0x2F;
+    private static final int META_CHANNEL_PREFIX = 0x20;
+    private static final int META_PORT = 0x21;
+    private static final int META_LAST_TEXT = 0x0F;
+
+    private final boolean ignoreText;
+    private long[] channelKeys = new long[1024];
+    private int channelCount;
+    private long[] otherKeys = new long[64];
+    private int otherCount;
+
+    private InputStream in;
+    private long remaining;
+
+    private CanonicalMidiHash(boolean ignoreText) {
+        this.ignoreText = ignoreText;
+    }
+
+    /**
+     * @param file       midi-файл
+     * @param ignoreText пропускать ли текстовые мета-события: имена треков, текст, слова песни
+     * @return канонический хэш
+     * @throws IOException при ошибке чтения или нарушении формата файла
+     */
+    public static long hash(Path file, boolean ignoreText) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            return hash(in, ignoreText);
+        }
+    }
+
+    /**
+     * @param in         поток с содержимым midi-файла; не закрывается
+     * @param ignoreText пропускать ли текстовые мета-события: имена треков, текст, слова песни
+     * @return канонический хэш
+     * @throws IOException при ошибке чтения или нарушении формата файла
+     */
+    public static long hash(InputStream in, boolean ignoreText) throws IOException {
+        return new CanonicalMidiHash(ignoreText).read(in);
+    }
+
+    private long read(InputStream in) throws IOException {
+        this.in = in;
+        remaining = Long.MAX_VALUE;
+        if (readInt() != HEADER_ID) {
+            throw new IOException("Файл не является midi-файлом");
+        }
+        long headerLength = readInt() & 0xFFFFFFFFL;
+        if (headerLength < 6) {
+            throw new IOException("Заголовок midi-файла короче 6 байт");
+        }
+        readShort(); // формат
+        readShort(); // число треков
+        int division = readShort();
+        skip(headerLength - 6);
+
+        int first;
+        while ((first = in.read()) >= 0) {
+            int id;
+            long length;
+            try {
+                id = first << 24 | readByte() << 16 | readByte() << 8 | readByte();
+                length = readInt() & 0xFFFFFFFFL;
+            } catch (EOFException e) {
+                // неполный заголовок блока в конце файла - мусор после последнего трека
+                break;
+            }
+            if (id == TRACK_ID) {
+                remaining = length;
+                readTrack();
+                remaining = Long.MAX_VALUE;
+            } else {
+                skip(length);
+            }
+        }
+
+        Arrays.sort(channelKeys, 0, channelCount);
+        Arrays.sort(otherKeys, 0, otherCount);
+        long hash = mix(SEED, division);
+        hash = mix(hash, channelCount);
+        for (int i = 0; i < channelCount; i++) {
+            hash = mix(hash, channelKeys[i]);
+        }
+        hash = mix(hash, otherCount);
+        for (int i = 0; i < otherCount; i++) {
+            hash = mix(hash, otherKeys[i]);
+        }
+        return hash;
+    }
+
+    private void readTrack() throws IOException {
+        long tick = 0;
+        int runningStatus = 0;
+        while (remaining > 0) {
+            tick += readVariableLength();
+            if (tick > MAX_TICK) {
+                throw new IOException("Тик события больше " + MAX_TICK);
+            }
+            int status = readByte();
+            int data1;
+            if (status < 0x80) {
+                if (runningStatus == 0) {
+                    throw new IOException("Байт данных без статуса на тике " + tick);
+                }
+                data1 = status;
+                status = runningStatus;
+            } else if (status < 0xF0) {
+                runningStatus = status;
+                data1 = readByte();
+            } else {
+                runningStatus = 0;
+                readSystemEvent(status, tick);
+                continue;
+            }
+            int type = status & 0xF0;
+            int data2 = type == 0xC0 || type == 0xD0 ? 0 : readByte();
+            if (type == 0x90 && data2 == 0) {
+                status = 0x80 | (status & 0x0F);
+                type = 0x80;
+            }
+            if (type == 0x80) {
+                data2 = 0;
+            }
+            addChannelKey(tick << 24 | (long) status << 16 | data1 << 8 | data2);
+        }
+    }
+
+    private void readSystemEvent(int status, long tick) throws IOException {
+        int metaType = -1;
+        if (status == META) {
+            metaType = readByte();
+        } else if (status != 0xF0 && status != 0xF7) {
+            throw new IOException("Неизвестный статус " + Integer.toHexString(status) + " на тике " + tick);
+        }
+        long length = readVariableLength();
+        boolean skipped = metaType == META_END_OF_TRACK || metaType == META_CHANNEL_PREFIX
+                || metaType == META_PORT || (ignoreText && metaType >= 0x01 && metaType <= META_LAST_TEXT);
+        if (skipped) {
+            skip(length);
+            return;
+        }
+        long hash = mix(mix(mix(SEED, tick), status), metaType);
+        hash = mix(hash, length);
+        for (long i = 0; i < length; i++) {
+            hash = mix(hash, readByte());
+        }
+        if (otherCount == otherKeys.length) {
+            otherKeys = Arrays.copyOf(otherKeys, otherCount * 2);
+        }
+        otherKeys[otherCount++] = hash;
+    }
+
+    private void addChannelKey(long key) {
+        if (channelCount == channelKeys.length) {
+            channelKeys = Arrays.copyOf(channelKeys, channelCount * 2);
+        }
+        channelKeys[channelCount++] = key;
+    }
+
+    private static long mix(long hash, long value) {
+        return HyperLogLog.hash(hash * 31 + value);
+    }
+
+    private int readByte() throws IOException {
+        if (remaining <= 0) {
+            throw new IOException("Событие выходит за конец трека");
+        }
+        int value = in.read();
+        if (value < 0) {
+            throw new EOFException("Неожиданный конец midi-файла");
+        }
+        remaining--;
+        return value;
+    }
+
+    private int readShort() throws IOException {
+        return readByte() << 8 | readByte();
+    }
+
+    private int readInt() throws IOException {
+        return readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+    }
+
+    private long readVariableLength() throws IOException {
+        long value = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = readByte();
+            value = value << 7 | (b & 0x7F);
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Число переменной длины длиннее 4 байт");
+    }
+
+    private void skip(long length) throws IOException {
+        for (long i = 0; i < length; i++) {
+            readByte();
+        }
+    }
+}
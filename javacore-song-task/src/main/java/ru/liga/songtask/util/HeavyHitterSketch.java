@@ -0,0 +1,289 @@
+package ru.liga.songtask.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <b>Самые частые значения потока (Count-Min и список кандидатов)</b>
+ * <p>
+ * Частоты считаются в таблице Count-Min: {@code depth} строк по {@code width} счётчиков, оценка -
+ * минимум по строкам, она не меньше истинной частоты и превышает её не более чем на
+ * e / width от общего числа с вероятностью 1 - e<sup>-depth</sup>. Рядом хранятся
+ * {@code capacity} ключей с наибольшими оценками: новый ключ вытесняет кандидата с наименьшей
+ * оценкой, как в SpaceSaving. Ключ, чья оценка меньше этого минимума, в списке быть не может,
+ * поэтому список просматривается только для частых ключей.
+ * <p>
+ * При объединении таблицы складываются, а кандидаты обоих скетчей заново оцениваются по общей
+ * таблице, так что результат не зависит от того, как поток был разделён между обработчиками.
+ * Память по умолчанию - 512 КБ.
+ */
+public class HeavyHitterSketch {
+    public static final int DEFAULT_DEPTH = 4;
+    public static final int DEFAULT_WIDTH = 1 << 14;
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private static final byte FORMAT = 1;
+
+    private final int depth;
+    private final int width;
+    private final int capacity;
+    private final long[] table;
+    private final int[] keys;
+    private final long[] estimates;
+    private int size;
+    private int minIndex;
+    private long total;
+
+    public HeavyHitterSketch() {
+        this(DEFAULT_DEPTH, DEFAULT_WIDTH, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param depth    число строк таблицы, от 1 до 16
+     * @param width    число счётчиков в строке, степень двойки
+     * @param capacity сколько частых ключей хранить
+     */
+    public HeavyHitterSketch(int depth, int width, int capacity) {
+        if (depth < 1 || depth > 16) {
+            throw new IllegalArgumentException("depth must be in [1, 16]: " + depth);
+        }
+        if (width < 1 || Integer.bitCount(width) != 1 || width > 1 << 24) {
+            throw new IllegalArgumentException("width must be a power of two up to 2^24: " + width);
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.depth = depth;
+        this.width = width;
+        this.capacity = capacity;
+        this.table = new long[depth * width];
+        this.keys = new int[capacity];
+        this.estimates = new long[capacity];
+    }
+
+    /**
+     * @return сумма всех учтённых количеств
+     */
+    public long total() {
+        return total;
+    }
+
+    public void add(int key) {
+        add(key, 1);
+    }
+
+    /**
+     * <b>Учесть ключ</b>
+     *
+     * @param key   ключ
+     * @param count количество, не меньше нуля
+     */
+    public void add(int key, long count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count must not be negative: " + count);
+        }
+        total += count;
+        long hash = HyperLogLog.hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int slot = row * width + ((h1 + row * h2) & (width - 1));
+            table[slot] += count;
+            estimate = Math.min(estimate, table[slot]);
+        }
+        offer(key, estimate);
+    }
+
+    /**
+     * @param key ключ
+     * @return оценка частоты сверху
+     */
+    public long estimate(int key) {
+        long hash = HyperLogLog.hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, table[row * width + ((h1 + row * h2) & (width - 1))]);
+        }
+        return estimate;
+    }
+
+    /**
+     * <b>Самые частые ключи</b>
+     *
+     * @param n сколько ключей вернуть, не больше {@code capacity}
+     * @return ключи по убыванию оценки, при равной - по возрастанию ключа
+     */
+    public List<Entry> top(int n) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        // кандидатов немного - сортировка вставками
+        for (int i = 1; i < size; i++) {
+            int current = order[i];
+            int j = i - 1;
+            while (j >= 0 && before(current, order[j])) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = current;
+        }
+        List<Entry> result = new ArrayList<>(Math.min(n, size));
+        for (int i = 0; i < Math.min(n, size); i++) {
+            result.add(new Entry(keys[order[i]], estimates[order[i]]));
+        }
+        return result;
+    }
+
+    /**
+     * <b>Добавить другой скетч</b>
+     *
+     * @param other частичный скетч тех же размеров; сам не изменяется
+     * @return этот же скетч
+     */
+    public HeavyHitterSketch merge(HeavyHitterSketch other) {
+        if (other.depth != depth || other.width != width || other.capacity != capacity) {
+            throw new IllegalArgumentException("Cannot merge sketches of different dimensions");
+        }
+        for (int i = 0; i < table.length; i++) {
+            table[i] += other.table[i];
+        }
+        total += other.total;
+
+        int[] candidates = new int[size + other.size];
+        System.arraycopy(keys, 0, candidates, 0, size);
+        System.arraycopy(other.keys, 0, candidates, size, other.size);
+        size = 0;
+        for (int key : candidates) {
+            offer(key, estimate(key));
+        }
+        return this;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(FORMAT);
+        out.writeByte(depth);
+        out.writeInt(width);
+        out.writeInt(capacity);
+        out.writeLong(total);
+        for (long counter : table) {
+            out.writeLong(counter);
+        }
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(keys[i]);
+        }
+    }
+
+    public static HeavyHitterSketch readFrom(DataInput in) throws IOException {
+        if (in.readByte() != FORMAT) {
+            throw new IOException("Неизвестный формат записи скетча частот");
+        }
+        HeavyHitterSketch sketch;
+        try {
+            sketch = new HeavyHitterSketch(in.readUnsignedByte(), in.readInt(), in.readInt());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Некорректные размеры скетча частот", e);
+        }
+        sketch.total = in.readLong();
+        for (int i = 0; i < sketch.table.length; i++) {
+            sketch.table[i] = in.readLong();
+        }
+        int size = in.readInt();
+        if (size < 0 || size > sketch.capacity) {
+            throw new IOException("Некорректное число кандидатов: " + size);
+        }
+        for (int i = 0; i < size; i++) {
+            int key = in.readInt();
+            sketch.offer(key, sketch.estimate(key));
+        }
+        return sketch;
+    }
+
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(table.length * 8 + capacity * 4 + 32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeTo(out);
+        } catch (IOException e) {
+            // ByteArrayOutputStream не бросает IOException
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static HeavyHitterSketch fromByteArray(byte[] data) throws IOException {
+        return readFrom(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    private boolean before(int a, int b) {
+        return estimates[a] > estimates[b] || (estimates[a] == estimates[b] && keys[a] < keys[b]);
+    }
+
+    private void offer(int key, long estimate) {
+        if (size == capacity && estimate <= estimates[minIndex]) {
+            // оценки только растут: ключ из списка не может иметь оценку ниже минимума
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == key) {
+                estimates[i] = estimate;
+                if (i == minIndex) {
+                    updateMinIndex();
+                }
+                return;
+            }
+        }
+        int slot = size < capacity ? size++ : minIndex;
+        keys[slot] = key;
+        estimates[slot] = estimate;
+        updateMinIndex();
+    }
+
+    private void updateMinIndex() {
+        minIndex = 0;
+        for (int i = 1; i < size; i++) {
+            if (estimates[i] < estimates[minIndex]) {
+                minIndex = i;
+            }
+        }
+    }
+
+    /**
+     * <b>Частый ключ</b>
+     */
+    public static class Entry {
+        private final int key;
+        private final long count;
+
+        public Entry(int key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        public int getKey() {
+            return key;
+        }
+
+        /**
+         * @return оценка частоты сверху
+         */
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return "{key|" + key + ", count|" + count + '}';
+        }
+    }
+}
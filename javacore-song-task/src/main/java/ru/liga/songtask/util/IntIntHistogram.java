@@ -0,0 +1,182 @@
+package ru.liga.songtask.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * <b>Гистограмма int -> int на открытой адресации</b>
+ * <p>
+ * Ключи и счётчики лежат в двух массивах примитивов, коллизии разрешаются линейным
+ * пробированием. Добавление не упаковывает значения и не выделяет память, кроме
+ * редкого увеличения таблицы. Частичные гистограммы параллельных обработчиков
+ * объединяются методом {@link #merge(IntIntHistogram)}.
+ */
+public class IntIntHistogram {
+    private static final int FREE = Integer.MIN_VALUE;
+
+    private int[] keys;
+    private int[] counts;
+    private int mask;
+    private int size;
+    // Integer.MIN_VALUE занят под пустую ячейку, его счётчик хранится отдельно
+    private int freeKeyCount;
+
+    public IntIntHistogram() {
+        this(16);
+    }
+
+    /**
+     * @param expectedKeys ожидаемое число различных ключей
+     */
+    public IntIntHistogram(int expectedKeys) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedKeys * 2 - 1)) << 1;
+        keys = new int[capacity];
+        counts = new int[capacity];
+        Arrays.fill(keys, FREE);
+        mask = capacity - 1;
+    }
+
+    public void add(int key) {
+        add(key, 1);
+    }
+
+    public void add(int key, int count) {
+        if (key == FREE) {
+            if (freeKeyCount == 0 && count != 0) {
+                size++;
+            }
+            freeKeyCount += count;
+            return;
+        }
+        int slot = slotOf(key);
+        if (keys[slot] == FREE) {
+            keys[slot] = key;
+            size++;
+            if (size * 4 > keys.length * 3) {
+                counts[slot] = count;
+                grow();
+                return;
+            }
+        }
+        counts[slot] += count;
+    }
+
+    public int get(int key) {
+        if (key == FREE) {
+            return freeKeyCount;
+        }
+        int slot = slotOf(key);
+        return keys[slot] == FREE ? 0 : counts[slot];
+    }
+
+    /**
+     * @return число различных ключей
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return сумма всех счётчиков
+     */
+    public long total() {
+        long total = freeKeyCount;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                total += counts[i];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * <b>Добавить все счётчики другой гистограммы</b>
+     *
+     * @param other частичная гистограмма
+     */
+    public void merge(IntIntHistogram other) {
+        if (other.freeKeyCount != 0) {
+            add(FREE, other.freeKeyCount);
+        }
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != FREE) {
+                add(other.keys[i], other.counts[i]);
+            }
+        }
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        if (freeKeyCount != 0) {
+            consumer.accept(FREE, freeKeyCount);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                consumer.accept(keys[i], counts[i]);
+            }
+        }
+    }
+
+    /**
+     * @return ключи в порядке возрастания
+     */
+    public int[] sortedKeys() {
+        int[] result = new int[size];
+        int n = 0;
+        if (freeKeyCount != 0) {
+            result[n++] = FREE;
+        }
+        for (int key : keys) {
+            if (key != FREE) {
+                result[n++] = key;
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    public HashMap<Integer, Integer> toHashMap() {
+        HashMap<Integer, Integer> map = new HashMap<>();
+        forEach(map::put);
+        return map;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        Arrays.fill(counts, 0);
+        size = 0;
+        freeKeyCount = 0;
+    }
+
+    private int slotOf(int key) {
+        int hash = key * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (keys[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new int[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        Arrays.fill(keys, FREE);
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = slotOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    public interface EntryConsumer {
+        void accept(int key, int count);
+    }
+}
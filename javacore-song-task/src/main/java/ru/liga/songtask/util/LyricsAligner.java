@@ -0,0 +1,242 @@
+package ru.liga.songtask.util;
+
+import com.leff.midi.MidiFile;
+import com.leff.midi.MidiTrack;
+import com.leff.midi.event.MidiEvent;
+import com.leff.midi.event.meta.Lyrics;
+import com.leff.midi.event.meta.Text;
+import ru.liga.songtask.domain.LyricsAlignment;
+import ru.liga.songtask.domain.Note;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <b>Сопоставление слогов текста началам нот</b>
+ * <p>
+ * Слогами считаются события {@link Lyrics}, а если их в файле нет - события {@link Text},
+ * кроме служебных строк караоке, начинающихся с '@'. Тики слогов и начала нот трека
+ * упорядочены, поэтому сопоставление - один проход двумя указателями, O(n + m): слогу
+ * достаётся ближайшая ещё не занятая нота, начавшаяся не дальше допуска от него.
+ * Допуск - 1/32 целой ноты, {@code resolution / 8} тиков.
+ */
+public class LyricsAligner {
+    private static final int TOLERANCE_DIVISOR = 8;
+    private static final int INDEX_BITS = 24;
+
+    /**
+     * @param resolution тиков на четверть
+     * @return допуск в тиках
+     */
+    public static long tolerance(int resolution) {
+        return Math.max(1, resolution / TOLERANCE_DIVISOR);
+    }
+
+    /**
+     * <b>Слоги midi-файла</b>
+     *
+     * @param midiFile файл
+     * @return слоги всех треков по возрастанию тика
+     */
+    public static Syllables readSyllables(MidiFile midiFile) {
+        Syllables syllables = new Syllables();
+        for (MidiTrack track : midiFile.getTracks()) {
+            for (MidiEvent event : track.getEvents()) {
+                syllables.accept(event);
+            }
+        }
+        return syllables;
+    }
+
+    /**
+     * <b>Сопоставить слоги нотам трека</b>
+     *
+     * @param syllables  слоги
+     * @param notes      ноты одноголосного трека
+     * @param resolution тиков на четверть
+     * @return сопоставление по слогам
+     */
+    public static LyricsAlignment align(Syllables syllables, List<Note> notes, int resolution) {
+        long[] onsets = new long[notes.size()];
+        for (int i = 0; i < onsets.length; i++) {
+            onsets[i] = notes.get(i).startTick();
+        }
+        int[] order = sortedOrder(onsets, onsets.length);
+        long[] sortedOnsets = new long[onsets.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedOnsets[i] = onsets[order[i]];
+        }
+        long[] ticks = syllables.ticks();
+        int[] noteIndexes = new int[ticks.length];
+        int matched = match(ticks, ticks.length, sortedOnsets, sortedOnsets.length, tolerance(resolution), noteIndexes);
+        for (int i = 0; i < noteIndexes.length; i++) {
+            if (noteIndexes[i] != LyricsAlignment.UNMATCHED) {
+                noteIndexes[i] = order[noteIndexes[i]];
+            }
+        }
+        return new LyricsAlignment(ticks, syllables.texts(), noteIndexes, notes.size(), matched);
+    }
+
+    /**
+     * <b>Оценка совпадения слогов с началами нот</b>
+     *
+     * @param syllables  слоги
+     * @param onsets     тики начал нот; упорядочиваются на месте, если ещё не упорядочены
+     * @param count      число нот
+     * @param resolution тиков на четверть
+     * @return {@link LyricsAlignment#score(int, int, int)}
+     */
+    public static double score(Syllables syllables, long[] onsets, int count, int resolution) {
+        if (!isSorted(onsets, count)) {
+            Arrays.sort(onsets, 0, count);
+        }
+        long[] ticks = syllables.ticks();
+        int matched = match(ticks, ticks.length, onsets, count, tolerance(resolution), null);
+        return LyricsAlignment.score(matched, ticks.length, count);
+    }
+
+    /**
+     * Проход двумя указателями по упорядоченным тикам слогов и началам нот.
+     *
+     * @param noteIndexes куда записать номер ноты каждого слога, либо null
+     * @return число сопоставленных слогов
+     */
+    static int match(long[] ticks, int syllableCount, long[] onsets, int noteCount, long tolerance, int[] noteIndexes) {
+        int matched = 0;
+        int j = 0;
+        for (int i = 0; i < syllableCount; i++) {
+            long tick = ticks[i];
+            while (j < noteCount && onsets[j] < tick - tolerance) {
+                j++;
+            }
+            int index = LyricsAlignment.UNMATCHED;
+            if (j < noteCount && onsets[j] <= tick + tolerance) {
+                if (j + 1 < noteCount && onsets[j + 1] <= tick + tolerance
+                        && Math.abs(onsets[j + 1] - tick) < Math.abs(onsets[j] - tick)) {
+                    j++;
+                }
+                index = j++;
+                matched++;
+            }
+            if (noteIndexes != null) {
+                noteIndexes[i] = index;
+            }
+        }
+        return matched;
+    }
+
+    private static boolean isSorted(long[] values, int count) {
+        for (int i = 1; i < count; i++) {
+            if (values[i] < values[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Устойчивый порядок индексов по возрастанию значения: значение и индекс упакованы в один long.
+     */
+    private static int[] sortedOrder(long[] values, int count) {
+        if (count >= 1 << INDEX_BITS) {
+            throw new IllegalArgumentException("Too many events to align: " + count);
+        }
+        long[] packed = new long[count];
+        for (int i = 0; i < count; i++) {
+            packed[i] = values[i] << INDEX_BITS | i;
+        }
+        Arrays.sort(packed);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = (int) (packed[i] & ((1 << INDEX_BITS) - 1));
+        }
+        return order;
+    }
+
+    /**
+     * <b>Слоги, собранные из событий</b>
+     * <p>
+     * События принимаются в любом порядке треков, упорядочиваются при первом запросе.
+     */
+    public static class Syllables {
+        private long[] lyricTicks = new long[16];
+        private String[] lyricTexts = new String[16];
+        private int lyricCount;
+        private long[] textTicks = new long[16];
+        private String[] textTexts = new String[16];
+        private int textCount;
+
+        private long[] ticks;
+        private String[] texts;
+
+        /**
+         * <b>Учесть событие</b> - события, кроме текста и слов песни, пропускаются.
+         *
+         * @param event событие любого трека
+         */
+        public void accept(MidiEvent event) {
+            if (event instanceof Lyrics) {
+                if (lyricCount == lyricTicks.length) {
+                    lyricTicks = Arrays.copyOf(lyricTicks, lyricCount * 2);
+                    lyricTexts = Arrays.copyOf(lyricTexts, lyricCount * 2);
+                }
+                lyricTicks[lyricCount] = event.getTick();
+                lyricTexts[lyricCount++] = ((Lyrics) event).getLyric();
+                ticks = null;
+            } else if (event.getClass().equals(Text.class)) {
+                String text = ((Text) event).getText();
+                if (text.startsWith("@")) {
+                    return;
+                }
+                if (textCount == textTicks.length) {
+                    textTicks = Arrays.copyOf(textTicks, textCount * 2);
+                    textTexts = Arrays.copyOf(textTexts, textCount * 2);
+                }
+                textTicks[textCount] = event.getTick();
+                textTexts[textCount++] = text;
+                ticks = null;
+            }
+        }
+
+        public int size() {
+            return lyricCount > 0 ? lyricCount : textCount;
+        }
+
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+
+        /**
+         * @return тики слогов по возрастанию
+         */
+        public long[] ticks() {
+            prepare();
+            return ticks;
+        }
+
+        /**
+         * @return тексты слогов в порядке {@link #ticks()}
+         */
+        public String[] texts() {
+            prepare();
+            return texts;
+        }
+
+        private void prepare() {
+            if (ticks != null) {
+                return;
+            }
+            boolean lyrics = lyricCount > 0;
+            long[] sourceTicks = lyrics ? lyricTicks : textTicks;
+            String[] sourceTexts = lyrics ? lyricTexts : textTexts;
+            int count = size();
+            int[] order = sortedOrder(sourceTicks, count);
+            ticks = new long[count];
+            texts = new String[count];
+            for (int i = 0; i < count; i++) {
+                ticks[i] = sourceTicks[order[i]];
+                texts[i] = sourceTexts[order[i]];
+            }
+        }
+    }
+}
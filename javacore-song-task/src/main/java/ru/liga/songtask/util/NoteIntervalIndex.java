@@ -0,0 +1,228 @@
+package ru.liga.songtask.util;
+
+import ru.liga.songtask.domain.Note;
+import ru.liga.songtask.domain.NoteBuffer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * <b>Индекс нот трека по интервалам звучания</b>
+ * <p>
+ * Нота звучит на полуинтервале [startTick, startTick + durationTicks), ноты нулевой длины
+ * не звучат ни в один тик. Ноты упорядочены по началу и уложены в неявное сбалансированное
+ * дерево, где каждый узел хранит наибольший конец в своём поддереве; это позволяет находить
+ * звучащие в тик или в окне ноты, не просматривая остальные. Отдельно хранятся отсортированные
+ * начала и концы: число звучащих нот и максимальная полифония считаются по ним двоичным
+ * поиском и одним проходом.
+ * <p>
+ * Запросы возвращают индексы нот в исходном {@link NoteBuffer}.
+ */
+public class NoteIntervalIndex {
+    private final int[] order;
+    private final long[] starts;
+    private final long[] ends;
+    private final long[] maxEnds;
+    private final long[] sortedStarts;
+    private final long[] sortedEnds;
+    private final int maxPolyphony;
+    private final long maxPolyphonyTick;
+
+    public NoteIntervalIndex(List<Note> notes) {
+        this(NoteBuffer.of(notes));
+    }
+
+    public NoteIntervalIndex(NoteBuffer notes) {
+        int n = notes.size();
+        // ключ начала в старших 32 битах, индекс в младших: сортировка без упаковки в Integer,
+        // ноты с равным началом остаются в исходном порядке
+        long[] packed = new long[n];
+        boolean fitsInt = true;
+        for (int i = 0; i < n; i++) {
+            packed[i] = notes.startTick(i);
+            fitsInt &= packed[i] >= 0 && packed[i] <= Integer.MAX_VALUE;
+        }
+        if (!fitsInt) {
+            // начала за пределами int заменяются их рангом, порядок и равенство сохраняются
+            long[] sorted = packed.clone();
+            Arrays.sort(sorted);
+            for (int i = 0; i < n; i++) {
+                packed[i] = upperBound(sorted, packed[i]);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            packed[i] = packed[i] << 32 | i;
+        }
+        Arrays.sort(packed);
+
+        order = new int[n];
+        starts = new long[n];
+        ends = new long[n];
+        int sounding = 0;
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) packed[i];
+            starts[i] = notes.startTick(order[i]);
+            ends[i] = notes.endTick(order[i]);
+            if (ends[i] > starts[i]) {
+                sounding++;
+            }
+        }
+        maxEnds = new long[n];
+        buildMaxEnds(0, n);
+
+        sortedStarts = new long[sounding];
+        sortedEnds = new long[sounding];
+        for (int i = 0, j = 0; i < n; i++) {
+            if (ends[i] > starts[i]) {
+                sortedStarts[j] = starts[i];
+                sortedEnds[j++] = ends[i];
+            }
+        }
+        Arrays.sort(sortedEnds);
+
+        int current = 0;
+        int max = 0;
+        long maxTick = -1;
+        for (int i = 0, j = 0; i < sounding; ) {
+            if (sortedEnds[j] <= sortedStarts[i]) {
+                current--;
+                j++;
+            } else {
+                current++;
+                if (current > max) {
+                    max = current;
+                    maxTick = sortedStarts[i];
+                }
+                i++;
+            }
+        }
+        maxPolyphony = max;
+        maxPolyphonyTick = maxTick;
+    }
+
+    public int size() {
+        return order.length;
+    }
+
+    /**
+     * <b>Ноты, звучащие в тик</b>
+     *
+     * @param tick   тик
+     * @param action получает индекс каждой звучащей ноты, в порядке возрастания начала
+     */
+    public void forEachAt(long tick, IntConsumer action) {
+        forEachIn(tick, tick + 1, action);
+    }
+
+    /**
+     * <b>Ноты, звучащие хотя бы один тик окна [fromTick, toTick)</b>
+     *
+     * @param fromTick начало окна
+     * @param toTick   конец окна, не включается
+     * @param action   получает индекс каждой найденной ноты, в порядке возрастания начала
+     */
+    public void forEachIn(long fromTick, long toTick, IntConsumer action) {
+        if (fromTick < toTick) {
+            query(0, order.length, fromTick, toTick, action);
+        }
+    }
+
+    public int[] indicesAt(long tick) {
+        return indicesIn(tick, tick + 1);
+    }
+
+    public int[] indicesIn(long fromTick, long toTick) {
+        IntArrayCollector collector = new IntArrayCollector();
+        forEachIn(fromTick, toTick, collector);
+        return Arrays.copyOf(collector.values, collector.size);
+    }
+
+    /**
+     * <b>Число нот, звучащих в тик</b>
+     *
+     * @param tick тик
+     * @return число нот, для которых startTick <= tick < конец ноты
+     */
+    public int countAt(long tick) {
+        return upperBound(sortedStarts, tick) - upperBound(sortedEnds, tick);
+    }
+
+    /**
+     * @return наибольшее число одновременно звучащих нот
+     */
+    public int getMaxPolyphony() {
+        return maxPolyphony;
+    }
+
+    /**
+     * @return первый тик, в который достигается максимальная полифония, либо -1 для пустого трека
+     */
+    public long getMaxPolyphonyTick() {
+        return maxPolyphonyTick;
+    }
+
+    /**
+     * @return {@code true}, если никакие две ноты не звучат одновременно
+     */
+    public boolean isMonophonic() {
+        return maxPolyphony <= 1;
+    }
+
+    private long buildMaxEnds(int lo, int hi) {
+        if (lo >= hi) {
+            return Long.MIN_VALUE;
+        }
+        int mid = (lo + hi) >>> 1;
+        long max = Math.max(ends[mid], Math.max(buildMaxEnds(lo, mid), buildMaxEnds(mid + 1, hi)));
+        maxEnds[mid] = max;
+        return max;
+    }
+
+    private void query(int lo, int hi, long fromTick, long toTick, IntConsumer action) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (maxEnds[mid] <= fromTick) {
+                return;
+            }
+            query(lo, mid, fromTick, toTick, action);
+            if (starts[mid] >= toTick) {
+                return;
+            }
+            if (ends[mid] > fromTick && ends[mid] > starts[mid]) {
+                action.accept(order[mid]);
+            }
+            lo = mid + 1;
+        }
+    }
+
+    /**
+     * @return число элементов отсортированного массива, не больших value
+     */
+    private static int upperBound(long[] sorted, long value) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] <= value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static class IntArrayCollector implements IntConsumer {
+        private int[] values = new int[8];
+        private int size;
+
+        @Override
+        public void accept(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
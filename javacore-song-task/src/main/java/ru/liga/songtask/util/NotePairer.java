@@ -0,0 +1,147 @@
+package ru.liga.songtask.util;
+
+import com.leff.midi.event.MidiEvent;
+import com.leff.midi.event.NoteOff;
+import com.leff.midi.event.NoteOn;
+
+import java.util.Arrays;
+
+/**
+ * <b>Сопоставление NoteOn и NoteOff</b>
+ * <p>
+ * Окончание ноты закрывает последнюю открытую ноту той же высоты на том же канале.
+ * Для каждой из 16 * 128 пар (канал, высота) заранее выделен стек начальных тиков и
+ * громкостей в общих массивах примитивов, поэтому разбор трека не выделяет память,
+ * пока глубина наложения одной и той же ноты не превысит текущую ёмкость стека.
+ * Готовые ноты передаются в {@link NoteListener} в момент их окончания.
+ * <p>
+ * Экземпляр не потокобезопасен; для разбора очередного трека его можно переиспользовать
+ * после {@link #reset()}.
+ */
+public class NotePairer {
+    private static final int CHANNELS = 16;
+    private static final int PITCHES = 128;
+    private static final int KEYS = CHANNELS * PITCHES;
+
+    private int depth;
+    private long[] startTicks;
+    private int[] velocities;
+    private final int[] sizes = new int[KEYS];
+    private int openNotes;
+
+    public NotePairer() {
+        this(4);
+    }
+
+    /**
+     * @param depth начальная ёмкость стека для одной пары (канал, высота)
+     */
+    public NotePairer(int depth) {
+        this.depth = Math.max(1, depth);
+        startTicks = new long[KEYS * this.depth];
+        velocities = new int[KEYS * this.depth];
+    }
+
+    /**
+     * <b>Сопоставить все события трека</b>
+     *
+     * @param events   события одного трека в порядке возрастания тика
+     * @param listener получатель готовых нот
+     */
+    public void pair(Iterable<MidiEvent> events, NoteListener listener) {
+        for (MidiEvent event : events) {
+            accept(event, listener);
+        }
+    }
+
+    /**
+     * <b>Обработать очередное событие</b>
+     * <p>
+     * События, не являющиеся NoteOn\NoteOff, игнорируются. NoteOn с нулевой громкостью
+     * считается окончанием ноты. Окончание без открытой ноты отбрасывается.
+     *
+     * @param event    событие трека
+     * @param listener получатель ноты, если событие её закрыло
+     */
+    public void accept(MidiEvent event, NoteListener listener) {
+        if (event instanceof NoteOn) {
+            NoteOn noteOn = (NoteOn) event;
+            if (noteOn.getVelocity() != 0) {
+                push(noteOn.getChannel(), noteOn.getNoteValue(), noteOn.getVelocity(), event.getTick());
+            } else {
+                pop(noteOn.getChannel(), noteOn.getNoteValue(), event.getTick(), listener);
+            }
+        } else if (event instanceof NoteOff) {
+            NoteOff noteOff = (NoteOff) event;
+            pop(noteOff.getChannel(), noteOff.getNoteValue(), event.getTick(), listener);
+        }
+    }
+
+    /**
+     * @return число нот, начатых, но ещё не закрытых
+     */
+    public int getOpenNotes() {
+        return openNotes;
+    }
+
+    /**
+     * <b>Забыть все открытые ноты</b>
+     */
+    public void reset() {
+        Arrays.fill(sizes, 0);
+        openNotes = 0;
+    }
+
+    private void push(int channel, int pitch, int velocity, long tick) {
+        int key = key(channel, pitch);
+        if (sizes[key] == depth) {
+            grow();
+        }
+        int index = key * depth + sizes[key]++;
+        startTicks[index] = tick;
+        velocities[index] = velocity;
+        openNotes++;
+    }
+
+    private void pop(int channel, int pitch, long tick, NoteListener listener) {
+        int key = key(channel, pitch);
+        if (sizes[key] == 0) {
+            return;
+        }
+        int index = key * depth + --sizes[key];
+        openNotes--;
+        long start = startTicks[index];
+        listener.onNote(channel, pitch, velocities[index], start, tick - start);
+    }
+
+    private static int key(int channel, int pitch) {
+        return (channel & (CHANNELS - 1)) * PITCHES + (pitch & (PITCHES - 1));
+    }
+
+    private void grow() {
+        int newDepth = depth * 2;
+        long[] newStartTicks = new long[KEYS * newDepth];
+        int[] newVelocities = new int[KEYS * newDepth];
+        for (int key = 0; key < KEYS; key++) {
+            System.arraycopy(startTicks, key * depth, newStartTicks, key * newDepth, sizes[key]);
+            System.arraycopy(velocities, key * depth, newVelocities, key * newDepth, sizes[key]);
+        }
+        depth = newDepth;
+        startTicks = newStartTicks;
+        velocities = newVelocities;
+    }
+
+    /**
+     * <b>Получатель нот</b>
+     */
+    public interface NoteListener {
+        /**
+         * @param channel       канал 0-15
+         * @param noteValue     midi-номер ноты 0-127
+         * @param velocity      громкость NoteOn
+         * @param startTick     тик начала
+         * @param durationTicks длительность в тиках
+         */
+        void onNote(int channel, int noteValue, int velocity, long startTick, long durationTicks);
+    }
+}
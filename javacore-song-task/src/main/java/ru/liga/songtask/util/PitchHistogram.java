@@ -0,0 +1,90 @@
+package ru.liga.songtask.util;
+
+import ru.liga.songtask.domain.NoteSign;
+
+import java.util.HashMap;
+
+/**
+ * <b>Гистограмма высот нот</b>
+ * <p>
+ * Счётчик на каждый из 128 midi-номеров в массиве {@code int[128]}.
+ * Частичные гистограммы объединяются методом {@link #merge(PitchHistogram)}.
+ */
+public class PitchHistogram {
+    private final int[] counts = new int[128];
+
+    public void add(int midi) {
+        counts[midi]++;
+    }
+
+    public void add(int midi, int count) {
+        counts[midi] += count;
+    }
+
+    public int get(int midi) {
+        return counts[midi];
+    }
+
+    public long total() {
+        long total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return наименьший встречающийся midi-номер, либо -1 для пустой гистограммы
+     */
+    public int lowest() {
+        for (int midi = 0; midi < counts.length; midi++) {
+            if (counts[midi] > 0) {
+                return midi;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return наибольший встречающийся midi-номер, либо -1 для пустой гистограммы
+     */
+    public int highest() {
+        for (int midi = counts.length - 1; midi >= 0; midi--) {
+            if (counts[midi] > 0) {
+                return midi;
+            }
+        }
+        return -1;
+    }
+
+    public void merge(PitchHistogram other) {
+        for (int midi = 0; midi < counts.length; midi++) {
+            counts[midi] += other.counts[midi];
+        }
+    }
+
+    /**
+     * @return копия счётчиков, индекс - midi-номер
+     */
+    public int[] toArray() {
+        return counts.clone();
+    }
+
+    /**
+     * <b>Перевести в HashMap нотный знак\число вхождений</b>
+     * <p>
+     * Высоты, для которых нет нотного знака, в результат не попадают.
+     */
+    public HashMap<NoteSign, Integer> toNoteSignMap() {
+        HashMap<NoteSign, Integer> map = new HashMap<>();
+        for (int midi = 0; midi < counts.length; midi++) {
+            if (counts[midi] > 0) {
+                NoteSign sign = NoteSign.fromMidiNumber(midi);
+                if (sign != NoteSign.NULL_VALUE) {
+                    map.put(sign, counts[midi]);
+                }
+            }
+        }
+        return map;
+    }
+}
@@ -0,0 +1,435 @@
+package ru.liga.songtask.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * <b>Приближённые квантили потока чисел (KLL-скетч)</b>
+ * <p>
+ * Значения копятся в уровнях-компакторах: элемент уровня h представляет 2<sup>h</sup> исходных
+ * значений. Переполненный уровень сортируется, и каждый второй его элемент (начиная со случайного)
+ * переходит на уровень выше. Ёмкость уровней убывает вниз в 2/3 раза от {@code k} верхнего,
+ * поэтому память - O(k) чисел плюс по несколько на уровень, независимо от длины потока, а ошибка
+ * ранга порядка 1.7 / k. Скетчи с одинаковым {@code k} объединяются методом
+ * {@link #merge(QuantileSketch)} с той же точностью, поэтому частичные результаты параллельных
+ * обработчиков можно сохранить через {@link #writeTo(DataOutput)} и объединить в конце.
+ * <p>
+ * Случайные биты берутся из генератора с фиксированным начальным значением - одна и та же
+ * последовательность значений всегда даёт один и тот же скетч. Не потокобезопасен.
+ */
+public class QuantileSketch {
+    public static final int DEFAULT_K = 200;
+
+    private static final int MIN_K = 8;
+    private static final int MIN_CAPACITY = 2;
+    private static final byte FORMAT = 1;
+
+    private final int k;
+    private double[][] levels;
+    private int[] sizes;
+    private int levelCount;
+    private int retained;
+    private int totalCapacity;
+    private long count;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    private long randomState = 0x9E3779B97F4A7C15L;
+
+    // отсортированное представление для запросов, сбрасывается при изменении
+    private double[] sortedValues;
+    private long[] cumulativeWeights;
+
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * @param k ёмкость верхнего уровня, не меньше 8; больше - точнее и больше памяти
+     */
+    public QuantileSketch(int k) {
+        if (k < MIN_K || k > 65535) {
+            throw new IllegalArgumentException("k must be in [" + MIN_K + ", 65535]: " + k);
+        }
+        this.k = k;
+        this.levels = new double[4][];
+        this.sizes = new int[4];
+        addLevel();
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * @return число учтённых значений
+     */
+    public long count() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @return наименьшее значение, либо NaN для пустого скетча
+     */
+    public double min() {
+        return min;
+    }
+
+    /**
+     * @return наибольшее значение, либо NaN для пустого скетча
+     */
+    public double max() {
+        return max;
+    }
+
+    /**
+     * @return число хранимых значений
+     */
+    public int retained() {
+        return retained;
+    }
+
+    /**
+     * <b>Учесть значение</b>
+     *
+     * @param value значение, не NaN
+     */
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("NaN cannot be added to a quantile sketch");
+        }
+        if (count == 0) {
+            min = value;
+            max = value;
+        } else if (value < min) {
+            min = value;
+        } else if (value > max) {
+            max = value;
+        }
+        count++;
+        append(0, value);
+        if (retained > totalCapacity) {
+            compress();
+        }
+        sortedValues = null;
+    }
+
+    /**
+     * <b>Добавить значения другого скетча</b>
+     *
+     * @param other частичный скетч с тем же {@code k}; сам не изменяется
+     * @return этот же скетч
+     */
+    public QuantileSketch merge(QuantileSketch other) {
+        if (other.k != k) {
+            throw new IllegalArgumentException("Cannot merge sketches with k " + k + " and " + other.k);
+        }
+        if (other.count == 0) {
+            return this;
+        }
+        while (levelCount < other.levelCount) {
+            addLevel();
+        }
+        for (int h = 0; h < other.levelCount; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, other.levels[h][i]);
+            }
+        }
+        min = count == 0 ? other.min : Math.min(min, other.min);
+        max = count == 0 ? other.max : Math.max(max, other.max);
+        count += other.count;
+        compress();
+        sortedValues = null;
+        return this;
+    }
+
+    /**
+     * <b>Скетч значений, умноженных на положительный множитель</b>
+     * <p>
+     * Порядок значений при этом не меняется, поэтому точность та же, что у исходного скетча.
+     * Так, например, длительности, накопленные в тиках, переводятся в миллисекунды.
+     *
+     * @param factor множитель, больше нуля
+     * @return новый скетч
+     */
+    public QuantileSketch scaled(double factor) {
+        if (!(factor > 0) || Double.isInfinite(factor)) {
+            throw new IllegalArgumentException("factor must be positive: " + factor);
+        }
+        QuantileSketch result = copy();
+        for (int h = 0; h < result.levelCount; h++) {
+            for (int i = 0; i < result.sizes[h]; i++) {
+                result.levels[h][i] *= factor;
+            }
+        }
+        result.min *= factor;
+        result.max *= factor;
+        return result;
+    }
+
+    public QuantileSketch copy() {
+        QuantileSketch result = new QuantileSketch(k);
+        result.levels = new double[levels.length][];
+        for (int h = 0; h < levelCount; h++) {
+            result.levels[h] = levels[h].clone();
+        }
+        result.sizes = sizes.clone();
+        result.levelCount = levelCount;
+        result.retained = retained;
+        result.totalCapacity = totalCapacity;
+        result.count = count;
+        result.min = min;
+        result.max = max;
+        result.randomState = randomState;
+        return result;
+    }
+
+    /**
+     * <b>Квантиль</b>
+     *
+     * @param fraction доля от 0 до 1, например 0.5 для медианы
+     * @return значение, не меньше которого оказалась примерно такая доля значений;
+     * NaN для пустого скетча
+     */
+    public double quantile(double fraction) {
+        if (!(fraction >= 0 && fraction <= 1)) {
+            throw new IllegalArgumentException("fraction must be in [0, 1]: " + fraction);
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (fraction == 0) {
+            return min;
+        }
+        if (fraction == 1) {
+            return max;
+        }
+        prepareSorted();
+        long rank = (long) Math.ceil(fraction * count);
+        int index = Arrays.binarySearch(cumulativeWeights, rank);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return sortedValues[Math.min(index, sortedValues.length - 1)];
+    }
+
+    /**
+     * <b>Ранг значения</b>
+     *
+     * @param value значение
+     * @return примерная доля значений, не больших данного; 0 для пустого скетча
+     */
+    public double rank(double value) {
+        if (count == 0) {
+            return 0;
+        }
+        prepareSorted();
+        int low = 0;
+        int high = sortedValues.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedValues[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low == 0 ? 0 : (double) cumulativeWeights[low - 1] / count;
+    }
+
+    /**
+     * <b>Записать скетч</b>
+     *
+     * @param out поток
+     * @throws IOException при ошибке записи
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(FORMAT);
+        out.writeShort(k);
+        out.writeLong(count);
+        out.writeDouble(min);
+        out.writeDouble(max);
+        out.writeLong(randomState);
+        out.writeByte(levelCount);
+        for (int h = 0; h < levelCount; h++) {
+            out.writeInt(sizes[h]);
+            for (int i = 0; i < sizes[h]; i++) {
+                out.writeDouble(levels[h][i]);
+            }
+        }
+    }
+
+    /**
+     * <b>Прочитать скетч, записанный {@link #writeTo(DataOutput)}</b>
+     *
+     * @param in поток
+     * @return скетч
+     * @throws IOException при ошибке чтения или некорректной записи
+     */
+    public static QuantileSketch readFrom(DataInput in) throws IOException {
+        if (in.readByte() != FORMAT) {
+            throw new IOException("Неизвестный формат записи скетча");
+        }
+        int k = in.readUnsignedShort();
+        if (k < MIN_K) {
+            throw new IOException("Некорректный размер скетча: " + k);
+        }
+        QuantileSketch sketch = new QuantileSketch(k);
+        sketch.count = in.readLong();
+        sketch.min = in.readDouble();
+        sketch.max = in.readDouble();
+        sketch.randomState = in.readLong();
+        int levelCount = in.readUnsignedByte();
+        if (levelCount < 1 || levelCount > 64) {
+            throw new IOException("Некорректное число уровней скетча: " + levelCount);
+        }
+        while (sketch.levelCount < levelCount) {
+            sketch.addLevel();
+        }
+        long weight = 0;
+        for (int h = 0; h < levelCount; h++) {
+            int size = in.readInt();
+            if (size < 0 || size > sketch.totalCapacity) {
+                throw new IOException("Некорректный размер уровня скетча: " + size);
+            }
+            for (int i = 0; i < size; i++) {
+                sketch.append(h, in.readDouble());
+            }
+            weight += (long) size << h;
+        }
+        if (weight != sketch.count) {
+            throw new IOException("Число значений скетча не совпадает с уровнями");
+        }
+        return sketch;
+    }
+
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + retained * 8);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeTo(out);
+        } catch (IOException e) {
+            // ByteArrayOutputStream не бросает IOException
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static QuantileSketch fromByteArray(byte[] data) throws IOException {
+        return readFrom(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "{n|%d, min|%s, p50|%s, p95|%s, max|%s}",
+                count, min, quantile(0.5), quantile(0.95), max);
+    }
+
+    private int capacity(int level) {
+        int depth = levelCount - 1 - level;
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(2.0 / 3.0, depth)));
+    }
+
+    private void addLevel() {
+        if (levelCount == levels.length) {
+            levels = Arrays.copyOf(levels, levelCount * 2);
+            sizes = Arrays.copyOf(sizes, levelCount * 2);
+        }
+        levelCount++;
+        totalCapacity = 0;
+        for (int h = 0; h < levelCount; h++) {
+            totalCapacity += capacity(h);
+        }
+        int last = levelCount - 1;
+        levels[last] = new double[capacity(last) + 1];
+    }
+
+    private void append(int level, double value) {
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], levels[level].length * 2);
+        }
+        levels[level][sizes[level]++] = value;
+        retained++;
+    }
+
+    /**
+     * Уплотняет нижние переполненные уровни, пока значения не уместятся в общую ёмкость.
+     */
+    private void compress() {
+        while (retained > totalCapacity) {
+            for (int h = 0; h < levelCount; h++) {
+                if (sizes[h] >= capacity(h)) {
+                    compact(h);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void compact(int level) {
+        if (level + 1 == levelCount) {
+            addLevel();
+        }
+        double[] items = levels[level];
+        int size = sizes[level];
+        Arrays.sort(items, 0, size);
+        // при нечётном размере наименьшее значение остаётся на уровне, чтобы вес сохранился точно
+        int kept = size & 1;
+        int from = kept + (nextBit() ? 1 : 0);
+        for (int i = from; i < size; i += 2) {
+            append(level + 1, items[i]);
+        }
+        sizes[level] = kept;
+        retained -= size - kept;
+    }
+
+    private boolean nextBit() {
+        long x = randomState;
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        randomState = x;
+        return (x & 1) != 0;
+    }
+
+    private void prepareSorted() {
+        if (sortedValues != null) {
+            return;
+        }
+        double[] values = new double[0];
+        long[] weights = new long[0];
+        for (int h = 0; h < levelCount; h++) {
+            double[] level = Arrays.copyOf(levels[h], sizes[h]);
+            Arrays.sort(level);
+            double[] mergedValues = new double[values.length + level.length];
+            long[] mergedWeights = new long[mergedValues.length];
+            int a = 0;
+            int b = 0;
+            for (int i = 0; i < mergedValues.length; i++) {
+                if (b == level.length || (a < values.length && values[a] <= level[b])) {
+                    mergedValues[i] = values[a];
+                    mergedWeights[i] = weights[a++];
+                } else {
+                    mergedValues[i] = level[b++];
+                    mergedWeights[i] = 1L << h;
+                }
+            }
+            values = mergedValues;
+            weights = mergedWeights;
+        }
+        for (int i = 1; i < weights.length; i++) {
+            weights[i] += weights[i - 1];
+        }
+        sortedValues = values;
+        cumulativeWeights = weights;
+    }
+}
@@ -0,0 +1,130 @@
+package ru.liga.songtask.util;
+
+import com.leff.midi.MidiTrack;
+import ru.liga.songtask.domain.Note;
+import ru.liga.songtask.domain.NoteBuffer;
+import ru.liga.songtask.domain.NoteSign;
+
+import java.util.List;
+
+/**
+ * <b>Выделение одноголосной мелодии из многоголосного трека</b>
+ * <p>
+ * Алгоритм "линии горизонта": из нот, начинающихся одновременно, берётся самая высокая.
+ * Новая нота вытесняет звучащую, если она не ниже её или звучащая уже закончилась; звучащая
+ * нота при этом обрезается до начала новой. Более низкая нота, взятая на фоне звучащей,
+ * пропускается целиком. Ноты упорядочиваются сортировкой слиянием по массивам индексов,
+ * проход линейный, итого O(n log n) без объекта на ноту.
+ */
+public class SkylineExtractor {
+
+    /**
+     * <b>Мелодия midi-трека</b>
+     * <p>
+     * Ноты ударных и ноты вне {@link NoteSign} не учитываются.
+     *
+     * @param track трек
+     * @return ноты мелодии в порядке звучания, без наложений
+     */
+    public static NoteBuffer extract(MidiTrack track) {
+        NoteBuffer notes = new NoteBuffer();
+        SongUtils.forEachNote(track.getEvents(), (channel, noteValue, velocity, startTick, durationTicks) -> {
+            if (channel != SongUtils.DRUM_CHANNEL && NoteSign.fromMidiNumber(noteValue) != NoteSign.NULL_VALUE) {
+                notes.add(noteValue, startTick, durationTicks);
+            }
+        });
+        return extract(notes);
+    }
+
+    /**
+     * <b>Мелодия из списка нот</b>
+     *
+     * @param notes ноты трека в любом порядке
+     * @return ноты мелодии в порядке звучания, без наложений
+     */
+    public static List<Note> extract(List<Note> notes) {
+        return extract(NoteBuffer.of(notes)).toNotes();
+    }
+
+    /**
+     * <b>Мелодия из буфера нот</b>
+     * <p>
+     * Ноты нулевой длины не звучат и в мелодию не попадают.
+     *
+     * @param notes ноты трека в любом порядке
+     * @return ноты мелодии в порядке звучания, без наложений
+     */
+    public static NoteBuffer extract(NoteBuffer notes) {
+        int[] order = orderByStartAndPitch(notes);
+        NoteBuffer melody = new NoteBuffer(Math.max(16, notes.size() / 2));
+
+        boolean playing = false;
+        int pitch = 0;
+        long start = 0;
+        long end = 0;
+        long previousStart = Long.MIN_VALUE;
+        for (int index : order) {
+            long noteStart = notes.startTick(index);
+            long noteEnd = notes.endTick(index);
+            if (noteEnd <= noteStart || noteStart == previousStart) {
+                // нулевая длина, либо не самая высокая из начавшихся одновременно
+                continue;
+            }
+            previousStart = noteStart;
+            int notePitch = notes.midi(index);
+            if (playing && end > noteStart && pitch > notePitch) {
+                continue;
+            }
+            if (playing) {
+                melody.add(pitch, start, Math.min(end, noteStart) - start);
+            }
+            playing = true;
+            pitch = notePitch;
+            start = noteStart;
+            end = noteEnd;
+        }
+        if (playing) {
+            melody.add(pitch, start, end - start);
+        }
+        return melody;
+    }
+
+    /**
+     * Индексы нот, упорядоченные по началу, а при равном начале - по убыванию высоты.
+     */
+    private static int[] orderByStartAndPitch(NoteBuffer notes) {
+        int n = notes.size();
+        long[] starts = new long[n];
+        int[] pitches = new int[n];
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            starts[i] = notes.startTick(i);
+            pitches[i] = notes.midi(i);
+            order[i] = i;
+        }
+        int[] buffer = new int[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int from = 0; from < n - width; from += 2 * width) {
+                int mid = from + width;
+                int to = Math.min(from + 2 * width, n);
+                int left = from;
+                int right = mid;
+                int out = from;
+                while (left < mid && right < to) {
+                    int a = order[left];
+                    int b = order[right];
+                    boolean takeRight = starts[b] < starts[a] || (starts[b] == starts[a] && pitches[b] > pitches[a]);
+                    buffer[out++] = takeRight ? order[right++] : order[left++];
+                }
+                while (left < mid) {
+                    buffer[out++] = order[left++];
+                }
+                while (right < to) {
+                    buffer[out++] = order[right++];
+                }
+                System.arraycopy(buffer, from, order, from, to - from);
+            }
+        }
+        return order;
+    }
+}
@@ -1,23 +1,26 @@
 package ru.liga.songtask.util;
 
 import com.leff.midi.MidiFile;
+import com.leff.midi.MidiTrack;
 import com.leff.midi.event.MidiEvent;
-import com.leff.midi.event.NoteOff;
-import com.leff.midi.event.NoteOn;
 import com.leff.midi.event.meta.Tempo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.liga.songtask.domain.Note;
+import ru.liga.songtask.domain.NoteBuffer;
 import ru.liga.songtask.domain.NoteSign;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
 import java.util.TreeSet;
-import java.util.concurrent.LinkedBlockingQueue;
 
 public class SongUtils {
     private static Logger logger = LoggerFactory.getLogger(SongUtils.class);
+    /**
+     * Канал ударных в General MIDI (10-й при нумерации с единицы)
+     */
+    public static final int DRUM_CHANNEL = 9;
+    private static final ThreadLocal<NotePairer> PAIRER = ThreadLocal.withInitial(NotePairer::new);
 
     /**
      * Перевод тиков в миллисекунды
@@ -33,57 +36,72 @@ public class SongUtils {
 
     /**
      * Этот метод, чтобы вы не афигели переводить эвенты в ноты
+     * <p>
+     * Окончание ноты закрывает открытую ноту той же высоты на том же канале, ноты идут
+     * в порядке их окончания.
      *
      * @param events эвенты одного трека
      * @return список нот
      */
     public static List<Note> eventsToNotes(TreeSet<MidiEvent> events) {
         List<Note> vbNotes = new ArrayList<>();
-
-        Queue<NoteOn> noteOnQueue = new LinkedBlockingQueue<>();
-        for (MidiEvent event : events) {
-            if (event instanceof NoteOn || event instanceof NoteOff) {
-                if (isEndMarkerNote(event)) {
-                    NoteSign noteSign = NoteSign.fromMidiNumber(extractNoteValue(event));
-                    if (noteSign != NoteSign.NULL_VALUE) {
-                        NoteOn noteOn = noteOnQueue.poll();
-                        if (noteOn != null) {
-                            long start = noteOn.getTick();
-                            long end = event.getTick();
-                            vbNotes.add(
-                                    new Note(noteSign, start, end - start));
-                        }
-                    }
-                } else {
-                    try {
-                        noteOnQueue.offer((NoteOn) event);
-                    } catch (ClassCastException e) {
-                        logger.debug(e.getMessage());
-                    }
-                }
+        forEachNote(events, (channel, noteValue, velocity, startTick, durationTicks) -> {
+            NoteSign noteSign = NoteSign.fromMidiNumber(noteValue);
+            if (noteSign != NoteSign.NULL_VALUE) {
+                vbNotes.add(new Note(noteSign, startTick, durationTicks));
             }
-        }
+        });
         return vbNotes;
     }
 
-    private static Integer extractNoteValue(MidiEvent event) {
-        if (event instanceof NoteOff) {
-            return ((NoteOff) event).getNoteValue();
-        } else if (event instanceof NoteOn) {
-            return ((NoteOn) event).getNoteValue();
-        } else {
-            return null;
-        }
+    /**
+     * <b>Перевести эвенты в упакованный буфер нот</b>
+     * <p>
+     * Те же ноты и в том же порядке, что и {@link #eventsToNotes(TreeSet)}, но без объекта на ноту.
+     *
+     * @param events эвенты одного трека
+     * @return буфер нот
+     */
+    public static NoteBuffer eventsToNoteBuffer(Iterable<MidiEvent> events) {
+        NoteBuffer buffer = new NoteBuffer();
+        forEachNote(events, (channel, noteValue, velocity, startTick, durationTicks) -> {
+            if (NoteSign.fromMidiNumber(noteValue) != NoteSign.NULL_VALUE) {
+                buffer.add(noteValue, startTick, durationTicks);
+            }
+        });
+        return buffer;
     }
 
-    private static boolean isEndMarkerNote(MidiEvent event) {
-        if (event instanceof NoteOff) {
-            return true;
-        } else if (event instanceof NoteOn) {
-            return ((NoteOn) event).getVelocity() == 0;
-        } else {
-            return false;
+    /**
+     * <b>Собрать звуковысотные ноты всех треков в один буфер</b>
+     * <p>
+     * Ноты канала ударных пропускаются: их номер означает инструмент, а не высоту.
+     *
+     * @param midiFile файл
+     * @return ноты всех треков, трек за треком, в порядке окончания внутри трека
+     */
+    public static NoteBuffer getPitchedNotes(MidiFile midiFile) {
+        NoteBuffer buffer = new NoteBuffer();
+        for (MidiTrack track : midiFile.getTracks()) {
+            forEachNote(track.getEvents(), (channel, noteValue, velocity, startTick, durationTicks) -> {
+                if (channel != DRUM_CHANNEL) {
+                    buffer.add(noteValue, startTick, durationTicks);
+                }
+            });
         }
+        return buffer;
+    }
+
+    /**
+     * <b>Передать ноты трека получателю, не собирая их в список</b>
+     *
+     * @param events   эвенты одного трека
+     * @param listener получатель, вызывается в момент окончания каждой ноты
+     */
+    public static void forEachNote(Iterable<MidiEvent> events, NotePairer.NoteListener listener) {
+        NotePairer pairer = PAIRER.get();
+        pairer.reset();
+        pairer.pair(events, listener);
     }
 
     public static String getStringFromArray(Object[] ar) {
@@ -4,13 +4,21 @@ import com.leff.midi.MidiFile;
 import com.leff.midi.event.meta.Text;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.liga.songtask.domain.LyricsAlignment;
 import ru.liga.songtask.domain.Note;
+import ru.liga.songtask.domain.NoteBuffer;
 import ru.liga.songtask.domain.NoteSign;
+import ru.liga.songtask.util.IntIntHistogram;
+import ru.liga.songtask.util.LyricsAligner;
+import ru.liga.songtask.util.NoteIntervalIndex;
+import ru.liga.songtask.util.PitchHistogram;
+import ru.liga.songtask.util.SkylineExtractor;
 import ru.liga.songtask.util.SongUtils;
 
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.stream.Collectors;
 
 public class AnalyzeWorker {
@@ -48,29 +56,117 @@ public class AnalyzeWorker {
 
     /**
      * <b>Поиск трека для голоса по тексту</b>
+     * <p>
+     * Если в файле есть слоги текста, голосом становится трек, начала нот которого лучше всего
+     * совпадают со слогами ({@link LyricsAligner}); при равной оценке - трек, число нот которого
+     * ближе к числу текстовых событий, затем - с меньшим номером.
+     * Если одноголосных треков нет, голосом становится мелодия, выделенная
+     * {@link SkylineExtractor} из многоголосного трека.
      *
      * @param midiFile midi-файл для поиска
      * @return трек, соответствующий текстовому сопровождению файла в формате List<Note>
+     * @throws NoSuchElementException если в файле нет ни одной ноты
      */
     public static List<Note> getVoiceTrack(MidiFile midiFile) {
         logger.debug("Поиск трека, близкого по длинне к текстовому сопровождению.");
         List<List<Note>> maybe = AnalyzeWorker.getVoiceTracks(midiFile);
         long countOfTextEvents = getCountOfTextEvents(midiFile);
         logger.debug("Всего TextEvent в файле {}", countOfTextEvents);
+        LyricsAligner.Syllables syllables = LyricsAligner.readSyllables(midiFile);
+        logger.debug("Слогов текста в файле {}", syllables.size());
+        if (maybe.isEmpty()) {
+            logger.debug("Треков, пригодных для исполнения голосом, нет - выделяем мелодию.");
+            return getSkylineVoiceTrack(midiFile, countOfTextEvents, syllables);
+        }
 
-        List<Long> difference = maybe.stream()
-                .map(notes -> Math.abs(notes.size() - countOfTextEvents))
-                .collect(Collectors.toList());
-        logger.debug("Собран список абсолютной разности между длиной пригодных для " +
-                "исполнения голосом треков и числом текстовых ивентов\n{}", difference);
-
-        long minDifference = Collections.min(difference);
-        List<Note> result = maybe.get(difference.indexOf(minDifference));
-        logger.debug("Список с минимальной разностью и есть трек для голоса. \n{}", result);
+        List<Note> result = null;
+        double bestScore = -1;
+        long bestDifference = Long.MAX_VALUE;
+        for (List<Note> notes : maybe) {
+            double score = scoreLyrics(syllables, NoteBuffer.of(notes), midiFile.getResolution());
+            long difference = Math.abs(notes.size() - countOfTextEvents);
+            logger.debug("Трек из {} нот: совпадение со слогами {}, разность с числом текстовых ивентов {}",
+                    notes.size(), score, difference);
+            if (score > bestScore || (score == bestScore && difference < bestDifference)) {
+                bestScore = score;
+                bestDifference = difference;
+                result = notes;
+            }
+        }
+        logger.debug("Трек с лучшим совпадением и есть трек для голоса. \n{}", result);
 
         return result;
     }
 
+    /**
+     * <b>Сопоставить слоги текста треку голоса</b>
+     * <p>
+     * Для каждого слога - нота трека голоса, на которую он приходится; этого достаточно для
+     * вывода караоке без повторного разбора файла.
+     *
+     * @param midiFile midi-файл
+     * @return сопоставление слогов трека голоса
+     * @throws NoSuchElementException если в файле нет ни одной ноты
+     */
+    public static LyricsAlignment alignLyrics(MidiFile midiFile) {
+        return LyricsAligner.align(LyricsAligner.readSyllables(midiFile), getVoiceTrack(midiFile),
+                midiFile.getResolution());
+    }
+
+    /**
+     * <b>Выделить голос из многоголосных треков</b>
+     * <p>
+     * Из каждого трека без ударных выделяется мелодия; выбирается та, что лучше совпадает со
+     * слогами текста, при равенстве - та, число нот которой ближе к числу текстовых событий,
+     * затем - из трека с меньшим номером.
+     *
+     * @param midiFile          midi-файл для поиска
+     * @param countOfTextEvents число текстовых событий в файле
+     * @param syllables         слоги текста файла
+     * @return мелодия выбранного трека
+     * @throws NoSuchElementException если в файле нет ни одной ноты
+     */
+    private static List<Note> getSkylineVoiceTrack(MidiFile midiFile, long countOfTextEvents,
+                                                   LyricsAligner.Syllables syllables) {
+        NoteBuffer best = null;
+        int bestTrack = -1;
+        double bestScore = -1;
+        long bestDifference = Long.MAX_VALUE;
+        for (int i = 0; i < midiFile.getTracks().size(); i++) {
+            NoteBuffer melody = SkylineExtractor.extract(midiFile.getTracks().get(i));
+            if (melody.isEmpty()) {
+                continue;
+            }
+            double score = scoreLyrics(syllables, melody, midiFile.getResolution());
+            long difference = Math.abs(melody.size() - countOfTextEvents);
+            if (score > bestScore || (score == bestScore && difference < bestDifference)) {
+                bestScore = score;
+                bestDifference = difference;
+                best = melody;
+                bestTrack = i;
+            }
+        }
+        if (best == null) {
+            throw new NoSuchElementException("В файле нет нот для выделения голоса");
+        }
+        logger.debug("Голос выделен из трека {}, нот: {}", bestTrack, best.size());
+        return best.toNotes();
+    }
+
+    /**
+     * @return оценка совпадения слогов с началами нот; 0, если слогов нет
+     */
+    private static double scoreLyrics(LyricsAligner.Syllables syllables, NoteBuffer notes, int resolution) {
+        if (syllables.isEmpty()) {
+            return 0;
+        }
+        long[] onsets = new long[notes.size()];
+        for (int i = 0; i < onsets.length; i++) {
+            onsets[i] = notes.startTick(i);
+        }
+        return LyricsAligner.score(syllables, onsets, onsets.length, resolution);
+    }
+
     /**
      * <b>Подсчитать общее число текстовых событий в midi-файле</b>
      *
@@ -93,13 +189,9 @@ public class AnalyzeWorker {
      */
     private static boolean isVoice(List<Note> track) {
         logger.trace("Проверка трека на пригодность для исполнения голосом.");
-        long exNoteEndTick = 0;
-        for (Note n : track) {
-            if (exNoteEndTick > n.startTick()) {
-                logger.trace("Непригоден.");
-                return false;
-            }
-            exNoteEndTick = n.startTick() + n.durationTicks();
+        if (!new NoteIntervalIndex(track).isMonophonic()) {
+            logger.trace("Непригоден.");
+            return false;
         }
         logger.trace("Пригоден.");
         return true;
@@ -175,10 +267,12 @@ public class AnalyzeWorker {
 
         logger.trace("bpm = {}", bpm);
 
-        track.stream()
-                .map(n -> SongUtils.tickToMs(bpm, midiFile.getResolution(), n.durationTicks())) //получаем длину каждой ноты в милисекундах
-                .collect(Collectors.groupingBy(noteDuration -> noteDuration, Collectors.counting())) //считаем количество появлений каждой длительности
-                .forEach((integer, aLong) -> durationToCount.put(integer, Math.toIntExact(aLong))); //парсим в инт и закидываем в Hashmap
+        IntIntHistogram histogram = new IntIntHistogram(64);
+        int resolution = midiFile.getResolution();
+        for (Note n : track) {
+            histogram.add(SongUtils.tickToMs(bpm, resolution, n.durationTicks())); //длина ноты в милисекундах
+        }
+        histogram.forEach(durationToCount::put);
 
         logger.trace("Анализ завершён. Найдено {} разных длительностей", durationToCount.size());
         return durationToCount;
@@ -192,16 +286,24 @@ public class AnalyzeWorker {
      */
     public static HashMap<NoteSign, Integer> getNumberOfNotes(List<Note> track) {
         logger.trace("Анализ нот трека по числе вхождений.");
-        HashMap<NoteSign, Integer> numberOfNotes = new HashMap<>();
         if (track == null) {
             logger.trace("Трек пуст, возвращёна пустая HashMap");
-            return numberOfNotes;
+            return new HashMap<>();
         }
 
-        track.stream()
-                .map(Note::sign)
-                .collect(Collectors.groupingBy(noteSign -> noteSign, Collectors.counting()))
-                .forEach((noteSign, aLong) -> numberOfNotes.put(noteSign, Math.toIntExact(aLong)));
+        PitchHistogram histogram = new PitchHistogram();
+        int nullValues = 0;
+        for (Note n : track) {
+            if (n.sign() == NoteSign.NULL_VALUE) {
+                nullValues++;
+            } else {
+                histogram.add(n.sign().getMidi());
+            }
+        }
+        HashMap<NoteSign, Integer> numberOfNotes = histogram.toNoteSignMap();
+        if (nullValues > 0) {
+            numberOfNotes.put(NoteSign.NULL_VALUE, nullValues);
+        }
         logger.trace("Анализ завершён. Найдено {} разных длительностей", numberOfNotes.size());
         return numberOfNotes;
     }
@@ -8,6 +8,7 @@ import com.leff.midi.event.NoteOn;
 import com.leff.midi.event.meta.Tempo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.liga.songtask.domain.NoteSign;
 import ru.liga.songtask.util.SongUtils;
 
 import java.util.function.Predicate;
@@ -117,6 +118,21 @@ public class ChangeWorker {
         return midiFile1;
     }
 
+    /**
+     * <b>Транспонировать мидифайл под диапазон певца</b>
+     *
+     * @param midiFile изменяемый файл
+     * @param low      нижняя нота диапазона певца
+     * @param high     верхняя нота диапазона певца
+     * @return новый Midi файл, сдвинутый на подобранное {@link TranspositionSolver} число полутонов
+     */
+    public static MidiFile fitToRange(MidiFile midiFile, NoteSign low, NoteSign high) {
+        TranspositionSolver.Result result = TranspositionSolver.solve(midiFile, low, high);
+        logger.info("Транспонирование под диапазон {} - {}: {} полутонов, вне диапазона {}% времени голоса",
+                low.fullName(), high.fullName(), result.getShift(), Math.round(result.getOutOfRangeShare() * 100));
+        return transposeMidi(midiFile, result.getShift());
+    }
+
     /**
      * <b>Изменить миди трек</b>
      *
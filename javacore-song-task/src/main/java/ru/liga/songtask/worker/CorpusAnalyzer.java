@@ -0,0 +1,297 @@
+package ru.liga.songtask.worker;
+
+import com.leff.midi.MidiFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.liga.songtask.analysis.AnalysisCache;
+import ru.liga.songtask.analysis.AnalysisEngine;
+import ru.liga.songtask.analysis.FingerprintAccumulator;
+import ru.liga.songtask.analysis.NoteStatisticsAccumulator;
+import ru.liga.songtask.domain.AnalysisReport;
+import ru.liga.songtask.domain.CorpusRecord;
+import ru.liga.songtask.domain.FileMetadata;
+import ru.liga.songtask.domain.NoteStatistics;
+import ru.liga.songtask.index.PatternSketches;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * <b>Анализ всех midi-файлов в дереве каталогов</b>
+ * <p>
+ * Каталоги и файлы обрабатываются задачами {@link ForkJoinPool}: каталог порождает задачи
+ * для подкаталогов и для своих файлов, простаивающие потоки забирают их у занятых.
+ * Результат каждого файла передаётся получателю сразу по готовности, в памяти результаты
+ * не накапливаются. Ошибка чтения или разбора файла превращается в запись с ошибкой и
+ * не влияет на остальные файлы. Символические ссылки на каталоги не обходятся.
+ * <p>
+ * При сборе статистики каждый поток объединяет {@link NoteStatistics} и термы
+ * {@link PatternSketches} своих файлов в собственные частичные результаты, частичные
+ * объединяются по окончании обхода. Статистика строится по потоку нот, которого нет в кэше,
+ * поэтому кэш вместе с ней не задаётся.
+ */
+public class CorpusAnalyzer {
+    private static Logger logger = LoggerFactory.getLogger(CorpusAnalyzer.class);
+
+    /**
+     * Сколько файлов одна задача обрабатывает, не разделяясь дальше
+     */
+    private static final int FILES_PER_TASK = 4;
+
+    private final int parallelism;
+    private final AnalysisCache cache;
+    private final boolean collectStatistics;
+    private final boolean collectMetadata;
+
+    /**
+     * @param parallelism       число потоков анализа
+     * @param cache             кэш анализа, либо null, чтобы анализировать каждый файл заново
+     * @param collectStatistics собирать ли {@link Summary#getStatistics() статистику} и
+     *                          {@link Summary#getPatterns() шаблоны} корпуса; несовместимо с кэшем
+     * @param collectMetadata   добавлять ли в записи {@link CorpusRecord#getMetadata() сводки};
+     *                          для этого файл разбирается, даже если отчёт взят из кэша
+     * @throws IllegalArgumentException если parallelism меньше 1, либо задан кэш вместе со сбором
+     *                                  статистики
+     */
+    public CorpusAnalyzer(int parallelism, AnalysisCache cache, boolean collectStatistics, boolean collectMetadata) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        if (collectStatistics && cache != null) {
+            throw new IllegalArgumentException("statistics are built from note streams and cannot use the cache");
+        }
+        this.parallelism = parallelism;
+        this.cache = cache;
+        this.collectStatistics = collectStatistics;
+        this.collectMetadata = collectMetadata;
+    }
+
+    public CorpusAnalyzer(int parallelism, AnalysisCache cache, boolean collectStatistics) {
+        this(parallelism, cache, collectStatistics, false);
+    }
+
+    public CorpusAnalyzer(int parallelism, AnalysisCache cache) {
+        this(parallelism, cache, false);
+    }
+
+    public CorpusAnalyzer(int parallelism) {
+        this(parallelism, null);
+    }
+
+    /**
+     * @param path путь к файлу
+     * @return {@code true} для файлов с расширением .mid, .midi или .kar
+     */
+    public static boolean isMidiFile(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".mid") || name.endsWith(".midi") || name.endsWith(".kar");
+    }
+
+    /**
+     * <b>Проанализировать дерево каталогов</b>
+     *
+     * @param root     корневой каталог
+     * @param consumer получатель записей; вызывается из потоков анализа одновременно,
+     *                 поэтому должен быть потокобезопасным
+     * @return итоги обработки
+     */
+    public Summary analyze(Path root, Consumer<CorpusRecord> consumer) {
+        logger.debug("Анализ корпуса {} в {} потоков", root, parallelism);
+        Summary summary = new Summary();
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new DirectoryTask(root, consumer, summary));
+        } finally {
+            pool.shutdown();
+        }
+        if (collectStatistics) {
+            NoteStatistics statistics = new NoteStatistics();
+            for (NoteStatistics partial : summary.partials.values()) {
+                statistics.merge(partial);
+            }
+            summary.statistics = statistics;
+            PatternSketches patterns = new PatternSketches();
+            for (PatternSketches partial : summary.patternPartials.values()) {
+                patterns.merge(partial);
+            }
+            summary.patterns = patterns;
+        }
+        summary.elapsedNanos = System.nanoTime() - start;
+        logger.debug("Корпус {} обработан: файлов {}, ошибок {}", root, summary.getFiles(), summary.getFailures());
+        return summary;
+    }
+
+    /**
+     * <b>Проанализировать один файл</b>
+     *
+     * @param file midi-файл
+     * @return запись с отчётом, либо с ошибкой
+     */
+    public CorpusRecord analyzeFile(Path file) {
+        long start = System.nanoTime();
+        try {
+            byte[] content = Files.readAllBytes(file);
+            MidiFile midiFile = null;
+            AnalysisReport report;
+            if (cache != null) {
+                report = cache.analyze(content);
+            } else {
+                AnalysisEngine engine = new AnalysisEngine();
+                if (collectStatistics) {
+                    engine.register(NoteStatisticsAccumulator.NAME, NoteStatisticsAccumulator::new)
+                            .register(FingerprintAccumulator.NAME, FingerprintAccumulator::new);
+                }
+                midiFile = new MidiFile(new ByteArrayInputStream(content));
+                report = engine.analyze(midiFile);
+            }
+            FileMetadata metadata = null;
+            if (collectMetadata) {
+                if (midiFile == null) {
+                    midiFile = new MidiFile(new ByteArrayInputStream(content));
+                }
+                metadata = FileMetadata.of(file.toString(), content, midiFile, report);
+            }
+            return CorpusRecord.success(file, report, metadata, System.nanoTime() - start);
+        } catch (Exception e) {
+            logger.debug("Файл {} не проанализирован: {}", file, e.toString());
+            return CorpusRecord.failure(file, e, System.nanoTime() - start);
+        }
+    }
+
+    private void emit(CorpusRecord record, Consumer<CorpusRecord> consumer, Summary summary) {
+        summary.files.increment();
+        if (!record.isSuccess()) {
+            summary.failures.increment();
+        } else if (collectStatistics) {
+            NoteStatistics statistics = record.getReport().getExtra(NoteStatisticsAccumulator.NAME);
+            if (statistics != null) {
+                // частичная статистика принадлежит только текущему потоку
+                summary.partials.computeIfAbsent(Thread.currentThread(), thread -> new NoteStatistics())
+                        .merge(statistics);
+                summary.patternPartials.computeIfAbsent(Thread.currentThread(), thread -> new PatternSketches())
+                        .add(record.getReport().getExtra(FingerprintAccumulator.NAME));
+            }
+        }
+        consumer.accept(record);
+    }
+
+    @SuppressWarnings("serial")
+    private class DirectoryTask extends RecursiveAction {
+        private final Path directory;
+        private final Consumer<CorpusRecord> consumer;
+        private final Summary summary;
+
+        private DirectoryTask(Path directory, Consumer<CorpusRecord> consumer, Summary summary) {
+            this.directory = directory;
+            this.consumer = consumer;
+            this.summary = summary;
+        }
+
+        @Override
+        protected void compute() {
+            List<RecursiveAction> tasks = new ArrayList<>();
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path entry : stream) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        tasks.add(new DirectoryTask(entry, consumer, summary));
+                    } else if (isMidiFile(entry) && Files.isRegularFile(entry)) {
+                        files.add(entry);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.debug("Каталог {} не прочитан: {}", directory, e.toString());
+                emit(CorpusRecord.failure(directory, e, 0), consumer, summary);
+            }
+            if (!files.isEmpty()) {
+                tasks.add(new FilesTask(files.toArray(new Path[0]), 0, files.size(), consumer, summary));
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private class FilesTask extends RecursiveAction {
+        private final Path[] files;
+        private final int from;
+        private final int to;
+        private final Consumer<CorpusRecord> consumer;
+        private final Summary summary;
+
+        private FilesTask(Path[] files, int from, int to, Consumer<CorpusRecord> consumer, Summary summary) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+            this.consumer = consumer;
+            this.summary = summary;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > FILES_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new FilesTask(files, from, mid, consumer, summary),
+                        new FilesTask(files, mid, to, consumer, summary));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                emit(analyzeFile(files[i]), consumer, summary);
+            }
+        }
+    }
+
+    /**
+     * <b>Итоги обработки корпуса</b>
+     */
+    public static class Summary {
+        private final LongAdder files = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final ConcurrentHashMap<Thread, NoteStatistics> partials = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Thread, PatternSketches> patternPartials = new ConcurrentHashMap<>();
+        private volatile NoteStatistics statistics;
+        private volatile PatternSketches patterns;
+        private volatile long elapsedNanos;
+
+        /**
+         * @return число записей, переданных получателю
+         */
+        public long getFiles() {
+            return files.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return статистика файлов с треком голоса, либо null, если она не собиралась
+         */
+        public NoteStatistics getStatistics() {
+            return statistics;
+        }
+
+        /**
+         * @return шаблоны файлов с треком голоса, либо null, если статистика не собиралась
+         */
+        public PatternSketches getPatterns() {
+            return patterns;
+        }
+    }
+}
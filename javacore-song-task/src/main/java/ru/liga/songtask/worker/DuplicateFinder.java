@@ -0,0 +1,201 @@
+package ru.liga.songtask.worker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.liga.songtask.util.CanonicalMidiHash;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <b>Поиск дубликатов midi-файлов в дереве каталогов</b>
+ * <p>
+ * Дубликатами считаются файлы с одинаковым {@link CanonicalMidiHash каноническим хэшем}: одна
+ * и та же песня, пересохранённая с другим порядком треков, running status или мета-текстом.
+ * Хэши считаются задачами {@link ForkJoinPool} и сразу раскладываются по группам в
+ * {@link ConcurrentHashMap}; файл, который не удалось прочитать, считается ошибкой и в группы
+ * не попадает.
+ */
+public class DuplicateFinder {
+    private static Logger logger = LoggerFactory.getLogger(DuplicateFinder.class);
+
+    /**
+     * Сколько файлов одна задача обрабатывает, не разделяясь дальше
+     */
+    private static final int FILES_PER_TASK = 16;
+
+    private final int parallelism;
+    private final boolean ignoreText;
+
+    /**
+     * @param parallelism число потоков
+     * @param ignoreText  не различать файлы, отличающиеся только текстовыми мета-событиями
+     */
+    public DuplicateFinder(int parallelism, boolean ignoreText) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.ignoreText = ignoreText;
+    }
+
+    /**
+     * <b>Найти дубликаты</b>
+     *
+     * @param root корневой каталог
+     * @return группы дубликатов и итоги обработки
+     * @throws IOException если каталог не удалось обойти
+     */
+    public Result find(Path root) throws IOException {
+        logger.debug("Поиск дубликатов в {} в {} потоков", root, parallelism);
+        long start = System.nanoTime();
+        Path[] files;
+        try (Stream<Path> stream = Files.walk(root)) {
+            files = stream.filter(file -> CorpusAnalyzer.isMidiFile(file) && Files.isRegularFile(file))
+                    .toArray(Path[]::new);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        Result result = new Result();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new HashTask(files, 0, files.length, result));
+        } finally {
+            pool.shutdown();
+        }
+
+        Comparator<Path> byName = Comparator.comparing(Path::toString);
+        for (Map.Entry<Long, Queue<Path>> entry : result.byHash.entrySet()) {
+            if (entry.getValue().size() > 1) {
+                List<Path> group = new ArrayList<>(entry.getValue());
+                group.sort(byName);
+                result.groups.add(new Group(entry.getKey(), group));
+            }
+        }
+        result.groups.sort(Comparator.comparing(group -> group.getFiles().get(0), byName));
+        result.distinct = result.byHash.size();
+        result.byHash.clear();
+        result.elapsedNanos = System.nanoTime() - start;
+        logger.debug("Дубликаты в {}: файлов {}, групп {}, ошибок {}", root, result.getFiles(),
+                result.getGroups().size(), result.getFailures());
+        return result;
+    }
+
+    @SuppressWarnings("serial")
+    private class HashTask extends RecursiveAction {
+        private final Path[] files;
+        private final int from;
+        private final int to;
+        private final Result result;
+
+        private HashTask(Path[] files, int from, int to, Result result) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+            this.result = result;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > FILES_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new HashTask(files, from, mid, result), new HashTask(files, mid, to, result));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                result.files.increment();
+                try {
+                    long hash = CanonicalMidiHash.hash(files[i], ignoreText);
+                    result.byHash.computeIfAbsent(hash, key -> new ConcurrentLinkedQueue<>()).add(files[i]);
+                } catch (IOException | RuntimeException e) {
+                    logger.debug("Файл {} не прочитан: {}", files[i], e.toString());
+                    result.failures.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * <b>Группа одинаковых файлов</b>
+     */
+    public static class Group {
+        private final long hash;
+        private final List<Path> files;
+
+        private Group(long hash, List<Path> files) {
+            this.hash = hash;
+            this.files = Collections.unmodifiableList(files);
+        }
+
+        public long getHash() {
+            return hash;
+        }
+
+        /**
+         * @return файлы группы по возрастанию пути, не меньше двух
+         */
+        public List<Path> getFiles() {
+            return files;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%016x: %s", hash,
+                    files.stream().map(Path::toString).collect(Collectors.joining(", ")));
+        }
+    }
+
+    /**
+     * <b>Итоги поиска дубликатов</b>
+     */
+    public static class Result {
+        private final LongAdder files = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final ConcurrentHashMap<Long, Queue<Path>> byHash = new ConcurrentHashMap<>();
+        private final List<Group> groups = new ArrayList<>();
+        private long distinct;
+        private long elapsedNanos;
+
+        /**
+         * @return группы из двух и более одинаковых файлов по возрастанию пути первого файла
+         */
+        public List<Group> getGroups() {
+            return groups;
+        }
+
+        public long getFiles() {
+            return files.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        /**
+         * @return число различных хэшей среди прочитанных файлов
+         */
+        public long getDistinct() {
+            return distinct;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+    }
+}
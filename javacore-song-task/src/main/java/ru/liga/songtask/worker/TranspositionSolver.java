@@ -0,0 +1,168 @@
+package ru.liga.songtask.worker;
+
+import com.leff.midi.MidiFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.liga.songtask.domain.Note;
+import ru.liga.songtask.domain.NoteSign;
+
+import java.util.List;
+
+/**
+ * <b>Подбор транспонирования под диапазон певца</b>
+ * <p>
+ * По длительностям звучания каждой высоты в треке голоса для всех допустимых сдвигов
+ * считается, сколько тиков окажется вне диапазона певца. Сумма по окну высот берётся
+ * из префиксных сумм за O(1), поэтому перебор всех сдвигов стоит O(128 + число сдвигов),
+ * без пробных транспонирований и повторного анализа.
+ * <p>
+ * Из сдвигов с наименьшим временем вне диапазона выбирается тот, при котором средняя
+ * (по времени) высота голоса ближе всего к середине диапазона, затем - наименьший по модулю.
+ * Допустимы сдвиги, при которых все ноты остаются в пределах {@link NoteSign}.
+ */
+public class TranspositionSolver {
+    private static Logger logger = LoggerFactory.getLogger(TranspositionSolver.class);
+
+    private static final int LOWEST_MIDI = NoteSign.A_0.getMidi();
+    private static final int HIGHEST_MIDI = NoteSign.H_7.getMidi();
+
+    /**
+     * <b>Подобрать транспонирование для трека голоса midi-файла</b>
+     *
+     * @param midiFile файл
+     * @param low      нижняя нота диапазона певца
+     * @param high     верхняя нота диапазона певца
+     * @return лучший сдвиг
+     */
+    public static Result solve(MidiFile midiFile, NoteSign low, NoteSign high) {
+        return solve(ticksByPitch(AnalyzeWorker.getVoiceTrack(midiFile)), low, high);
+    }
+
+    /**
+     * <b>Длительности звучания по высоте</b>
+     *
+     * @param track трек голоса
+     * @return {@code long[128]}: midi-номер - сумма длительностей в тиках
+     */
+    public static long[] ticksByPitch(List<Note> track) {
+        long[] ticksByPitch = new long[128];
+        for (Note note : track) {
+            ticksByPitch[note.sign().getMidi()] += note.durationTicks();
+        }
+        return ticksByPitch;
+    }
+
+    /**
+     * <b>Подобрать транспонирование</b>
+     *
+     * @param ticksByPitch длительности звучания по midi-номеру, например из
+     *                     {@link #ticksByPitch(List)} или {@code PitchDurationAccumulator}
+     * @param low          нижняя нота диапазона певца
+     * @param high         верхняя нота диапазона певца
+     * @return лучший сдвиг; для пустого трека - нулевой
+     */
+    public static Result solve(long[] ticksByPitch, NoteSign low, NoteSign high) {
+        if (low == null || high == null || low == NoteSign.NULL_VALUE || high == NoteSign.NULL_VALUE
+                || low.getMidi() > high.getMidi()) {
+            throw new IllegalArgumentException("Некорректный диапазон: " + low + " - " + high);
+        }
+        if (ticksByPitch.length != 128) {
+            throw new IllegalArgumentException("ticksByPitch must have 128 elements: " + ticksByPitch.length);
+        }
+        long[] prefix = new long[129];
+        long weightedSum = 0;
+        int lowest = -1;
+        int highest = -1;
+        for (int midi = 0; midi < 128; midi++) {
+            prefix[midi + 1] = prefix[midi] + ticksByPitch[midi];
+            weightedSum += ticksByPitch[midi] * midi;
+            if (ticksByPitch[midi] != 0) {
+                if (lowest < 0) {
+                    lowest = midi;
+                }
+                highest = midi;
+            }
+        }
+        long total = prefix[128];
+        if (total == 0) {
+            return new Result(0, 0, 0);
+        }
+
+        int from = LOWEST_MIDI - lowest;
+        int to = HIGHEST_MIDI - highest;
+        if (from > to) {
+            // трек шире всех нотных знаков - оставляем как есть
+            from = 0;
+            to = 0;
+        }
+        long rangeCenterTwice = (long) low.getMidi() + high.getMidi();
+
+        int bestShift = 0;
+        long bestOut = Long.MAX_VALUE;
+        long bestDistance = Long.MAX_VALUE;
+        for (int shift = from; shift <= to; shift++) {
+            int lo = clamp(low.getMidi() - shift);
+            int hi = clamp(high.getMidi() - shift + 1);
+            long out = total - (prefix[hi] - prefix[lo]);
+            // удвоенное расстояние от средней высоты до середины диапазона, умноженное на total
+            long distance = Math.abs(2 * (weightedSum + shift * total) - rangeCenterTwice * total);
+            if (out < bestOut || (out == bestOut && (distance < bestDistance
+                    || (distance == bestDistance && Math.abs(shift) < Math.abs(bestShift))))) {
+                bestShift = shift;
+                bestOut = out;
+                bestDistance = distance;
+            }
+        }
+        logger.debug("Лучший сдвиг {} полутонов, вне диапазона {} из {} тиков", bestShift, bestOut, total);
+        return new Result(bestShift, bestOut, total);
+    }
+
+    private static int clamp(int index) {
+        return Math.max(0, Math.min(128, index));
+    }
+
+    /**
+     * <b>Подобранное транспонирование</b>
+     */
+    public static class Result {
+        private final int shift;
+        private final long outOfRangeTicks;
+        private final long totalTicks;
+
+        public Result(int shift, long outOfRangeTicks, long totalTicks) {
+            this.shift = shift;
+            this.outOfRangeTicks = outOfRangeTicks;
+            this.totalTicks = totalTicks;
+        }
+
+        /**
+         * @return сдвиг в полутонах для {@link ChangeWorker#transposeMidi(MidiFile, int)}
+         */
+        public int getShift() {
+            return shift;
+        }
+
+        /**
+         * @return тиков звучания голоса вне диапазона после сдвига
+         */
+        public long getOutOfRangeTicks() {
+            return outOfRangeTicks;
+        }
+
+        public long getTotalTicks() {
+            return totalTicks;
+        }
+
+        /**
+         * @return доля времени вне диапазона, от 0 до 1
+         */
+        public double getOutOfRangeShare() {
+            return totalTicks == 0 ? 0 : (double) outOfRangeTicks / totalTicks;
+        }
+
+        @Override
+        public String toString() {
+            return "{shift|" + shift + ", out|" + outOfRangeTicks + "/" + totalTicks + '}';
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.leff.midi.util;
+
+import com.leff.midi.event.Controller;
+import com.leff.midi.event.MidiEvent;
+import com.leff.midi.event.NoteOff;
+import com.leff.midi.event.NoteOn;
+import com.leff.midi.event.PitchBend;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncMidiEventListenerTest {
+
+    /**
+     * Записывает полученные уведомления; первое событие задерживает поток доставки,
+     * пока тест не откроет {@link #release}, так что кольцо можно заполнить.
+     */
+    private static class GatedListener implements MidiEventListener {
+        private final List<String> received = new CopyOnWriteArrayList<>();
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final CountDownLatch stopped = new CountDownLatch(1);
+
+        @Override
+        public void onStart(boolean fromBeginning) {
+            received.add("start");
+        }
+
+        @Override
+        public void onEvent(MidiEvent event, long ms) {
+            received.add(String.valueOf(event.getTick()));
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void onStop(boolean finished) {
+            received.add("stop");
+            stopped.countDown();
+        }
+    }
+
+    private static MidiEvent event(long tick) {
+        return new NoteOn(tick, 0, 60, 100);
+    }
+
+    private static MidiEvent controller(long tick, int number) {
+        return new Controller(tick, 0, number, (int) tick);
+    }
+
+    /**
+     * Событие 1 доставляется и держит свой слот, 2 занимает второй слот кольца на 2 слота
+     */
+    private static void fill(AsyncMidiEventListener async, GatedListener listener) throws InterruptedException {
+        async.onStart(true);
+        async.onEvent(event(1), 1);
+        Assertions.assertThat(listener.entered.await(5, TimeUnit.SECONDS)).isTrue();
+        async.onEvent(event(2), 2);
+    }
+
+    /**
+     * Кольцо на 2 слота: событие 1 доставляется и держит свой слот до конца доставки,
+     * 2 занимает второй слот, 3, 4 и 5 переполняют кольцо.
+     */
+    private static void overflow(AsyncMidiEventListener async, GatedListener listener)
+            throws InterruptedException {
+        async.onStart(true);
+        async.onEvent(event(1), 1);
+        Assertions.assertThat(listener.entered.await(5, TimeUnit.SECONDS)).isTrue();
+        for (long tick = 2; tick <= 5; tick++) {
+            async.onEvent(event(tick), tick);
+        }
+    }
+
+    private static void releaseLater(GatedListener listener) {
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            listener.release.countDown();
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //AsyncMidiEventListener.OverflowPolicy
+    @Test
+    public void whenRingFullAndDropReturnDroppedButKeepStop() throws InterruptedException {
+        GatedListener listener = new GatedListener();
+        AsyncMidiEventListener async = new AsyncMidiEventListener(listener, 2,
+                AsyncMidiEventListener.WaitStrategy.BLOCKING, AsyncMidiEventListener.OverflowPolicy.DROP);
+        overflow(async, listener);
+        Assertions.assertThat(async.getDroppedCount()).isEqualTo(3);
+
+        // кольцо всё ещё заполнено: остановка ждёт места, а не отбрасывается
+        releaseLater(listener);
+        async.onStop(true);
+        Assertions.assertThat(listener.stopped.await(5, TimeUnit.SECONDS)).isTrue();
+        async.shutdown();
+
+        Assertions.assertThat(listener.received).containsExactly("start", "1", "2", "stop");
+        Assertions.assertThat(async.getDroppedCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void whenRingFullAndCoalesceReturnLatestValuePerController() throws InterruptedException {
+        GatedListener listener = new GatedListener();
+        AsyncMidiEventListener async = new AsyncMidiEventListener(listener, 2,
+                AsyncMidiEventListener.WaitStrategy.SLEEPING, AsyncMidiEventListener.OverflowPolicy.COALESCE);
+        fill(async, listener);
+        // 3 и 4 - один контроллер, 6 заменяет 4 и встаёт после 5
+        async.onEvent(controller(3, 7), 3);
+        async.onEvent(controller(4, 7), 4);
+        async.onEvent(new PitchBend(5, 0, 0, 64), 5);
+        async.onEvent(controller(6, 7), 6);
+        Assertions.assertThat(async.getCoalescedCount()).isEqualTo(2);
+
+        listener.release.countDown();
+        async.onStop(false);
+        Assertions.assertThat(listener.stopped.await(5, TimeUnit.SECONDS)).isTrue();
+        async.shutdown();
+
+        Assertions.assertThat(listener.received).containsExactly("start", "1", "2", "5", "6", "stop");
+        Assertions.assertThat(async.getDroppedCount()).isZero();
+    }
+
+    @Test
+    public void whenRingFullAndCoalesceReturnEveryNote() throws InterruptedException {
+        GatedListener listener = new GatedListener();
+        AsyncMidiEventListener async = new AsyncMidiEventListener(listener, 2,
+                AsyncMidiEventListener.WaitStrategy.SLEEPING, AsyncMidiEventListener.OverflowPolicy.COALESCE);
+        fill(async, listener);
+        async.onEvent(controller(3, 7), 3);
+        // ноты не сливаются: поток таймера ждёт места, отложенный контроллер уходит раньше
+        releaseLater(listener);
+        async.onEvent(new NoteOff(4, 0, 60, 0), 4);
+        async.onEvent(new NoteOff(5, 0, 60, 0), 5);
+        async.onEvent(controller(6, 7), 6);
+        async.onStop(true);
+        Assertions.assertThat(listener.stopped.await(5, TimeUnit.SECONDS)).isTrue();
+        async.shutdown();
+
+        Assertions.assertThat(listener.received).containsExactly("start", "1", "2", "3", "4", "5", "6", "stop");
+        Assertions.assertThat(async.getCoalescedCount()).isZero();
+        Assertions.assertThat(async.getDroppedCount()).isZero();
+    }
+
+    @Test
+    public void whenRingFullAndBlockReturnEveryEvent() throws InterruptedException {
+        GatedListener listener = new GatedListener();
+        AsyncMidiEventListener async = new AsyncMidiEventListener(listener, 2,
+                AsyncMidiEventListener.WaitStrategy.YIELDING, AsyncMidiEventListener.OverflowPolicy.BLOCK);
+        releaseLater(listener);
+        overflow(async, listener);
+        async.onStop(true);
+        Assertions.assertThat(listener.stopped.await(5, TimeUnit.SECONDS)).isTrue();
+        async.shutdown();
+
+        Assertions.assertThat(listener.received).containsExactly("start", "1", "2", "3", "4", "5", "stop");
+        Assertions.assertThat(async.getDroppedCount()).isZero();
+        Assertions.assertThat(async.getCoalescedCount()).isZero();
+        Assertions.assertThat(async.getMaxLag()).isLessThanOrEqualTo(2);
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //AsyncMidiEventListener.getErrorCount
+    @Test
+    public void whenListenerThrowsReturnErrorCountAndKeepDelivering() throws InterruptedException {
+        List<Long> received = new CopyOnWriteArrayList<>();
+        CountDownLatch stopped = new CountDownLatch(1);
+        AsyncMidiEventListener async = new AsyncMidiEventListener(new MidiEventListener() {
+            @Override
+            public void onStart(boolean fromBeginning) {
+            }
+
+            @Override
+            public void onEvent(MidiEvent event, long ms) {
+                if (event.getTick() % 2 == 0) {
+                    throw new IllegalStateException("even tick " + event.getTick());
+                }
+                received.add(event.getTick());
+            }
+
+            @Override
+            public void onStop(boolean finished) {
+                stopped.countDown();
+            }
+        });
+        async.onStart(true);
+        for (long tick = 1; tick <= 5; tick++) {
+            async.onEvent(event(tick), tick);
+        }
+        async.onStop(true);
+        Assertions.assertThat(stopped.await(5, TimeUnit.SECONDS)).isTrue();
+        async.shutdown();
+
+        Assertions.assertThat(received).containsExactly(1L, 3L, 5L);
+        Assertions.assertThat(async.getErrorCount()).isEqualTo(2);
+    }
+}
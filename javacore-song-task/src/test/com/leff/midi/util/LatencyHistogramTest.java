@@ -0,0 +1,66 @@
+package com.leff.midi.util;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    //-------------------------------------------------------------------------------------------------
+    //LatencyHistogram.indexOf, lowerBound, upperBound
+    @Test
+    public void whenSmallValueReturnOwnBucket() {
+        for (long value = 0; value < 32; value++) {
+            int index = LatencyHistogram.indexOf(value);
+            Assertions.assertThat(index).isEqualTo((int) value);
+            Assertions.assertThat(LatencyHistogram.lowerBound(index)).isEqualTo(value);
+            Assertions.assertThat(LatencyHistogram.upperBound(index)).isEqualTo(value);
+        }
+    }
+
+    @Test
+    public void whenLargeValueReturnBucketWithinThreePercent() {
+        Assertions.assertThat(LatencyHistogram.indexOf(32)).isEqualTo(32);
+        Assertions.assertThat(LatencyHistogram.indexOf(63)).isEqualTo(63);
+        // с 64 подкорзины шириной 2
+        Assertions.assertThat(LatencyHistogram.indexOf(64)).isEqualTo(64);
+        Assertions.assertThat(LatencyHistogram.indexOf(65)).isEqualTo(64);
+        Assertions.assertThat(LatencyHistogram.lowerBound(64)).isEqualTo(64);
+        Assertions.assertThat(LatencyHistogram.upperBound(64)).isEqualTo(65);
+
+        long[] values = {100, 1_000, 12_345, 1_000_000, 987_654_321L, Long.MAX_VALUE / 3};
+        for (long value : values) {
+            int index = LatencyHistogram.indexOf(value);
+            long lower = LatencyHistogram.lowerBound(index);
+            long upper = LatencyHistogram.upperBound(index);
+            Assertions.assertThat(value).isBetween(lower, upper);
+            Assertions.assertThat((double) (upper - lower) / lower).isLessThan(0.032);
+            Assertions.assertThat(LatencyHistogram.indexOf(upper + 1)).isEqualTo(index + 1);
+        }
+        Assertions.assertThat(LatencyHistogram.upperBound(LatencyHistogram.indexOf(Long.MAX_VALUE)))
+                .isEqualTo(Long.MAX_VALUE);
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //LatencyHistogram.getValueAtPercentile
+    @Test
+    public void whenValuesRecordedReturnPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assertions.assertThat(histogram.getValueAtPercentile(50)).isZero();
+        for (long value = 1; value <= 100; value++) {
+            histogram.record(value * 10);
+        }
+        histogram.record(-5);
+
+        Assertions.assertThat(histogram.getCount()).isEqualTo(101);
+        Assertions.assertThat(histogram.getMax()).isEqualTo(1000);
+        long p50 = histogram.getValueAtPercentile(50);
+        Assertions.assertThat(p50).isBetween(500L, 515L);
+        Assertions.assertThat(histogram.getValueAtPercentile(100)).isEqualTo(1000);
+        Assertions.assertThat(histogram.getValueAtPercentile(0)).isZero();
+
+        histogram.reset();
+        Assertions.assertThat(histogram.getCount()).isZero();
+        Assertions.assertThat(histogram.getMax()).isZero();
+        Assertions.assertThat(histogram.getValueAtPercentile(99)).isZero();
+    }
+}
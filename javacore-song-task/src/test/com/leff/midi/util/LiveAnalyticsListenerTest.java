@@ -0,0 +1,71 @@
+package com.leff.midi.util;
+
+import com.leff.midi.event.NoteOff;
+import com.leff.midi.event.NoteOn;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class LiveAnalyticsListenerTest {
+
+    /**
+     * Ноты в моменты 0, 50, 150 и 950 мс, скорость нажатия растёт на 10
+     */
+    private static LiveAnalyticsListener listener() {
+        LiveAnalyticsListener listener = new LiveAnalyticsListener();
+        listener.onStart(true);
+        long[] times = {0, 50, 150, 950};
+        for (int i = 0; i < times.length; i++) {
+            listener.onEvent(new NoteOn(0, 0, 60 + i, 10 * (i + 1)), times[i]);
+        }
+        return listener;
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //LiveAnalyticsListener.snapshot
+    @Test
+    public void whenAllNotesInWindowReturnEveryNote() {
+        LiveAnalyticsListener.Snapshot snapshot = listener().snapshot();
+
+        Assertions.assertThat(snapshot.getMs()).isEqualTo(950);
+        Assertions.assertThat(snapshot.getNotesPerSecond()).isEqualTo(4.0);
+        Assertions.assertThat(snapshot.getAverageVelocity()).isEqualTo(25.0);
+        Assertions.assertThat(snapshot.getPolyphony()).isEqualTo(4);
+        Assertions.assertThat(snapshot.getLowestPitch()).isEqualTo(60);
+        Assertions.assertThat(snapshot.getHighestPitch()).isEqualTo(63);
+    }
+
+    @Test
+    public void whenTimePassesReturnOldBucketsOutOfWindow() {
+        LiveAnalyticsListener listener = listener();
+
+        // окно (100, 1100]: первая корзина с нотами 0 и 50 мс уже выпала
+        LiveAnalyticsListener.Snapshot snapshot = listener.snapshot(1050);
+        Assertions.assertThat(snapshot.getMs()).isEqualTo(1050);
+        Assertions.assertThat(snapshot.getNotesPerSecond()).isEqualTo(2.0);
+        Assertions.assertThat(snapshot.getAverageVelocity()).isEqualTo(35.0);
+
+        // тишина дольше окна
+        snapshot = listener.snapshot(2000);
+        Assertions.assertThat(snapshot.getNotesPerSecond()).isZero();
+        Assertions.assertThat(snapshot.getAverageVelocity()).isZero();
+        Assertions.assertThat(snapshot.getTotalNotes()).isEqualTo(4);
+
+        // время раньше последней ноты не сдвигает окно назад
+        Assertions.assertThat(listener.snapshot(500).getMs()).isEqualTo(950);
+    }
+
+    @Test
+    public void whenBucketReusedReturnOnlyNewNotes() {
+        LiveAnalyticsListener listener = listener();
+        // 1000 мс попадает в ту же ячейку кольца, что и 0 и 50 мс
+        listener.onEvent(new NoteOn(0, 0, 64, 50), 1000);
+        listener.onEvent(new NoteOff(0, 0, 60, 0), 1000);
+
+        LiveAnalyticsListener.Snapshot snapshot = listener.snapshot();
+        Assertions.assertThat(snapshot.getNotesPerSecond()).isEqualTo(3.0);
+        Assertions.assertThat(snapshot.getAverageVelocity()).isEqualTo(40.0);
+        Assertions.assertThat(snapshot.getPolyphony()).isEqualTo(4);
+        Assertions.assertThat(snapshot.getPeakPolyphony()).isEqualTo(5);
+        Assertions.assertThat(snapshot.getLowestPitch()).isEqualTo(61);
+    }
+}
@@ -0,0 +1,86 @@
+package com.leff.midi.util;
+
+import com.leff.midi.MidiTrack;
+import com.leff.midi.event.MidiEvent;
+import com.leff.midi.event.NoteOn;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MidiEventCursorTest {
+
+    private static MidiTrack track(int channel, long... ticks) {
+        MidiTrack track = new MidiTrack();
+        for (long tick : ticks) {
+            track.insertEvent(new NoteOn(tick, channel, 60, 100));
+        }
+        return track;
+    }
+
+    private static List<String> drain(MidiEventCursor cursor, double upToTick) {
+        List<String> events = new ArrayList<>();
+        MidiEvent event;
+        while ((event = cursor.nextEventUpToTick(upToTick)) != null) {
+            events.add(event.getTick() + ":" + ((NoteOn) event).getChannel());
+        }
+        return events;
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //MidiEventCursor.nextEventUpToTick
+    @Test
+    public void whenTicksTieReturnLowerTrackFirst() {
+        MidiEventCursor cursor = new MidiEventCursor(Arrays.asList(
+                track(0, 0, 100, 200), track(1, 100), track(2, 50, 100)));
+
+        Assertions.assertThat(drain(cursor, Double.MAX_VALUE))
+                .containsExactly("0:0", "50:2", "100:0", "100:1", "100:2", "200:0");
+        Assertions.assertThat(cursor.hasMoreEvents()).isFalse();
+        Assertions.assertThat(cursor.peekTick()).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void whenEventIsLaterThanTickReturnNull() {
+        MidiEventCursor cursor = new MidiEventCursor(Arrays.asList(track(0, 0, 100), track(1, 60)));
+
+        Assertions.assertThat(drain(cursor, 59.5)).containsExactly("0:0");
+        Assertions.assertThat(cursor.peekTick()).isEqualTo(60);
+        Assertions.assertThat(drain(cursor, 100)).containsExactly("60:1", "100:0");
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //MidiEventCursor.seek
+    @Test
+    public void whenSeekIntoTrackReturnEventsFromTick() {
+        MidiEventCursor cursor = new MidiEventCursor(Arrays.asList(track(0, 0, 100, 200, 300), track(1, 150, 250)));
+        drain(cursor, Double.MAX_VALUE);
+
+        cursor.seek(150);
+        Assertions.assertThat(drain(cursor, Double.MAX_VALUE)).containsExactly("150:1", "200:0", "250:1", "300:0");
+
+        cursor.seek(201);
+        Assertions.assertThat(drain(cursor, Double.MAX_VALUE)).containsExactly("250:1", "300:0");
+
+        cursor.seek(1000);
+        Assertions.assertThat(cursor.hasMoreEvents()).isFalse();
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //MidiEventCursor.reset
+    @Test
+    public void whenTrackEditedReturnNewEventsAfterReset() {
+        MidiTrack edited = track(1, 100);
+        MidiEventCursor cursor = new MidiEventCursor(Arrays.asList(track(0, 0, 200), edited));
+        Assertions.assertThat(drain(cursor, Double.MAX_VALUE)).containsExactly("0:0", "100:1", "200:0");
+
+        edited.insertEvent(new NoteOn(50, 1, 62, 100));
+        edited.insertEvent(new NoteOn(300, 1, 64, 100));
+        cursor.reset();
+
+        Assertions.assertThat(drain(cursor, Double.MAX_VALUE))
+                .containsExactly("0:0", "50:1", "100:1", "200:0", "300:1");
+    }
+}
@@ -0,0 +1,100 @@
+package com.leff.midi.util;
+
+import com.leff.midi.MidiFile;
+import com.leff.midi.MidiTrack;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class MidiPlaybackEngineTest {
+    private MidiPlaybackEngine engine;
+
+    /**
+     * Процессор, который просит колесо разбудить его через {@code delayMs} и завершается
+     * на втором шаге. Моменты шагов записываются.
+     */
+    private static class ScriptedProcessor extends MidiProcessor {
+        private final long delayMs;
+        private final List<Long> steps = new CopyOnWriteArrayList<>();
+        private final CountDownLatch firstStep = new CountDownLatch(1);
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private volatile Boolean finishedNormally;
+
+        private ScriptedProcessor(long delayMs) {
+            super(new MidiFile(480, new ArrayList<>(Collections.singletonList(MidiTrack.createTempoTrack()))));
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        void begin() {
+        }
+
+        @Override
+        boolean advance(long now) {
+            steps.add(System.nanoTime());
+            firstStep.countDown();
+            return steps.size() < 2;
+        }
+
+        @Override
+        long msUntilNextEvent() {
+            return delayMs;
+        }
+
+        @Override
+        void finish(boolean finished) {
+            super.finish(finished);
+            finishedNormally = finished;
+            this.finished.countDown();
+        }
+    }
+
+    @After
+    public void shutdown() {
+        if (engine != null) {
+            engine.shutdown();
+        }
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //MidiPlaybackEngine, таймерное колесо
+    @Test
+    public void whenDelayLongerThanWheelReturnStepAfterDelay() throws InterruptedException {
+        // 4 ячейки по 1 мс: задержка 60 мс - это 15 оборотов колеса
+        engine = new MidiPlaybackEngine(1, 1, 4);
+        ScriptedProcessor processor = new ScriptedProcessor(60);
+        processor.start(engine);
+
+        Assertions.assertThat(processor.finished.await(5, TimeUnit.SECONDS)).isTrue();
+        long waitedMs = (processor.steps.get(1) - processor.steps.get(0)) / 1_000_000;
+        Assertions.assertThat(waitedMs).isBetween(58L, 2000L);
+        Assertions.assertThat(processor.finishedNormally).isTrue();
+        Assertions.assertThat(engine.getActiveSessionCount()).isZero();
+    }
+
+    @Test
+    public void whenSessionCancelledReturnStopWithoutWaiting() throws InterruptedException {
+        engine = new MidiPlaybackEngine(2, 1, 8);
+        ScriptedProcessor processor = new ScriptedProcessor(60_000);
+        processor.start(engine);
+        Assertions.assertThat(processor.firstStep.await(5, TimeUnit.SECONDS)).isTrue();
+        Assertions.assertThat(engine.getActiveSessionCount()).isEqualTo(1);
+
+        long start = System.nanoTime();
+        processor.stop();
+
+        Assertions.assertThat(processor.finished.await(5, TimeUnit.SECONDS)).isTrue();
+        Assertions.assertThat((System.nanoTime() - start) / 1_000_000).isLessThan(1000);
+        Assertions.assertThat(processor.finishedNormally).isFalse();
+        Assertions.assertThat(processor.steps).hasSize(1);
+        Assertions.assertThat(processor.isRunning()).isFalse();
+        Assertions.assertThat(engine.getActiveSessionCount()).isZero();
+    }
+}
@@ -0,0 +1,164 @@
+package com.leff.midi.util;
+
+import com.leff.midi.MidiFile;
+import com.leff.midi.MidiTrack;
+import com.leff.midi.event.MidiEvent;
+import com.leff.midi.event.NoteOff;
+import com.leff.midi.event.NoteOn;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MidiProcessorTest {
+
+    /**
+     * Записывает ноты как "+высота"/"-высота" и номера долей метронома как "beatN"
+     */
+    private static class Recorder implements MidiEventListener {
+        private final List<String> events = new ArrayList<>();
+        private final List<NoteOff> noteOffs = new ArrayList<>();
+
+        @Override
+        public void onStart(boolean fromBeginning) {
+        }
+
+        @Override
+        public void onEvent(MidiEvent event, long ms) {
+            if (event instanceof NoteOn) {
+                NoteOn noteOn = (NoteOn) event;
+                events.add((noteOn.getVelocity() > 0 ? "+" : "-") + noteOn.getNoteValue());
+            } else if (event instanceof NoteOff) {
+                events.add("-" + ((NoteOff) event).getNoteValue());
+                noteOffs.add((NoteOff) event);
+            } else if (event instanceof MetronomeTick) {
+                events.add("beat" + ((MetronomeTick) event).getBeatNumber());
+            }
+        }
+
+        @Override
+        public void onStop(boolean finished) {
+        }
+
+        private long count(String event) {
+            return events.stream().filter(event::equals).count();
+        }
+    }
+
+    private static MidiFile song(int pitch, long onTick, long duration) {
+        MidiTrack notes = new MidiTrack();
+        notes.insertNote(0, pitch, 100, onTick, duration);
+        return new MidiFile(480, new ArrayList<>(Arrays.asList(MidiTrack.createTempoTrack(), notes)));
+    }
+
+    /**
+     * Проигрывает {@code totalMs} миллисекунд шагами по 10 мс без потока таймера
+     *
+     * @return false, если файл закончился раньше
+     */
+    private static boolean play(MidiProcessor processor, long totalMs) {
+        processor.begin();
+        long base = System.currentTimeMillis();
+        for (long ms = 10; ms <= totalMs; ms += 10) {
+            if (!processor.advance(base + ms)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //MidiProcessor.setLoopRegion
+    @Test
+    public void whenNoteCrossesLoopEndReturnNoteOffOnEveryWrap() {
+        // 120 bpm, 480 тиков на четверть: проход петли [0, 720) - 750 мс, полторы доли
+        MidiProcessor processor = new MidiProcessor(song(60, 100, 1200));
+        Recorder recorder = new Recorder();
+        processor.registerEventListener(recorder, MidiEvent.class);
+        processor.setLoopRegion(0, 720);
+
+        // 2870 мс - 2755 тиков: три полных прохода и середина второй доли четвёртого
+        Assertions.assertThat(play(processor, 2870)).isTrue();
+
+        long wraps = processor.getLoopCount();
+        Assertions.assertThat(wraps).isEqualTo(3);
+        Assertions.assertThat(recorder.count("+60")).isEqualTo(wraps + 1);
+        Assertions.assertThat(recorder.count("-60")).isEqualTo(wraps);
+        // NoteOff при переходе заготовлен заранее: на каждом круге тот же объект
+        Assertions.assertThat(recorder.noteOffs).hasSize((int) wraps)
+                .allMatch(noteOff -> noteOff == recorder.noteOffs.get(0));
+        Assertions.assertThat(recorder.noteOffs.get(0).getTick()).isEqualTo(720);
+        // метроном начинает каждый проход с начала такта, а не продолжает отсчёт
+        Assertions.assertThat(recorder.events.stream().filter(event -> event.startsWith("beat")))
+                .hasSize((int) wraps + 1)
+                .containsOnly("beat2");
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //MidiProcessor, метроном
+    @Test
+    public void whenBeatReadLaterReturnValuesOfThatBeat() {
+        List<MetronomeTick> beats = new ArrayList<>();
+        MidiProcessor processor = new MidiProcessor(song(60, 0, 480 * 6));
+        processor.registerEventListener(new MidiEventListener() {
+            @Override
+            public void onStart(boolean fromBeginning) {
+            }
+
+            @Override
+            public void onEvent(MidiEvent event, long ms) {
+                beats.add((MetronomeTick) event);
+            }
+
+            @Override
+            public void onStop(boolean finished) {
+            }
+        }, MetronomeTick.class);
+
+        play(processor, 3200);
+
+        // каждая доля - отдельный объект, который не меняется после доставки
+        Assertions.assertThat(beats).hasSize(6).doesNotHaveDuplicates();
+        Assertions.assertThat(beats.stream().map(MetronomeTick::getBeatNumber))
+                .containsExactly(2, 3, 4, 1, 2, 3);
+        Assertions.assertThat(beats.get(3).getMeasure()).isEqualTo(2);
+    }
+
+    @Test
+    public void whenLoopClearedReturnPlayToEnd() {
+        MidiProcessor processor = new MidiProcessor(song(60, 100, 200));
+        Recorder recorder = new Recorder();
+        processor.registerEventListener(recorder, NoteOn.class);
+        processor.setLoopRegion(0, 480);
+        play(processor, 1200);
+        processor.clearLoopRegion();
+
+        Assertions.assertThat(play(processor, 2000)).isFalse();
+        Assertions.assertThat(recorder.count("+60")).isEqualTo(recorder.count("-60"));
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //MidiProcessor.enqueue
+    @Test
+    public void whenFileEndsReturnNextFileFromPlaylist() throws InterruptedException {
+        MidiProcessor processor = new MidiProcessor(song(60, 0, 240));
+        Recorder recorder = new Recorder();
+        processor.registerEventListener(recorder, NoteOn.class);
+        MidiFile next = song(72, 0, 240);
+        processor.enqueue(new File("missing-playlist-entry.mid"));
+        processor.enqueue(next);
+        Assertions.assertThat(processor.getPlaylistSize()).isEqualTo(2);
+        // файлы готовятся в фоне
+        Thread.sleep(300);
+
+        Assertions.assertThat(play(processor, 3000)).isFalse();
+
+        Assertions.assertThat(recorder.events).containsExactly("+60", "-60", "+72", "-72");
+        Assertions.assertThat(processor.getMidiFile()).isSameAs(next);
+        Assertions.assertThat(processor.getPlaylistSize()).isZero();
+        Assertions.assertThat(processor.getStats().getSkippedPlaylistEntryCount()).isEqualTo(1);
+    }
+}
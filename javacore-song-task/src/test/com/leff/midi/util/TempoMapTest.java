@@ -0,0 +1,59 @@
+package com.leff.midi.util;
+
+import com.leff.midi.MidiFile;
+import com.leff.midi.MidiTrack;
+import com.leff.midi.event.meta.Tempo;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class TempoMapTest {
+
+    /**
+     * 120 bpm до тика 960, 240 bpm до тика 1920, затем 60 bpm
+     */
+    private static MidiFile tempoChanges() {
+        MidiTrack tempo = MidiTrack.createTempoTrack();
+        tempo.insertEvent(new Tempo(960, 960, 250000));
+        MidiTrack other = new MidiTrack();
+        other.insertEvent(new Tempo(1920, 1920, 1000000));
+        return new MidiFile(480, new ArrayList<>(Arrays.asList(tempo, other)));
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //TempoMap.tickToMicros
+    @Test
+    public void whenTempoChangesReturnTimeAcrossSegments() {
+        TempoMap map = new TempoMap(tempoChanges());
+
+        Assertions.assertThat(map.getTempoChangeCount()).isEqualTo(2);
+        Assertions.assertThat(map.tickToMicros(0)).isEqualTo(0.0);
+        Assertions.assertThat(map.tickToMicros(480)).isEqualTo(500000.0);
+        Assertions.assertThat(map.tickToMicros(960)).isEqualTo(1000000.0);
+        Assertions.assertThat(map.tickToMicros(1440)).isEqualTo(1250000.0);
+        Assertions.assertThat(map.tickToMicros(1920)).isEqualTo(1500000.0);
+        Assertions.assertThat(map.tickToMicros(2160)).isEqualTo(2000000.0);
+        Assertions.assertThat(map.tickToMicros(240.5)).isEqualTo(250520.83333333334);
+        Assertions.assertThat(map.tickToMs(2160)).isEqualTo(2000);
+    }
+
+    @Test
+    public void whenTickOnSegmentBorderReturnNewTempo() {
+        TempoMap map = new TempoMap(tempoChanges());
+
+        Assertions.assertThat(map.getMpqnAt(959)).isEqualTo(Tempo.DEFAULT_MPQN);
+        Assertions.assertThat(map.getMpqnAt(960)).isEqualTo(250000);
+        Assertions.assertThat(map.getMpqnAt(1919)).isEqualTo(250000);
+        Assertions.assertThat(map.getMpqnAt(100000)).isEqualTo(1000000);
+    }
+
+    @Test
+    public void whenNoTempoEventsReturnDefaultTempo() {
+        TempoMap map = new TempoMap(new MidiFile(96, new ArrayList<>(Arrays.asList(new MidiTrack()))));
+
+        Assertions.assertThat(map.getTempoChangeCount()).isZero();
+        Assertions.assertThat(map.tickToMicros(96)).isEqualTo(Tempo.DEFAULT_MPQN);
+    }
+}
@@ -1,11 +1,55 @@
 package ru.liga;
 
 import org.assertj.core.api.Assertions;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
 
 public class AppTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void assertmaster() {
         Assertions.assertThat(1 + 1).isEqualTo(2);
     }
+
+    //-------------------------------------------------------------------------------------------------
+    //App corpus -format
+    @Test
+    public void whenFormatWithoutOutReturnOnlyRecordsInStdout() throws IOException {
+        Path root = folder.newFolder("songs").toPath();
+        for (String name : Arrays.asList("Belle.mid", "Wrecking Ball.mid", "Underneath Your Clothes.mid")) {
+            try (InputStream in = getClass().getResourceAsStream("/" + name)) {
+                Files.copy(in, root.resolve(name));
+            }
+        }
+        // пустой кэш: каждый файл разбирается заново и библиотека успевает напечатать предупреждения
+        System.setProperty("midi.analysis.cache.dir", folder.newFolder("cache").toString());
+        // журнал настраивается при загрузке App, до разбора аргументов
+        LoggerFactory.getLogger(App.class);
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(captured, true, "UTF-8"));
+            App.main(new String[]{root.toString(), "corpus", "-format", "jsonl", "-threads", "2"});
+        } finally {
+            System.setOut(stdout);
+            System.clearProperty("midi.analysis.cache.dir");
+        }
+
+        List<String> lines = Arrays.asList(new String(captured.toByteArray(), StandardCharsets.UTF_8).split("\n"));
+        Assertions.assertThat(lines).hasSize(3).allMatch(line -> line.startsWith("{") && line.endsWith("}"));
+    }
 }
@@ -0,0 +1,139 @@
+package ru.liga.songtask.analysis;
+
+import com.leff.midi.MidiFile;
+import org.assertj.core.api.Assertions;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.liga.songtask.domain.AnalysisReport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class AnalysisCacheTest {
+    private static byte[] belle;
+    private static byte[] wreckingBall;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        belle = read("/Belle.mid");
+        wreckingBall = read("/Wrecking Ball.mid");
+    }
+
+    private static byte[] read(String resource) throws IOException {
+        try (InputStream in = AnalysisCacheTest.class.getResourceAsStream(resource)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static void assertSameReport(AnalysisReport actual, AnalysisReport expected) {
+        Assertions.assertThat(actual.getVoiceTrackIndex()).isEqualTo(expected.getVoiceTrackIndex());
+        Assertions.assertThat(actual.getVoiceTrackNoteCount()).isEqualTo(expected.getVoiceTrackNoteCount());
+        Assertions.assertThat(actual.getTextEventCount()).isEqualTo(expected.getTextEventCount());
+        Assertions.assertThat(actual.getExtremum()).isEqualTo(expected.getExtremum());
+        Assertions.assertThat(actual.getRange()).isEqualTo(expected.getRange());
+        Assertions.assertThat(actual.getDurations()).isEqualTo(expected.getDurations());
+        Assertions.assertThat(actual.getNumberOfNotes()).isEqualTo(expected.getNumberOfNotes());
+        Assertions.assertThat(actual.getPitchClassProfile()).isEqualTo(expected.getPitchClassProfile());
+        Assertions.assertThat(actual.getKey().getName()).isEqualTo(expected.getKey().getName());
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //AnalysisReportCodec
+    @Test
+    public void whenEncodeAndDecodeReturnSameReport() throws IOException {
+        AnalysisReport report = new AnalysisEngine().analyze(new MidiFile(new ByteArrayInputStream(belle)));
+        assertSameReport(AnalysisReportCodec.decode(AnalysisReportCodec.encode(report)), report);
+    }
+
+    @Test(expected = IOException.class)
+    public void whenRecordCorruptedThrowIOException() throws IOException {
+        AnalysisReport report = new AnalysisEngine().analyze(new MidiFile(new ByteArrayInputStream(belle)));
+        byte[] data = AnalysisReportCodec.encode(report);
+        data[10] ^= 1;
+        AnalysisReportCodec.decode(data);
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //AnalysisCache
+    @Test
+    public void whenAnalyzeTwiceReturnCachedReport() throws IOException {
+        AnalysisCache cache = new AnalysisCache(folder.getRoot().toPath(), AnalysisCache.DEFAULT_MAX_BYTES);
+        AnalysisReport first = cache.analyze(belle);
+        AnalysisReport second = new AnalysisCache(folder.getRoot().toPath(), AnalysisCache.DEFAULT_MAX_BYTES)
+                .analyze(belle);
+        assertSameReport(second, first);
+        Assertions.assertThat(cache.getMisses()).isEqualTo(1);
+        Assertions.assertThat(Files.exists(folder.getRoot().toPath().resolve(AnalysisCache.keyOf(belle) + ".bin")))
+                .isTrue();
+    }
+
+    @Test
+    public void whenEntryCorruptedReturnFreshReport() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        AnalysisCache cache = new AnalysisCache(dir, AnalysisCache.DEFAULT_MAX_BYTES);
+        AnalysisReport expected = cache.analyze(belle);
+        Files.write(dir.resolve(AnalysisCache.keyOf(belle) + ".bin"), new byte[]{1, 2, 3});
+
+        assertSameReport(cache.analyze(belle), expected);
+        Assertions.assertThat(cache.getHits()).isEqualTo(0);
+        Assertions.assertThat(cache.analyze(belle)).isNotNull();
+        Assertions.assertThat(cache.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    public void whenOverLimitEvictLeastRecentlyUsed() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        AnalysisCache cache = new AnalysisCache(dir, AnalysisCache.DEFAULT_MAX_BYTES);
+        cache.analyze(belle);
+        long entrySize = cache.getTotalBytes();
+        Path belleEntry = dir.resolve(AnalysisCache.keyOf(belle) + ".bin");
+        Files.setLastModifiedTime(belleEntry, FileTime.fromMillis(0));
+
+        AnalysisCache small = new AnalysisCache(dir, entrySize + 1);
+        small.analyze(wreckingBall);
+        Assertions.assertThat(Files.exists(belleEntry)).isFalse();
+        Assertions.assertThat(Files.exists(dir.resolve(AnalysisCache.keyOf(wreckingBall) + ".bin"))).isTrue();
+    }
+
+    @Test
+    public void whenReadConcurrentlyReturnEveryLookupCounted() throws Exception {
+        AnalysisCache cache = new AnalysisCache(folder.getRoot().toPath(), AnalysisCache.DEFAULT_MAX_BYTES);
+        AnalysisReport expected = cache.analyze(belle);
+        String key = AnalysisCache.keyOf(belle);
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<AnalysisReport>> reports = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                reports.add(pool.submit(() -> cache.get(key)));
+            }
+            for (Future<AnalysisReport> report : reports) {
+                assertSameReport(report.get(), expected);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        Assertions.assertThat(cache.getHits()).isEqualTo(40);
+        Assertions.assertThat(cache.getMisses()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,74 @@
+package ru.liga.songtask.analysis;
+
+import com.leff.midi.MidiFile;
+import com.leff.midi.MidiTrack;
+import org.assertj.core.api.Assertions;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import ru.liga.songtask.domain.AnalysisReport;
+import ru.liga.songtask.domain.Note;
+import ru.liga.songtask.domain.NoteSign;
+import ru.liga.songtask.worker.AnalyzeWorker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class AnalysisEngineTest {
+    static final String[] songs = {"Belle", "Wrecking Ball", "Underneath Your Clothes"};
+    static List<MidiFile> midiFiles = new ArrayList<>();
+
+    @BeforeClass
+    public static void midiInitialize() {
+        try {
+            for (String song : songs) {
+                midiFiles.add(new MidiFile(AnalysisEngineTest.class.getResourceAsStream("/" + song + ".mid")));
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void whenResourceSongsReportMatchesAnalyzeWorker() {
+        for (MidiFile midiFile : midiFiles) {
+            List<Note> track = AnalyzeWorker.getVoiceTrack(midiFile);
+            AnalysisReport report = new AnalysisEngine().analyze(midiFile);
+
+            Assertions.assertThat(report.hasVoiceTrack()).isTrue();
+            Assertions.assertThat(report.getVoiceTrackNoteCount()).isEqualTo(track.size());
+            Assertions.assertThat(report.getExtremum()).isEqualTo(AnalyzeWorker.getExtremumNoteSigns(track));
+            Assertions.assertThat(report.getRange()).isEqualTo(AnalyzeWorker.getRange(track));
+            Assertions.assertThat(report.getDurations()).isEqualTo(AnalyzeWorker.getDurationAnalyze(track, midiFile));
+            Assertions.assertThat(report.getNumberOfNotes()).isEqualTo(AnalyzeWorker.getNumberOfNotes(track));
+        }
+    }
+
+    @Test
+    public void whenChordsOnlyReturnSkylineVoiceTrack() {
+        MidiTrack chords = new MidiTrack();
+        chords.insertNote(0, 60, 100, 0, 480);
+        chords.insertNote(0, 64, 100, 0, 480);
+        MidiFile midiFile = new MidiFile(480, new ArrayList<>(Arrays.asList(MidiTrack.createTempoTrack(), chords)));
+
+        AnalysisReport report = new AnalysisEngine().analyze(midiFile);
+        Assertions.assertThat(report.getVoiceTrackIndex()).isEqualTo(1);
+        Assertions.assertThat(report.getExtremum()).isEqualTo(new NoteSign[]{NoteSign.E_4, NoteSign.E_4});
+    }
+
+    @Test
+    public void whenNoNotesReturnReportWithoutVoiceTrack() {
+        MidiFile midiFile = new MidiFile(480, new ArrayList<>(Arrays.asList(MidiTrack.createTempoTrack(), new MidiTrack())));
+
+        Assertions.assertThat(new AnalysisEngine().analyze(midiFile).hasVoiceTrack()).isFalse();
+    }
+
+    @Test
+    public void whenExtraAccumulatorRegisteredReportContainsItsResult() {
+        AnalysisReport report = new AnalysisEngine()
+                .register("extremum", ExtremumAccumulator::new)
+                .analyze(midiFiles.get(2));
+        NoteSign[] extremum = report.getExtra("extremum");
+        Assertions.assertThat(extremum).isEqualTo(new NoteSign[]{NoteSign.G_SHARP_3, NoteSign.C_5});
+    }
+}
@@ -0,0 +1,120 @@
+package ru.liga.songtask.analysis;
+
+import com.leff.midi.MidiFile;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import ru.liga.songtask.domain.ChordTimeline;
+import ru.liga.songtask.domain.NoteBuffer;
+
+import java.util.Random;
+
+public class ChordRecognizerTest {
+
+    private static int mask(int... pitchClasses) {
+        int mask = 0;
+        for (int pitchClass : pitchClasses) {
+            mask |= 1 << pitchClass;
+        }
+        return mask;
+    }
+
+    private static void addChord(NoteBuffer notes, long start, long duration, int... pitches) {
+        for (int pitch : pitches) {
+            notes.add(pitch, start, duration);
+        }
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //ChordRecognizer.lookup
+    @Test
+    public void whenTriadOrSeventhReturnItsName() {
+        Assertions.assertThat(ChordTimeline.chordName(ChordRecognizer.lookup(mask(0, 4, 7)))).isEqualTo("C");
+        Assertions.assertThat(ChordTimeline.chordName(ChordRecognizer.lookup(mask(9, 0, 4)))).isEqualTo("Am");
+        Assertions.assertThat(ChordTimeline.chordName(ChordRecognizer.lookup(mask(7, 11, 2, 5)))).isEqualTo("G7");
+        Assertions.assertThat(ChordTimeline.chordName(ChordRecognizer.lookup(mask(6, 9, 1, 4)))).isEqualTo("F#m7");
+        Assertions.assertThat(ChordTimeline.chordName(ChordRecognizer.lookup(mask(11, 2, 5)))).isEqualTo("Hdim");
+        // Dsus4 и Gsus2 - одни и те же ноты, выигрывает более ранний в списке вид
+        Assertions.assertThat(ChordTimeline.chordName(ChordRecognizer.lookup(mask(2, 7, 9)))).isEqualTo("Gsus2");
+    }
+
+    @Test
+    public void whenChordHasOneExtraNoteReturnChord() {
+        Assertions.assertThat(ChordTimeline.chordName(ChordRecognizer.lookup(mask(0, 2, 4, 7)))).isEqualTo("C");
+    }
+
+    @Test
+    public void whenSingleNoteOrClusterReturnNoChord() {
+        Assertions.assertThat(ChordRecognizer.lookup(0)).isEqualTo(ChordTimeline.NO_CHORD);
+        Assertions.assertThat(ChordRecognizer.lookup(mask(4))).isEqualTo(ChordTimeline.NO_CHORD);
+        Assertions.assertThat(ChordRecognizer.lookup(mask(0, 1, 2, 3, 4, 5))).isEqualTo(ChordTimeline.NO_CHORD);
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //ChordRecognizer.recognize
+    @Test
+    public void whenProgressionReturnOneSegmentPerChord() {
+        NoteBuffer notes = new NoteBuffer();
+        addChord(notes, 0, 480, 60, 64, 67);
+        addChord(notes, 480, 480, 57, 60, 64);
+        addChord(notes, 960, 480, 53, 57, 60);
+        addChord(notes, 1440, 480, 55, 59, 62, 65);
+        addChord(notes, 1920, 480, 48, 60, 64, 67, 72);
+
+        ChordTimeline timeline = ChordRecognizer.recognize(notes);
+        Assertions.assertThat(timeline.size()).isEqualTo(5);
+        Assertions.assertThat(timeline.toString())
+                .isEqualTo("[{C, S|0}, {Am, S|480}, {F, S|960}, {G7, S|1440}, {C, S|1920}]");
+        Assertions.assertThat(timeline.endTick(4)).isEqualTo(2400);
+        Assertions.assertThat(ChordTimeline.chordName(timeline.chordAt(1000))).isEqualTo("F");
+        Assertions.assertThat(timeline.chordAt(2400)).isEqualTo(ChordTimeline.NO_CHORD);
+    }
+
+    @Test
+    public void whenNotesOverlapAcrossBoundaryReturnMergedSegments() {
+        NoteBuffer notes = new NoteBuffer();
+        notes.add(48, 0, 2000);
+        addChord(notes, 0, 1000, 64, 67);
+        addChord(notes, 1000, 1000, 67, 64);
+        addChord(notes, 3000, 500, 62, 65, 69);
+
+        ChordTimeline timeline = ChordRecognizer.recognize(notes);
+        Assertions.assertThat(timeline.toString()).isEqualTo("[{C, S|0}, {N.C., S|2000}, {Dm, S|3000}]");
+        Assertions.assertThat(timeline.getEndTick()).isEqualTo(3500);
+    }
+
+    @Test
+    public void whenNoNotesReturnEmptyTimeline() {
+        Assertions.assertThat(ChordRecognizer.recognize(new NoteBuffer()).size()).isEqualTo(0);
+    }
+
+    @Test
+    public void whenDenseRandomNotesReturnTimelineMatchingBruteForce() {
+        Random random = new Random(42);
+        NoteBuffer notes = new NoteBuffer();
+        for (int i = 0; i < 20000; i++) {
+            notes.add(36 + random.nextInt(48), random.nextInt(200000), 1 + random.nextInt(2000));
+        }
+        ChordTimeline timeline = ChordRecognizer.recognize(notes);
+        for (int probe = 0; probe < 200; probe++) {
+            long tick = random.nextInt(200000);
+            int mask = 0;
+            for (int i = 0; i < notes.size(); i++) {
+                if (notes.startTick(i) <= tick && tick < notes.endTick(i)) {
+                    mask |= 1 << notes.midi(i) % 12;
+                }
+            }
+            Assertions.assertThat(timeline.chordAt(tick)).isEqualTo(ChordRecognizer.lookup(mask));
+        }
+    }
+
+    @Test
+    public void whenResourceSongReturnChords() throws Exception {
+        MidiFile midiFile = new MidiFile(ChordRecognizerTest.class.getResourceAsStream("/Underneath Your Clothes.mid"));
+        ChordTimeline timeline = ChordRecognizer.recognize(midiFile);
+        Assertions.assertThat(timeline.size()).isGreaterThan(0);
+        for (int i = 1; i < timeline.size(); i++) {
+            Assertions.assertThat(timeline.chord(i)).isNotEqualTo(timeline.chord(i - 1));
+            Assertions.assertThat(timeline.startTick(i)).isGreaterThan(timeline.startTick(i - 1));
+        }
+    }
+}
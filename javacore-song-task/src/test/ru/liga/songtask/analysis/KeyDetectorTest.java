@@ -0,0 +1,149 @@
+package ru.liga.songtask.analysis;
+
+import com.leff.midi.MidiFile;
+import org.assertj.core.api.Assertions;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import ru.liga.songtask.domain.AnalysisReport;
+import ru.liga.songtask.domain.KeyEstimate;
+import ru.liga.songtask.domain.NoteBuffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class KeyDetectorTest {
+    private static final int[] MAJOR_SCALE = {0, 2, 4, 5, 7, 9, 11};
+    private static final int[] HARMONIC_MINOR_SCALE = {0, 2, 3, 5, 7, 8, 11};
+    static List<MidiFile> midiFiles = new ArrayList<>();
+
+    @BeforeClass
+    public static void midiInitialize() {
+        try {
+            for (String song : AnalysisEngineTest.songs) {
+                midiFiles.add(new MidiFile(KeyDetectorTest.class.getResourceAsStream("/" + song + ".mid")));
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Гамма от тоники, тоника и доминанта звучат вдвое дольше остальных ступеней.
+     */
+    private static void addScale(NoteBuffer notes, int tonic, int[] scale, long from) {
+        long tick = from;
+        for (int degree = 0; degree < scale.length; degree++) {
+            long duration = degree == 0 || degree == 4 ? 200 : 100;
+            notes.add(60 + tonic + scale[degree], tick, duration);
+            tick += duration;
+        }
+    }
+
+    private static double[] profileOf(int tonic, int[] scale) {
+        double[] profile = new double[KeyDetector.PITCH_CLASSES];
+        for (int degree = 0; degree < scale.length; degree++) {
+            profile[(tonic + scale[degree]) % 12] += degree == 0 || degree == 4 ? 2 : 1;
+        }
+        return profile;
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //KeyDetector.estimate
+    @Test
+    public void whenMajorScaleReturnMajorKeyInEveryTonic() {
+        for (int tonic = 0; tonic < 12; tonic++) {
+            KeyEstimate key = KeyDetector.estimate(profileOf(tonic, MAJOR_SCALE));
+            Assertions.assertThat(key.getTonic()).isEqualTo(tonic);
+            Assertions.assertThat(key.isMajor()).isTrue();
+            Assertions.assertThat(key.getCorrelation()).isGreaterThan(0.7).isLessThanOrEqualTo(1);
+        }
+    }
+
+    @Test
+    public void whenHarmonicMinorScaleReturnMinorKey() {
+        KeyEstimate key = KeyDetector.estimate(profileOf(9, HARMONIC_MINOR_SCALE));
+        Assertions.assertThat(key.getName()).isEqualTo("A minor");
+        Assertions.assertThat(key.getIndex()).isEqualTo(21);
+    }
+
+    @Test
+    public void whenProfileIsEmptyOrFlatReturnNull() {
+        double[] flat = new double[12];
+        Assertions.assertThat(KeyDetector.estimate(flat)).isNull();
+        Arrays.fill(flat, 5);
+        Assertions.assertThat(KeyDetector.estimate(flat)).isNull();
+    }
+
+    @Test
+    public void whenCorrelateReturnPearsonCoefficients() {
+        double[] profile = profileOf(7, MAJOR_SCALE);
+        double[] correlations = new double[KeyDetector.KEYS];
+        int best = KeyDetector.correlate(profile, 0, correlations);
+        Assertions.assertThat(best).isEqualTo(7);
+        for (double correlation : correlations) {
+            Assertions.assertThat(correlation).isBetween(-1.0, 1.0).isLessThanOrEqualTo(correlations[best]);
+        }
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //KeyDetector.estimateBatch
+    @Test
+    public void whenBatchReturnSameAsSingleEstimates() {
+        double[] profiles = new double[3 * KeyDetector.PITCH_CLASSES];
+        System.arraycopy(profileOf(2, MAJOR_SCALE), 0, profiles, 0, 12);
+        System.arraycopy(profileOf(4, HARMONIC_MINOR_SCALE), 0, profiles, 24, 12);
+        KeyEstimate[] keys = KeyDetector.estimateBatch(profiles, 3);
+        Assertions.assertThat(keys[0].getName()).isEqualTo("D major");
+        Assertions.assertThat(keys[1]).isNull();
+        Assertions.assertThat(keys[2].getName()).isEqualTo("E minor");
+        Assertions.assertThat(keys[2].getCorrelation())
+                .isEqualTo(KeyDetector.estimate(profileOf(4, HARMONIC_MINOR_SCALE)).getCorrelation());
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //KeyDetector.estimateWindows
+    @Test
+    public void whenMelodyModulatesReturnKeyPerWindow() {
+        NoteBuffer notes = new NoteBuffer();
+        for (int i = 0; i < 4; i++) {
+            addScale(notes, 0, MAJOR_SCALE, i * 900);
+        }
+        for (int i = 4; i < 8; i++) {
+            addScale(notes, 7, MAJOR_SCALE, i * 900);
+        }
+        KeyEstimate[] windows = KeyDetector.estimateWindows(notes, 1800, 900);
+        Assertions.assertThat(windows).hasSize(7);
+        Assertions.assertThat(windows[0].getName()).isEqualTo("C major");
+        Assertions.assertThat(windows[2].getName()).isEqualTo("C major");
+        Assertions.assertThat(windows[4].getName()).isEqualTo("G major");
+        Assertions.assertThat(windows[6].getName()).isEqualTo("G major");
+    }
+
+    @Test
+    public void whenWindowHasNoNotesReturnNull() {
+        NoteBuffer notes = new NoteBuffer();
+        addScale(notes, 0, MAJOR_SCALE, 0);
+        addScale(notes, 0, MAJOR_SCALE, 5000);
+        KeyEstimate[] windows = KeyDetector.estimateWindows(notes, 1000, 1000);
+        Assertions.assertThat(windows).hasSize(6);
+        Assertions.assertThat(windows[0].getName()).isEqualTo("C major");
+        Assertions.assertThat(windows[2]).isNull();
+        Assertions.assertThat(windows[5].getName()).isEqualTo("C major");
+        Assertions.assertThat(KeyDetector.estimateWindows(new NoteBuffer(), 1000, 1000)).isEmpty();
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //AnalysisEngine
+    @Test
+    public void whenResourceSongsReportKeyOfWholeFile() {
+        for (MidiFile midiFile : midiFiles) {
+            AnalysisReport report = new AnalysisEngine().analyze(midiFile);
+            Assertions.assertThat(report.getPitchClassProfile()).isEqualTo(KeyDetector.pitchClassProfile(midiFile));
+            Assertions.assertThat(report.getKey()).isNotNull();
+            Assertions.assertThat(report.getKey().getName()).isEqualTo(KeyDetector.estimate(midiFile).getName());
+            Assertions.assertThat(KeyDetector.estimateWindows(midiFile, midiFile.getResolution() * 16,
+                    midiFile.getResolution() * 4)).isNotEmpty();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package ru.liga.songtask.domain;
+
+import com.leff.midi.MidiFile;
+import com.leff.midi.MidiTrack;
+import org.assertj.core.api.Assertions;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import ru.liga.songtask.util.SongUtils;
+
+import java.io.IOException;
+import java.util.List;
+
+public class NoteBufferTest {
+    private static MidiFile belle;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        belle = new MidiFile(NoteBufferTest.class.getResourceAsStream("/Belle.mid"));
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //NoteBuffer
+    @Test
+    public void whenBufferFromEventsReturnSameNotesAsList() {
+        for (MidiTrack track : belle.getTracks()) {
+            List<Note> notes = SongUtils.eventsToNotes(track.getEvents());
+            NoteBuffer buffer = SongUtils.eventsToNoteBuffer(track.getEvents());
+            Assertions.assertThat(buffer.size()).isEqualTo(notes.size());
+            for (int i = 0; i < notes.size(); i++) {
+                Assertions.assertThat(buffer.sign(i)).isEqualTo(notes.get(i).sign());
+                Assertions.assertThat(buffer.startTick(i)).isEqualTo(notes.get(i).startTick());
+                Assertions.assertThat(buffer.durationTicks(i)).isEqualTo(notes.get(i).durationTicks());
+            }
+        }
+    }
+
+    @Test
+    public void whenBufferGrowsReturnAllNotes() {
+        NoteBuffer buffer = new NoteBuffer(1);
+        for (int i = 0; i < 1000; i++) {
+            buffer.add(21 + i % 88, i * 10L, 10L);
+        }
+        Assertions.assertThat(buffer.size()).isEqualTo(1000);
+        Assertions.assertThat(buffer.midi(999)).isEqualTo(21 + 999 % 88);
+        Assertions.assertThat(buffer.endTick(999)).isEqualTo(10000L);
+        Assertions.assertThat(NoteBuffer.of(buffer.toNotes()).size()).isEqualTo(1000);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void whenIndexOutOfSizeThrowException() {
+        new NoteBuffer().startTick(0);
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //NoteSign
+    @Test
+    public void whenFromMidiNumberReturnSignWithThatNumber() {
+        for (NoteSign sign : NoteSign.values()) {
+            if (sign != NoteSign.NULL_VALUE) {
+                Assertions.assertThat(NoteSign.fromMidiNumber(sign.getMidi())).isEqualTo(sign);
+            }
+        }
+        Assertions.assertThat(NoteSign.fromMidiNumber(0)).isEqualTo(NoteSign.NULL_VALUE);
+        Assertions.assertThat(NoteSign.fromMidiNumber(127)).isEqualTo(NoteSign.NULL_VALUE);
+        Assertions.assertThat(NoteSign.fromMidiNumber(-1)).isEqualTo(NoteSign.NULL_VALUE);
+        Assertions.assertThat(NoteSign.fromMidiNumber((Integer) null)).isEqualTo(NoteSign.NULL_VALUE);
+    }
+
+    @Test
+    public void whenFromFrequencyReturnNearestSign() {
+        for (float hz = 0f; hz < 5000f; hz += 0.37f) {
+            NoteSign nearest = NoteSign.NULL_VALUE;
+            double best = Double.MAX_VALUE;
+            for (NoteSign sign : NoteSign.values()) {
+                double distance = Math.abs(sign.getFrequencyHz() - hz);
+                if (distance < best) {
+                    best = distance;
+                    nearest = sign;
+                }
+            }
+            Assertions.assertThat(NoteSign.fromFrequency(hz)).isEqualTo(nearest);
+        }
+        Assertions.assertThat(NoteSign.fromFrequency(440f)).isEqualTo(NoteSign.A_4);
+    }
+}
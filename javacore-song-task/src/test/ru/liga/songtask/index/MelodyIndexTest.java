@@ -0,0 +1,88 @@
+package ru.liga.songtask.index;
+
+import com.leff.midi.MidiFile;
+import org.assertj.core.api.Assertions;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.liga.songtask.domain.Note;
+import ru.liga.songtask.domain.NoteSign;
+import ru.liga.songtask.worker.AnalyzeWorker;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class MelodyIndexTest {
+    private static final String[] SONGS = {"Belle.mid", "Wrecking Ball.mid", "Underneath Your Clothes.mid"};
+    private static final List<List<Note>> voices = new ArrayList<>();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        for (String song : SONGS) {
+            voices.add(AnalyzeWorker.getVoiceTrack(new MidiFile(MelodyIndexTest.class.getResourceAsStream("/" + song))));
+        }
+    }
+
+    private static List<Note> transpose(List<Note> notes, int semitones) {
+        return notes.stream()
+                .map(n -> new Note(NoteSign.fromMidiNumber(n.sign().getMidi() + semitones), n.startTick() * 2, n.durationTicks() * 2))
+                .collect(Collectors.toList());
+    }
+
+    private MelodyIndex buildIndex() throws IOException {
+        MelodyIndexWriter writer = new MelodyIndexWriter();
+        for (int i = 0; i < SONGS.length; i++) {
+            writer.add(SONGS[i], MelodyFingerprint.extract(voices.get(i)));
+        }
+        Path file = folder.getRoot().toPath().resolve("melody.idx");
+        writer.write(file);
+        return new MelodyIndex(file);
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //MelodyFingerprint
+    @Test
+    public void whenTransposedAndSlowerReturnSameTerms() {
+        Assertions.assertThat(MelodyFingerprint.extract(transpose(voices.get(0), 5)))
+                .containsExactly(MelodyFingerprint.extract(voices.get(0)));
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //MelodyIndex
+    @Test
+    public void whenQueryWholeSongReturnItFirst() throws IOException {
+        try (MelodyIndex index = buildIndex()) {
+            Assertions.assertThat(index.getDocumentCount()).isEqualTo(3);
+            for (int i = 0; i < SONGS.length; i++) {
+                List<MelodyIndex.Match> matches = index.query(transpose(voices.get(i), -3), 2);
+                Assertions.assertThat(matches).hasSize(2);
+                Assertions.assertThat(matches.get(0).getName()).isEqualTo(SONGS[i]);
+                Assertions.assertThat(matches.get(0).getScore()).isGreaterThan(matches.get(1).getScore());
+            }
+        }
+    }
+
+    @Test
+    public void whenQueryPhraseReturnSongContainingIt() throws IOException {
+        try (MelodyIndex index = buildIndex()) {
+            List<MelodyIndex.Match> matches = index.query(voices.get(1).subList(100, 140), 3);
+            Assertions.assertThat(matches.get(0).getName()).isEqualTo(SONGS[1]);
+        }
+    }
+
+    @Test
+    public void whenTermMissingReturnNoMatches() throws IOException {
+        try (MelodyIndex index = buildIndex()) {
+            int absent = 0x3FFFFFFF;
+            Assertions.assertThat(index.getDocumentFrequency(absent)).isEqualTo(0);
+            Assertions.assertThat(index.query(new int[]{absent}, 5)).isEmpty();
+        }
+    }
+}
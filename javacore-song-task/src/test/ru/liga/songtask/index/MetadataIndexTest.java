@@ -0,0 +1,157 @@
+package ru.liga.songtask.index;
+
+import com.leff.midi.MidiFile;
+import org.assertj.core.api.Assertions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.liga.songtask.analysis.AnalysisEngine;
+import ru.liga.songtask.domain.AnalysisReport;
+import ru.liga.songtask.domain.CorpusRecord;
+import ru.liga.songtask.domain.FileMetadata;
+import ru.liga.songtask.worker.CorpusAnalyzer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class MetadataIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<FileMetadata> randomRecords(int count) {
+        Random random = new Random(5);
+        List<FileMetadata> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            boolean voice = random.nextInt(10) != 0;
+            int lowest = 40 + random.nextInt(30);
+            int range = random.nextInt(30);
+            records.add(new FileMetadata("song" + i + ".mid", random.nextLong(), 60 + random.nextInt(1200) / 10f,
+                    480, 1 + random.nextInt(16), random.nextInt(500000), random.nextInt(400000),
+                    voice ? lowest : FileMetadata.NONE, voice ? lowest + range : FileMetadata.NONE,
+                    voice ? range : FileMetadata.NONE, voice ? 1 + random.nextInt(1000) : FileMetadata.NONE,
+                    random.nextInt(25) - 1));
+        }
+        return records;
+    }
+
+    private Path write(List<FileMetadata> records) throws IOException {
+        MetadataIndexWriter writer = new MetadataIndexWriter();
+        for (FileMetadata record : records) {
+            writer.add(record);
+        }
+        Path file = folder.getRoot().toPath().resolve("catalog.idx");
+        writer.write(file);
+        return file;
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //MetadataIndex.query
+    @Test
+    public void whenRangeAndTempoQueryReturnSameAsScan() throws IOException {
+        List<FileMetadata> records = randomRecords(20000);
+        try (MetadataIndex index = new MetadataIndex(write(records))) {
+            int[] found = index.query(new MetadataIndex.Query().range(0, 12).bpm(90, 110));
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < records.size(); i++) {
+                FileMetadata record = records.get(i);
+                if (record.getRange() >= 0 && record.getRange() <= 12 && record.getBpm() >= 90 && record.getBpm() <= 110) {
+                    expected.add(i);
+                }
+            }
+            Assertions.assertThat(found).containsExactly(expected.stream().mapToInt(Integer::intValue).toArray());
+            Assertions.assertThat(found).isNotEmpty();
+        }
+    }
+
+    @Test
+    public void whenQueryByKeyNotesAndLengthReturnSameAsScan() throws IOException {
+        List<FileMetadata> records = randomRecords(5000);
+        try (MetadataIndex index = new MetadataIndex(write(records))) {
+            int[] found = index.query(new MetadataIndex.Query().key(9).noteCount(100, 600).lengthMs(0, 200000));
+            int expected = 0;
+            for (FileMetadata record : records) {
+                if (record.getKey() == 9 && record.getNoteCount() >= 100 && record.getNoteCount() <= 600
+                        && record.getLengthMs() <= 200000) {
+                    expected++;
+                }
+            }
+            Assertions.assertThat(found).hasSize(expected);
+            for (int record : found) {
+                Assertions.assertThat(index.get(record).getKey()).isEqualTo(9);
+            }
+            Assertions.assertThat(index.query(new MetadataIndex.Query())).hasSize(records.size());
+        }
+    }
+
+    @Test
+    public void whenGetRecordReturnAllFields() throws IOException {
+        List<FileMetadata> records = randomRecords(100);
+        try (MetadataIndex index = new MetadataIndex(write(records))) {
+            Assertions.assertThat(index.getRecordCount()).isEqualTo(100);
+            for (int i = 0; i < records.size(); i++) {
+                Assertions.assertThat(index.get(i)).isEqualToComparingFieldByField(records.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void whenEmptyIndexReturnNoRecords() throws IOException {
+        try (MetadataIndex index = new MetadataIndex(write(new ArrayList<>()))) {
+            Assertions.assertThat(index.query(new MetadataIndex.Query().range(0, 12))).isEmpty();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void whenNotIndexFileThrowException() throws IOException {
+        Path file = folder.newFile("notes.txt").toPath();
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+        new MetadataIndex(file).close();
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //CorpusAnalyzer, FileMetadata.of
+    @Test
+    public void whenCorpusCollectsMetadataReturnQueryableCatalog() throws IOException {
+        Path root = folder.newFolder("songs").toPath();
+        for (int copy = 0; copy < 3; copy++) {
+            for (String song : new String[]{"Belle.mid", "Wrecking Ball.mid", "Underneath Your Clothes.mid"}) {
+                try (InputStream in = getClass().getResourceAsStream("/" + song)) {
+                    Files.copy(in, root.resolve(copy + song));
+                }
+            }
+        }
+        MetadataIndexWriter writer = new MetadataIndexWriter();
+        new CorpusAnalyzer(3, null, false, true).analyze(root, record -> writer.add(record.getMetadata()));
+        Path file = folder.getRoot().toPath().resolve("corpus.idx");
+        writer.write(file);
+
+        byte[] content = Files.readAllBytes(root.resolve("0Belle.mid"));
+        MidiFile midiFile = new MidiFile(root.resolve("0Belle.mid").toFile());
+        AnalysisReport report = new AnalysisEngine().analyze(midiFile);
+        FileMetadata belle = FileMetadata.of("Belle.mid", content, midiFile, report);
+        Assertions.assertThat(belle.getRange()).isEqualTo(report.getRange());
+        Assertions.assertThat(belle.getTrackCount()).isEqualTo(midiFile.getTracks().size());
+        Assertions.assertThat(belle.getLengthTicks()).isGreaterThan(0);
+
+        try (MetadataIndex index = new MetadataIndex(file)) {
+            Assertions.assertThat(index.getRecordCount()).isEqualTo(9);
+            int[] copies = index.query(new MetadataIndex.Query().contentHash(belle.getContentHash()));
+            Assertions.assertThat(copies).hasSize(3);
+            for (int record : copies) {
+                Assertions.assertThat(index.getName(record)).endsWith("Belle.mid");
+                Assertions.assertThat(index.get(record).getRange()).isEqualTo(belle.getRange());
+                Assertions.assertThat(index.get(record).getLengthMs()).isEqualTo(belle.getLengthMs());
+            }
+            Assertions.assertThat(index.query(new MetadataIndex.Query().range(belle.getRange(), belle.getRange())
+                    .bpm(belle.getBpm(), belle.getBpm()))).hasSize(3);
+        }
+
+        CorpusRecord record = new CorpusAnalyzer(1).analyzeFile(root.resolve("0Belle.mid"));
+        Assertions.assertThat(record.getMetadata()).isNull();
+    }
+}
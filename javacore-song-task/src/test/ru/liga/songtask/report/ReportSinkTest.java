@@ -0,0 +1,106 @@
+package ru.liga.songtask.report;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import ru.liga.songtask.domain.AnalysisReport;
+import ru.liga.songtask.domain.CorpusRecord;
+import ru.liga.songtask.domain.NoteSign;
+import ru.liga.songtask.util.IntIntHistogram;
+import ru.liga.songtask.util.PitchHistogram;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.stream.IntStream;
+
+public class ReportSinkTest {
+
+    private static CorpusRecord successRecord(String file) {
+        IntIntHistogram durations = new IntIntHistogram();
+        durations.add(500, 2);
+        durations.add(250, 3);
+        PitchHistogram pitches = new PitchHistogram();
+        pitches.add(64, 2);
+        pitches.add(60, 3);
+        AnalysisReport report = new AnalysisReport(2, 5, 7,
+                new NoteSign[]{NoteSign.C_4, NoteSign.E_4}, 4, durations, pitches, Collections.emptyMap());
+        return CorpusRecord.success(Paths.get(file), report, 1_500_000);
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //JsonLinesReportSink
+    @Test
+    public void whenJsonLinesWriteReturnOneObjectPerLine() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ReportSink sink = new JsonLinesReportSink(Channels.newChannel(bytes))) {
+            sink.write(successRecord("song \"1\".mid"));
+            sink.write(CorpusRecord.success(Paths.get("empty.mid"), AnalysisReport.withoutVoiceTrack(3), 2000));
+            sink.write(CorpusRecord.failure(Paths.get("bad.mid"), new IOException("line\nbreak"), 1000));
+        }
+        String[] lines = new String(bytes.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        Assertions.assertThat(lines).containsExactly(
+                "{\"file\":\"song \\\"1\\\".mid\",\"ok\":true,\"voiceTrack\":2,\"voiceNotes\":5,\"textEvents\":7,"
+                        + "\"lowest\":\"C4\",\"highest\":\"E4\",\"range\":4,\"durations\":{\"250\":3,\"500\":2},"
+                        + "\"notes\":{\"C4\":3,\"E4\":2},\"elapsedMicros\":1500}",
+                "{\"file\":\"empty.mid\",\"ok\":true,\"voiceTrack\":-1,\"voiceNotes\":0,\"textEvents\":3,\"elapsedMicros\":2}",
+                "{\"file\":\"bad.mid\",\"ok\":false,\"error\":\"IOException: line\\nbreak\",\"elapsedMicros\":1}");
+    }
+
+    @Test
+    public void whenWrittenFromManyThreadsReturnWholeLines() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ReportSink sink = new JsonLinesReportSink(Channels.newChannel(bytes))) {
+            IntStream.range(0, 2000).parallel().forEach(i -> {
+                try {
+                    sink.write(successRecord("file" + i + ".mid"));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+        String[] lines = new String(bytes.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        Assertions.assertThat(lines).hasSize(2000);
+        for (String line : lines) {
+            Assertions.assertThat(line).startsWith("{\"file\":\"file").endsWith(",\"elapsedMicros\":1500}");
+        }
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //CsvReportSink
+    @Test
+    public void whenCsvWriteReturnHeaderAndQuotedFields() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ReportSink sink = new CsvReportSink(Channels.newChannel(bytes))) {
+            sink.write(successRecord("a,b.mid"));
+            sink.write(CorpusRecord.success(Paths.get("empty.mid"), AnalysisReport.withoutVoiceTrack(3), 2000));
+            sink.write(CorpusRecord.failure(Paths.get("bad.mid"), new IOException("say \"no\""), 1000));
+        }
+        String[] lines = new String(bytes.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        Assertions.assertThat(lines).containsExactly(
+                CsvReportSink.HEADER,
+                "\"a,b.mid\",true,2,5,7,,C4,E4,4,250:3;500:2,C4:3;E4:2,,1500",
+                "empty.mid,true,-1,0,3,,,,,,,,2",
+                "bad.mid,false,,,,,,,,,,\"IOException: say \"\"no\"\"\",1");
+        for (String line : lines) {
+            Assertions.assertThat(line.replaceAll("\"[^\"]*(\"\"[^\"]*)*\"", "x").split(",", -1)).hasSize(13);
+        }
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //ChannelTextWriter
+    @Test
+    public void whenTextLargerThanBufferReturnSameBytes() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StringBuilder expected = new StringBuilder();
+        try (ChannelTextWriter writer = new ChannelTextWriter(Channels.newChannel(bytes), 16)) {
+            for (int i = 0; i < 500; i++) {
+                writer.append("нота𝄞").append(Long.MIN_VALUE + i).append(' ');
+                expected.append("нота𝄞").append(Long.MIN_VALUE + i).append(' ');
+            }
+        }
+        Assertions.assertThat(new String(bytes.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(expected.toString());
+    }
+}
@@ -0,0 +1,134 @@
+package ru.liga.songtask.util;
+
+import com.leff.midi.MidiFile;
+import com.leff.midi.MidiTrack;
+import com.leff.midi.event.meta.TrackName;
+import org.assertj.core.api.Assertions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class CanonicalMidiHashTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final byte[] HEADER = {'M', 'T', 'h', 'd', 0, 0, 0, 6, 0, 0, 0, 1, 0x01, (byte) 0xE0};
+
+    /**
+     * Файл формата 0 с одним треком из указанных событий
+     */
+    private static byte[] singleTrack(int... events) {
+        byte[] file = new byte[HEADER.length + 8 + events.length];
+        System.arraycopy(HEADER, 0, file, 0, HEADER.length);
+        byte[] track = {'M', 'T', 'r', 'k', 0, 0, (byte) (events.length >> 8), (byte) events.length};
+        System.arraycopy(track, 0, file, HEADER.length, track.length);
+        for (int i = 0; i < events.length; i++) {
+            file[HEADER.length + track.length + i] = (byte) events[i];
+        }
+        return file;
+    }
+
+    private static long hash(byte[] content, boolean ignoreText) throws IOException {
+        return CanonicalMidiHash.hash(new ByteArrayInputStream(content), ignoreText);
+    }
+
+    private Path resource(String name) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(name);
+        try (InputStream in = getClass().getResourceAsStream("/" + name)) {
+            Files.copy(in, file);
+        }
+        return file;
+    }
+
+    private Path save(MidiFile midiFile, String name) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        midiFile.writeToFile(file);
+        return file.toPath();
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //CanonicalMidiHash.hash
+    @Test
+    public void whenRunningStatusAndNoteOnZeroVelocityReturnSameHash() throws IOException {
+        byte[] explicit = singleTrack(
+                0x00, 0x90, 60, 100,
+                0x60, 0x80, 60, 64,
+                0x00, 0x90, 62, 100,
+                0x60, 0x80, 62, 64,
+                0x00, 0xFF, 0x2F, 0x00);
+        byte[] running = singleTrack(
+                0x00, 0x90, 60, 100,
+                0x60, 60, 0,
+                0x00, 62, 100,
+                0x30, 0xFF, 0x01, 0x00,
+                0x30, 0x90, 62, 0,
+                0x00, 0xFF, 0x2F, 0x00);
+
+        Assertions.assertThat(hash(running, true)).isEqualTo(hash(explicit, true));
+        // пустое текстовое событие - содержательное отличие, пока текст учитывается
+        Assertions.assertThat(hash(running, false)).isNotEqualTo(hash(explicit, false));
+    }
+
+    @Test
+    public void whenTracksReorderedOrResavedReturnSameHash() throws IOException {
+        Path original = resource("Belle.mid");
+        MidiFile midiFile = new MidiFile(original.toFile());
+        List<MidiTrack> tracks = new ArrayList<>(midiFile.getTracks());
+        Collections.reverse(tracks.subList(1, tracks.size()));
+        Path reordered = save(new MidiFile(midiFile.getResolution(), tracks), "reordered.mid");
+        Path resaved = save(midiFile, "resaved.mid");
+
+        Assertions.assertThat(CanonicalMidiHash.hash(reordered, false))
+                .isEqualTo(CanonicalMidiHash.hash(resaved, false));
+        // запись библиотекой меняет кодировку нелатинских имён треков, ноты при этом те же
+        Assertions.assertThat(CanonicalMidiHash.hash(resaved, true))
+                .isEqualTo(CanonicalMidiHash.hash(original, true));
+        Assertions.assertThat(Files.readAllBytes(reordered)).isNotEqualTo(Files.readAllBytes(original));
+    }
+
+    @Test
+    public void whenOnlyMetaTextDiffersReturnSameHashIfIgnored() throws IOException {
+        Path original = resource("Wrecking Ball.mid");
+        MidiFile midiFile = new MidiFile(original.toFile());
+        midiFile.getTracks().get(1).insertEvent(new TrackName(0, 0, "renamed"));
+        Path renamed = save(midiFile, "renamed.mid");
+
+        Assertions.assertThat(CanonicalMidiHash.hash(renamed, true))
+                .isEqualTo(CanonicalMidiHash.hash(original, true));
+        Assertions.assertThat(CanonicalMidiHash.hash(renamed, false))
+                .isNotEqualTo(CanonicalMidiHash.hash(original, false));
+    }
+
+    @Test
+    public void whenNoteChangedReturnDifferentHash() throws IOException {
+        byte[] first = singleTrack(0x00, 0x90, 60, 100, 0x60, 0x80, 60, 0, 0x00, 0xFF, 0x2F, 0x00);
+        byte[] transposed = singleTrack(0x00, 0x90, 61, 100, 0x60, 0x80, 61, 0, 0x00, 0xFF, 0x2F, 0x00);
+        byte[] later = singleTrack(0x01, 0x90, 60, 100, 0x60, 0x80, 60, 0, 0x00, 0xFF, 0x2F, 0x00);
+
+        Assertions.assertThat(Arrays.asList(hash(first, false), hash(transposed, false), hash(later, false)))
+                .doesNotHaveDuplicates();
+    }
+
+    @Test(expected = IOException.class)
+    public void whenNotMidiFileThrowException() throws IOException {
+        hash("not a midi file".getBytes(), false);
+    }
+
+    @Test(expected = IOException.class)
+    public void whenEventCrossesTrackEndThrowException() throws IOException {
+        byte[] file = singleTrack(0x00, 0x90, 60, 100);
+        file[HEADER.length + 7] = 3;
+        hash(file, false);
+    }
+}
@@ -0,0 +1,123 @@
+package ru.liga.songtask.util;
+
+import com.leff.midi.MidiFile;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import ru.liga.songtask.analysis.AnalysisEngine;
+import ru.liga.songtask.analysis.FingerprintAccumulator;
+import ru.liga.songtask.domain.AnalysisReport;
+import ru.liga.songtask.index.MelodyFingerprint;
+import ru.liga.songtask.index.PatternSketches;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+public class HeavyHitterSketchTest {
+
+    /**
+     * Поток с ключами 0..9, где ключ i встречается (10 - i) * 1000 раз, на фоне 100000 редких ключей.
+     */
+    private static void fill(HeavyHitterSketch sketch, Random random, int part, int parts) {
+        for (int i = part; i < 100000; i += parts) {
+            sketch.add(1000 + i);
+            if (i % 10 == 0) {
+                int key = random.nextInt(10);
+                for (int repeat = 0; repeat < 10 - key; repeat++) {
+                    sketch.add(key, 10);
+                }
+            }
+        }
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //HeavyHitterSketch
+    @Test
+    public void whenSkewedStreamReturnFrequentKeysFirst() {
+        HeavyHitterSketch sketch = new HeavyHitterSketch();
+        sketch.add(7, 500);
+        sketch.add(3, 300);
+        for (int i = 100; i < 10000; i++) {
+            sketch.add(i);
+        }
+        sketch.add(5, 400);
+
+        List<HeavyHitterSketch.Entry> top = sketch.top(3);
+        Assertions.assertThat(top).extracting(HeavyHitterSketch.Entry::getKey).containsExactly(7, 5, 3);
+        Assertions.assertThat(top.get(0).getCount()).isBetween(500L, 510L);
+        Assertions.assertThat(sketch.estimate(3)).isGreaterThanOrEqualTo(300);
+        Assertions.assertThat(sketch.total()).isEqualTo(1200 + 9900);
+    }
+
+    @Test
+    public void whenMergePartialsReturnSameAsWhole() throws IOException {
+        HeavyHitterSketch whole = new HeavyHitterSketch(4, 1 << 10, 16);
+        fill(whole, new Random(1), 0, 1);
+        HeavyHitterSketch merged = new HeavyHitterSketch(4, 1 << 10, 16);
+        Random random = new Random(1);
+        for (int part = 0; part < 4; part++) {
+            HeavyHitterSketch partial = new HeavyHitterSketch(4, 1 << 10, 16);
+            fill(partial, random, part, 4);
+            merged.merge(HeavyHitterSketch.fromByteArray(partial.toByteArray()));
+        }
+        Assertions.assertThat(merged.total()).isEqualTo(whole.total());
+        Assertions.assertThat(merged.top(5)).extracting(HeavyHitterSketch.Entry::getKey)
+                .containsExactly(0, 1, 2, 3, 4);
+        for (int key = 0; key < 10; key++) {
+            Assertions.assertThat(merged.estimate(key)).isGreaterThanOrEqualTo(whole.estimate(key) - 1000);
+        }
+    }
+
+    @Test
+    public void whenEmptyReturnNoEntries() {
+        Assertions.assertThat(new HeavyHitterSketch().top(10)).isEmpty();
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //PatternSketches, FingerprintAccumulator
+    @Test
+    public void whenResourceSongsReturnPatternsOfFingerprints() throws IOException {
+        PatternSketches patterns = new PatternSketches();
+        long intervalTerms = 0;
+        for (String song : new String[]{"/Belle.mid", "/Wrecking Ball.mid", "/Underneath Your Clothes.mid"}) {
+            MidiFile midiFile = new MidiFile(HeavyHitterSketchTest.class.getResourceAsStream(song));
+            AnalysisReport report = new AnalysisEngine()
+                    .register(FingerprintAccumulator.NAME, FingerprintAccumulator::new)
+                    .analyze(midiFile);
+            int[] terms = report.getExtra(FingerprintAccumulator.NAME);
+            Assertions.assertThat(terms).isEqualTo(MelodyFingerprint.extract(midiFile));
+            patterns.add(terms);
+            patterns.add(terms);
+            for (int term : terms) {
+                if (!MelodyFingerprint.isRhythmTerm(term)) {
+                    intervalTerms++;
+                }
+            }
+        }
+        Assertions.assertThat(patterns.getFiles()).isEqualTo(6);
+        Assertions.assertThat(patterns.getIntervals().total()).isEqualTo(2 * intervalTerms);
+        Assertions.assertThat((double) patterns.getDistinctIntervals().estimate())
+                .isCloseTo(intervalTerms, Assertions.withinPercentage(10));
+
+        PatternSketches restored = PatternSketches.fromByteArray(patterns.toByteArray());
+        HeavyHitterSketch.Entry top = restored.getRhythms().top(1).get(0);
+        Assertions.assertThat(top.getCount()).isGreaterThanOrEqualTo(2);
+        Assertions.assertThat(MelodyFingerprint.describe(top.getKey())).startsWith("x");
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //MelodyFingerprint.describe
+    @Test
+    public void whenDescribeTermReturnIntervalsAndRatios() {
+        int interval = 0;
+        for (int step : new int[]{2, 2, -4, 0}) {
+            interval = (interval << 6) | (step + 31);
+        }
+        Assertions.assertThat(MelodyFingerprint.describe(interval)).isEqualTo("+2 +2 -4 0");
+        int rhythm = 0;
+        for (int code : new int[]{0, 2, -2, 1}) {
+            rhythm = (rhythm << 4) | (code + 7);
+        }
+        Assertions.assertThat(MelodyFingerprint.describe(rhythm | 1 << 30)).isEqualTo("x1 x2 x0.5 x1.414");
+    }
+}
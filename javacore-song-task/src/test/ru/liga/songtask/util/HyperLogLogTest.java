@@ -0,0 +1,61 @@
+package ru.liga.songtask.util;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class HyperLogLogTest {
+
+    //-------------------------------------------------------------------------------------------------
+    //HyperLogLog
+    @Test
+    public void whenManyDistinctValuesReturnEstimateWithinError() {
+        HyperLogLog counter = new HyperLogLog();
+        for (int i = 0; i < 1_000_000; i++) {
+            counter.add(i);
+            counter.add(i);
+        }
+        Assertions.assertThat((double) counter.estimate()).isCloseTo(1_000_000, Assertions.withinPercentage(3));
+    }
+
+    @Test
+    public void whenFewDistinctValuesReturnNearlyExactCount() {
+        HyperLogLog counter = new HyperLogLog();
+        Assertions.assertThat(counter.estimate()).isEqualTo(0);
+        for (int i = 0; i < 100; i++) {
+            counter.add(i * 31L);
+        }
+        Assertions.assertThat(counter.estimate()).isBetween(98L, 102L);
+    }
+
+    @Test
+    public void whenMergePartsReturnSameAsWhole() {
+        HyperLogLog whole = new HyperLogLog(12);
+        HyperLogLog left = new HyperLogLog(12);
+        HyperLogLog right = new HyperLogLog(12);
+        for (int i = 0; i < 50000; i++) {
+            whole.add(i);
+            (i % 3 == 0 ? left : right).add(i);
+            // пересечение частей не меняет результат
+            right.add(i / 2);
+        }
+        Assertions.assertThat(left.merge(right).toByteArray()).isEqualTo(whole.toByteArray());
+    }
+
+    @Test
+    public void whenSerializedReturnSameEstimate() throws IOException {
+        HyperLogLog counter = new HyperLogLog(10);
+        for (int i = 0; i < 5000; i++) {
+            counter.add(i);
+        }
+        HyperLogLog restored = HyperLogLog.fromByteArray(counter.toByteArray());
+        Assertions.assertThat(restored.getPrecision()).isEqualTo(10);
+        Assertions.assertThat(restored.estimate()).isEqualTo(counter.estimate());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenMergeDifferentPrecisionThrowException() {
+        new HyperLogLog(10).merge(new HyperLogLog(11));
+    }
+}
@@ -0,0 +1,77 @@
+package ru.liga.songtask.util;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+public class IntIntHistogramTest {
+
+    //-------------------------------------------------------------------------------------------------
+    //IntIntHistogram
+    @Test
+    public void whenAddSameKeyTwiceReturnTwo() {
+        IntIntHistogram histogram = new IntIntHistogram();
+        histogram.add(250);
+        histogram.add(250);
+        histogram.add(500);
+        Assertions.assertThat(histogram.get(250)).isEqualTo(2);
+        Assertions.assertThat(histogram.get(500)).isEqualTo(1);
+        Assertions.assertThat(histogram.get(750)).isEqualTo(0);
+        Assertions.assertThat(histogram.size()).isEqualTo(2);
+        Assertions.assertThat(histogram.total()).isEqualTo(3);
+    }
+
+    @Test
+    public void whenManyKeysAddedReturnAllCounts() {
+        IntIntHistogram histogram = new IntIntHistogram(2);
+        for (int i = 0; i < 10000; i++) {
+            histogram.add(i * 7, i % 5 + 1);
+        }
+        Assertions.assertThat(histogram.size()).isEqualTo(10000);
+        for (int i = 0; i < 10000; i++) {
+            Assertions.assertThat(histogram.get(i * 7)).isEqualTo(i % 5 + 1);
+        }
+    }
+
+    @Test
+    public void whenMinValueKeyAddedReturnItsCount() {
+        IntIntHistogram histogram = new IntIntHistogram();
+        histogram.add(Integer.MIN_VALUE);
+        histogram.add(0);
+        Assertions.assertThat(histogram.get(Integer.MIN_VALUE)).isEqualTo(1);
+        Assertions.assertThat(histogram.sortedKeys()).containsExactly(Integer.MIN_VALUE, 0);
+    }
+
+    @Test
+    public void whenMergeReturnSumOfCounts() {
+        IntIntHistogram first = new IntIntHistogram();
+        IntIntHistogram second = new IntIntHistogram();
+        first.add(1, 3);
+        first.add(2);
+        second.add(2, 4);
+        second.add(3);
+        first.merge(second);
+
+        HashMap<Integer, Integer> expected = new HashMap<>();
+        expected.put(1, 3);
+        expected.put(2, 5);
+        expected.put(3, 1);
+        Assertions.assertThat(first.toHashMap()).isEqualTo(expected);
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //PitchHistogram
+    @Test
+    public void whenPitchesAddedReturnLowestAndHighest() {
+        PitchHistogram histogram = new PitchHistogram();
+        Assertions.assertThat(histogram.lowest()).isEqualTo(-1);
+        histogram.add(60);
+        histogram.add(72);
+        histogram.add(60);
+        Assertions.assertThat(histogram.lowest()).isEqualTo(60);
+        Assertions.assertThat(histogram.highest()).isEqualTo(72);
+        Assertions.assertThat(histogram.get(60)).isEqualTo(2);
+        Assertions.assertThat(histogram.total()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,108 @@
+package ru.liga.songtask.util;
+
+import com.leff.midi.MidiFile;
+import com.leff.midi.MidiTrack;
+import com.leff.midi.event.meta.Lyrics;
+import com.leff.midi.event.meta.Text;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import ru.liga.songtask.analysis.AnalysisEngine;
+import ru.liga.songtask.domain.LyricsAlignment;
+import ru.liga.songtask.domain.Note;
+import ru.liga.songtask.domain.NoteSign;
+import ru.liga.songtask.worker.AnalyzeWorker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class LyricsAlignerTest {
+
+    /**
+     * Два одноголосных трека с одинаковым числом нот: в первом ноты сдвинуты на восьмую
+     * относительно слогов, во втором - начинаются вместе со слогами.
+     */
+    private static MidiFile karaoke() {
+        MidiTrack accompaniment = new MidiTrack();
+        MidiTrack voice = new MidiTrack();
+        MidiTrack lyrics = new MidiTrack();
+        lyrics.insertEvent(new Text(0, 0, "@TTitle"));
+        String[] words = {"Hel", "lo ", "dar", "kness"};
+        for (int i = 0; i < 8; i++) {
+            long tick = i * 480L;
+            accompaniment.insertNote(0, 48 + i, 100, tick + 240, 200);
+            voice.insertNote(1, 60 + i, 100, tick, 400);
+            lyrics.insertEvent(new Lyrics(tick + 10, 0, words[i % 4]));
+        }
+        return new MidiFile(480, new ArrayList<>(Arrays.asList(MidiTrack.createTempoTrack(),
+                accompaniment, voice, lyrics)));
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //LyricsAligner.align
+    @Test
+    public void whenSyllablesNearOnsetsReturnClosestFreeNote() {
+        LyricsAligner.Syllables syllables = new LyricsAligner.Syllables();
+        syllables.accept(new Lyrics(100, 0, "b"));
+        syllables.accept(new Lyrics(0, 0, "a"));
+        syllables.accept(new Lyrics(105, 0, "c"));
+        syllables.accept(new Lyrics(1000, 0, "d"));
+        List<Note> notes = Arrays.asList(
+                new Note(NoteSign.C_4, 0L, 90L),
+                new Note(NoteSign.D_4, 90L, 10L),
+                new Note(NoteSign.E_4, 104L, 100L));
+
+        LyricsAlignment alignment = LyricsAligner.align(syllables, notes, 480);
+        Assertions.assertThat(alignment.size()).isEqualTo(4);
+        Assertions.assertThat(alignment.syllable(0)).isEqualTo("a");
+        Assertions.assertThat(alignment.noteIndex(0)).isEqualTo(0);
+        Assertions.assertThat(alignment.noteIndex(1)).isEqualTo(2);
+        // ближайшая нота уже занята, более ранняя нота осталась позади
+        Assertions.assertThat(alignment.noteIndex(2)).isEqualTo(LyricsAlignment.UNMATCHED);
+        Assertions.assertThat(alignment.noteIndex(3)).isEqualTo(LyricsAlignment.UNMATCHED);
+        Assertions.assertThat(alignment.getMatched()).isEqualTo(2);
+        Assertions.assertThat(alignment.getScore()).isEqualTo(4.0 / 7);
+    }
+
+    @Test
+    public void whenNoSyllablesReturnZeroScore() {
+        LyricsAligner.Syllables syllables = new LyricsAligner.Syllables();
+        syllables.accept(new Text(0, 0, "@KMIDI KARAOKE FILE"));
+        Assertions.assertThat(syllables.isEmpty()).isTrue();
+        Assertions.assertThat(LyricsAligner.score(syllables, new long[]{0, 10}, 2, 480)).isEqualTo(0);
+    }
+
+    @Test
+    public void whenFileHasLyricsReturnThemInsteadOfText() {
+        MidiFile midiFile = karaoke();
+        midiFile.getTracks().get(3).insertEvent(new Text(5, 0, "comment"));
+        LyricsAligner.Syllables syllables = LyricsAligner.readSyllables(midiFile);
+        Assertions.assertThat(syllables.size()).isEqualTo(8);
+        Assertions.assertThat(syllables.texts()[1]).isEqualTo("lo ");
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //AnalyzeWorker.getVoiceTrack, AnalyzeWorker.alignLyrics, AnalysisEngine
+    @Test
+    public void whenTracksHaveSameSizeReturnTrackAlignedWithLyrics() {
+        MidiFile midiFile = karaoke();
+        List<Note> voice = AnalyzeWorker.getVoiceTrack(midiFile);
+        Assertions.assertThat(voice.get(0).sign()).isEqualTo(NoteSign.C_4);
+        Assertions.assertThat(new AnalysisEngine().analyze(midiFile).getVoiceTrackIndex()).isEqualTo(2);
+
+        LyricsAlignment alignment = AnalyzeWorker.alignLyrics(midiFile);
+        Assertions.assertThat(alignment.getScore()).isEqualTo(1.0);
+        for (int i = 0; i < alignment.size(); i++) {
+            Assertions.assertThat(alignment.noteIndex(i)).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void whenResourceSongReturnAlignmentOfVoiceTrack() throws Exception {
+        MidiFile midiFile = new MidiFile(LyricsAlignerTest.class.getResourceAsStream("/Belle.mid"));
+        LyricsAlignment alignment = AnalyzeWorker.alignLyrics(midiFile);
+        Assertions.assertThat(alignment.size()).isEqualTo(LyricsAligner.readSyllables(midiFile).size());
+        Assertions.assertThat(alignment.getNoteCount()).isEqualTo(AnalyzeWorker.getVoiceTrack(midiFile).size());
+        Assertions.assertThat(alignment.getScore()).isGreaterThan(0.5);
+    }
+}
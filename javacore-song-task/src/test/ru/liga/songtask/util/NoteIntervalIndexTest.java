@@ -0,0 +1,92 @@
+package ru.liga.songtask.util;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import ru.liga.songtask.domain.NoteBuffer;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+public class NoteIntervalIndexTest {
+
+    private static NoteBuffer randomNotes(long seed, int count) {
+        Random random = new Random(seed);
+        NoteBuffer buffer = new NoteBuffer();
+        for (int i = 0; i < count; i++) {
+            buffer.add(40 + random.nextInt(40), random.nextInt(10000), random.nextInt(300));
+        }
+        return buffer;
+    }
+
+    private static int[] bruteForce(NoteBuffer notes, long from, long to) {
+        return IntStream.range(0, notes.size())
+                .filter(i -> notes.durationTicks(i) > 0 && notes.startTick(i) < to && notes.endTick(i) > from)
+                .toArray();
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //Запросы
+    @Test
+    public void whenQueryAtTickReturnSameAsFullScan() {
+        NoteBuffer notes = randomNotes(1, 2000);
+        NoteIntervalIndex index = new NoteIntervalIndex(notes);
+        for (long tick = 0; tick < 10400; tick += 7) {
+            int[] expected = bruteForce(notes, tick, tick + 1);
+            Assertions.assertThat(index.indicesAt(tick)).containsExactlyInAnyOrder(expected);
+            Assertions.assertThat(index.countAt(tick)).isEqualTo(expected.length);
+        }
+    }
+
+    @Test
+    public void whenQueryInWindowReturnSameAsFullScan() {
+        NoteBuffer notes = randomNotes(2, 2000);
+        NoteIntervalIndex index = new NoteIntervalIndex(notes);
+        for (long from = 0; from < 10400; from += 113) {
+            Assertions.assertThat(index.indicesIn(from, from + 250))
+                    .containsExactlyInAnyOrder(bruteForce(notes, from, from + 250));
+        }
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //Полифония
+    @Test
+    public void whenChordReturnItsSizeAsMaxPolyphony() {
+        NoteBuffer notes = new NoteBuffer();
+        notes.add(60, 0, 480);
+        notes.add(64, 480, 480);
+        notes.add(67, 480, 960);
+        notes.add(71, 600, 100);
+        notes.add(72, 1440, 480);
+        NoteIntervalIndex index = new NoteIntervalIndex(notes);
+        Assertions.assertThat(index.getMaxPolyphony()).isEqualTo(3);
+        Assertions.assertThat(index.getMaxPolyphonyTick()).isEqualTo(600L);
+        Assertions.assertThat(index.isMonophonic()).isFalse();
+    }
+
+    @Test
+    public void whenNotesOnlyTouchReturnMonophonic() {
+        NoteBuffer notes = new NoteBuffer();
+        notes.add(60, 480, 480);
+        notes.add(62, 0, 480);
+        notes.add(64, 960, 0);
+        notes.add(65, 960, 480);
+        NoteIntervalIndex index = new NoteIntervalIndex(notes);
+        Assertions.assertThat(index.getMaxPolyphony()).isEqualTo(1);
+        Assertions.assertThat(index.isMonophonic()).isTrue();
+        Assertions.assertThat(index.indicesAt(480)).containsExactly(0);
+    }
+
+    @Test
+    public void whenStartsBeyondIntReturnSameOrderAsShortFile() {
+        long far = 3L * Integer.MAX_VALUE;
+        NoteBuffer notes = new NoteBuffer();
+        notes.add(60, far + 480, 480);
+        notes.add(62, far, 480);
+        notes.add(64, far + 960, 480);
+        notes.add(65, far + 960, 100);
+        NoteIntervalIndex index = new NoteIntervalIndex(notes);
+        Assertions.assertThat(index.getMaxPolyphony()).isEqualTo(2);
+        Assertions.assertThat(index.getMaxPolyphonyTick()).isEqualTo(far + 960);
+        Assertions.assertThat(index.indicesIn(far, far + 1000)).containsExactly(1, 0, 2, 3);
+    }
+}
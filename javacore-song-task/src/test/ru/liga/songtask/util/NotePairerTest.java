@@ -0,0 +1,88 @@
+package ru.liga.songtask.util;
+
+import com.leff.midi.MidiTrack;
+import com.leff.midi.event.MidiEvent;
+import com.leff.midi.event.NoteOff;
+import com.leff.midi.event.NoteOn;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import ru.liga.songtask.domain.Note;
+import ru.liga.songtask.domain.NoteSign;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class NotePairerTest {
+
+    private static List<long[]> pair(MidiEvent... events) {
+        List<long[]> notes = new ArrayList<>();
+        new NotePairer(1).pair(Arrays.asList(events), (channel, noteValue, velocity, startTick, durationTicks) ->
+                notes.add(new long[]{channel, noteValue, velocity, startTick, durationTicks}));
+        return notes;
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //NotePairer
+    @Test
+    public void whenNotesOverlapReturnEachPairedByPitch() {
+        List<long[]> notes = pair(
+                new NoteOn(0, 0, 60, 100),
+                new NoteOn(10, 0, 64, 90),
+                new NoteOff(20, 0, 60, 0),
+                new NoteOff(40, 0, 64, 0));
+        Assertions.assertThat(notes).containsExactly(
+                new long[]{0, 60, 100, 0, 20},
+                new long[]{0, 64, 90, 10, 30});
+    }
+
+    @Test
+    public void whenSamePitchOnTwoChannelsReturnEachPairedByChannel() {
+        List<long[]> notes = pair(
+                new NoteOn(0, 1, 60, 100),
+                new NoteOn(5, 2, 60, 100),
+                new NoteOn(15, 2, 60, 0),
+                new NoteOff(30, 1, 60, 0));
+        Assertions.assertThat(notes).containsExactly(
+                new long[]{2, 60, 100, 5, 10},
+                new long[]{1, 60, 100, 0, 30});
+    }
+
+    @Test
+    public void whenSamePitchNestedDeeperThanCapacityReturnAllNotes() {
+        List<long[]> notes = pair(
+                new NoteOn(0, 0, 60, 100),
+                new NoteOn(1, 0, 60, 100),
+                new NoteOn(2, 0, 60, 100),
+                new NoteOff(3, 0, 60, 0),
+                new NoteOff(4, 0, 60, 0),
+                new NoteOff(5, 0, 60, 0));
+        Assertions.assertThat(notes).containsExactly(
+                new long[]{0, 60, 100, 2, 1},
+                new long[]{0, 60, 100, 1, 3},
+                new long[]{0, 60, 100, 0, 5});
+    }
+
+    @Test
+    public void whenNoteOffWithoutNoteOnReturnNothing() {
+        Assertions.assertThat(pair(new NoteOff(10, 0, 60, 0))).isEmpty();
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //SongUtils.eventsToNotes
+    @Test
+    public void whenChordThenEventsToNotesReturnCorrectDurations() {
+        MidiTrack track = new MidiTrack();
+        track.insertEvent(new NoteOn(0, 0, 60, 100));
+        track.insertEvent(new NoteOn(0, 0, 64, 100));
+        track.insertEvent(new NoteOff(480, 0, 64, 0));
+        track.insertEvent(new NoteOff(960, 0, 60, 0));
+
+        List<Note> notes = SongUtils.eventsToNotes(track.getEvents());
+        Assertions.assertThat(notes).hasSize(2);
+        Assertions.assertThat(notes.get(0).sign()).isEqualTo(NoteSign.E_4);
+        Assertions.assertThat(notes.get(0).durationTicks()).isEqualTo(480L);
+        Assertions.assertThat(notes.get(1).sign()).isEqualTo(NoteSign.C_4);
+        Assertions.assertThat(notes.get(1).durationTicks()).isEqualTo(960L);
+    }
+}
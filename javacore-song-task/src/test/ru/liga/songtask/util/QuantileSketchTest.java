@@ -0,0 +1,156 @@
+package ru.liga.songtask.util;
+
+import com.leff.midi.MidiFile;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import ru.liga.songtask.analysis.AnalysisEngine;
+import ru.liga.songtask.analysis.NoteStatisticsAccumulator;
+import ru.liga.songtask.domain.AnalysisReport;
+import ru.liga.songtask.domain.NoteStatistics;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+public class QuantileSketchTest {
+
+    /**
+     * Доля значений массива, не больших данного
+     */
+    private static double exactRank(double[] sorted, double value) {
+        int count = 0;
+        while (count < sorted.length && sorted[count] <= value) {
+            count++;
+        }
+        return (double) count / sorted.length;
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //QuantileSketch
+    @Test
+    public void whenFewValuesReturnExactQuantiles() {
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = 100; i >= 1; i--) {
+            sketch.add(i);
+        }
+        Assertions.assertThat(sketch.quantile(0.5)).isEqualTo(50);
+        Assertions.assertThat(sketch.quantile(0.95)).isEqualTo(95);
+        Assertions.assertThat(sketch.quantile(0)).isEqualTo(1);
+        Assertions.assertThat(sketch.quantile(1)).isEqualTo(100);
+        Assertions.assertThat(sketch.rank(10)).isEqualTo(0.1);
+    }
+
+    @Test
+    public void whenLongStreamReturnRankErrorWithinBound() {
+        Random random = new Random(1);
+        double[] values = new double[200000];
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.exp(random.nextGaussian());
+            sketch.add(values[i]);
+        }
+        Arrays.sort(values);
+        Assertions.assertThat(sketch.count()).isEqualTo(values.length);
+        Assertions.assertThat(sketch.retained()).isLessThan(1000);
+        for (double fraction : new double[]{0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99}) {
+            Assertions.assertThat(exactRank(values, sketch.quantile(fraction)))
+                    .isCloseTo(fraction, Assertions.within(0.02));
+        }
+        Assertions.assertThat(sketch.min()).isEqualTo(values[0]);
+        Assertions.assertThat(sketch.max()).isEqualTo(values[values.length - 1]);
+    }
+
+    @Test
+    public void whenMergePartialsReturnAccuracyOfWholeStream() {
+        Random random = new Random(2);
+        double[] values = new double[100000];
+        QuantileSketch[] partials = new QuantileSketch[8];
+        for (int i = 0; i < partials.length; i++) {
+            partials[i] = new QuantileSketch();
+        }
+        for (int i = 0; i < values.length; i++) {
+            // у каждого обработчика своё распределение
+            values[i] = (i % 8) * 100 + random.nextInt(1000);
+            partials[i % 8].add(values[i]);
+        }
+        QuantileSketch merged = new QuantileSketch();
+        for (QuantileSketch partial : partials) {
+            merged.merge(partial);
+        }
+        Arrays.sort(values);
+        Assertions.assertThat(merged.count()).isEqualTo(values.length);
+        Assertions.assertThat(partials[0].count()).isEqualTo(values.length / 8);
+        for (double fraction : new double[]{0.05, 0.5, 0.95}) {
+            Assertions.assertThat(exactRank(values, merged.quantile(fraction)))
+                    .isCloseTo(fraction, Assertions.within(0.02));
+        }
+    }
+
+    @Test
+    public void whenSerializedReturnSameSketch() throws IOException {
+        QuantileSketch sketch = new QuantileSketch(64);
+        Random random = new Random(3);
+        for (int i = 0; i < 10000; i++) {
+            sketch.add(random.nextDouble());
+        }
+        QuantileSketch restored = QuantileSketch.fromByteArray(sketch.toByteArray());
+        Assertions.assertThat(restored.getK()).isEqualTo(64);
+        Assertions.assertThat(restored.count()).isEqualTo(sketch.count());
+        Assertions.assertThat(restored.toString()).isEqualTo(sketch.toString());
+
+        restored.add(0.5);
+        sketch.add(0.5);
+        Assertions.assertThat(restored.toByteArray()).isEqualTo(sketch.toByteArray());
+    }
+
+    @Test(expected = IOException.class)
+    public void whenCorruptedDataThrowException() throws IOException {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.add(1);
+        byte[] data = sketch.toByteArray();
+        data[3] = 1;
+        QuantileSketch.fromByteArray(data);
+    }
+
+    @Test
+    public void whenEmptyReturnNaN() {
+        QuantileSketch sketch = new QuantileSketch();
+        Assertions.assertThat(sketch.quantile(0.5)).isNaN();
+        Assertions.assertThat(sketch.rank(1)).isEqualTo(0);
+        Assertions.assertThat(sketch.merge(new QuantileSketch()).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void whenScaledReturnScaledQuantiles() {
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = 1; i <= 1000; i++) {
+            sketch.add(i);
+        }
+        QuantileSketch scaled = sketch.scaled(0.5);
+        Assertions.assertThat(scaled.quantile(0.5)).isEqualTo(sketch.quantile(0.5) * 0.5);
+        Assertions.assertThat(scaled.max()).isEqualTo(500);
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //NoteStatisticsAccumulator
+    @Test
+    public void whenResourceSongReturnStatisticsOfVoiceTrack() throws IOException {
+        MidiFile midiFile = new MidiFile(QuantileSketchTest.class.getResourceAsStream("/Underneath Your Clothes.mid"));
+        AnalysisReport report = new AnalysisEngine()
+                .register(NoteStatisticsAccumulator.NAME, NoteStatisticsAccumulator::new)
+                .analyze(midiFile);
+        NoteStatistics statistics = report.getExtra(NoteStatisticsAccumulator.NAME);
+
+        int[] durations = report.getDurationHistogram().sortedKeys();
+        Assertions.assertThat(statistics.getDurations().count()).isEqualTo(report.getVoiceTrackNoteCount());
+        Assertions.assertThat((int) statistics.getDurations().max()).isEqualTo(durations[durations.length - 1]);
+        Assertions.assertThat(statistics.getIntervals().count()).isEqualTo(report.getVoiceTrackNoteCount() - 1);
+        Assertions.assertThat(statistics.getIntervals().max()).isLessThanOrEqualTo(report.getRange());
+        Assertions.assertThat(statistics.getTempos().count()).isEqualTo(1);
+
+        NoteStatistics restored = NoteStatistics.fromByteArray(statistics.toByteArray());
+        Assertions.assertThat(restored.toString()).isEqualTo(statistics.toString());
+        Assertions.assertThat(restored.merge(statistics).getDurations().count())
+                .isEqualTo(2L * report.getVoiceTrackNoteCount());
+    }
+}
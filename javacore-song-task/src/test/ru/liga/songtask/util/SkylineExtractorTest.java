@@ -0,0 +1,121 @@
+package ru.liga.songtask.util;
+
+import com.leff.midi.MidiFile;
+import com.leff.midi.MidiTrack;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import ru.liga.songtask.analysis.AnalysisEngine;
+import ru.liga.songtask.domain.AnalysisReport;
+import ru.liga.songtask.domain.Note;
+import ru.liga.songtask.domain.NoteBuffer;
+import ru.liga.songtask.domain.NoteSign;
+import ru.liga.songtask.worker.AnalyzeWorker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class SkylineExtractorTest {
+
+    /**
+     * Фортепианное переложение: аккорд в левой руке и мелодия поверх него, плюс ударные выше мелодии.
+     */
+    private static MidiFile pianoReduction() {
+        MidiTrack piano = new MidiTrack();
+        for (int bar = 0; bar < 4; bar++) {
+            long tick = bar * 1920L;
+            piano.insertNote(0, 48, 80, tick, 1920);
+            piano.insertNote(0, 55, 80, tick, 1920);
+            piano.insertNote(0, 64, 80, tick, 1920);
+            for (int beat = 0; beat < 4; beat++) {
+                piano.insertNote(0, 72 + beat, 100, tick + beat * 480, 480);
+            }
+        }
+        MidiTrack drums = new MidiTrack();
+        for (int beat = 0; beat < 16; beat++) {
+            drums.insertNote(SongUtils.DRUM_CHANNEL, 36, 100, beat * 480L, 240);
+            drums.insertNote(SongUtils.DRUM_CHANNEL, 81, 100, beat * 480L, 240);
+        }
+        return new MidiFile(480, new ArrayList<>(Arrays.asList(MidiTrack.createTempoTrack(), piano, drums)));
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //SkylineExtractor.extract
+    @Test
+    public void whenChordsStartTogetherReturnHighestNote() {
+        NoteBuffer notes = new NoteBuffer();
+        notes.add(60, 0, 100);
+        notes.add(67, 0, 100);
+        notes.add(64, 0, 100);
+        notes.add(62, 100, 100);
+        notes.add(65, 100, 100);
+
+        NoteBuffer melody = SkylineExtractor.extract(notes);
+        Assertions.assertThat(melody.size()).isEqualTo(2);
+        Assertions.assertThat(melody.midi(0)).isEqualTo(67);
+        Assertions.assertThat(melody.midi(1)).isEqualTo(65);
+    }
+
+    @Test
+    public void whenHigherNoteEntersReturnTrimmedPreviousNote() {
+        NoteBuffer notes = new NoteBuffer();
+        notes.add(60, 0, 400);
+        notes.add(72, 100, 100);
+        notes.add(55, 150, 500);
+
+        NoteBuffer melody = SkylineExtractor.extract(notes);
+        Assertions.assertThat(melody.toNotes().toString())
+                .isEqualTo("[{C4, S|0, D|100}, {C5, S|100, D|100}]");
+    }
+
+    @Test
+    public void whenLowerNoteEntersAfterEndReturnIt() {
+        NoteBuffer notes = new NoteBuffer();
+        notes.add(72, 0, 100);
+        notes.add(60, 100, 100);
+        notes.add(62, 200, 0);
+
+        Assertions.assertThat(SkylineExtractor.extract(notes).toNotes().toString())
+                .isEqualTo("[{C5, S|0, D|100}, {C4, S|100, D|100}]");
+    }
+
+    @Test
+    public void whenRandomNotesReturnMonophonicSubsetInOrder() {
+        Random random = new Random(7);
+        List<Note> notes = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            notes.add(new Note(NoteSign.fromMidiNumber(40 + random.nextInt(40)),
+                    (long) random.nextInt(100000), (long) (1 + random.nextInt(1000))));
+        }
+        List<Note> melody = SkylineExtractor.extract(notes);
+        Assertions.assertThat(melody).isNotEmpty();
+        Assertions.assertThat(new NoteIntervalIndex(melody).isMonophonic()).isTrue();
+        for (int i = 1; i < melody.size(); i++) {
+            Assertions.assertThat(melody.get(i).startTick()).isGreaterThan(melody.get(i - 1).startTick());
+        }
+    }
+
+    @Test
+    public void whenEmptyReturnEmpty() {
+        Assertions.assertThat(SkylineExtractor.extract(new NoteBuffer()).isEmpty()).isTrue();
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //AnalyzeWorker.getVoiceTrack, AnalysisEngine
+    @Test
+    public void whenNoMonophonicTrackReturnSkylineOfPiano() {
+        MidiFile midiFile = pianoReduction();
+        Assertions.assertThat(AnalyzeWorker.getVoiceTracks(midiFile)).isEmpty();
+
+        List<Note> voice = AnalyzeWorker.getVoiceTrack(midiFile);
+        Assertions.assertThat(voice).hasSize(16);
+        Assertions.assertThat(voice.get(0).sign()).isEqualTo(NoteSign.C_5);
+        Assertions.assertThat(voice.get(3).sign()).isEqualTo(NoteSign.D_SHARP_5);
+
+        AnalysisReport report = new AnalysisEngine().analyze(midiFile);
+        Assertions.assertThat(report.getVoiceTrackIndex()).isEqualTo(1);
+        Assertions.assertThat(report.getVoiceTrackNoteCount()).isEqualTo(voice.size());
+        Assertions.assertThat(report.getExtremum()).isEqualTo(AnalyzeWorker.getExtremumNoteSigns(voice));
+    }
+}
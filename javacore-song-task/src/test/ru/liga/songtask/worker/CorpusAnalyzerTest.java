@@ -0,0 +1,116 @@
+package ru.liga.songtask.worker;
+
+import com.leff.midi.MidiFile;
+import org.assertj.core.api.Assertions;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.liga.songtask.analysis.AnalysisCache;
+import ru.liga.songtask.analysis.AnalysisEngine;
+import ru.liga.songtask.domain.AnalysisReport;
+import ru.liga.songtask.domain.CorpusRecord;
+import ru.liga.songtask.domain.NoteStatistics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class CorpusAnalyzerTest {
+    private static final String[] SONGS = {"Belle.mid", "Wrecking Ball.mid", "Underneath Your Clothes.mid"};
+    private static final Map<String, AnalysisReport> expected = new ConcurrentHashMap<>();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        for (String song : SONGS) {
+            expected.put(song, new AnalysisEngine().analyze(
+                    new MidiFile(CorpusAnalyzerTest.class.getResourceAsStream("/" + song))));
+        }
+    }
+
+    private Path createCorpus(int copies) throws IOException {
+        Path root = folder.getRoot().toPath();
+        for (int i = 0; i < copies; i++) {
+            Path dir = Files.createDirectories(root.resolve("part" + i % 3).resolve("sub" + i));
+            for (String song : SONGS) {
+                try (InputStream in = getClass().getResourceAsStream("/" + song)) {
+                    Files.copy(in, dir.resolve(song));
+                }
+            }
+        }
+        // заголовок трека с отрицательной длиной
+        Files.write(root.resolve("broken.mid"), new byte[]{'M', 'T', 'h', 'd', 0, 0, 0, 6, 0, 1, 0, 1, 1, (byte) 0xE0,
+                'M', 'T', 'r', 'k', (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xF0, 0, (byte) 0x90});
+        Files.write(root.resolve("notes.txt"), new byte[]{1, 2, 3});
+        return root;
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //CorpusAnalyzer
+    @Test
+    public void whenParallelAnalyzeReturnSameReportsAsSequential() throws IOException {
+        Path root = createCorpus(20);
+        Map<Path, CorpusRecord> records = new ConcurrentHashMap<>();
+        CorpusAnalyzer.Summary summary = new CorpusAnalyzer(4).analyze(root, record -> records.put(record.getFile(), record));
+
+        Assertions.assertThat(summary.getFiles()).isEqualTo(61);
+        Assertions.assertThat(summary.getFailures()).isEqualTo(1);
+        Assertions.assertThat(records).hasSize(61);
+        for (CorpusRecord record : records.values()) {
+            if (record.getFile().getFileName().toString().equals("broken.mid")) {
+                Assertions.assertThat(record.isSuccess()).isFalse();
+                Assertions.assertThat(record.getError()).isNotEmpty();
+                continue;
+            }
+            AnalysisReport report = expected.get(record.getFile().getFileName().toString());
+            Assertions.assertThat(record.isSuccess()).isTrue();
+            Assertions.assertThat(record.getReport().getVoiceTrackIndex()).isEqualTo(report.getVoiceTrackIndex());
+            Assertions.assertThat(record.getReport().getDurations()).isEqualTo(report.getDurations());
+            Assertions.assertThat(record.getReport().getNumberOfNotes()).isEqualTo(report.getNumberOfNotes());
+        }
+    }
+
+    @Test
+    public void whenDirectoryMissingReturnFailureRecord() {
+        Path missing = folder.getRoot().toPath().resolve("missing");
+        CorpusAnalyzer.Summary summary = new CorpusAnalyzer(2).analyze(missing, record ->
+                Assertions.assertThat(record.getFile()).isEqualTo(missing));
+        Assertions.assertThat(summary.getFiles()).isEqualTo(1);
+        Assertions.assertThat(summary.getFailures()).isEqualTo(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenCacheWithStatisticsThrowException() throws IOException {
+        new CorpusAnalyzer(2, new AnalysisCache(folder.newFolder("cache").toPath(), AnalysisCache.DEFAULT_MAX_BYTES),
+                true);
+    }
+
+    @Test
+    public void whenCollectStatisticsReturnMergedPartials() throws IOException {
+        Path root = createCorpus(10);
+        CorpusAnalyzer.Summary summary = new CorpusAnalyzer(4, null, true).analyze(root, record -> {
+        });
+        NoteStatistics statistics = summary.getStatistics();
+
+        long notes = 0;
+        long intervals = 0;
+        for (AnalysisReport report : expected.values()) {
+            notes += report.getVoiceTrackNoteCount();
+            intervals += report.getVoiceTrackNoteCount() - 1;
+        }
+        Assertions.assertThat(statistics.getDurations().count()).isEqualTo(notes * 10);
+        Assertions.assertThat(statistics.getIntervals().count()).isEqualTo(intervals * 10);
+        Assertions.assertThat(statistics.getTempos().count()).isEqualTo(30);
+        // каждый шаблон встречается во всех десяти копиях файла
+        Assertions.assertThat(summary.getPatterns().getFiles()).isEqualTo(30);
+        Assertions.assertThat(summary.getPatterns().getIntervals().top(1).get(0).getCount()).isGreaterThanOrEqualTo(10);
+        Assertions.assertThat(new CorpusAnalyzer(4).analyze(root, record -> {
+        }).getStatistics()).isNull();
+    }
+}
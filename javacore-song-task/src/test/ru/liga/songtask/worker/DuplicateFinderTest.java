@@ -0,0 +1,65 @@
+package ru.liga.songtask.worker;
+
+import com.leff.midi.MidiFile;
+import com.leff.midi.MidiTrack;
+import org.assertj.core.api.Assertions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class DuplicateFinderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private void copy(String song, Path target) throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("/" + song)) {
+            Files.copy(in, target);
+        }
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //DuplicateFinder.find
+    @Test
+    public void whenSongResavedInOtherTrackOrderReturnOneGroup() throws IOException {
+        Path root = folder.getRoot().toPath();
+        Path nested = Files.createDirectories(root.resolve("a").resolve("b"));
+        copy("Belle.mid", root.resolve("Belle.mid"));
+        copy("Wrecking Ball.mid", root.resolve("Wrecking Ball.mid"));
+        copy("Underneath Your Clothes.mid", nested.resolve("Underneath Your Clothes.mid"));
+        MidiFile belle = new MidiFile(root.resolve("Belle.mid").toFile());
+        List<MidiTrack> tracks = new ArrayList<>(belle.getTracks());
+        Collections.reverse(tracks.subList(1, tracks.size()));
+        new MidiFile(belle.getResolution(), tracks).writeToFile(nested.resolve("belle-copy.mid").toFile());
+        Files.write(root.resolve("broken.mid"), new byte[]{'M', 'T', 'h', 'd', 0});
+        Files.write(root.resolve("notes.txt"), new byte[]{1, 2, 3});
+
+        DuplicateFinder.Result result = new DuplicateFinder(3, true).find(root);
+
+        Assertions.assertThat(result.getFiles()).isEqualTo(5);
+        Assertions.assertThat(result.getFailures()).isEqualTo(1);
+        Assertions.assertThat(result.getDistinct()).isEqualTo(3);
+        Assertions.assertThat(result.getGroups()).hasSize(1);
+        Assertions.assertThat(result.getGroups().get(0).getFiles())
+                .containsExactly(root.resolve("Belle.mid"), nested.resolve("belle-copy.mid"));
+    }
+
+    @Test
+    public void whenNoDuplicatesReturnNoGroups() throws IOException {
+        Path root = folder.getRoot().toPath();
+        copy("Belle.mid", root.resolve("Belle.mid"));
+        copy("Wrecking Ball.mid", root.resolve("Wrecking Ball.mid"));
+
+        DuplicateFinder.Result result = new DuplicateFinder(1, false).find(root);
+
+        Assertions.assertThat(result.getFiles()).isEqualTo(2);
+        Assertions.assertThat(result.getGroups()).isEmpty();
+    }
+}
@@ -0,0 +1,107 @@
+package ru.liga.songtask.worker;
+
+import com.leff.midi.MidiFile;
+import org.assertj.core.api.Assertions;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import ru.liga.songtask.analysis.AnalysisEngine;
+import ru.liga.songtask.analysis.PitchDurationAccumulator;
+import ru.liga.songtask.domain.Note;
+import ru.liga.songtask.domain.NoteSign;
+
+import java.util.List;
+
+public class TranspositionSolverTest {
+    static MidiFile uYCMidiFile;
+
+    @BeforeClass
+    public static void midiInitialize() {
+        try {
+            uYCMidiFile = new MidiFile(TranspositionSolverTest.class.getResourceAsStream("/Underneath Your Clothes.mid"));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Перебор сдвигов с подсчётом времени вне диапазона нота за нотой
+     */
+    private static long bruteForceOutOfRange(long[] ticksByPitch, int shift, NoteSign low, NoteSign high) {
+        long out = 0;
+        for (int midi = 0; midi < 128; midi++) {
+            if (midi + shift < low.getMidi() || midi + shift > high.getMidi()) {
+                out += ticksByPitch[midi];
+            }
+        }
+        return out;
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //TranspositionSolver.solve
+    @Test
+    public void whenMelodyFitsAfterShiftReturnShiftToCenter() {
+        long[] ticks = new long[128];
+        ticks[60] = 100;
+        ticks[64] = 100;
+        ticks[67] = 100;
+        TranspositionSolver.Result result = TranspositionSolver.solve(ticks, NoteSign.G_3, NoteSign.G_4);
+        Assertions.assertThat(result.getOutOfRangeTicks()).isEqualTo(0);
+        Assertions.assertThat(result.getShift()).isEqualTo(-3);
+        Assertions.assertThat(result.getTotalTicks()).isEqualTo(300);
+    }
+
+    @Test
+    public void whenMelodyWiderThanRangeReturnLeastTimeOutside() {
+        long[] ticks = new long[128];
+        ticks[48] = 10;
+        ticks[60] = 500;
+        ticks[62] = 500;
+        ticks[72] = 10;
+        TranspositionSolver.Result result = TranspositionSolver.solve(ticks, NoteSign.C_4, NoteSign.D_4);
+        Assertions.assertThat(result.getShift()).isEqualTo(0);
+        Assertions.assertThat(result.getOutOfRangeTicks()).isEqualTo(20);
+        Assertions.assertThat(result.getOutOfRangeShare()).isCloseTo(20.0 / 1020, Assertions.within(1e-9));
+    }
+
+    @Test
+    public void whenEmptyTrackReturnZeroShift() {
+        TranspositionSolver.Result result = TranspositionSolver.solve(new long[128], NoteSign.C_4, NoteSign.C_5);
+        Assertions.assertThat(result.getShift()).isEqualTo(0);
+        Assertions.assertThat(result.getOutOfRangeShare()).isEqualTo(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenRangeReversedThrowException() {
+        TranspositionSolver.solve(new long[128], NoteSign.C_5, NoteSign.C_4);
+    }
+
+    @Test
+    public void whenResourceSongReturnMinimumOfBruteForce() {
+        List<Note> voice = AnalyzeWorker.getVoiceTrack(uYCMidiFile);
+        long[] ticks = TranspositionSolver.ticksByPitch(voice);
+        Assertions.assertThat(ticks).isEqualTo(new AnalysisEngine()
+                .register("ticks", PitchDurationAccumulator::new)
+                .analyze(uYCMidiFile)
+                .<long[]>getExtra("ticks"));
+
+        NoteSign low = NoteSign.A_2;
+        NoteSign high = NoteSign.D_4;
+        TranspositionSolver.Result result = TranspositionSolver.solve(ticks, low, high);
+        long best = Long.MAX_VALUE;
+        for (int shift = -48; shift <= 48; shift++) {
+            best = Math.min(best, bruteForceOutOfRange(ticks, shift, low, high));
+        }
+        Assertions.assertThat(result.getOutOfRangeTicks()).isEqualTo(best);
+        Assertions.assertThat(bruteForceOutOfRange(ticks, result.getShift(), low, high)).isEqualTo(best);
+    }
+
+    //-------------------------------------------------------------------------------------------------
+    //ChangeWorker.fitToRange
+    @Test
+    public void whenFitToRangeReturnVoiceInsideRange() {
+        MidiFile fitted = ChangeWorker.fitToRange(uYCMidiFile, NoteSign.C_3, NoteSign.E_4);
+        NoteSign[] extremum = AnalyzeWorker.getExtremumNoteSigns(AnalyzeWorker.getVoiceTrack(fitted));
+        Assertions.assertThat(extremum[0].getMidi()).isGreaterThanOrEqualTo(NoteSign.C_3.getMidi());
+        Assertions.assertThat(extremum[1].getMidi()).isLessThanOrEqualTo(NoteSign.E_4.getMidi());
+    }
+}